@@ -0,0 +1,347 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions.benchmarks;
+
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.thesett.junit.extensions.AsymptoticTestCase;
+import com.thesett.junit.extensions.TKTestResult;
+import com.thesett.junit.extensions.listeners.CSVTestListener;
+
+/**
+ * HarnessOverheadBenchmark measures the cost per test invocation of each layer of the toolkit test harness, under JMH,
+ * so that regressions in the harness are caught, and so that the floor below which test timings taken by the toolkit
+ * are dominated by the harness itself is known. Each benchmark adds one more layer on top of the previous ones:
+ *
+ * <pre><p/><table>
+ * <tr><td> directCall <td> An empty test method called directly. The floor for all of the others.
+ * <tr><td> threadLocal <td> The thread local lookups that the harness makes for each test.
+ * <tr><td> runBare <td> An empty test method run through JUnit, with its reflective invocation.
+ * <tr><td> asymptoticRunBare <td> An empty asymptotic test method run through JUnit, with its size parameter.
+ * <tr><td> startEndTest <td> The {@link TKTestResult} start and end test bookkeeping, with no listeners.
+ * <tr><td> runWithResult <td> An empty asymptotic test run through a {@link TKTestResult}, with no listeners.
+ * <tr><td> runWithCsvListener <td> As above, with results dispatched to, and formatted by, a {@link CSVTestListener}.
+ * </table></pre>
+ *
+ * <p/>As in the toolkit, the test result is shared between all of the benchmark threads, and each thread has its own
+ * test. The benchmarks can be run at a range of thread counts, with the JMH GC profiler to measure the allocation per
+ * invocation of each layer, through the main method of this class:
+ *
+ * <pre>
+ * mvn -P jmh package
+ * java -cp target/junit-toolkit-*-benchmarks.jar com.thesett.junit.extensions.benchmarks.HarnessOverheadBenchmark 8
+ * </pre>
+ *
+ * <p/>This writes JMH JSON results for each thread count, which can be exported to CSV or XML by
+ * {@link com.thesett.junit.extensions.jmh.JmhResultConverter}.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities <th> Collaborations
+ * <tr><td> Measure the cost per invocation of each layer of the test harness. <td> {@link TKTestResult}
+ * <tr><td> Run the measurements at a range of thread counts, with allocation profiling.
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HarnessOverheadBenchmark
+{
+    /**
+     * Runs all of the harness benchmarks at 1, 2, 4 and so on threads, up to a maximum, with the GC profiler, writing
+     * JSON results for each thread count.
+     *
+     * @param  args The maximum number of threads, optionally. Defaults to the number of available processors.
+     *
+     * @throws RunnerException If JMH fails to run the benchmarks.
+     */
+    public static void main(String[] args) throws RunnerException
+    {
+        int maxThreads = (args.length > 0) ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+
+        for (int threads = 1; threads <= maxThreads;)
+        {
+            Options options =
+                new OptionsBuilder().include(HarnessOverheadBenchmark.class.getName()).threads(threads).addProfiler(
+                    GCProfiler.class).resultFormat(ResultFormatType.JSON).result("harness-overhead-" + threads +
+                    ".json").build();
+
+            new Runner(options).run();
+
+            // Double the threads each time, finishing on the maximum.
+            threads = ((threads < maxThreads) && ((threads * 2) > maxThreads)) ? maxThreads : (threads * 2);
+        }
+    }
+
+    /**
+     * Calls an empty test method directly.
+     *
+     * @param tests The tests for this benchmark thread.
+     */
+    @Benchmark
+    public void directCall(ThreadState tests)
+    {
+        tests.emptyTest.testEmpty();
+    }
+
+    /**
+     * Makes the thread local lookups that the harness makes for each test, one in the test result and one in the
+     * asymptotic test case.
+     *
+     * @param  shared The state shared between the benchmark threads.
+     *
+     * @return The thread local values, to stop them being optimized away.
+     */
+    @Benchmark
+    public Object threadLocal(SharedState shared)
+    {
+        Object first = shared.resultThreadLocal.get();
+        Object second = shared.testThreadLocal.get();
+
+        return (first == second) ? first : second;
+    }
+
+    /**
+     * Runs an empty test method through JUnit, with its setUp, tearDown and reflective invocation.
+     *
+     * @param  tests The tests for this benchmark thread.
+     *
+     * @throws Throwable If the test fails, which it cannot.
+     */
+    @Benchmark
+    public void runBare(ThreadState tests) throws Throwable
+    {
+        tests.emptyTest.runBare();
+    }
+
+    /**
+     * Runs an empty asymptotic test method through JUnit, passing it its size parameter.
+     *
+     * @param  tests The tests for this benchmark thread.
+     *
+     * @throws Throwable If the test fails, which it cannot.
+     */
+    @Benchmark
+    public void asymptoticRunBare(ThreadState tests) throws Throwable
+    {
+        tests.emptyAsymptoticTest.runBare();
+    }
+
+    /**
+     * Calls the test result start and end test bookkeeping, with no listeners attached, without running a test.
+     *
+     * @param shared The state shared between the benchmark threads.
+     * @param tests  The tests for this benchmark thread.
+     */
+    @Benchmark
+    public void startEndTest(SharedState shared, ThreadState tests)
+    {
+        shared.result.startTest(tests.emptyAsymptoticTest);
+        shared.result.endTest(tests.emptyAsymptoticTest);
+    }
+
+    /**
+     * Runs an empty asymptotic test through a test result, with no listeners attached.
+     *
+     * @param shared The state shared between the benchmark threads.
+     * @param tests  The tests for this benchmark thread.
+     */
+    @Benchmark
+    public void runWithResult(SharedState shared, ThreadState tests)
+    {
+        tests.emptyAsymptoticTest.run(shared.result);
+    }
+
+    /**
+     * Runs an empty asymptotic test through a test result, with a CSV listener attached that formats the results and
+     * writes them to a writer that discards them.
+     *
+     * @param shared The state shared between the benchmark threads.
+     * @param tests  The tests for this benchmark thread.
+     */
+    @Benchmark
+    public void runWithCsvListener(SharedState shared, ThreadState tests)
+    {
+        tests.emptyAsymptoticTest.run(shared.csvResult);
+    }
+
+    /**
+     * SharedState holds the test results, shared between all of the benchmark threads, as the toolkit shares a single
+     * test result between all of the test threads.
+     */
+    @State(Scope.Benchmark)
+    public static class SharedState
+    {
+        /** The test result with no listeners attached. */
+        public TKTestResult result;
+
+        /** The test result with a CSV listener attached. */
+        public TKTestResult csvResult;
+
+        /** A thread local of the kind looked up by the test result for each test. */
+        public final ThreadLocal<Object> resultThreadLocal =
+            new ThreadLocal<Object>()
+            {
+                protected Object initialValue()
+                {
+                    return new Object();
+                }
+            };
+
+        /** A thread local of the kind looked up by asymptotic test cases for each test. */
+        public final ThreadLocal<Object> testThreadLocal =
+            new ThreadLocal<Object>()
+            {
+                protected Object initialValue()
+                {
+                    return new Object();
+                }
+            };
+
+        /** Creates the test results, and starts a batch on the CSV listener. */
+        @Setup(Level.Trial)
+        public void setUp()
+        {
+            result = new TKTestResult(0, null);
+
+            CSVTestListener listener = new CSVTestListener(new DiscardingWriter());
+            csvResult = new TKTestResult(0, null);
+            csvResult.addListener(listener);
+            csvResult.addTKTestListener(listener);
+            csvResult.notifyStartBatch();
+        }
+    }
+
+    /**
+     * ThreadState holds the tests for each benchmark thread, as the toolkit gives each test thread its own test.
+     */
+    @State(Scope.Thread)
+    public static class ThreadState
+    {
+        /** An empty test. */
+        public EmptyTest emptyTest;
+
+        /** An empty asymptotic test. */
+        public EmptyAsymptoticTest emptyAsymptoticTest;
+
+        /** Creates the tests. */
+        @Setup(Level.Trial)
+        public void setUp()
+        {
+            emptyTest = new EmptyTest("testEmpty");
+            emptyAsymptoticTest = new EmptyAsymptoticTest("testEmpty");
+            emptyAsymptoticTest.setN(1);
+        }
+    }
+
+    /**
+     * EmptyTest is a test with an empty test method.
+     */
+    public static class EmptyTest extends TestCase
+    {
+        /**
+         * Creates a named empty test.
+         *
+         * @param name The test name.
+         */
+        public EmptyTest(String name)
+        {
+            super(name);
+        }
+
+        /** Does nothing. */
+        public void testEmpty()
+        {
+        }
+    }
+
+    /**
+     * EmptyAsymptoticTest is an asymptotic test with an empty test method.
+     */
+    public static class EmptyAsymptoticTest extends AsymptoticTestCase
+    {
+        /**
+         * Creates a named empty asymptotic test.
+         *
+         * @param name The test name.
+         */
+        public EmptyAsymptoticTest(String name)
+        {
+            super(name);
+        }
+
+        /**
+         * Does nothing.
+         *
+         * @param n The size of the test.
+         */
+        public void testEmpty(int n)
+        {
+        }
+    }
+
+    /**
+     * DiscardingWriter is a writer that discards everything written to it, so that the cost of formatting results is
+     * measured without the cost of writing them out.
+     */
+    private static class DiscardingWriter extends Writer
+    {
+        /**
+         * Discards the characters written.
+         *
+         * @param cbuf The characters to write.
+         * @param off  The offset of the first character to write.
+         * @param len  The number of characters to write.
+         */
+        public void write(char[] cbuf, int off, int len)
+        {
+        }
+
+        /** Does nothing, as there is nothing to flush. */
+        public void flush()
+        {
+        }
+
+        /** Does nothing, as there is nothing to close. */
+        public void close()
+        {
+        }
+    }
+}
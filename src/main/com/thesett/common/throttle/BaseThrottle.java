@@ -21,6 +21,7 @@ package com.thesett.common.throttle;
  * <pre><p/><table id="crc"><caption>CRC Card</caption>
  * <tr><th> Responsibilities <th> Collaborations
  * <tr><td> Check against a throttle speed without waiting.
+ * <tr><td> Keep a fixed schedule of intended call times at the throttle rate.
  * </table></pre>
  *
  * @author Rupert Smith
@@ -42,6 +43,12 @@ public abstract class BaseThrottle implements Throttle
      */
     boolean firstCall = true;
 
+    /** Holds the scheduled time of the most recent call to the {@link #throttle()} method. */
+    private long scheduledTimeNanos;
+
+    /** Flag used to detect the first call to the {@link #throttle()} method since the schedule was last reset. */
+    boolean scheduleStarted;
+
     /**
      * Specifies the throttling rate in operations per second. This must be called with with a value, the inverse of
      * which is a measurement in nano seconds, such that the number of nano seconds do not overflow a long integer. The
@@ -63,6 +70,9 @@ public abstract class BaseThrottle implements Throttle
         // Reset the first pass flag.
         firstCall = false;
         firstCheckCall = false;
+
+        // Start a new schedule at the new rate.
+        scheduleStarted = false;
     }
 
     /**
@@ -73,6 +83,8 @@ public abstract class BaseThrottle implements Throttle
      */
     public void throttle() throws InterruptedException
     {
+        advanceSchedule();
+
         // Don't introduce any pause on the first call.
         if (!firstCall)
         {
@@ -113,6 +125,16 @@ public abstract class BaseThrottle implements Throttle
         return timeToThrottleNanos() <= 0;
     }
 
+    /**
+     * Provides the time at which the most recent call to {@link #throttle()} was scheduled to go ahead.
+     *
+     * @return The scheduled time of the most recent call to {@link #throttle()}, in nanoseconds.
+     */
+    public long getScheduledTimeNanos()
+    {
+        return scheduledTimeNanos;
+    }
+
     /**
      * Checks but does not enforce the throttle rate. When this method is called, it checks if a length of time greater
      * than that equal to the inverse of the throttling rate has passed since it was last called and returned <tt>
@@ -149,4 +171,22 @@ public abstract class BaseThrottle implements Throttle
             return remainingNanos;
         }
     }
+
+    /**
+     * Advances the schedule of intended call times by one cycle at the throttle rate. The first call after the rate is
+     * set starts the schedule at the current time. Throttle implementations should call this once on each call to
+     * {@link #throttle()}.
+     */
+    protected void advanceSchedule()
+    {
+        if (!scheduleStarted)
+        {
+            scheduledTimeNanos = System.nanoTime();
+            scheduleStarted = true;
+        }
+        else
+        {
+            scheduledTimeNanos += cycleTimeNanos;
+        }
+    }
 }
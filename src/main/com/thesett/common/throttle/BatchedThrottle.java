@@ -83,6 +83,8 @@ public class BatchedThrottle extends BaseThrottle
      */
     public void throttle() throws InterruptedException
     {
+        advanceSchedule();
+
         if ((callCount++ % batchSize) == 0)
         {
             batchRateThrottle.throttle();
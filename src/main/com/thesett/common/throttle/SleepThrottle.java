@@ -41,6 +41,8 @@ public class SleepThrottle extends BaseThrottle implements Throttle
      */
     public synchronized void throttle() throws InterruptedException
     {
+        advanceSchedule();
+
         // Get the current time in nanos.
         long currentTimeNanos = System.nanoTime();
 
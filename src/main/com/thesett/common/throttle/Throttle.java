@@ -82,4 +82,19 @@ public interface Throttle
      *         it is reached. The units are in nanoseconds.
      */
     long timeToThrottleNanos();
+
+    /**
+     * Provides the time at which the most recent call to {@link #throttle()} was scheduled to go ahead. The schedule
+     * starts from the first call to {@link #throttle()} after the rate is set, and advances by exactly one cycle at the
+     * throttling rate on each call, regardless of when the calls are actually made. When a caller falls behind the
+     * schedule, for example because the system under test stalled, the scheduled time will be earlier than the actual
+     * time of the call, and the difference is the queueing delay that a caller arriving at the throttling rate would
+     * have seen.
+     *
+     * <p/>The scheduled time is only meaningfull to the thread that made the call to {@link #throttle()}, and should
+     * be read by that thread straight after the call.
+     *
+     * @return The scheduled time of the most recent call to {@link #throttle()}, in nanoseconds.
+     */
+    long getScheduledTimeNanos();
 }
@@ -62,6 +62,10 @@ public class TokenBucketThrottle extends BaseThrottle
     public void setRate(float hertz)
     {
         targetRate = hertz;
+
+        // Keep the cycle time and schedule of intended call times in step with the rate.
+        cycleTimeNanos = (long) (1000000000f / hertz);
+        scheduleStarted = false;
     }
 
     /**
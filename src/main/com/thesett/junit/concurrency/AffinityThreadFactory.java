@@ -0,0 +1,71 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.concurrency;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Implements a thread factory that pins the threads it creates to cores, according to a {@link ThreadPlacement}
+ * policy. The n-th thread created is pinned to the core that the policy chooses for the n-th thread. Each thread pins
+ * itself when it starts running, before it runs its task. If a thread cannot be pinned, it is run unpinned.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities <th> Collaborations
+ * <tr><td> Create threads pinned to cores by a placement policy. <td> {@link ThreadPlacement}, {@link ThreadAffinity}
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class AffinityThreadFactory implements ThreadFactory
+{
+    /** Holds the placement policy to pin threads by. */
+    private final ThreadPlacement placement;
+
+    /** Holds a count of the threads created so far. */
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    /**
+     * Creates a thread factory that pins threads to cores by the specified placement policy.
+     *
+     * @param placement The placement policy to pin threads by.
+     */
+    public AffinityThreadFactory(ThreadPlacement placement)
+    {
+        this.placement = placement;
+    }
+
+    /**
+     * Constructs a new <tt>Thread</tt>, that pins itself to its core when it starts.
+     *
+     * @param  r A runnable to be executed by new thread instance.
+     *
+     * @return The constructed thread.
+     */
+    public Thread newThread(final Runnable r)
+    {
+        final int core = placement.getCore(threadCount.getAndIncrement());
+
+        return new Thread(new Runnable()
+                {
+                    public void run()
+                    {
+                        ThreadAffinity.pinCurrentThread(core);
+                        r.run();
+                    }
+                });
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.concurrency;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ThreadAffinity provides operations to pin the calling thread to a core, and to find out which core the calling thread
+ * is currently running on. The JVM has no API for thread affinity, so this is done through the Linux proc file system
+ * and the 'taskset' utility. On other platforms, or where these are not available, threads cannot be pinned and the
+ * current core is reported as -1.
+ *
+ * <p/>The cores are also described by the Linux sys file system, from which the socket that each core belongs to can
+ * be found, which is used to lay threads out across sockets. The cores that threads may be placed on are the ones that
+ * the process is allowed to run on, which are not necessarily numbered from zero.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities
+ * <tr><td> Pin the calling thread to a core.
+ * <tr><td> Find out which core the calling thread is running on.
+ * <tr><td> Find out how many cores there are, and which socket each belongs to.
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class ThreadAffinity
+{
+    /** The proc file system entry for the calling thread. */
+    private static final String THREAD_SELF = "/proc/thread-self";
+
+    /** The proc file system status entry for the process, which lists the cores that it is allowed to run on. */
+    private static final String PROCESS_STATUS = "/proc/self/status";
+
+    /** The field of the process status that lists the cores that the process is allowed to run on. */
+    private static final String CPUS_ALLOWED = "Cpus_allowed_list:";
+
+    /** The sys file system entry that lists the cores that are online. */
+    private static final String CPUS_ONLINE = "/sys/devices/system/cpu/online";
+
+    /** The sys file system directory describing the cores. */
+    private static final String CPU_DIR = "/sys/devices/system/cpu/cpu";
+
+    /** The index of the processor field in the proc stat line, counted from after the command name. */
+    private static final int PROCESSOR_FIELD = 36;
+
+    /** Private constructor to prevent instantiation of this utility class. */
+    private ThreadAffinity()
+    {
+    }
+
+    /**
+     * Pins the calling thread to the specified core.
+     *
+     * @param  core The core to pin the calling thread to.
+     *
+     * @return <tt>true</tt> if the thread was pinned, <tt>false</tt> if it could not be.
+     */
+    public static boolean pinCurrentThread(int core)
+    {
+        try
+        {
+            // Find the native thread id of the calling thread, from the first field of its proc stat line. This is
+            // read afresh on every call, rather than resolving the proc entry link, as resolved paths may be cached
+            // and shared between threads.
+            String stat = readLine(THREAD_SELF + "/stat", null);
+
+            if ((stat == null) || (stat.indexOf(' ') < 0))
+            {
+                return false;
+            }
+
+            String tid = stat.substring(0, stat.indexOf(' '));
+
+            // Set the affinity of the thread with taskset, and wait for it to complete.
+            Process taskset =
+                new ProcessBuilder("taskset", "-p", "-c", Integer.toString(core), tid).redirectErrorStream(true)
+                .start();
+
+            // Consume the output so that the process cannot block on it.
+            InputStream output = taskset.getInputStream();
+
+            while (output.read() != -1)
+            {
+                // Discard the output.
+            }
+
+            return taskset.waitFor() == 0;
+        }
+        catch (IOException e)
+        {
+            // The thread cannot be pinned on this platform. Exception noted and ignored.
+            e = null;
+
+            return false;
+        }
+        catch (InterruptedException e)
+        {
+            // Restore the interrupted state of the thread, and give up on pinning it. Exception noted and ignored.
+            e = null;
+            Thread.currentThread().interrupt();
+
+            return false;
+        }
+    }
+
+    /**
+     * Finds out which core the calling thread is currently running on.
+     *
+     * @return The core that the calling thread is currently running on, or -1 if this cannot be found out.
+     */
+    public static int getCurrentCore()
+    {
+        String stat = readLine(THREAD_SELF + "/stat", null);
+
+        if (stat == null)
+        {
+            return -1;
+        }
+
+        // Skip over the command name, which is in brackets and may contain spaces.
+        String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+
+        if (fields.length <= PROCESSOR_FIELD)
+        {
+            return -1;
+        }
+
+        try
+        {
+            return Integer.parseInt(fields[PROCESSOR_FIELD]);
+        }
+        catch (NumberFormatException e)
+        {
+            // The stat line is not in the expected format. Exception noted and ignored.
+            e = null;
+
+            return -1;
+        }
+    }
+
+    /**
+     * Finds out which socket a core belongs to.
+     *
+     * @param  core The core to find the socket of.
+     *
+     * @return The socket that the core belongs to, or 0 if this cannot be found out.
+     */
+    public static int getSocket(int core)
+    {
+        return readInt(CPU_DIR + core + "/topology/physical_package_id", 0);
+    }
+
+    /**
+     * Finds out the physical core id of a core, which is shared between the hardware threads of a physical core.
+     *
+     * @param  core The core to find the physical core id of.
+     *
+     * @return The physical core id of the core, or the core itself if this cannot be found out.
+     */
+    public static int getPhysicalCore(int core)
+    {
+        return readInt(CPU_DIR + core + "/topology/core_id", core);
+    }
+
+    /**
+     * Provides the number of cores available to the JVM.
+     *
+     * @return The number of cores available to the JVM.
+     */
+    public static int getCoreCount()
+    {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Lists the cores available to the JVM. These are the cores that the process is allowed to run on, or failing
+     * that the cores that are online, or failing that, as many cores as are available to the JVM, numbered from zero.
+     *
+     * @return The cores available to the JVM, in ascending order.
+     */
+    public static List<Integer> getAvailableCores()
+    {
+        String allowed = readLine(PROCESS_STATUS, CPUS_ALLOWED);
+        List<Integer> cores =
+            (allowed != null) ? parseCoreList(allowed.substring(CPUS_ALLOWED.length()))
+                              : parseCoreList(readLine(CPUS_ONLINE, null));
+
+        if (cores.isEmpty())
+        {
+            for (int core = 0; core < getCoreCount(); core++)
+            {
+                cores.add(core);
+            }
+        }
+
+        return cores;
+    }
+
+    /**
+     * Parses a Linux list of cores, in the form "0-3,8,10-11".
+     *
+     * @param  coreList The list of cores, may be <tt>null</tt>.
+     *
+     * @return The cores in the list, or an empty list if it is <tt>null</tt> or cannot be parsed.
+     */
+    private static List<Integer> parseCoreList(String coreList)
+    {
+        List<Integer> cores = new ArrayList<Integer>();
+
+        if ((coreList == null) || "".equals(coreList.trim()))
+        {
+            return cores;
+        }
+
+        try
+        {
+            for (String range : coreList.trim().split(","))
+            {
+                int dash = range.indexOf('-');
+                int first = Integer.parseInt(((dash < 0) ? range : range.substring(0, dash)).trim());
+                int last = (dash < 0) ? first : Integer.parseInt(range.substring(dash + 1).trim());
+
+                for (int core = first; core <= last; core++)
+                {
+                    cores.add(core);
+                }
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            // The list is not in the expected format. Exception noted and ignored.
+            e = null;
+            cores.clear();
+        }
+
+        return cores;
+    }
+
+    /**
+     * Reads an integer from the first line of a file.
+     *
+     * @param  fileName     The file to read.
+     * @param  defaultValue The value to return if the file cannot be read.
+     *
+     * @return The integer read from the file, or the default value if it cannot be read.
+     */
+    private static int readInt(String fileName, int defaultValue)
+    {
+        String line = readLine(fileName, null);
+
+        if (line == null)
+        {
+            return defaultValue;
+        }
+
+        try
+        {
+            return Integer.parseInt(line.trim());
+        }
+        catch (NumberFormatException e)
+        {
+            // The file does not hold an integer. Exception noted and ignored.
+            e = null;
+
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Reads the first line of a file, or the first line of it that starts with a prefix.
+     *
+     * @param  fileName The file to read.
+     * @param  prefix   The prefix of the line to read, or <tt>null</tt> to read the first line.
+     *
+     * @return The line read from the file, or <tt>null</tt> if it cannot be read or there is no such line.
+     */
+    private static String readLine(String fileName, String prefix)
+    {
+        BufferedReader reader = null;
+
+        try
+        {
+            reader = new BufferedReader(new FileReader(fileName));
+
+            for (String line = reader.readLine(); line != null; line = reader.readLine())
+            {
+                if ((prefix == null) || line.startsWith(prefix))
+                {
+                    return line;
+                }
+            }
+
+            return null;
+        }
+        catch (IOException e)
+        {
+            // The file cannot be read on this platform. Exception noted and ignored.
+            e = null;
+
+            return null;
+        }
+        finally
+        {
+            if (reader != null)
+            {
+                try
+                {
+                    reader.close();
+                }
+                catch (IOException e)
+                {
+                    // There is nothing to be done about failing to close the file. Exception noted and ignored.
+                    e = null;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.concurrency;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * ThreadPlacement is a policy for placing threads on cores. It lays out an ordering of cores, and the n-th thread
+ * created is placed on the n-th core in this ordering, wrapping around to the start again when there are more threads
+ * than cores. The available policies are:
+ *
+ * <pre><p/><table id="params"><caption>Placement Policies</caption>
+ * <tr><th> Policy <th> Description
+ * <tr><td> compact <td> Fills up the cores on one socket, before moving on to the next socket.
+ * <tr><td> scatter <td> Spreads the threads out across the sockets, placing each thread on the next socket in turn.
+ * <tr><td> explicit <td> Places the threads on an explicit list of cores, in order.
+ * </table></pre>
+ *
+ * <p/>Policies are parsed from strings by {@link #parsePlacement}, in the form "compact", "scatter" or a comma
+ * separated list of cores, such as "0,2,4,6".
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities <th> Collaborations
+ * <tr><td> Lay out an ordering of cores to place threads on. <td> {@link ThreadAffinity}
+ * <tr><td> Choose the core for the n-th thread.
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class ThreadPlacement
+{
+    /** Holds the name of the policy. */
+    private final String name;
+
+    /** Holds the ordering of cores to place threads on. */
+    private final int[] cores;
+
+    /**
+     * Creates a thread placement over an ordering of cores.
+     *
+     * @param name  The name of the policy.
+     * @param cores The ordering of cores to place threads on.
+     */
+    private ThreadPlacement(String name, int[] cores)
+    {
+        this.name = name;
+        this.cores = cores;
+    }
+
+    /**
+     * Creates a placement policy that fills up the cores on one socket before moving on to the next.
+     *
+     * @return A compact placement policy.
+     */
+    public static ThreadPlacement compact()
+    {
+        List<Integer> cores = allCores();
+
+        // Sort the cores by socket, then by physical core, so that hardware threads on the same core are adjacent.
+        Collections.sort(cores, new Comparator<Integer>()
+            {
+                public int compare(Integer o1, Integer o2)
+                {
+                    int result = compareInts(ThreadAffinity.getSocket(o1), ThreadAffinity.getSocket(o2));
+                    result =
+                        (result != 0) ? result
+                                      : compareInts(ThreadAffinity.getPhysicalCore(o1),
+                            ThreadAffinity.getPhysicalCore(o2));
+
+                    return (result != 0) ? result : compareInts(o1, o2);
+                }
+            });
+
+        return new ThreadPlacement("compact", toArray(cores));
+    }
+
+    /**
+     * Creates a placement policy that spreads threads out across the sockets, taking the next core from each socket in
+     * turn.
+     *
+     * @return A scatter placement policy.
+     */
+    public static ThreadPlacement scatter()
+    {
+        // Start from the compact ordering, and split it up by socket.
+        int[] compact = compact().cores;
+        List<List<Integer>> sockets = new ArrayList<List<Integer>>();
+        int lastSocket = -1;
+
+        for (int core : compact)
+        {
+            int socket = ThreadAffinity.getSocket(core);
+
+            if (socket != lastSocket)
+            {
+                sockets.add(new ArrayList<Integer>());
+                lastSocket = socket;
+            }
+
+            sockets.get(sockets.size() - 1).add(core);
+        }
+
+        // Deal the cores out by taking the next one from each socket in turn.
+        List<Integer> cores = new ArrayList<Integer>();
+
+        for (int i = 0; cores.size() < compact.length; i++)
+        {
+            for (List<Integer> socket : sockets)
+            {
+                if (i < socket.size())
+                {
+                    cores.add(socket.get(i));
+                }
+            }
+        }
+
+        return new ThreadPlacement("scatter", toArray(cores));
+    }
+
+    /**
+     * Creates a placement policy that places threads on an explicit list of cores.
+     *
+     * @param  cores The cores to place threads on, in order.
+     *
+     * @return An explicit placement policy.
+     */
+    public static ThreadPlacement explicit(int[] cores)
+    {
+        if ((cores == null) || (cores.length == 0))
+        {
+            throw new IllegalArgumentException("At least one core must be specified.");
+        }
+
+        return new ThreadPlacement(Arrays.toString(cores), cores.clone());
+    }
+
+    /**
+     * Parses a placement policy, in the form "compact", "scatter" or a comma separated list of cores.
+     *
+     * @param  placement The placement policy to parse.
+     *
+     * @return The placement policy.
+     */
+    public static ThreadPlacement parsePlacement(String placement)
+    {
+        if ("compact".equals(placement))
+        {
+            return compact();
+        }
+        else if ("scatter".equals(placement))
+        {
+            return scatter();
+        }
+
+        String[] coreStrings = placement.split(",");
+        int[] cores = new int[coreStrings.length];
+
+        for (int i = 0; i < coreStrings.length; i++)
+        {
+            try
+            {
+                cores[i] = Integer.parseInt(coreStrings[i].trim());
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IllegalArgumentException("The thread placement " + placement +
+                    " is not 'compact', 'scatter' or a list of cores.", e);
+            }
+        }
+
+        return explicit(cores);
+    }
+
+    /**
+     * Chooses the core to place the n-th thread on.
+     *
+     * @param  threadIndex The index of the thread, counting from zero.
+     *
+     * @return The core to place the thread on.
+     */
+    public int getCore(int threadIndex)
+    {
+        return cores[threadIndex % cores.length];
+    }
+
+    /**
+     * Pretty prints the policy, for debugging purposes.
+     *
+     * @return The policy name, and the ordering of cores.
+     */
+    public String toString()
+    {
+        return "ThreadPlacement: [ name = " + name + ", cores = " + Arrays.toString(cores) + " ]";
+    }
+
+    /**
+     * Lists all of the cores available to the JVM.
+     *
+     * @return All of the cores available to the JVM.
+     */
+    private static List<Integer> allCores()
+    {
+        return ThreadAffinity.getAvailableCores();
+    }
+
+    /**
+     * Converts a list of cores to an array.
+     *
+     * @param  cores The list of cores.
+     *
+     * @return An array of the cores.
+     */
+    private static int[] toArray(List<Integer> cores)
+    {
+        int[] result = new int[cores.size()];
+
+        for (int i = 0; i < result.length; i++)
+        {
+            result[i] = cores.get(i);
+        }
+
+        return result;
+    }
+
+    /**
+     * Compares two ints.
+     *
+     * @param  i1 The first int.
+     * @param  i2 The second int.
+     *
+     * @return A negative, zero or positive result as the first int is less than, equal to or greater than the second.
+     */
+    private static int compareInts(int i1, int i2)
+    {
+        return (i1 < i2) ? -1 : ((i1 == i2) ? 0 : 1);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.concurrency;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Implements a thread factory that creates virtual threads. Virtual threads are only available on more recent JVMs, so
+ * the virtual thread factory provided by the JVM is looked up reflectively, which allows this class to be compiled and
+ * loaded on older JVMs. Creating a VirtualThreadFactory on a JVM that does not support virtual threads fails with an
+ * exception.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities <th> Collaborations
+ * <tr><td> Create virtual threads.
+ * <tr><td> Check that the JVM supports virtual threads.
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class VirtualThreadFactory implements ThreadFactory
+{
+    /** Holds the virtual thread factory supplied by the JVM. */
+    private final ThreadFactory virtualFactory;
+
+    /**
+     * Creates a virtual thread factory.
+     *
+     * @throws IllegalStateException If the JVM does not support virtual threads.
+     */
+    public VirtualThreadFactory()
+    {
+        try
+        {
+            // Call Thread.ofVirtual().factory() reflectively. The factory method is looked up on the public builder
+            // interface, as the builder implementation class is not accessible.
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method factoryMethod = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+
+            virtualFactory = (ThreadFactory) factoryMethod.invoke(builder);
+        }
+        catch (NoSuchMethodException e)
+        {
+            throw new IllegalStateException("Virtual threads are not supported by this JVM.", e);
+        }
+        catch (ClassNotFoundException e)
+        {
+            throw new IllegalStateException("Virtual threads are not supported by this JVM.", e);
+        }
+        catch (IllegalAccessException e)
+        {
+            throw new IllegalStateException("Virtual threads are not accessible on this JVM.", e);
+        }
+        catch (InvocationTargetException e)
+        {
+            // Virtual threads may be present but not enabled, if they are a preview feature of the JVM.
+            throw new IllegalStateException("Virtual threads are not enabled on this JVM: " + e.getCause(),
+                e.getCause());
+        }
+    }
+
+    /**
+     * Constructs a new virtual <tt>Thread</tt>.
+     *
+     * @param  r A runnable to be executed by new thread instance.
+     *
+     * @return The constructed thread.
+     */
+    public Thread newThread(Runnable r)
+    {
+        return virtualFactory.newThread(r);
+    }
+}
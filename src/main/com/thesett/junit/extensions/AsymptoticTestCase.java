@@ -15,12 +15,18 @@
  */
 package com.thesett.junit.extensions;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import junit.framework.TestCase;
 
+import com.thesett.junit.extensions.util.AllocationCounter;
+
 /**
  * AsymptoticTestCase is an extension of TestCase for writing unit tests to analyze asymptotic time and space behaviour.
  *
@@ -40,10 +46,15 @@ import junit.framework.TestCase;
  * parameter and deallocate them in the tear down method. In this way memory readings for different numbers of elements
  * can be captured and the asymptotic behaviour of the data structure with respect to space analyzed.
  *
+ * <p>The memory used by a test is measured as the number of bytes of heap allocated by the test thread whilst running
+ * the test method, using the per-thread allocation counters of the JVM, see {@link AllocationCounter}. Memory is
+ * counted when it is allocated, regardless of whether it is garbage collected during the test.
+ *
  * <pre><p/><table id="crc"><caption>CRC Card</caption>
  * <tr><th> Responsibilities <th> Collaborations
  * <tr><td> Store the current int parameter value. <td> {@link TKTestResult} and see {@link AsymptoticTestDecorator} too.
- * <tr><td> Invoke parameterized test methods.
+ * <tr><td> Invoke parameterized test methods. <td> {@link MethodHandle}
+ * <tr><td> Measure the memory allocated by test methods. <td> {@link AllocationCounter}
  * </table></pre>
  *
  * @author Rupert Smith
@@ -59,9 +70,19 @@ public class AsymptoticTestCase extends TestCase implements InstrumentedTest
     /** Used for logging. */
     /*private static final Logger log = Logger.getLogger(AsymptoticTestCase.class);*/
 
+    /** The type of the method handles used to call test methods, taking the test case and the int parameter. */
+    private static final MethodType RUN_TYPE = MethodType.methodType(void.class, AsymptoticTestCase.class, int.class);
+
+    /** Holds the method handles used to call test methods, cached by test class and test method name. */
+    private static final ConcurrentMap<Class<?>, ConcurrentMap<String, MethodHandle>> RUN_HANDLES =
+        new ConcurrentHashMap<Class<?>, ConcurrentMap<String, MethodHandle>>();
+
     /** The name of the test case. */
     private final String testCaseName;
 
+    /** Holds the method handle used to call the test method, once it has been looked up. */
+    private volatile MethodHandle runHandle;
+
     /** Thread local for holding measurements on a per thread basis. */
     final ThreadLocal<TestMeasurements> threadLocalMeasurement =
         new ThreadLocal<TestMeasurements>()
@@ -136,7 +157,28 @@ public class AsymptoticTestCase extends TestCase implements InstrumentedTest
     }
 
     /**
-     * Reports the memory usage at the start of the test.
+     * Reports the time at which the test method started, that the test timing is taken from.
+     *
+     * @return The time in nanoseconds at which the test method started.
+     */
+    long getTestStartTime()
+    {
+        return threadLocalMeasurement.get().startTime;
+    }
+
+    /**
+     * Reports the time at which the test method ended, that the test timing is taken to.
+     *
+     * @return The time in nanoseconds at which the test method ended.
+     */
+    long getTestEndTime()
+    {
+        return threadLocalMeasurement.get().endTime;
+    }
+
+    /**
+     * Reports the memory usage at the start of the test, as the number of bytes allocated by the test thread so far.
+     * The difference between this and the end memory usage is the number of bytes allocated by the test method.
      *
      * @return The memory usage at the start of the test.
      */
@@ -151,7 +193,7 @@ public class AsymptoticTestCase extends TestCase implements InstrumentedTest
     }
 
     /**
-     * Reports the memory usage at the end of the test.
+     * Reports the memory usage at the end of the test, as the number of bytes allocated by the test thread so far.
      *
      * @return The memory usage at the end of the test.
      */
@@ -175,7 +217,10 @@ public class AsymptoticTestCase extends TestCase implements InstrumentedTest
     }
 
     /**
-     * Runs the test method for this test case.
+     * Runs the test method for this test case. The test method is looked up the first time that this is called, and
+     * held as a method handle that takes the int parameter as a primitive. Subsequent calls invoke the method handle
+     * directly, so that the cost of calling the test method is kept as low as possible, and no objects are allocated in
+     * calling it.
      *
      * @throws Throwable Any Throwables from the test methods invoked are allowed to fall through.
      */
@@ -183,10 +228,75 @@ public class AsymptoticTestCase extends TestCase implements InstrumentedTest
     {
         /*log.debug("protected void runTest(): called");*/
 
+        // Look up the test method, if this has not already been done.
+        MethodHandle handle = runHandle;
+
+        if (handle == null)
+        {
+            handle = getRunHandle();
+            runHandle = handle;
+        }
+
+        // Execute the method, passing it the current int parameter value. Allow any resulting exceptions from the
+        // method to fall through.
+        TestMeasurements measurements = threadLocalMeasurement.get();
+        int paramN = measurements.n;
+        /*log.debug("paramN = " + paramN);*/
+
+        try
+        {
+            // Take the test start memory and start time.
+            measurements.startMem = AllocationCounter.getAllocatedBytes();
+
+            measurements.startTime = System.nanoTime();
+
+            handle.invokeExact(this, paramN);
+        }
+        finally
+        {
+            // Take the test end memory and end time and calculate how long it took to run.
+            long endTime = System.nanoTime();
+            measurements.endTime = endTime;
+            /*log.debug("startTime = " + measurements.startTime + ", endTime = " + endTime +
+                ", testTime = " + getTestTime());*/
+
+            measurements.endMem = AllocationCounter.getAllocatedBytes();
+        }
+    }
+
+    /**
+     * Gets a method handle to call the test method for this test case. The handle takes the test case and the int
+     * parameter value, which is discarded if the test method is not parameterized. Handles are cached by class and
+     * test method name, so each test method is only looked up once.
+     *
+     * @return A method handle to call the test method.
+     *
+     * @throws IllegalAccessException If the test method is not accessible.
+     */
+    private MethodHandle getRunHandle() throws IllegalAccessException
+    {
         // Check that a test name has been set. This is used to define which method to run.
         assertNotNull(testCaseName);
         /*log.debug("testCaseName = " + testCaseName);*/
 
+        // Check if the method has already been looked up for this class.
+        ConcurrentMap<String, MethodHandle> classHandles = RUN_HANDLES.get(getClass());
+
+        if (classHandles == null)
+        {
+            classHandles = new ConcurrentHashMap<String, MethodHandle>();
+
+            ConcurrentMap<String, MethodHandle> existing = RUN_HANDLES.putIfAbsent(getClass(), classHandles);
+            classHandles = (existing != null) ? existing : classHandles;
+        }
+
+        MethodHandle handle = classHandles.get(testCaseName);
+
+        if (handle != null)
+        {
+            return handle;
+        }
+
         // Try to get the method with matching name.
         Method runMethod = null;
         boolean isParameterized = false;
@@ -231,50 +341,20 @@ public class AsymptoticTestCase extends TestCase implements InstrumentedTest
             fail("Method \"" + testCaseName + "\" should be public.");
         }
 
-        // Try to execute the method, passing it the current int parameter value. Allow any invocation exceptions or
-        // resulting exceptions from the method to fall through.
-        try
-        {
-            Integer paramN = getN();
-            /*log.debug("paramN = " + paramN);*/
-
-            // Calculate parameters for parameterized tests so new does not get called during memory measurement.
-            Object[] params = new Object[] { paramN };
+        // Convert the method into a handle that takes this class and an int, ignoring the int if the method is not
+        // parameterized, and discarding any return value.
+        handle = MethodHandles.lookup().unreflect(runMethod);
 
-            // Take the test start memory and start time.
-            threadLocalMeasurement.get().startMem = 0; // SizeOf.getUsedMemory();
-
-            threadLocalMeasurement.get().startTime = System.nanoTime();
-
-            if (isParameterized)
-            {
-                runMethod.invoke(this, params);
-            }
-            else
-            {
-                runMethod.invoke(this);
-            }
-        }
-        catch (InvocationTargetException e)
-        {
-            e.fillInStackTrace();
-            throw e.getTargetException();
-        }
-        catch (IllegalAccessException e)
+        if (!isParameterized)
         {
-            e.fillInStackTrace();
-            throw e;
+            handle = MethodHandles.dropArguments(handle, 1, int.class);
         }
-        finally
-        {
-            // Take the test end memory and end time and calculate how long it took to run.
-            long endTime = System.nanoTime();
-            threadLocalMeasurement.get().endTime = endTime;
-            /*log.debug("startTime = " + threadLocalMeasurement.get().startTime + ", endTime = " + endTime +
-                ", testTime = " + getTestTime());*/
 
-            threadLocalMeasurement.get().endMem = 0; // SizeOf.getUsedMemory();
-        }
+        handle = handle.asType(RUN_TYPE);
+
+        MethodHandle existing = classHandles.putIfAbsent(testCaseName, handle);
+
+        return (existing != null) ? existing : handle;
     }
 
     /**
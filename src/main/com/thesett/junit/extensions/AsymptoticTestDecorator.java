@@ -15,18 +15,27 @@
  */
 package com.thesett.junit.extensions;
 
+import java.util.Arrays;
+
 import junit.framework.TestResult;
 
+import com.thesett.junit.extensions.util.AdaptiveSequence;
+
 /**
  * A Decorator that runs a test repeatedly on an increasing int parameter, or for a fixed number of repeats. If both a
  * set of integer parameters and a repeat count are specified, then each test is run for the repeat count at each
  * integer parameter.
  *
+ * <p/>Instead of running through a fixed set of integer parameters, an adaptive sweep may be run within a time budget.
+ * The integer parameters are then used as a coarse initial grid, and the sweep is refined between neighbouring
+ * parameters where the time taken per unit of the parameter changes sharply, to locate points such as where a data
+ * structure outgrows a cache or is resized. See {@link AdaptiveSequence} for how the refinements are chosen.
+ *
  * <pre><p/><table id="crc"><caption>CRC Card</caption>
  * <tr><th> Responsibilities <th> Collaborations
  * <tr><td> Repeat a test for each of a set of integer parameters. <td> {@link TKTestResult}
  * <tr><td> Repeat a test multiple times.
- * <tr><td>
+ * <tr><td> Refine a sweep of integer parameters where the cost per unit changes sharply. <td> {@link AdaptiveSequence}
  * </table></pre>
  *
  * @author Rupert Smith
@@ -42,6 +51,12 @@ public class AsymptoticTestDecorator extends WrappedSuiteTestDecorator
     /** The number of times the whole test should be repeated. */
     private final int repeat;
 
+    /** The time budget for an adaptive sweep in milliseconds, or 0 to run through the parameters as given. */
+    private long adaptiveBudget;
+
+    /** The ratio of cost per unit between neighbouring parameters, above which an adaptive sweep refines them. */
+    private float adaptiveThreshold = AdaptiveSequence.DEFAULT_THRESHOLD;
+
     /**
      * Creates an asymptotic test decorator that wraps a test with repeats and a set of integer 'size' paramters to call
      * the test with.
@@ -107,6 +122,27 @@ public class AsymptoticTestDecorator extends WrappedSuiteTestDecorator
         this.repeat = repeat;
     }
 
+    /**
+     * Sets up an adaptive sweep, that uses the integer parameters as an initial grid, and refines between them where
+     * the time taken per unit of the parameter changes sharply, until the time budget runs out or no sharp changes
+     * remain to be refined. Each sweep picks its next parameter from its own timings, and sets it on the shared test
+     * result, so an adaptive sweep must only be run on a single test thread.
+     *
+     * @param budgetMillis The time budget for the whole sweep in milliseconds.
+     * @param threshold    The ratio of cost per unit between neighbouring parameters, above which they are refined
+     *                     between.
+     */
+    public void setAdaptiveSweep(long budgetMillis, float threshold)
+    {
+        if (budgetMillis < 1)
+        {
+            throw new IllegalArgumentException("The adaptive sweep budget must be >= 1.");
+        }
+
+        this.adaptiveBudget = budgetMillis;
+        this.adaptiveThreshold = threshold;
+    }
+
     /**
      * Runs the test repeatedly for each value of the int parameter specified and for the correct number of test
      * repeats.
@@ -129,6 +165,14 @@ public class AsymptoticTestDecorator extends WrappedSuiteTestDecorator
         /*log.debug("params = " + ((params == null) ? null : MathUtils.printArray(params)));
         log.debug("repeat = " + repeat);*/
 
+        // Run an adaptive sweep instead of the fixed parameters, if one has been set up.
+        if (adaptiveBudget > 0)
+        {
+            runAdaptiveSweep(tkResult);
+
+            return;
+        }
+
         for (int n : params)
         {
             for (int j = 0; j < repeat; j++)
@@ -151,6 +195,57 @@ public class AsymptoticTestDecorator extends WrappedSuiteTestDecorator
         }
     }
 
+    /**
+     * Runs an adaptive sweep. The test is run for the correct number of repeats at each parameter handed out by an
+     * adaptive sequence, and the median time per repeat divided by the parameter is recorded as the cost per unit,
+     * to decide where to refine the sweep.
+     *
+     * @param tkResult The test result object that the tests will indicate their results to.
+     */
+    private void runAdaptiveSweep(TKTestResult tkResult)
+    {
+        AdaptiveSequence sequence = new AdaptiveSequence(params, adaptiveThreshold);
+        long deadline = System.nanoTime() + (adaptiveBudget * 1000000L);
+        long[] times = new long[repeat];
+
+        for (int n = sequence.next(); n != -1; n = sequence.next())
+        {
+            /*log.debug("n = " + n);*/
+
+            // Set the integer parameter in the TKTestResult to be passed to the tests.
+            tkResult.setN(n);
+
+            // Time each repeat of the test at this parameter.
+            for (int j = 0; j < repeat; j++)
+            {
+                if (tkResult.shouldStop())
+                {
+                    /*log.debug("tkResult.shouldStop = " + true);*/
+
+                    return;
+                }
+
+                long start = System.nanoTime();
+                super.run(tkResult);
+                times[j] = System.nanoTime() - start;
+            }
+
+            // Record the median cost per unit at this parameter.
+            Arrays.sort(times);
+            sequence.record(n, times[repeat / 2] / (double) Math.max(n, 1));
+
+            // Stop once the time budget is used up.
+            if (System.nanoTime() >= deadline)
+            {
+                /*log.debug("Adaptive sweep budget used up.");*/
+
+                break;
+            }
+        }
+
+        /*log.debug("Adaptive sweep sizes = " + MathUtils.printArray(sequence.getSizes()));*/
+    }
+
     /**
      * Prints out the name of this test with the string "(parameterized)" appended onto it for debugging purposes.
      *
@@ -0,0 +1,324 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions;
+
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ThreadFactory;
+
+import junit.framework.TestCase;
+
+import com.thesett.junit.extensions.util.HarnessBaseline;
+
+/**
+ * BaselineCalibrator measures the overhead that the test harness adds to the timing of each test, by running empty
+ * tests through a {@link TKTestResult} and timing them. The overhead is measured at each concurrency level that the
+ * tests are to be run at, as contention between the test threads adds to it. At each concurrency level, that many
+ * threads, created by the same thread factory as the test threads, each run a warm-up pass of empty tests, the timings
+ * of which are discarded, and then a calibration pass of empty tests. The median timing is taken on each thread, and
+ * the baseline for the concurrency level is the median of the medians of the threads. Each concurrency level is run as
+ * a batch.
+ *
+ * <p/>The empty tests are run through the same path as the tests, and reported to listeners in the same way, so that
+ * the overhead includes the cost of reporting them, and the contention on doing so. The test result should therefore
+ * be a separate one from that of the tests, with the same listeners, but writing to a {@link DiscardingWriter} or a
+ * {@link DiscardingOutputStream}, so that the results of the empty tests are thrown away.
+ *
+ * <p/>A separate baseline is measured for instrumented tests, which time themselves from just around the invocation of
+ * the test method, and for uninstrumented tests, which are timed over the whole test run, including the set up, tear
+ * down and reflective invocation of the test.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities <th> Collaborations
+ * <tr><td> Time empty tests through a test result, at a range of concurrency levels. <td> {@link TKTestResult}
+ * <tr><td> Take the median timing of the empty tests as the harness baseline. <td> {@link HarnessBaseline}
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class BaselineCalibrator
+{
+    /** Used for logging. */
+    /*private static final Logger log = Logger.getLogger(BaselineCalibrator.class);*/
+
+    /** The default number of empty tests to run on each thread, for each of the warm-up and the calibration. */
+    public static final int DEFAULT_ITERATIONS = 10000;
+
+    /** The test result to run the empty tests through. */
+    private final TKTestResult testResult;
+
+    /** The thread factory to create the calibration threads with. */
+    private final ThreadFactory threadFactory;
+
+    /** The number of empty tests to run on each thread, for each of the warm-up and the calibration. */
+    private final int iterations;
+
+    /**
+     * Creates a calibrator that runs empty tests through the specified test result.
+     *
+     * @param testResult    The test result to run the empty tests through.
+     * @param threadFactory The thread factory to create the calibration threads with.
+     * @param iterations    The number of empty tests to run on each thread, for each of the warm-up and the
+     *                      calibration.
+     */
+    public BaselineCalibrator(TKTestResult testResult, ThreadFactory threadFactory, int iterations)
+    {
+        this.testResult = testResult;
+        this.threadFactory = threadFactory;
+        this.iterations = iterations;
+    }
+
+    /**
+     * Measures the harness baseline at each of the specified concurrency levels.
+     *
+     * @param  concurrencyLevels The concurrency levels to measure the baseline at.
+     *
+     * @return The harness baseline.
+     */
+    public HarnessBaseline calibrate(int[] concurrencyLevels)
+    {
+        HarnessBaseline baseline = new HarnessBaseline();
+
+        for (int concurrencyLevel : concurrencyLevels)
+        {
+            calibrate(baseline, concurrencyLevel, true);
+            calibrate(baseline, concurrencyLevel, false);
+        }
+
+        return baseline;
+    }
+
+    /**
+     * Measures the harness baseline at a single concurrency level, for either instrumented or uninstrumented tests.
+     *
+     * @param baseline         The baseline to record the measurement in.
+     * @param concurrencyLevel The number of threads to measure the baseline on.
+     * @param instrumented     <tt>true</tt> to measure the baseline for instrumented tests.
+     */
+    private void calibrate(HarnessBaseline baseline, int concurrencyLevel, final boolean instrumented)
+    {
+        final long[] medians = new long[concurrencyLevel];
+        final CyclicBarrier barrier = new CyclicBarrier(concurrencyLevel);
+        final CountDownLatch finished = new CountDownLatch(concurrencyLevel);
+
+        testResult.setConcurrencyLevel(concurrencyLevel);
+
+        // Start the calibration threads, which all run the warm-up and calibration passes together, so that they
+        // contend with each other in the same way that the tests will.
+        for (int i = 0; i < concurrencyLevel; i++)
+        {
+            final int threadNum = i;
+
+            Thread thread =
+                threadFactory.newThread(new Runnable()
+                    {
+                        public void run()
+                        {
+                            try
+                            {
+                                TestCase test =
+                                    instrumented ? new EmptyInstrumentedTest("testEmpty") : new EmptyTest("testEmpty");
+
+                                barrier.await();
+                                testResult.notifyStartBatch();
+                                medians[threadNum] = calibrateThread(test);
+                            }
+                            catch (Exception e)
+                            {
+                                // Ignored, this thread does not contribute to the baseline.
+                                e = null;
+                                medians[threadNum] = -1L;
+                            }
+                            finally
+                            {
+                                finished.countDown();
+                            }
+                        }
+                    });
+
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        // Wait for all of the calibration threads to complete.
+        try
+        {
+            finished.await();
+        }
+        catch (InterruptedException e)
+        {
+            // Restore the interrupted flag, and take the baseline from whatever has been measured.
+            Thread.currentThread().interrupt();
+        }
+
+        testResult.notifyEndBatch();
+
+        // Take the median of the medians measured on each thread.
+        long[] threadMedians = new long[concurrencyLevel];
+        int count = 0;
+
+        for (long median : medians)
+        {
+            if (median >= 0)
+            {
+                threadMedians[count++] = median;
+            }
+        }
+
+        if (count > 0)
+        {
+            long median = HarnessBaseline.median(threadMedians, count);
+            baseline.setBaseline(concurrencyLevel, instrumented, median);
+
+            /*log.debug("Baseline at " + concurrencyLevel + " threads, instrumented " + instrumented + " = " + median);*/
+        }
+    }
+
+    /**
+     * Runs the warm-up and calibration passes of an empty test on the calling thread.
+     *
+     * @param  test The empty test.
+     *
+     * @return The median timing of the empty test, or -1 if it did not record any timings.
+     */
+    private long calibrateThread(TestCase test)
+    {
+        // Run the warm-up pass, discarding its timings.
+        testResult.startCalibrating(iterations);
+
+        for (int i = 0; i < iterations; i++)
+        {
+            test.run(testResult);
+        }
+
+        testResult.stopCalibrating();
+
+        // Run the calibration pass.
+        testResult.startCalibrating(iterations);
+
+        for (int i = 0; i < iterations; i++)
+        {
+            test.run(testResult);
+        }
+
+        long[] samples = testResult.stopCalibrating();
+
+        return (samples.length > 0) ? HarnessBaseline.median(samples, samples.length) : -1L;
+    }
+
+    /**
+     * DiscardingWriter is a writer that throws away everything written to it, for the listeners of the test result that
+     * the empty tests are run through.
+     */
+    public static class DiscardingWriter extends Writer
+    {
+        /**
+         * Throws away the characters.
+         *
+         * @param cbuf The characters.
+         * @param off  The offset of the characters to write.
+         * @param len  The number of characters to write.
+         */
+        public void write(char[] cbuf, int off, int len)
+        {
+        }
+
+        /** Does nothing, as nothing is buffered. */
+        public void flush()
+        {
+        }
+
+        /** Does nothing, as there is nothing to release. */
+        public void close()
+        {
+        }
+    }
+
+    /**
+     * DiscardingOutputStream is an output stream that throws away everything written to it, for the listeners of the
+     * test result that the empty tests are run through.
+     */
+    public static class DiscardingOutputStream extends OutputStream
+    {
+        /**
+         * Throws away the byte.
+         *
+         * @param b The byte.
+         */
+        public void write(int b)
+        {
+        }
+
+        /**
+         * Throws away the bytes.
+         *
+         * @param b   The bytes.
+         * @param off The offset of the bytes to write.
+         * @param len The number of bytes to write.
+         */
+        public void write(byte[] b, int off, int len)
+        {
+        }
+    }
+
+    /**
+     * EmptyTest is an uninstrumented test with an empty test method.
+     */
+    public static class EmptyTest extends TestCase
+    {
+        /**
+         * Creates a named empty test.
+         *
+         * @param name The test name.
+         */
+        public EmptyTest(String name)
+        {
+            super(name);
+        }
+
+        /** Does nothing. */
+        public void testEmpty()
+        {
+        }
+    }
+
+    /**
+     * EmptyInstrumentedTest is an instrumented test with an empty test method.
+     */
+    public static class EmptyInstrumentedTest extends AsymptoticTestCase
+    {
+        /**
+         * Creates a named empty instrumented test.
+         *
+         * @param name The test name.
+         */
+        public EmptyInstrumentedTest(String name)
+        {
+            super(name);
+        }
+
+        /**
+         * Does nothing.
+         *
+         * @param n The size of the test. Ignored.
+         */
+        public void testEmpty(int n)
+        {
+        }
+    }
+}
@@ -28,9 +28,20 @@ import com.thesett.common.util.concurrent.ShutdownHookable;
 /**
  * A test decorator that runs a test repeatedly until a specified length of time has passed.
  *
+ * <p/>Optionally, a warm-up may be run before the timed duration, for either a length of time or a number of test
+ * runs. The test is run in full during the warm-up, but its results are discarded, so that the measured results are
+ * not dominated by class loading, JIT compilation and cold caches. The warm-up is checked between test runs only, so
+ * tests that do not return until interrupted should use a warm-up by number of test runs. When running under a
+ * {@link ScaledTestDecorator}, the warm-up is run by every test thread at the start of each concurrency level, so it
+ * runs at the same load as the timed duration.
+ *
+ * <p/>When the test result is detecting steady state, see {@link TKTestResult#setSteadyStateDetector}, the warm-up ends
+ * as soon as steady state is reached, and the warm-up length of time or number of test runs is only a limit on it.
+ *
  * <pre><p/><table id="crc"><caption>CRC Card</caption>
  * <tr><th> Responsibilities <th> Collaborations
  * <tr><td> Repeatedly run a test for a fixed length of time.
+ * <tr><td> Run a warm-up before the timed duration, discarding its results. <td> {@link TKTestResult}
  * </table></pre>
  *
  * @author Rupert Smith
@@ -52,7 +63,13 @@ public class DurationTestDecorator extends WrappedSuiteTestDecorator implements
     private long duration;
 
     /** Flag set by the shutdown hook. This decorator will not start any new tests when this is set. */
-    private boolean shutdown;
+    private volatile boolean shutdown;
+
+    /** The length of time to warm up for in milliseconds, or zero for no timed warm-up. */
+    private long warmupDuration;
+
+    /** The number of times to run the test to warm up, or zero for no counted warm-up. */
+    private int warmupIterations;
 
     /**
      * Creates an active test with default multiplier (1).
@@ -98,6 +115,12 @@ public class DurationTestDecorator extends WrappedSuiteTestDecorator implements
             tkTestResult = (TKTestResult) testResult;
         }
 
+        // Run the warm-up, if one has been set, before starting the timed duration.
+        if ((warmupDuration > 0) || (warmupIterations > 0))
+        {
+            warmup(testResult, tkTestResult);
+        }
+
         // Work out when the test should end.
         long now = System.nanoTime();
         long end = (duration * 1000000) + now;
@@ -105,13 +128,15 @@ public class DurationTestDecorator extends WrappedSuiteTestDecorator implements
         // If running under the TKTestRunner, set up a timer to notify the test framework when the test reaches its
         // completion time.
         Timer durationTimer = null;
+        DurationTimerTask durationTimerTask = null;
 
         if (tkTestResult != null)
         {
             /*log.debug("Creating duration timer.");*/
 
             durationTimer = new Timer();
-            durationTimer.schedule(new DurationTimerTask((TKTestResult) testResult), duration);
+            durationTimerTask = new DurationTimerTask((TKTestResult) testResult);
+            durationTimer.schedule(durationTimerTask, duration);
         }
 
         // Run the test until the duration times out or the shutdown flag is set. The test method may not exit until
@@ -128,10 +153,33 @@ public class DurationTestDecorator extends WrappedSuiteTestDecorator implements
         {
             /*log.debug("Cancelling duration timer.");*/
 
+            durationTimerTask.complete();
             durationTimer.cancel();
         }
     }
 
+    /**
+     * Sets a length of time to warm up for, before the timed duration. The results of tests run during the warm-up
+     * are discarded.
+     *
+     * @param warmupDuration The length of time to warm up for in milliseconds, or zero for no timed warm-up.
+     */
+    public void setWarmupDuration(long warmupDuration)
+    {
+        this.warmupDuration = warmupDuration;
+    }
+
+    /**
+     * Sets a number of times to run the test to warm up, before the timed duration. The results of tests run during
+     * the warm-up are discarded.
+     *
+     * @param warmupIterations The number of times to run the test to warm up, or zero for no counted warm-up.
+     */
+    public void setWarmupIterations(int warmupIterations)
+    {
+        this.warmupIterations = warmupIterations;
+    }
+
     /**
      * Supplies the shutdown hook. This shutdown hook does not call {@link TKTestResult#shutdownNow()} because the
      * {@link ScaledTestDecorator} already takes care of that.
@@ -152,6 +200,74 @@ public class DurationTestDecorator extends WrappedSuiteTestDecorator implements
             });
     }
 
+    /**
+     * Runs the test repeatedly to warm up, for either the warm-up length of time or the warm-up number of test runs,
+     * discarding the results. When not running under the TKTestRunner, the results are discarded by running the test
+     * against a throw-away test result. When running under the TKTestRunner, each test thread waits at the end of its
+     * warm-up for the others, so that the measured part of the batch starts once all of them have warmed up.
+     *
+     * @param testResult   The results object to monitor the test results with.
+     * @param tkTestResult The results object exposed as a TKTestResult, or <tt>null</tt> if it is not one.
+     */
+    private void warmup(TestResult testResult, TKTestResult tkTestResult)
+    {
+        /*log.debug("private void warmup(TestResult testResult, TKTestResult tkTestResult): called");*/
+
+        TestResult warmupResult = (tkTestResult != null) ? testResult : new TestResult();
+
+        // Tell the test result to discard the results of tests run on this thread.
+        if (tkTestResult != null)
+        {
+            tkTestResult.setWarmingUp(true);
+        }
+
+        try
+        {
+            // Warm up for a number of test runs, or until the warm-up time is up, or until steady state is reached.
+            if (warmupIterations > 0)
+            {
+                for (int i = 0; (i < warmupIterations) && !shutdown && !isSteadyState(tkTestResult); i++)
+                {
+                    test.run(warmupResult);
+                }
+            }
+            else
+            {
+                long now = System.nanoTime();
+                long end = (warmupDuration * 1000000) + now;
+
+                while ((now < end) && !shutdown && !isSteadyState(tkTestResult))
+                {
+                    test.run(warmupResult);
+
+                    now = System.nanoTime();
+                }
+            }
+        }
+        finally
+        {
+            // Wait for all of the test threads to end their warm-ups, so that the batch is measured from the same
+            // point on all of them.
+            if (tkTestResult != null)
+            {
+                tkTestResult.setWarmingUp(false);
+                tkTestResult.notifyEndWarmup();
+            }
+        }
+    }
+
+    /**
+     * Checks if the test result has detected steady state, in which case warming up can end.
+     *
+     * @param  tkTestResult The results object exposed as a TKTestResult, or <tt>null</tt> if it is not one.
+     *
+     * @return <tt>true</tt> if the test result has detected steady state.
+     */
+    private boolean isSteadyState(TKTestResult tkTestResult)
+    {
+        return (tkTestResult != null) && tkTestResult.isSteadyState();
+    }
+
     /**
      * DurationTimerTask is a timer task that is configured, upon expiry of its timer, to invoke
      * {@link TKTestResult#shutdownNow()}, for the test result object on which it is set. It also sets the
@@ -169,6 +285,9 @@ public class DurationTestDecorator extends WrappedSuiteTestDecorator implements
         /** Holds the test result for the test to which a duration limit is being applied. */
         final TKTestResult testResult;
 
+        /** Set once the test loop has finished, after which the expiry of the timer is ignored. */
+        private boolean completed;
+
         /**
          * Creates a duration limit timer which will notify the specified test result when the duration has expired.
          *
@@ -179,13 +298,28 @@ public class DurationTestDecorator extends WrappedSuiteTestDecorator implements
             this.testResult = testResult;
         }
 
-        /** The action to be performed by this timer task. */
-        public void run()
+        /**
+         * The action to be performed by this timer task. Nothing is done if the test loop has already finished, as the
+         * timer can expire just after the loop has run out its duration but before it has cancelled the timer, and
+         * shutting down then would stop the next batch of tests from running.
+         */
+        public synchronized void run()
         {
             log.debug("public void run(): called");
 
+            if (completed)
+            {
+                return;
+            }
+
             shutdown = true;
             testResult.shutdownNow();
         }
+
+        /** Notifies this timer task that the test loop has finished, so that it will not shut down the tests. */
+        public synchronized void complete()
+        {
+            completed = true;
+        }
     }
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import com.thesett.junit.extensions.util.Complexity;
+
+/**
+ * ExpectedComplexity declares the complexity class that a parameterized test method of an {@link AsymptoticTestCase}
+ * is expected to have, with respect to its size parameter. When the test timings are being fitted against complexity
+ * classes, a test fails if the complexity class that best fits its timings grows faster than the expected one.
+ *
+ * <pre>
+ * &#64;ExpectedComplexity(Complexity.N_LOG_N)
+ * public void testSortPerformance(int n)
+ * </pre>
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities <th> Collaborations
+ * <tr><td> Declare the expected complexity class of a test method. <td> {@link Complexity}
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface ExpectedComplexity
+{
+    /**
+     * The expected complexity class of the test method.
+     *
+     * @return The expected complexity class of the test method.
+     */
+    Complexity value();
+}
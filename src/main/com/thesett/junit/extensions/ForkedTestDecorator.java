@@ -0,0 +1,514 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.AssertionFailedError;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestResult;
+
+import com.thesett.junit.extensions.listeners.BinaryResultReader;
+import com.thesett.junit.extensions.listeners.BinaryTestListener;
+import com.thesett.junit.extensions.listeners.TestOutcome;
+
+/**
+ * ForkedTestDecorator runs the tests of a suite in child JVMs, instead of in the JVM running the suite. Either one
+ * child JVM is launched for the whole test class, or one is launched for each test method, so that the tests are
+ * isolated from each others JIT compilation, heap state and class initialization. The child JVMs are launched one after
+ * the other, with the same class path as this JVM, and may be given their own JVM flags.
+ *
+ * <p/>Each child JVM runs a {@link TKTestRunner}, in forked mode, with the same test configuration as the runner that
+ * launched it. The child connects back to a loopback port that this decorator listens on, and writes its test results,
+ * in the compact binary format of {@link BinaryTestListener}, over that connection, which is read here as the child
+ * runs. The standard output and error of the child are left on those of this JVM, so that any logging that the child
+ * JVM writes to them does not get mixed up with the test results. Each result is passed on to the
+ * {@link TKTestResult}, which informs its listeners of it as if the test had been run in this JVM, so that the results
+ * of all of the child JVMs are merged into the usual CSV or XML results.
+ *
+ * <p/>The outcome, timing, memory use, size and concurrency level of each test, the class name and message of any
+ * failure or error, the optional per test measurements, and the start and end of each batch, are passed back from the
+ * child JVMs. The results are recorded here as if the tests had been run in this JVM, so histograms, complexity fits
+ * and cell statistics are all worked out here, from the results of the children. Stack traces stay in the child, as do
+ * the batch level summaries that can only be measured there, such as garbage collection pauses. When a child JVM is
+ * launched for each test method, the batches of the children are merged into a single batch over all of the methods.
+ *
+ * <p/>This decorator runs the tests of the suite in other JVMs itself, so it should be applied directly to the suite,
+ * and all other decorators are applied in the child JVMs instead.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities <th> Collaborations
+ * <tr><td> Launch a child JVM per test class or per test method. <td> {@link TKTestRunner}
+ * <tr><td> Read back test results streamed from the child JVMs. <td> {@link BinaryResultReader}
+ * <tr><td> Merge the results of the child JVMs into the test result. <td> {@link TKTestResult}
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class ForkedTestDecorator extends WrappedSuiteTestDecorator
+{
+    /** Used for logging. */
+    /*private static final Logger log = Logger.getLogger(ForkedTestDecorator.class);*/
+
+    /** The time to wait for a child JVM to connect back, between checks that it is still running, in milliseconds. */
+    private static final int ACCEPT_POLL_MILLIS = 500;
+
+    /** The flags to launch the child JVMs with. */
+    private final List<String> jvmFlags;
+
+    /** The test runner arguments to pass to the child JVMs. */
+    private final List<String> runnerArguments;
+
+    /** Flag that indicates that a child JVM should be launched for each test method, rather than for the class. */
+    private final boolean perMethod;
+
+    /** Holds the underlying tests of the suite, by class and method name, to match up the results of the children. */
+    private final Map<String, Test> testsByName = new HashMap<String, Test>();
+
+    /** Holds the names of the test methods of the suite, in the order in which they are run. */
+    private final Set<String> methodNames = new LinkedHashSet<String>();
+
+    /**
+     * Creates a forked test decorator, that runs the tests of the suite in child JVMs.
+     *
+     * @param test            The test to decorate.
+     * @param jvmFlags        The flags to launch the child JVMs with.
+     * @param runnerArguments The test runner arguments to pass to the child JVMs.
+     * @param perMethod       <tt>true</tt> to launch a child JVM for each test method, <tt>false</tt> to launch one
+     *                        for the whole test class.
+     */
+    public ForkedTestDecorator(WrappedSuiteTestDecorator test, List<String> jvmFlags, List<String> runnerArguments,
+        boolean perMethod)
+    {
+        super(test);
+
+        /*log.debug("public ForkedTestDecorator(WrappedSuiteTestDecorator test, List<String> jvmFlags = " + jvmFlags +
+            ", List<String> runnerArguments = " + runnerArguments + ", boolean perMethod = " + perMethod +
+            "): called");*/
+
+        this.jvmFlags = jvmFlags;
+        this.runnerArguments = runnerArguments;
+        this.perMethod = perMethod;
+
+        // Index the tests by name, and collect the distinct test method names.
+        for (Test nextTest : getAllUnderlyingTests())
+        {
+            String methodName = (nextTest instanceof TestCase) ? ((TestCase) nextTest).getName() : "";
+
+            testsByName.put(nextTest.getClass().getName() + "." + methodName, nextTest);
+            methodNames.add(methodName);
+        }
+    }
+
+    /**
+     * Launches the child JVMs one after the other, passing on the test results that each streams back to the test
+     * result.
+     *
+     * @param result The test result object that the tests will indicate their results to.
+     */
+    public void run(TestResult result)
+    {
+        /*log.debug("public void run(TestResult result): called");*/
+
+        if (!(result instanceof TKTestResult))
+        {
+            throw new IllegalArgumentException("ForkedTestDecorator only works with TKTestResult");
+        }
+
+        TKTestResult tkResult = (TKTestResult) result;
+
+        if (!perMethod)
+        {
+            runForked(tkResult, null);
+
+            return;
+        }
+
+        // Run all of the test methods as a single batch, rather than as a batch per child JVM.
+        tkResult.notifyStartBatch();
+
+        for (String methodName : methodNames)
+        {
+            if (tkResult.shouldStop())
+            {
+                break;
+            }
+
+            runForked(tkResult, methodName);
+        }
+
+        tkResult.notifyEndBatch();
+    }
+
+    /**
+     * Prints out the name of this test with the string "(forked)" appended onto it for debugging purposes.
+     *
+     * @return The name of this test with the string "(forked)" appended onto it.
+     */
+    public String toString()
+    {
+        return super.toString() + "(forked)";
+    }
+
+    /**
+     * Launches a child JVM to run the test class, or a single test method of it, and passes on the test results that it
+     * streams back to the test result, until it completes.
+     *
+     * @param tkResult   The test result to pass the test results on to.
+     * @param methodName The name of the test method to run, or <tt>null</tt> to run the whole test class.
+     */
+    private void runForked(final TKTestResult tkResult, String methodName)
+    {
+        // Listen on a loopback port for the child to connect back to, to write its results to.
+        ServerSocket server;
+
+        try
+        {
+            server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Unable to listen for the results of a forked JVM: " + e, e);
+        }
+
+        // Build the command to launch the child JVM with, on the same class path as this one.
+        List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(jvmFlags);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(TKTestRunner.class.getName());
+        command.add("--child");
+        command.add(Integer.toString(server.getLocalPort()));
+
+        if (methodName != null)
+        {
+            command.add("--method");
+            command.add(methodName);
+        }
+
+        command.addAll(runnerArguments);
+
+        /*log.debug("command = " + command);*/
+
+        // Launch the child, leaving its standard output and error on this JVMs, as the JVM may log to them.
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.inheritIO();
+
+        Process process;
+
+        try
+        {
+            process = builder.start();
+        }
+        catch (IOException e)
+        {
+            closeQuietly(server);
+            throw new IllegalStateException("Unable to launch a forked JVM: " + e, e);
+        }
+
+        Socket socket = null;
+
+        try
+        {
+            socket = acceptChild(server, process);
+
+            new BinaryResultReader().read(socket.getInputStream(), new BinaryResultReader.EntryHandler()
+                {
+                    /** Holds the failure or error of the next test result, or null if it has none. */
+                    private Throwable failure;
+
+                    /** Holds the suspended time of the next test result, or -1 if it was not measured. */
+                    private long suspendedNanos = -1L;
+
+                    /** Holds the uncorrected time of the next test result, or -1 if it was not measured. */
+                    private long uncorrectedNanos = -1L;
+
+                    /** Holds the raw time of the next test result, or -1 if it was not measured. */
+                    private long rawNanos = -1L;
+
+                    /** Holds the garbage collections of the next test result, or -1 if they were not counted. */
+                    private long collections = -1L;
+
+                    /** Holds the core of the next test result, or -1 if it was not recorded. */
+                    private int core = -1;
+
+                    public void failure(String className, String methodName, short outcome, String failureClass,
+                        String message)
+                    {
+                        failure = toFailure(outcome, failureClass, message);
+                    }
+
+                    public void measurements(String className, String methodName, long suspendedNanos,
+                        long uncorrectedNanos, long rawNanos, long collections, int core)
+                    {
+                        this.suspendedNanos = suspendedNanos;
+                        this.uncorrectedNanos = uncorrectedNanos;
+                        this.rawNanos = rawNanos;
+                        this.collections = collections;
+                        this.core = core;
+                    }
+
+                    public void result(String className, String methodName, short outcome, long timestamp,
+                        long threadId, long nanos, long bytes, int n, int concurrency)
+                    {
+                        Test test = testsByName.get(className + "." + methodName);
+
+                        if (test == null)
+                        {
+                            throw new IllegalStateException("A forked JVM ran an unknown test, " + className + "." +
+                                methodName + ".");
+                        }
+
+                        tkResult.notifyForkedResult(test, toTestOutcome(outcome), failure, nanos, bytes, n,
+                            concurrency, suspendedNanos, uncorrectedNanos, rawNanos, collections, core);
+
+                        // Clear down the failure and measurements, which only apply to the result they came before.
+                        failure = null;
+                        suspendedNanos = -1L;
+                        uncorrectedNanos = -1L;
+                        rawNanos = -1L;
+                        collections = -1L;
+                        core = -1;
+                    }
+
+                    public void batchStart(long timestamp)
+                    {
+                        if (!perMethod)
+                        {
+                            tkResult.notifyStartBatch();
+                        }
+                    }
+
+                    public void batchEnd(long timestamp)
+                    {
+                        if (!perMethod)
+                        {
+                            tkResult.notifyEndBatch();
+                        }
+                    }
+                });
+        }
+        catch (IOException e)
+        {
+            process.destroy();
+            throw new IllegalStateException("Unable to read the test results of a forked JVM: " + e, e);
+        }
+        finally
+        {
+            closeQuietly(socket);
+            closeQuietly(server);
+        }
+
+        // Wait for the child to exit, and check that it ran the tests, whether or not they all passed.
+        int exitCode;
+
+        try
+        {
+            exitCode = process.waitFor();
+        }
+        catch (InterruptedException e)
+        {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted whilst waiting for a forked JVM to complete.", e);
+        }
+
+        if ((exitCode != TKTestRunner.SUCCESS_EXIT) && (exitCode != TKTestRunner.FAILURE_EXIT))
+        {
+            throw new IllegalStateException("A forked JVM exited abnormally, with exit code " + exitCode + ".");
+        }
+    }
+
+    /**
+     * Waits for a child JVM to connect back to read its results from. The child is checked on periodically, so that
+     * this does not wait forever on a child that has exited without connecting.
+     *
+     * @param  server  The server socket that the child connects to.
+     * @param  process The child JVM.
+     *
+     * @return The connection from the child.
+     *
+     * @throws IOException If the connection cannot be accepted, or the child exits without connecting.
+     */
+    private static Socket acceptChild(ServerSocket server, Process process) throws IOException
+    {
+        server.setSoTimeout(ACCEPT_POLL_MILLIS);
+
+        while (true)
+        {
+            try
+            {
+                return server.accept();
+            }
+            catch (SocketTimeoutException e)
+            {
+                // The child has not connected yet, check that it is still running.
+                e = null;
+            }
+
+            int exitCode;
+
+            try
+            {
+                exitCode = process.exitValue();
+            }
+            catch (IllegalThreadStateException e)
+            {
+                // The child is still running, so keep waiting for it. Exception noted and ignored.
+                e = null;
+
+                continue;
+            }
+
+            throw new IOException("The forked JVM exited, with exit code " + exitCode + ", without connecting back.");
+        }
+    }
+
+    /**
+     * Closes a socket or server socket, ignoring any error, as nothing more is to be read from it.
+     *
+     * @param closeable The socket to close, may be <tt>null</tt>.
+     */
+    private static void closeQuietly(Closeable closeable)
+    {
+        if (closeable == null)
+        {
+            return;
+        }
+
+        try
+        {
+            closeable.close();
+        }
+        catch (IOException e)
+        {
+            // Nothing more can be read from the child anyway. Exception noted and ignored.
+            e = null;
+        }
+    }
+
+    /**
+     * Rebuilds the failure or error that a test raised in a child JVM, from its class name and message. Failures are
+     * rebuilt as assertion failures, so that they are still reported as failures, and errors as
+     * {@link ForkedTestError}s. Neither has a stack trace, as that is only available in the child.
+     *
+     * @param  outcome      The binary test outcome.
+     * @param  failureClass The class name of the failure or error.
+     * @param  message      The message of the failure or error.
+     *
+     * @return The rebuilt failure or error.
+     */
+    private static Throwable toFailure(short outcome, String failureClass, String message)
+    {
+        Throwable failure;
+
+        if (outcome == BinaryTestListener.FAILURE)
+        {
+            // Keep the class name in the message of any failures that were not plain assertion failures.
+            boolean plain = AssertionFailedError.class.getName().equals(failureClass);
+            failure = new AssertionFailedError(plain ? message : (failureClass + ": " + message));
+        }
+        else
+        {
+            failure = new ForkedTestError(failureClass, message);
+        }
+
+        failure.setStackTrace(new StackTraceElement[0]);
+
+        return failure;
+    }
+
+    /**
+     * Converts a test outcome, as written in binary test results, to a test outcome.
+     *
+     * @param  outcome The binary test outcome.
+     *
+     * @return The test outcome.
+     */
+    private static TestOutcome toTestOutcome(short outcome)
+    {
+        switch (outcome)
+        {
+        case BinaryTestListener.FAILURE:
+            return TestOutcome.FAILURE;
+
+        case BinaryTestListener.ERROR:
+            return TestOutcome.ERROR;
+
+        default:
+            return TestOutcome.PASS;
+        }
+    }
+
+    /**
+     * ForkedTestError stands in for an error raised by a test in a child JVM. It describes itself by the class name
+     * and message of the original error.
+     */
+    public static class ForkedTestError extends Exception
+    {
+        /** The serialization version. */
+        private static final long serialVersionUID = 1L;
+
+        /** Holds the class name of the original error. */
+        private final String errorClass;
+
+        /**
+         * Creates a stand in for an error raised in a child JVM.
+         *
+         * @param errorClass The class name of the original error.
+         * @param message    The message of the original error.
+         */
+        public ForkedTestError(String errorClass, String message)
+        {
+            super(message);
+            this.errorClass = errorClass;
+        }
+
+        /**
+         * Provides the class name of the original error.
+         *
+         * @return The class name of the original error.
+         */
+        public String getErrorClass()
+        {
+            return errorClass;
+        }
+
+        /**
+         * Describes the error by the class name and message of the original error.
+         *
+         * @return The class name and message of the original error.
+         */
+        public String toString()
+        {
+            return errorClass + ": " + getMessage();
+        }
+    }
+}
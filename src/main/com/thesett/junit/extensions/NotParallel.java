@@ -0,0 +1,46 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * NotParallel opts a test method, or all of the test methods of a test class, out of being run in parallel with the
+ * other test methods of a suite by a {@link ParallelSuiteTestDecorator}. Test methods that are opted out are run one
+ * after the other on the thread running the suite, once the parallel test methods have completed. Tests that share
+ * state between their test methods, or that measure something that would be disturbed by other tests running at the
+ * same time, should be opted out.
+ *
+ * <pre>
+ * &#64;NotParallel
+ * public void testCacheMissLatency(int n)
+ * </pre>
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities <th> Collaborations
+ * <tr><td> Opt test methods out of being run in parallel. <td> {@link ParallelSuiteTestDecorator}
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+public @interface NotParallel
+{
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestResult;
+
+/**
+ * ParallelSuiteTestDecorator runs the test methods of a suite in parallel, spread over the threads of a fork-join
+ * pool, instead of one after the other on the thread running the suite. A suite of many independent tests then takes
+ * roughly the time of the longest running share of them, rather than the sum of all of their times.
+ *
+ * <p/>Each test method is run as a separate task on the pool, so the thread local state that the {@link TKTestResult}
+ * keeps for a test, its start time, timing controller and so on, is kept separately for each test method by the pool
+ * thread running it. Whether or not the thread running the suite is warming up is passed on to each task, so that the
+ * results of test methods run in parallel during a warm-up are discarded as usual.
+ *
+ * <p/>Test methods that must not be run at the same time as other tests can be opted out with the {@link NotParallel}
+ * annotation, on the test method or on its test class. Tests that are {@link TestThreadAware} are always opted out,
+ * as they expect to be run on the thread that their per-thread setup was called on. Opted out test methods are run one
+ * after the other on the thread running the suite, once all of the parallel test methods have completed.
+ *
+ * <p/>The threads of the pool are the only source of concurrency for the parallel test methods, so the concurrency
+ * level is reported as the parallelism of the pool. They should not also be run on more than one test thread. The pool
+ * is kept for as long as the decorator is used, and should be shut down once it is no longer needed.
+ *
+ * <p/>This decorator runs the underlying tests of the suite directly, so it should be applied directly to the suite,
+ * underneath any other decorators.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities <th> Collaborations
+ * <tr><td> Run the test methods of a suite in parallel. <td> {@link ForkJoinPool}
+ * <tr><td> Run test methods that are opted out of parallel running sequentially. <td> {@link NotParallel}
+ * <tr><td> Pass on the warm-up state of the suite thread to each test method. <td> {@link TKTestResult}
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class ParallelSuiteTestDecorator extends WrappedSuiteTestDecorator
+{
+    /** Used for logging. */
+    /*private static final Logger log = Logger.getLogger(ParallelSuiteTestDecorator.class);*/
+
+    /** Holds the pool that the parallel test methods are run on. */
+    private final ForkJoinPool pool;
+
+    /** Holds the underlying tests of the suite that may be run in parallel. */
+    private final Collection<Test> parallelTests = new ArrayList<Test>();
+
+    /** Holds the underlying tests of the suite that are opted out of being run in parallel. */
+    private final Collection<Test> sequentialTests = new ArrayList<Test>();
+
+    /**
+     * Creates a parallel suite test decorator, that runs the test methods of the suite on the specified number of
+     * threads.
+     *
+     * @param test        The test to decorate.
+     * @param parallelism The number of threads to run the test methods on.
+     */
+    public ParallelSuiteTestDecorator(WrappedSuiteTestDecorator test, int parallelism)
+    {
+        super(test);
+
+        /*log.debug("public ParallelSuiteTestDecorator(WrappedSuiteTestDecorator test, int parallelism = " +
+            parallelism + "): called");*/
+
+        if (parallelism < 1)
+        {
+            throw new IllegalArgumentException("The parallelism must be >= 1.");
+        }
+
+        this.pool = new ForkJoinPool(parallelism);
+
+        // Split the tests into those that may be run in parallel, and those that are opted out.
+        for (Test nextTest : getAllUnderlyingTests())
+        {
+            if (isParallel(nextTest))
+            {
+                parallelTests.add(nextTest);
+            }
+            else
+            {
+                sequentialTests.add(nextTest);
+            }
+        }
+    }
+
+    /**
+     * Runs the parallel test methods of the suite on the pool, waits for them all to complete, then runs the opted out
+     * test methods one after the other.
+     *
+     * @param result The test result object that the tests will indicate their results to.
+     */
+    public void run(TestResult result)
+    {
+        /*log.debug("public void run(TestResult result): called");*/
+
+        if (!(result instanceof TKTestResult))
+        {
+            throw new IllegalArgumentException("ParallelSuiteTestDecorator only works with TKTestResult");
+        }
+
+        final TKTestResult tkResult = (TKTestResult) result;
+
+        // Report the concurrency level as the number of threads that the test methods are run on.
+        tkResult.setConcurrencyLevel(pool.getParallelism());
+
+        // Pass on the warm-up state of the thread running the suite to the tests run on the pool.
+        final boolean warmingUp = tkResult.isWarmingUp();
+
+        // Create a task for each parallel test method, and run them all on the pool.
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+
+        for (final Test test : parallelTests)
+        {
+            tasks.add(new Callable<Void>()
+                {
+                    public Void call()
+                    {
+                        if (!tkResult.shouldStop())
+                        {
+                            tkResult.setWarmingUp(warmingUp);
+                            test.run(tkResult);
+                        }
+
+                        return null;
+                    }
+                });
+        }
+
+        pool.invokeAll(tasks);
+
+        // Run the opted out test methods on this thread.
+        for (Test test : sequentialTests)
+        {
+            if (tkResult.shouldStop())
+            {
+                break;
+            }
+
+            test.run(tkResult);
+        }
+    }
+
+    /** Shuts down the pool that the parallel test methods are run on, once they are no longer to be run. */
+    public void shutdown()
+    {
+        pool.shutdown();
+    }
+
+    /**
+     * Prints out the name of this test with the string "(parallel)" appended onto it for debugging purposes.
+     *
+     * @return The name of this test with the string "(parallel)" appended onto it.
+     */
+    public String toString()
+    {
+        return super.toString() + "(parallel)";
+    }
+
+    /**
+     * Checks if a test may be run in parallel with the other tests of the suite. Tests may not be if they are thread
+     * aware, or if their test method or test class is annotated as {@link NotParallel}.
+     *
+     * @param  test The test to check.
+     *
+     * @return <tt>true</tt> if the test may be run in parallel.
+     */
+    private static boolean isParallel(Test test)
+    {
+        if ((test instanceof TestThreadAware) || test.getClass().isAnnotationPresent(NotParallel.class))
+        {
+            return false;
+        }
+
+        if (!(test instanceof TestCase))
+        {
+            return true;
+        }
+
+        // Look up the test method, which may be parameterized, to check for the annotation on it.
+        String testName = ((TestCase) test).getName();
+
+        for (Method method : test.getClass().getMethods())
+        {
+            if (method.getName().equals(testName) && method.isAnnotationPresent(NotParallel.class))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+import junit.framework.Test;
+import junit.framework.TestResult;
+
+import com.thesett.junit.extensions.util.RateBudget;
+
+/**
+ * RateLimitedTestDecorator runs the tests in a suite at a fixed aggregate rate, shared between all of the threads
+ * running the suite under a {@link ScaledTestDecorator}. Each test is started at the next time on a fixed schedule,
+ * from a {@link RateBudget} shared between all of the threads, rather than each thread being throttled on its own.
+ * This allows fixed throughput latency tests to be run, instead of only running the tests as fast as they will go.
+ *
+ * <p/>As the schedule does not depend on when tests complete, the tests are driven open-loop. When the tests fall
+ * behind the schedule, the following tests start late. The scheduled start times are passed to the
+ * {@link TKTestResult}, which times the tests from their scheduled start times, so that the delay is included in the
+ * test timings. The rate of completed tests achieved over each batch is reported along with the target rate at the end
+ * of the batch.
+ *
+ * <p/>This decorator runs the underlying tests of the suite directly, so it should be applied directly to the suite,
+ * underneath any other decorators.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities <th> Collaborations
+ * <tr><td> Start tests at a fixed aggregate rate, shared between test threads. <td> {@link RateBudget}
+ * <tr><td> Pass the scheduled start times of tests to the test result. <td> {@link TKTestResult}
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class RateLimitedTestDecorator extends WrappedSuiteTestDecorator
+{
+    /** Used for logging. */
+    /*private static final Logger log = Logger.getLogger(RateLimitedTestDecorator.class);*/
+
+    /** Holds the rate budget shared between all threads running the tests. */
+    private final RateBudget budget;
+
+    /** Holds the underlying tests of the suite. */
+    private final Collection<Test> tests = new ArrayList<Test>();
+
+    /**
+     * Creates a rate limited test decorator, that runs the tests at the specified aggregate rate.
+     *
+     * @param test The test to decorate.
+     * @param rate The aggregate rate to run tests at, in tests per second.
+     */
+    public RateLimitedTestDecorator(WrappedSuiteTestDecorator test, float rate)
+    {
+        super(test);
+
+        /*log.debug("public RateLimitedTestDecorator(WrappedSuiteTestDecorator test, float rate = " + rate +
+            "): called");*/
+
+        this.budget = new RateBudget(rate);
+
+        for (Test nextTest : getAllUnderlyingTests())
+        {
+            tests.add(nextTest);
+        }
+    }
+
+    /**
+     * Runs each of the underlying tests in the suite, waiting for its scheduled start time from the shared rate budget
+     * before starting it.
+     *
+     * @param result The test result object that the tests will indicate their results to.
+     */
+    public void run(TestResult result)
+    {
+        /*log.debug("public void run(TestResult result): called");*/
+
+        if (!(result instanceof TKTestResult))
+        {
+            throw new IllegalArgumentException("RateLimitedTestDecorator only works with TKTestResult");
+        }
+
+        TKTestResult tkResult = (TKTestResult) result;
+
+        // Register the rate budget with the test result, so that the achieved rate is reported at the end of the batch.
+        tkResult.setRateBudget(budget);
+
+        for (Test test : tests)
+        {
+            if (tkResult.shouldStop())
+            {
+                break;
+            }
+
+            // Wait for the scheduled start time of the test, and pass it to the test result to time the test from.
+            try
+            {
+                tkResult.setScheduledStartTime(budget.acquire());
+            }
+            catch (InterruptedException e)
+            {
+                // Restore the interrupted state of the thread, and stop running tests. Exception noted and ignored.
+                e = null;
+                Thread.currentThread().interrupt();
+
+                break;
+            }
+
+            test.run(tkResult);
+
+            // Count the test as completed, towards the achieved rate.
+            budget.complete();
+        }
+    }
+
+    /**
+     * Prints out the name of this test with the string "(rate limited)" appended onto it for debugging purposes.
+     *
+     * @return The name of this test with the string "(rate limited)" appended onto it.
+     */
+    public String toString()
+    {
+        return super.toString() + "(rate limited)";
+    }
+}
@@ -15,22 +15,45 @@
  */
 package com.thesett.junit.extensions;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
 
+import junit.framework.AssertionFailedError;
 import junit.framework.Test;
 import junit.framework.TestResult;
 
 import com.thesett.common.util.concurrent.ShutdownHookable;
+import com.thesett.junit.concurrency.DefaultThreadFactory;
+import com.thesett.junit.concurrency.VirtualThreadFactory;
+import com.thesett.junit.extensions.util.PinnedThreadCounter;
 
 /**
  * A test decorator that runs a test many times simultaneously in many threads.
  *
+ * <p/>The test threads are kept in a pool of worker threads, that lives for as long as the decorator does. The pool is
+ * grown as needed to run the highest concurrency level reached so far, and is never rebuilt, so each concurrency level
+ * re-uses the threads of the levels before it. Workers that are not running tests are parked until they are next
+ * needed. This means that each batch starts straight away, on threads that have already been run, without paying the
+ * cost of creating and starting new threads.
+ *
+ * <p/>Optionally, see {@link #setVirtualThreads}, the tests can be run on virtual threads instead of platform threads,
+ * which allows much higher concurrency levels to be reached. In that case the number of times that the virtual threads
+ * were pinned to their carrier threads is counted, and passed to the test result at the end of each batch.
+ *
  * <pre><p/><table id="crc"><caption>CRC Card</caption>
  * <tr><th> Responsibilities <th> Collaborations
  * <tr><td> Clone a test run into many threads and run them simultaneously.
  * <tr><td> Inform the test results of the start and end of each concurrent test batch. <td> {@link TKTestResult}
  * <tr><td> Inform the test results of the concurrency level. <td> {@link TKTestResult}
+ * <tr><td> Keep a pool of worker threads to run tests on, grown across concurrency levels. <td> {@link ThreadFactory}
+ * <tr><td> Optionally run tests on virtual threads and count pinning events. <td> {@link PinnedThreadCounter}
  * </table></pre>
  *
  * @author Rupert Smith
@@ -64,6 +87,15 @@ public class ScaledTestDecorator extends WrappedSuiteTestDecorator implements Sh
     /** Flag set by the shutdown hook. This decorator will not start any new tests when this is set. */
     private boolean shutdown;
 
+    /** Used to create the worker threads. */
+    private ThreadFactory threadFactory = new DefaultThreadFactory();
+
+    /** Holds the pool of worker threads to run tests on. */
+    private final List<Worker> workers = new ArrayList<Worker>();
+
+    /** Used to count virtual thread pinning events, when running on virtual threads. */
+    private PinnedThreadCounter pinnedThreadCounter;
+
     /**
      * Creates an active test with default multiplier (1).
      *
@@ -145,6 +177,12 @@ public class ScaledTestDecorator extends WrappedSuiteTestDecorator implements Sh
                 currentTestResult = tkResult;
             }
 
+            // Clear down the count of pinning events left over from before the batch.
+            if (pinnedThreadCounter != null)
+            {
+                pinnedThreadCounter.takeCount();
+            }
+
             // Run all the tests and wait for them all to finish.
             executeAndWaitForRunnables(threadHandlers);
 
@@ -155,6 +193,12 @@ public class ScaledTestDecorator extends WrappedSuiteTestDecorator implements Sh
             if (testResult instanceof TKTestResult)
             {
                 TKTestResult tkResult = (TKTestResult) testResult;
+
+                if (pinnedThreadCounter != null)
+                {
+                    tkResult.notifyPinnedThreads(pinnedThreadCounter.takeCount());
+                }
+
                 tkResult.notifyEndBatch();
             }
 
@@ -230,7 +274,48 @@ public class ScaledTestDecorator extends WrappedSuiteTestDecorator implements Sh
     }
 
     /**
-     * Executes all of the specifed runnable using the thread pool and waits for them all to complete.
+     * Sets the thread factory used to create the worker threads. This only affects workers created after it is set, so
+     * should be set before the tests are run.
+     *
+     * @param threadFactory The thread factory used to create the worker threads.
+     */
+    public void setThreadFactory(ThreadFactory threadFactory)
+    {
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * Sets whether or not the tests should be run on virtual threads. This only affects workers created after it is
+     * set, so should be set before the tests are run.
+     *
+     * @param virtualThreads <tt>true</tt> to run the tests on virtual threads.
+     *
+     * @throws IllegalStateException If virtual threads are requested and the JVM does not support them.
+     */
+    public void setVirtualThreads(boolean virtualThreads)
+    {
+        if (virtualThreads)
+        {
+            threadFactory = new VirtualThreadFactory();
+
+            pinnedThreadCounter = new PinnedThreadCounter();
+            pinnedThreadCounter.start();
+        }
+        else
+        {
+            threadFactory = new DefaultThreadFactory();
+
+            if (pinnedThreadCounter != null)
+            {
+                pinnedThreadCounter.stop();
+                pinnedThreadCounter = null;
+            }
+        }
+    }
+
+    /**
+     * Executes all of the specifed runnable using the thread pool and waits for them all to complete. The pool is grown
+     * first, if it does not have enough workers to run all of the runnables at once.
      *
      * @param runnables The set of runnables to execute concurrently.
      */
@@ -238,33 +323,93 @@ public class ScaledTestDecorator extends WrappedSuiteTestDecorator implements Sh
     {
         int numThreads = runnables.length;
 
-        // Used to keep track of the test threads in order to know when they have all completed.
-        Thread[] threads = new Thread[numThreads];
+        // Grow the pool of workers, if there are not enough to run all of the runnables at once.
+        for (int j = workers.size(); j < numThreads; j++)
+        {
+            Worker worker = new Worker();
+            Thread thread = threadFactory.newThread(worker);
+            thread.setDaemon(true);
+            worker.thread = thread;
+
+            workers.add(worker);
+            thread.start();
+        }
+
+        // Used to keep track of the workers in order to know when they have all completed.
+        CountDownLatch completed = new CountDownLatch(numThreads);
 
-        // Create all the test threads.
+        // Hand the runnables to the workers and wake them up.
         for (int j = 0; j < numThreads; j++)
         {
-            threads[j] = new Thread(runnables[j]);
+            Worker worker = workers.get(j);
+            worker.completed = completed;
+            worker.task = runnables[j];
+
+            LockSupport.unpark(worker.thread);
         }
 
-        // Start all the test threads.
-        for (int j = 0; j < numThreads; j++)
+        // Wait for all the workers to complete.
+        try
         {
-            threads[j].start();
+            completed.await();
         }
+        catch (InterruptedException e)
+        {
+            // Restore the interrupted state of the thread. Exception noted and ignored.
+            e = null;
+            Thread.currentThread().interrupt();
+        }
+    }
 
-        // Wait for all the test threads to complete.
-        for (int j = 0; j < numThreads; j++)
+    /**
+     * Worker is a runnable that runs on a pooled thread, running the tasks handed to it one at a time, and parking the
+     * thread whilst it has no task to run. The worker threads are daemon threads, so the pool does not need to be shut
+     * down explicitly.
+     */
+    private static class Worker implements Runnable
+    {
+        /** Holds the thread that this worker runs on. */
+        Thread thread;
+
+        /** Holds the task to run next, or <tt>null</tt> when the worker is idle. */
+        volatile Runnable task;
+
+        /** Holds the latch to count down as each task completes. This is set before the task is handed over. */
+        CountDownLatch completed;
+
+        /** Runs the tasks handed to this worker, parking between them. */
+        public void run()
         {
-            try
+            while (true)
             {
-                threads[j].join();
-            }
-            catch (InterruptedException e)
-            {
-                // Restore the interrupted state of the thread. Exception noted and ignored.
-                e = null;
-                Thread.currentThread().interrupt();
+                Runnable next = task;
+
+                if (next == null)
+                {
+                    LockSupport.park(this);
+
+                    continue;
+                }
+
+                try
+                {
+                    next.run();
+                }
+                catch (Throwable e)
+                {
+                    // The test thread handlers report their own errors, this only keeps the worker alive to run the next
+                    // task, as a dead worker would never complete it. Exception noted and ignored.
+                    e = null;
+                }
+                finally
+                {
+                    // Clear down any interrupt left over from the task, so that it does not affect the next one.
+                    Thread.interrupted();
+
+                    CountDownLatch latch = completed;
+                    task = null;
+                    latch.countDown();
+                }
             }
         }
     }
@@ -360,6 +505,49 @@ public class ScaledTestDecorator extends WrappedSuiteTestDecorator implements Sh
                 e = null;
                 Thread.currentThread().interrupt();
             }
+            catch (AssertionFailedError e)
+            {
+                testResult.addFailure(test, e);
+                breakBarrier();
+            }
+            catch (Throwable e)
+            {
+                testResult.addError(test, e);
+                breakBarrier();
+            }
+        }
+
+        /**
+         * Breaks the barrier, so that the other test threads do not wait forever for this one, once it has failed. This
+         * thread keeps on arriving at the barrier without waiting, until it is not the last to arrive, which breaks it.
+         */
+        private void breakBarrier()
+        {
+            while ((barrier.getParties() > 1) && !barrier.isBroken())
+            {
+                try
+                {
+                    barrier.await(0, TimeUnit.NANOSECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    // Restore the interrupted state of the thread. Exception noted and ignored.
+                    e = null;
+                    Thread.currentThread().interrupt();
+
+                    return;
+                }
+                catch (BrokenBarrierException e)
+                {
+                    // The barrier is broken, which is what was wanted. Exception noted and ignored.
+                    e = null;
+                }
+                catch (TimeoutException e)
+                {
+                    // The barrier is broken, which is what was wanted. Exception noted and ignored.
+                    e = null;
+                }
+            }
         }
 
         /**
@@ -16,20 +16,60 @@
 package com.thesett.junit.extensions;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
 
+import junit.framework.AssertionFailedError;
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestResult;
 
+import com.thesett.junit.concurrency.ThreadAffinity;
+import com.thesett.junit.extensions.listeners.BatchSummary;
+import com.thesett.junit.extensions.listeners.ComplexityFit;
+import com.thesett.junit.extensions.listeners.GarbageCollectionSummary;
 import com.thesett.junit.extensions.listeners.TKTestListener;
+import com.thesett.junit.extensions.listeners.TestOutcome;
+import com.thesett.junit.extensions.util.ComplexityFitter;
+import com.thesett.junit.extensions.util.GcPauseMonitor;
+import com.thesett.junit.extensions.util.HarnessBaseline;
+import com.thesett.junit.extensions.util.LatencyHistogram;
+import com.thesett.junit.extensions.util.RateBudget;
+import com.thesett.junit.extensions.util.SteadyStateDetector;
 
 /**
  * TKTestResult extends TestResult in order to calculate test timings, to pass the variable integer parameter for
  * parameterized test cases to those test cases and to introduce an optional delay before test starts. Interested
  * {@link TKTestListener}s may be attached to this and will be informed of all relevant test statistics.
  *
+ * <p/>When running very short tests at high rates and concurrency levels, notifying every listener of every test
+ * result can come to dominate the cost of running the tests. In histogram mode, see {@link #setHistogramMode}, test
+ * timings are instead recorded into a {@link LatencyHistogram} per recording thread, without allocating or locking.
+ * The histograms are merged together when the batch ends, and listeners are passed a single {@link BatchSummary} of
+ * the whole batch, instead of being informed of each test individually.
+ *
+ * <p/>Tests that are {@link TimingControllerAware} may suspend and resume their timers, to exclude fixture work from
+ * the measured time. The time spent suspended is subtracted from the test timing, and is reported to listeners
+ * separately, through {@link TKTestListener#suspendedTime}.
+ *
+ * <p/>Tests that are run on a schedule, for example by a {@link com.thesett.common.throttle.Throttle}, may register
+ * their timings from the time at which they were scheduled to start, through
+ * {@link TimingController#completeScheduledTest}. This corrects for coordinated omission, where a stall in the system
+ * under test delays the start of the following tests, so that the delay is never measured. The uncorrected timings,
+ * from the actual start times, are reported to listeners separately, through {@link TKTestListener#uncorrectedTiming}.
+ * Tests that are started on a schedule by a {@link RateLimitedTestDecorator} are timed from their scheduled start
+ * times in the same way, and the rate achieved over each batch is reported to listeners, through
+ * {@link TKTestListener#batchRate}.
+ *
+ * <p/>The harness itself adds some overhead to the timing of every test, which dominates the timings of very short
+ * tests. The overhead may be measured by running an empty test, see {@link #startCalibrating}, and set on this as a
+ * {@link HarnessBaseline}. It is then taken out of the timing of each test, and the timings from before it was taken
+ * out are reported to listeners separately, through {@link TKTestListener#rawTiming}.
+ *
  * <pre><p/><table id="crc"><caption>CRC Card</caption>
  * <tr><th> Responsibilities <th> Collaborations
  * <tr><td> Calculate test timings.
@@ -38,6 +78,11 @@ import com.thesett.junit.extensions.listeners.TKTestListener;
  * <tr><td> Inform parameters listeners of parameters.
  * <tr><td> Pass the integer parameter to parameterized test cases.
  * <tr><td> Provide verbose test information on test start and end.
+ * <tr><td> Record test timings into striped histograms and summarize them per batch. <td> {@link LatencyHistogram}
+ * <tr><td> Exclude suspended time from test timings.
+ * <tr><td> Correct the timings of scheduled tests for coordinated omission.
+ * <tr><td> Report the achieved rate of rate limited batches. <td> {@link RateBudget}
+ * <tr><td> Take the harness overhead out of test timings. <td> {@link HarnessBaseline}
  * </table></pre>
  *
  * @author Rupert Smith
@@ -96,6 +141,43 @@ public class TKTestResult extends TestResult
     /** Holds the parametes that the test is run with. */
     private Properties testParameters;
 
+    /** Flag used to indicate that test results should be recorded into histograms, and summarized per batch. */
+    private boolean histogramMode;
+
+    /**
+     * Holds the stripes of latency recorders that test results are recorded into in histogram mode. Each thread records
+     * into the stripe selected by its id, so that the memory used is bounded by the number of stripes, rather than by
+     * the number of test threads, which may be very large when running on virtual threads.
+     */
+    private volatile LatencyRecorder[] latencyRecorders;
+
+    /** Holds the garbage collection monitor, if garbage collection is being monitored. */
+    private volatile GcPauseMonitor gcPauseMonitor;
+
+    /** Holds the steady state detector that decides when warming up is complete, if there is one. */
+    private volatile SteadyStateDetector steadyStateDetector;
+
+    /** Holds the complexity fitter that asymptotic test timings are fitted with, if they are being fitted. */
+    private volatile ComplexityFitter complexityFitter;
+
+    /** Flag used to indicate that the core that each test thread is running on should be passed to the listeners. */
+    private boolean recordCores;
+
+    /** Holds the rate budget that tests are being started on, if they are being run at a fixed rate. */
+    private volatile RateBudget rateBudget;
+
+    /** Holds the harness overhead to take out of test timings, if it has been calibrated. */
+    private volatile HarnessBaseline harnessBaseline;
+
+    /** Used to ensure that the start of each batch is only acted on once, by the first test thread to start it. */
+    private final Object batchLock = new Object();
+
+    /** Flag used to indicate that the current batch has been started by one of its test threads. */
+    private boolean batchStarted;
+
+    /** Holds the barrier that the test threads of the current batch wait on at the end of their warm-ups. */
+    private volatile CyclicBarrier warmupBarrier;
+
     /**
      * Creates a new TKTestResult object.
      *
@@ -138,13 +220,20 @@ public class TKTestResult extends TestResult
             }
         }
 
-        // Create the thread local settings for the test.
-        ThreadLocalSettings threadLocalSettings = new ThreadLocalSettings();
-        threadLocals.set(threadLocalSettings);
+        // Create the thread local settings for the test, or re-use the ones already created for the test thread.
+        ThreadLocalSettings threadLocalSettings = getThreadLocalSettings();
 
-        // Record the test start time against this thread for calculating the test timing. (Consider using ThreadLocal
-        // instead?)
-        Long startTime = System.nanoTime();
+        // Record the number of garbage collections so far, if they are being monitored, to tell if any run during the
+        // test.
+        GcPauseMonitor monitor = gcPauseMonitor;
+
+        if (monitor != null)
+        {
+            threadLocalSettings.collectionsAtStart = monitor.getCollectionCount();
+        }
+
+        // Record the test start time against this thread for calculating the test timing.
+        long startTime = System.nanoTime();
         threadLocalSettings.startTime = startTime;
         // log.debug("startTime = " + startTime);
 
@@ -153,15 +242,33 @@ public class TKTestResult extends TestResult
         if (test instanceof TimingControllerAware)
         {
             TimingControllerAware controllerAware = (TimingControllerAware) test;
-            TimingController controller =
+            TimingControllerImpl controller =
                 new TimingControllerImpl(this, test, startTime, Thread.currentThread().getId());
+            controller.warmingUp = threadLocalSettings.warmingUp;
             controllerAware.setTimingController(controller);
 
             threadLocalSettings.timingController = controller;
         }
+        else
+        {
+            threadLocalSettings.timingController = null;
+        }
 
-        // Delegate to the super method to notify test event listeners.
-        super.startTest(test);
+        // When warming up, the test is not counted and the test event listeners are not notified. In histogram mode,
+        // count the test run against this thread and do not notify the test event listeners. Otherwise, delegate to the
+        // super method to notify test event listeners.
+        if (threadLocalSettings.warmingUp)
+        {
+            /*log.debug("Warming up, test start discarded.");*/
+        }
+        else if (histogramMode)
+        {
+            getLatencyRecorder().recordRuns(test.countTestCases());
+        }
+        else
+        {
+            super.startTest(test);
+        }
     }
 
     /**
@@ -197,7 +304,7 @@ public class TKTestResult extends TestResult
             // log.debug("endMem = " + endMem);
 
             // Inform any memory listeners of the test memory.
-            if (tkListeners != null)
+            if ((tkListeners != null) && !histogramMode && !threadLocalSettings.warmingUp)
             {
                 for (TKTestListener memoryListener : tkListeners)
                 {
@@ -209,16 +316,103 @@ public class TKTestResult extends TestResult
         {
             // Calculate the test run time.
             long endTime = System.nanoTime();
-            Long startTime = threadLocalSettings.startTime;
-            runTime = endTime - startTime;
+            runTime = endTime - threadLocalSettings.startTime;
             // log.debug("runTime = " + runTime);
+        }
 
-            threadLocals.remove();
+        // Take out any time that the test suspended its timer for. Instrumented tests only time the test method, so
+        // only the time suspended whilst the test method was running is taken out of their timings. When it is not
+        // known when the test method ran, the time suspended is taken to be no more than the timing.
+        long suspendedTime = 0;
+        TimingControllerImpl controller = threadLocalSettings.timingController;
+
+        if (controller != null)
+        {
+            long now = System.nanoTime();
+
+            if (test instanceof AsymptoticTestCase)
+            {
+                AsymptoticTestCase aTest = (AsymptoticTestCase) test;
+                suspendedTime = controller.takeSuspendedTime(now, aTest.getTestStartTime(), aTest.getTestEndTime());
+            }
+            else if (test instanceof InstrumentedTest)
+            {
+                suspendedTime = Math.min(controller.takeSuspendedTime(now), Math.max(0L, runTime));
+            }
+            else
+            {
+                suspendedTime = controller.takeSuspendedTime(now);
+            }
+
+            runTime -= suspendedTime;
+        }
+
+        // When calibrating the harness baseline, record the timing of the test, which is an empty one. Its results are
+        // still passed on to the listeners as usual, so that the harness overhead includes the cost of doing so.
+        long[] calibrationSamples = threadLocalSettings.calibrationSamples;
+
+        if ((calibrationSamples != null) && (threadLocalSettings.calibrationCount < calibrationSamples.length))
+        {
+            calibrationSamples[threadLocalSettings.calibrationCount++] = runTime;
+        }
+
+        // Take out the harness overhead, if it has been calibrated, without taking the timing below zero.
+        long baselineTime = 0;
+        HarnessBaseline baseline = harnessBaseline;
+
+        if (baseline != null)
+        {
+            baselineTime =
+                Math.min(Math.max(0L, runTime), baseline.getBaseline(concurrencyLevel, test instanceof InstrumentedTest));
+            runTime -= baselineTime;
+        }
+
+        // If the test was started on a schedule, add in any delay in starting it after its scheduled start time.
+        long uncorrectedTime = runTime;
+        boolean scheduled = threadLocalSettings.scheduled;
+
+        if (scheduled)
+        {
+            runTime += Math.max(0L, threadLocalSettings.startTime - threadLocalSettings.scheduledStartTime);
+            threadLocalSettings.scheduled = false;
+        }
+
+        // When warming up, discard the results of the test, only passing its timing to any steady state detector.
+        if (threadLocalSettings.warmingUp)
+        {
+            SteadyStateDetector detector = steadyStateDetector;
+
+            if ((detector != null) && !completeTestUsed)
+            {
+                detector.record(runTime);
+            }
+
+            return;
+        }
+
+        // Pass the timings of asymptotic tests to any complexity fitter.
+        ComplexityFitter fitter = complexityFitter;
+
+        if ((fitter != null) && !completeTestUsed && (test instanceof AsymptoticTestCase))
+        {
+            fitter.record(test, ((AsymptoticTestCase) test).getN(), runTime);
+        }
+
+        // In histogram mode, record the test stats into the histogram stripe for this thread instead of informing the
+        // listeners. This is only done when the tests have not used the timing controller to output multiple timings.
+        if (histogramMode)
+        {
+            if (!completeTestUsed)
+            {
+                int size = (test instanceof AsymptoticTestCase) ? ((AsymptoticTestCase) test).getN() : 0;
+
+                getLatencyRecorder().recordLatency(runTime, uncorrectedTime, suspendedTime, scheduled, size);
+            }
         }
 
         // Output end test stats. This is only done when the tests have not used the timing controller to output
         // mutiple timings.
-        if (!completeTestUsed)
+        else if (!completeTestUsed)
         {
             // Check if the test is an asymptotic test case and get its int parameter if so.
             if (test instanceof AsymptoticTestCase)
@@ -241,12 +435,42 @@ public class TKTestResult extends TestResult
             // Inform any timing listeners of the test timing and concurrency level.
             if (tkListeners != null)
             {
+                int core = recordCores ? ThreadAffinity.getCurrentCore() : -1;
+                GcPauseMonitor monitor = gcPauseMonitor;
+                long collections =
+                    (monitor != null) ? (monitor.getCollectionCount() - threadLocalSettings.collectionsAtStart) : 0L;
+
                 for (TKTestListener tkListener : tkListeners)
                 {
                     TKTestListener next = tkListener;
 
                     next.timing(test, runTime, null);
                     next.concurrencyLevel(test, concurrencyLevel, null);
+
+                    if (controller != null)
+                    {
+                        next.suspendedTime(test, suspendedTime, null);
+                    }
+
+                    if (scheduled)
+                    {
+                        next.uncorrectedTiming(test, uncorrectedTime, null);
+                    }
+
+                    if (baseline != null)
+                    {
+                        next.rawTiming(test, runTime + baselineTime, null);
+                    }
+
+                    if (recordCores)
+                    {
+                        next.core(test, core, null);
+                    }
+
+                    if (monitor != null)
+                    {
+                        next.garbageCollections(test, collections, null);
+                    }
                 }
             }
 
@@ -255,6 +479,226 @@ public class TKTestResult extends TestResult
         }
     }
 
+    /**
+     * Callback method used to inform this result that a test is in error. In histogram mode the error is also counted
+     * against the current thread, so that it is included in the summary of the batch.
+     *
+     * @param test The test that is in error.
+     * @param t    The error that the test raised.
+     */
+    public void addError(Test test, Throwable t)
+    {
+        if (isWarmingUp())
+        {
+            /*log.debug("Warming up, test error discarded.");*/
+        }
+        else
+        {
+            if (histogramMode)
+            {
+                getLatencyRecorder().recordError();
+            }
+
+            super.addError(test, t);
+        }
+    }
+
+    /**
+     * Callback method used to inform this result that a test failed. In histogram mode the failure is also counted
+     * against the current thread, so that it is included in the summary of the batch.
+     *
+     * @param test The test that failed.
+     * @param t    The assertion failure that the test raised.
+     */
+    public void addFailure(Test test, AssertionFailedError t)
+    {
+        if (isWarmingUp())
+        {
+            /*log.debug("Warming up, test failure discarded.");*/
+        }
+        else
+        {
+            if (histogramMode)
+            {
+                getLatencyRecorder().recordFailure();
+            }
+
+            super.addFailure(test, t);
+        }
+    }
+
+    /**
+     * Sets whether or not test results should be recorded into per-thread histograms and passed to listeners as a
+     * single summary per batch, rather than being passed to listeners test by test. This should be set before any
+     * tests are run.
+     *
+     * @param histogramMode <tt>true</tt> to record test results into histograms.
+     */
+    public void setHistogramMode(boolean histogramMode)
+    {
+        // Create the recorder stripes, sized to a power of two at least twice the number of processors, so that threads
+        // running at the same time rarely record into the same stripe.
+        if (histogramMode && (latencyRecorders == null))
+        {
+            int processors = Runtime.getRuntime().availableProcessors();
+            int stripes = Integer.highestOneBit(Math.max(1, (2 * processors) - 1)) << 1;
+            LatencyRecorder[] recorders = new LatencyRecorder[stripes];
+
+            for (int i = 0; i < recorders.length; i++)
+            {
+                recorders[i] = new LatencyRecorder();
+            }
+
+            latencyRecorders = recorders;
+        }
+
+        this.histogramMode = histogramMode;
+    }
+
+    /**
+     * Sets whether or not the calling thread is warming up. Whilst warming up, the tests run by the calling thread are
+     * run as normal, but their results are discarded; they are not counted, and are not passed to any listeners. This
+     * allows tests to be run until the code under test has been compiled and any caches warmed, before measuring them.
+     *
+     * @param warmingUp <tt>true</tt> to discard the results of tests run by the calling thread.
+     */
+    public void setWarmingUp(boolean warmingUp)
+    {
+        getThreadLocalSettings().warmingUp = warmingUp;
+    }
+
+    /**
+     * Checks if the calling thread is warming up, in which case the results of its tests are discarded.
+     *
+     * @return <tt>true</tt> if the calling thread is warming up.
+     */
+    public boolean isWarmingUp()
+    {
+        ThreadLocalSettings threadLocalSettings = threadLocals.get();
+
+        return (threadLocalSettings != null) && threadLocalSettings.warmingUp;
+    }
+
+    /**
+     * Starts calibrating the harness baseline on the calling thread. Whilst calibrating, the tests run by the calling
+     * thread should be empty ones. Their timings are kept, up to a maximum number of them, until
+     * {@link #stopCalibrating()} is called. The tests are otherwise run and reported as usual, so that their timings
+     * include all of the work that the harness does for a test, which means that calibration should be done on a test
+     * result of its own, with listeners that discard what they are told, see {@link BaselineCalibrator}.
+     *
+     * @param maxSamples The maximum number of test timings to keep.
+     */
+    public void startCalibrating(int maxSamples)
+    {
+        ThreadLocalSettings threadLocalSettings = getThreadLocalSettings();
+
+        threadLocalSettings.calibrationSamples = new long[maxSamples];
+        threadLocalSettings.calibrationCount = 0;
+    }
+
+    /**
+     * Stops calibrating the harness baseline on the calling thread, and returns the timings of the tests that it ran
+     * whilst calibrating.
+     *
+     * @return The timings in nanoseconds of the tests run since {@link #startCalibrating(int)} was called.
+     */
+    public long[] stopCalibrating()
+    {
+        ThreadLocalSettings threadLocalSettings = getThreadLocalSettings();
+
+        long[] samples =
+            (threadLocalSettings.calibrationSamples == null)
+            ? new long[0] : Arrays.copyOf(threadLocalSettings.calibrationSamples, threadLocalSettings.calibrationCount);
+
+        threadLocalSettings.calibrationSamples = null;
+        threadLocalSettings.calibrationCount = 0;
+
+        return samples;
+    }
+
+    /**
+     * Sets the harness overhead to take out of test timings. When set, the baseline for the current concurrency level
+     * is taken out of the timing of each test, and the timing from before it was taken out is passed to the listeners
+     * too, through {@link TKTestListener#rawTiming}. Timings registered through the {@link TimingController} are not
+     * corrected, as they do not include the overhead of starting and ending the test.
+     *
+     * @param harnessBaseline The harness overhead, or <tt>null</tt> to not correct test timings.
+     */
+    public void setHarnessBaseline(HarnessBaseline harnessBaseline)
+    {
+        this.harnessBaseline = harnessBaseline;
+    }
+
+    /**
+     * Sets a garbage collection monitor. When set, the number of garbage collections that ran during each test is passed
+     * to the listeners, and a summary of the garbage collection activity during each batch is passed to the listeners
+     * at the end of the batch.
+     *
+     * @param gcPauseMonitor The garbage collection monitor, or <tt>null</tt> to not monitor garbage collection.
+     */
+    public void setGcPauseMonitor(GcPauseMonitor gcPauseMonitor)
+    {
+        this.gcPauseMonitor = gcPauseMonitor;
+    }
+
+    /**
+     * Sets a steady state detector, to decide when warming up is complete. Whilst warming up, test timings are passed
+     * to the detector, and warming up ends early once it detects steady state. The detector is reset at the start of
+     * each batch, and the time taken to reach steady state is passed to the listeners at the end of each batch.
+     *
+     * @param steadyStateDetector The steady state detector, or <tt>null</tt> to not detect steady state.
+     */
+    public void setSteadyStateDetector(SteadyStateDetector steadyStateDetector)
+    {
+        this.steadyStateDetector = steadyStateDetector;
+    }
+
+    /**
+     * Sets a complexity fitter. When set, the timings of asymptotic tests are passed to the fitter, and at the end of
+     * each batch the complexity class that best fits the timings of each test is passed to the listeners. Any test
+     * declaring an {@link ExpectedComplexity} that its best fit is worse than is failed.
+     *
+     * @param complexityFitter The complexity fitter, or <tt>null</tt> to not fit test timings.
+     */
+    public void setComplexityFitter(ComplexityFitter complexityFitter)
+    {
+        this.complexityFitter = complexityFitter;
+    }
+
+    /**
+     * Checks if steady state is being detected, in which case warming up may end as soon as it is reached.
+     *
+     * @return <tt>true</tt> if steady state is being detected.
+     */
+    public boolean isDetectingSteadyState()
+    {
+        return steadyStateDetector != null;
+    }
+
+    /**
+     * Checks if steady state has been reached in the current batch.
+     *
+     * @return <tt>true</tt> if steady state is being detected and has been reached.
+     */
+    public boolean isSteadyState()
+    {
+        SteadyStateDetector detector = steadyStateDetector;
+
+        return (detector != null) && detector.isSteady();
+    }
+
+    /**
+     * Sets whether or not the core that each test thread is running on when a test completes should be passed to the
+     * listeners. This is used when the test threads are being placed on cores, to record where they actually ran. This
+     * should be set before any tests are run.
+     *
+     * @param recordCores <tt>true</tt> to pass the core that each test ran on to the listeners.
+     */
+    public void setRecordCores(boolean recordCores)
+    {
+        this.recordCores = recordCores;
+    }
+
     /**
      * Gets the integer parameter to pass to parameterized test cases.
      *
@@ -287,43 +731,400 @@ public class TKTestResult extends TestResult
         // Create the collection to hold the timing listeners if it does not already exist.
         if (tkListeners == null)
         {
-            tkListeners = new ArrayList<TKTestListener>();
+            tkListeners = new ArrayList<TKTestListener>();
+        }
+
+        // Keep the new timing listener.
+        tkListeners.add(listener);
+    }
+
+    /**
+     * Called by the test runner to notify this that a new test batch is being begun. This method forwards this
+     * notification to all batch listeners.
+     *
+     * <p/>This is called by every test thread in the batch. Only the first call in each batch starts the batch
+     * measurements, so that activity that happens in between the first and last threads starting is not lost.
+     */
+    public void notifyStartBatch()
+    {
+        synchronized (batchLock)
+        {
+            if (!batchStarted)
+            {
+                batchStarted = true;
+
+                // Start counting garbage collections afresh for the new batch.
+                GcPauseMonitor monitor = gcPauseMonitor;
+
+                if (monitor != null)
+                {
+                    monitor.startBatch();
+                }
+
+                // Start looking for steady state afresh for the new batch.
+                SteadyStateDetector detector = steadyStateDetector;
+
+                if (detector != null)
+                {
+                    detector.reset();
+                }
+
+                // Set up the barrier for the test threads to wait on at the end of any warm-up. Once they have all
+                // ended their warm-ups, the measured part of the batch is started.
+                warmupBarrier =
+                    new CyclicBarrier(concurrencyLevel, new Runnable()
+                        {
+                            public void run()
+                            {
+                                startMeasurement();
+                            }
+                        });
+            }
+        }
+
+        if (tkListeners != null)
+        {
+            for (TKTestListener batchListener : tkListeners)
+            {
+                batchListener.startBatch();
+            }
+        }
+    }
+
+    /**
+     * Called by each test thread at the end of its warm-up, to wait until all of the test threads in the current batch
+     * have ended their warm-ups. Once they have, the garbage collection counts and the rate budget are started afresh
+     * and all batch listeners are notified, so that the measurements of the batch do not include the warm-up.
+     *
+     * <p/>If the calling thread is interrupted whilst waiting, or one of the other test threads is, the measurements
+     * are not started afresh, and the calling thread is left interrupted.
+     */
+    public void notifyEndWarmup()
+    {
+        CyclicBarrier barrier = warmupBarrier;
+
+        if (barrier == null)
+        {
+            return;
+        }
+
+        try
+        {
+            barrier.await();
+        }
+        catch (InterruptedException e)
+        {
+            // Restore the interrupted state of the thread. Exception noted and ignored.
+            e = null;
+            Thread.currentThread().interrupt();
+        }
+        catch (BrokenBarrierException e)
+        {
+            // Another test thread was interrupted whilst waiting, which only happens when the tests are being shut
+            // down, so pass the interruption on to this thread too. Exception noted and ignored.
+            e = null;
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Starts the measured part of the current batch, once all of its test threads have ended their warm-ups. This
+     * restarts the garbage collection counts and the rate budget, and notifies all batch listeners.
+     */
+    private void startMeasurement()
+    {
+        GcPauseMonitor monitor = gcPauseMonitor;
+
+        if (monitor != null)
+        {
+            monitor.startBatch();
+        }
+
+        RateBudget budget = rateBudget;
+
+        if (budget != null)
+        {
+            budget.restart();
+        }
+
+        if (tkListeners != null)
+        {
+            for (TKTestListener batchListener : tkListeners)
+            {
+                batchListener.endWarmup();
+            }
+        }
+    }
+
+    /**
+     * Called by the test runner to notify this that the current test batch has been ended. This method forwards this
+     * notification to all batch listener.
+     */
+    public void notifyEndBatch()
+    {
+        // log.debug("public void notifyEndBatch(): called");
+
+        // Allow the next batch to be started.
+        synchronized (batchLock)
+        {
+            batchStarted = false;
+            warmupBarrier = null;
+        }
+
+        // Pass the target and achieved rates to all listeners, if the batch was run at a fixed rate.
+        RateBudget budget = rateBudget;
+
+        if ((budget != null) && (tkListeners != null))
+        {
+            float achievedRate = budget.endBatch();
+
+            for (TKTestListener batchListener : tkListeners)
+            {
+                batchListener.batchRate(budget.getRate(), achievedRate);
+            }
+        }
+
+        // Pass the garbage collection activity during the batch to all listeners, if it was being monitored.
+        GcPauseMonitor monitor = gcPauseMonitor;
+
+        if (monitor != null)
+        {
+            GarbageCollectionSummary gcSummary = monitor.endBatch();
+
+            if (tkListeners != null)
+            {
+                for (TKTestListener batchListener : tkListeners)
+                {
+                    batchListener.batchGarbageCollection(gcSummary);
+                }
+            }
+        }
+
+        // Pass the time taken to reach steady state to all listeners, if steady state was being detected.
+        SteadyStateDetector detector = steadyStateDetector;
+
+        if ((detector != null) && (tkListeners != null))
+        {
+            long steadyTime = detector.getSteadyTime();
+
+            for (TKTestListener batchListener : tkListeners)
+            {
+                batchListener.batchSteadyState(detector.getThreshold(), steadyTime);
+            }
+        }
+
+        // Pass the harness overheads that were taken out of the test timings to all listeners, if they were calibrated.
+        HarnessBaseline baseline = harnessBaseline;
+
+        if ((baseline != null) && (tkListeners != null))
+        {
+            long instrumentedBaseline = baseline.getBaseline(concurrencyLevel, true);
+            long uninstrumentedBaseline = baseline.getBaseline(concurrencyLevel, false);
+
+            for (TKTestListener batchListener : tkListeners)
+            {
+                batchListener.batchBaseline(instrumentedBaseline, uninstrumentedBaseline);
+            }
+        }
+
+        // Fit the timings of the asymptotic tests against complexity classes and pass the fits to all listeners, if
+        // they are being fitted. Fail any tests that grow faster than expected.
+        ComplexityFitter fitter = complexityFitter;
+
+        if (fitter != null)
+        {
+            List<ComplexityFit> fits = fitter.fit();
+
+            if (tkListeners != null)
+            {
+                for (TKTestListener batchListener : tkListeners)
+                {
+                    batchListener.batchComplexity(fits);
+                }
+            }
+
+            for (ComplexityFit fit : fits)
+            {
+                if (fit.isWorseThanExpected())
+                {
+                    AssertionFailedError error =
+                        new AssertionFailedError("The best complexity fit for " + fit.getTestName() + ", " +
+                            fit.getBestFit() + ", is worse than the expected " + fit.getExpected() + ".");
+
+                    super.addFailure(fit.getTest(), error);
+                }
+            }
+        }
+
+        // Merge the histogram stripes and pass the batch summary to all listeners, if running in histogram mode.
+        if (histogramMode)
+        {
+            BatchSummary summary = mergeLatencyRecorders();
+
+            if (tkListeners != null)
+            {
+                for (TKTestListener batchListener : tkListeners)
+                {
+                    batchListener.batchSummary(summary);
+                }
+            }
         }
 
-        // Keep the new timing listener.
-        tkListeners.add(listener);
+        if (tkListeners != null)
+        {
+            for (TKTestListener batchListener : tkListeners)
+            {
+                batchListener.endBatch(testParameters);
+            }
+        }
     }
 
     /**
-     * Called by the test runner to notify this that a new test batch is being begun. This method forwards this
-     * notification to all batch listeners.
+     * Called by the test runner to notify this of the number of times that virtual test threads were pinned to their
+     * carrier threads during the current test batch, when the tests are being run on virtual threads. This method
+     * forwards this notification to all batch listeners.
+     *
+     * @param pinnedCount The number of pinning events in the batch, or -1 if they could not be counted.
      */
-    public void notifyStartBatch()
+    public void notifyPinnedThreads(long pinnedCount)
     {
         if (tkListeners != null)
         {
             for (TKTestListener batchListener : tkListeners)
             {
-                batchListener.startBatch();
+                batchListener.batchPinnedThreads(pinnedCount);
             }
         }
     }
 
     /**
-     * Called by the test runner to notify this that the current test batch has been ended. This method forwards this
-     * notification to all batch listener.
+     * Called to notify this of the result of a test that was run in a forked JVM. The test is counted, and its result
+     * is recorded as if it had been run here; it is passed on to all test event and timing listeners, or recorded into
+     * the histograms in histogram mode, and its timing is passed to any complexity fitter. The failure or error that
+     * the test raised is rebuilt from its class name and message, as its stack trace is only available in the forked
+     * JVM.
+     *
+     * @param test             The test that was run.
+     * @param outcome          The test outcome.
+     * @param failure          The failure or error that the test raised, or <tt>null</tt> if it passed or it is not
+     *                         known.
+     * @param nanos            The run time of the test in nanoseconds.
+     * @param bytes            The memory used by the test in bytes.
+     * @param n                The size parameter that the test was run with.
+     * @param concurrency      The concurrency level that the test was run at.
+     * @param suspendedNanos   The time that the test suspended its timing for, or -1 if it was not measured.
+     * @param uncorrectedNanos The test time from its actual start, when run on a schedule, or -1 if it was not.
+     * @param rawNanos         The test time including the harness overhead, or -1 if it was not measured.
+     * @param collections      The number of garbage collections during the test, or -1 if they were not counted.
+     * @param core             The core that the test ran on, or -1 if it was not recorded.
      */
-    public void notifyEndBatch()
+    public void notifyForkedResult(Test test, TestOutcome outcome, Throwable failure, long nanos, long bytes, int n,
+        int concurrency, long suspendedNanos, long uncorrectedNanos, long rawNanos, long collections, int core)
     {
-        // log.debug("public void notifyEndBatch(): called");
+        // Report the concurrency level that the forked JVM ran the test at in any batch summary.
+        concurrencyLevel = concurrency;
 
-        if (tkListeners != null)
+        // Pass the timings of asymptotic tests to any complexity fitter.
+        ComplexityFitter fitter = complexityFitter;
+
+        if ((fitter != null) && (test instanceof AsymptoticTestCase))
         {
-            for (TKTestListener batchListener : tkListeners)
+            fitter.record(test, n, nanos);
+        }
+
+        // In histogram mode, record the test stats into the histogram stripe for this thread instead of informing the
+        // listeners.
+        if (histogramMode)
+        {
+            LatencyRecorder recorder = getLatencyRecorder();
+            recorder.recordRuns(test.countTestCases());
+            recorder.recordLatency(nanos, (uncorrectedNanos >= 0) ? uncorrectedNanos : nanos,
+                Math.max(0L, suspendedNanos), uncorrectedNanos >= 0, (test instanceof AsymptoticTestCase) ? n : 0);
+        }
+        else
+        {
+            // Call the super method to count the test and notify test event listeners of the start event.
+            super.startTest(test);
+
+            // Inform any timing listeners of the test timings and measurements.
+            if (tkListeners != null)
             {
-                batchListener.endBatch(testParameters);
+                for (TKTestListener tkListener : tkListeners)
+                {
+                    tkListener.memoryUsed(test, 0L, bytes, null);
+                    tkListener.parameterValue(test, n, null);
+                    tkListener.timing(test, nanos, null);
+                    tkListener.concurrencyLevel(test, concurrency, null);
+
+                    if (suspendedNanos >= 0)
+                    {
+                        tkListener.suspendedTime(test, suspendedNanos, null);
+                    }
+
+                    if (uncorrectedNanos >= 0)
+                    {
+                        tkListener.uncorrectedTiming(test, uncorrectedNanos, null);
+                    }
+
+                    if (rawNanos >= 0)
+                    {
+                        tkListener.rawTiming(test, rawNanos, null);
+                    }
+
+                    if (core >= 0)
+                    {
+                        tkListener.core(test, core, null);
+                    }
+
+                    if (collections >= 0)
+                    {
+                        tkListener.garbageCollections(test, collections, null);
+                    }
+                }
             }
         }
+
+        if (outcome == TestOutcome.FAILURE)
+        {
+            addFailure(test,
+                (failure instanceof AssertionFailedError) ? (AssertionFailedError) failure
+                                                          : new AssertionFailedError("Test failed in a forked JVM."));
+        }
+        else if (outcome == TestOutcome.ERROR)
+        {
+            addError(test, (failure != null) ? failure : new IllegalStateException("Test was in error in a forked JVM."));
+        }
+
+        if (!histogramMode)
+        {
+            super.endTest(test);
+        }
+    }
+
+    /**
+     * Sets the rate budget that tests are being started on, when they are being run at a fixed rate. The rate achieved
+     * over each batch is worked out from this, at the end of the batch.
+     *
+     * @param rateBudget The rate budget that tests are being started on.
+     */
+    public void setRateBudget(RateBudget rateBudget)
+    {
+        this.rateBudget = rateBudget;
+    }
+
+    /**
+     * Sets the time at which the next test to be run by the calling thread was scheduled to start. The test will be
+     * timed from its scheduled start time, rather than from its actual start time, so that any delay in starting it is
+     * included in its timing.
+     *
+     * @param scheduledStartTime The time in nanoseconds at which the next test was scheduled to start.
+     */
+    public void setScheduledStartTime(long scheduledStartTime)
+    {
+        ThreadLocalSettings threadLocalSettings = getThreadLocalSettings();
+
+        threadLocalSettings.scheduledStartTime = scheduledStartTime;
+        threadLocalSettings.scheduled = true;
     }
 
     /**
@@ -421,6 +1222,81 @@ public class TKTestResult extends TestResult
             ((test instanceof TestCase) ? ((TestCase) test).getName() : "") + "]";
     }
 
+    /**
+     * Gets the latency recorder stripe that the current thread records into, selected by the thread id.
+     *
+     * @return The latency recorder stripe for the current thread.
+     */
+    private LatencyRecorder getLatencyRecorder()
+    {
+        LatencyRecorder[] recorders = latencyRecorders;
+
+        return recorders[(int) (Thread.currentThread().getId() & (recorders.length - 1))];
+    }
+
+    /**
+     * Gets the thread local settings for the calling thread, creating them if they have not already been created.
+     *
+     * @return The thread local settings for the calling thread.
+     */
+    private ThreadLocalSettings getThreadLocalSettings()
+    {
+        ThreadLocalSettings threadLocalSettings = threadLocals.get();
+
+        if (threadLocalSettings == null)
+        {
+            threadLocalSettings = new ThreadLocalSettings();
+            threadLocals.set(threadLocalSettings);
+        }
+
+        return threadLocalSettings;
+    }
+
+    /**
+     * Merges the results held in all of the latency recorder stripes into a summary of the batch, and resets the
+     * recorders ready for the next batch. This should only be called once the test threads that ran the batch have
+     * completed.
+     *
+     * @return A summary of the batch.
+     */
+    private BatchSummary mergeLatencyRecorders()
+    {
+        LatencyHistogram latencies = new LatencyHistogram();
+        LatencyHistogram uncorrectedLatencies = new LatencyHistogram();
+        long scheduledTests = 0;
+        long failures = 0;
+        long errors = 0;
+        long totalSize = 0;
+        long suspendedTime = 0;
+        int runs = 0;
+
+        for (LatencyRecorder recorder : latencyRecorders)
+        {
+            synchronized (recorder)
+            {
+                latencies.add(recorder.latencies);
+                uncorrectedLatencies.add(recorder.uncorrectedLatencies);
+                scheduledTests += recorder.scheduledTests;
+                failures += recorder.failures;
+                errors += recorder.errors;
+                totalSize += recorder.totalSize;
+                suspendedTime += recorder.suspendedTime;
+                runs += recorder.runs;
+
+                recorder.reset();
+            }
+        }
+
+        // Add the test runs into the overall run count, which is not kept up to date test by test in histogram mode.
+        synchronized (this)
+        {
+            fRunTests += runs;
+        }
+
+        return new BatchSummary(latencies, uncorrectedLatencies, scheduledTests, failures, errors, totalSize,
+                suspendedTime, concurrencyLevel);
+    }
+
     /**
      * Holds things that need to be kept on a per thread basis for each test invocation, such as the test start time and
      * its timing controller.
@@ -428,15 +1304,38 @@ public class TKTestResult extends TestResult
     private static class ThreadLocalSettings
     {
         /** Holds the test start time. */
-        Long startTime;
+        long startTime;
 
         /** Holds the test threads timing controller. */
-        TimingController timingController;
+        TimingControllerImpl timingController;
+
+        /** Holds the time at which the next test was scheduled to start, if it was started on a schedule. */
+        long scheduledStartTime;
+
+        /** Flag that indicates that the next test was started on a schedule. */
+        boolean scheduled;
+
+        /** Flag that indicates that the thread is warming up, and the results of its tests should be discarded. */
+        boolean warmingUp;
+
+        /** Holds the number of garbage collections run at the start of the test, when they are being monitored. */
+        long collectionsAtStart;
+
+        /** Holds the timings of the tests run whilst calibrating the harness baseline, or null when not calibrating. */
+        long[] calibrationSamples;
+
+        /** Holds the number of calibration timings recorded. */
+        int calibrationCount;
     }
 
     /**
      * Provides an implementation of the {@link TimingController} interface that timing aware tests can use to call back
      * to reset timers, and register additional test timings.
+     *
+     * <p/>Suspends may be nested, the timer only stops on the outermost suspend and only starts again on the matching
+     * resume. The time spent suspended is accumulated, and is taken out of the next timing registered through
+     * {@link #completeTest(boolean, int)}, or out of the timing of the whole test method. Suspending and resuming
+     * should be done from one thread at a time.
      */
     private static class TimingControllerImpl implements TimingController
     {
@@ -449,6 +1348,21 @@ public class TKTestResult extends TestResult
         /** Holds the start time for this timing controller. This gets reset to now on each completed test. */
         long startTime;
 
+        /** Holds the depth of nested suspends, the timer is suspended whenever this is above zero. */
+        int suspendDepth;
+
+        /** Holds the time at which the outermost suspend was made. */
+        long suspendStartTime;
+
+        /** Holds the time spent suspended since the timer was last started. */
+        long suspendedTime;
+
+        /** Holds the start and end times of each suspend completed since the timer was last started, in pairs. */
+        long[] suspends = new long[8];
+
+        /** Holds the number of start and end times held in the suspends array. */
+        int suspendsCount;
+
         /**
          * Holds the thread id of the thread that started the test, so that this controller may be called from other
          * threads but still identify itself correctly to {@link TKTestListener}s as being associated with the thread
@@ -456,6 +1370,9 @@ public class TKTestResult extends TestResult
          */
         final long threadId;
 
+        /** Flag that indicates that the test was started whilst warming up, so its timings should be discarded. */
+        boolean warmingUp;
+
         /**
          * Creates a timing controller on a specified TKTestResult and a test.
          *
@@ -489,33 +1406,69 @@ public class TKTestResult extends TestResult
         }
 
         /**
-         * Not implemented yet.
+         * Suspends the test timer. If the timer is already suspended, this nests inside the existing suspend, and the
+         * timer will not continue until a resume has been called for every suspend.
          *
-         * @return Nothing.
+         * @return The current time in nanoseconds.
          */
         public long suspend()
         {
-            throw new IllegalStateException("Method not implemented.");
+            long now = System.nanoTime();
+
+            if (suspendDepth++ == 0)
+            {
+                suspendStartTime = now;
+            }
+
+            return now;
         }
 
         /**
-         * Not implemented yet.
+         * Allows the test timer to continue running after a suspend. The time spent suspended is accumulated, once the
+         * outermost suspend is resumed.
          *
-         * @return Nothing.
+         * @return The current time in nanoseconds.
+         *
+         * @throws IllegalStateException If the timer is not suspended.
          */
         public long resume()
         {
-            throw new IllegalStateException("Method not implemented.");
+            long now = System.nanoTime();
+
+            if (suspendDepth == 0)
+            {
+                throw new IllegalStateException("Cannot resume a timer that has not been suspended.");
+            }
+
+            if (--suspendDepth == 0)
+            {
+                suspendedTime += now - suspendStartTime;
+
+                // Keep the start and end of the suspend, growing the array to hold them if needed.
+                if (suspendsCount == suspends.length)
+                {
+                    suspends = Arrays.copyOf(suspends, suspends.length * 2);
+                }
+
+                suspends[suspendsCount++] = suspendStartTime;
+                suspends[suspendsCount++] = now;
+            }
+
+            return now;
         }
 
         /**
-         * Resets the timer start time to now.
+         * Resets the timer start time to now, and discards any time spent suspended so far. If the timer is currently
+         * suspended, it remains suspended.
          *
          * @return The new value of the start time.
          */
         public long restart()
         {
             startTime = System.nanoTime();
+            suspendedTime = 0;
+            suspendsCount = 0;
+            suspendStartTime = startTime;
 
             return startTime;
         }
@@ -549,15 +1502,16 @@ public class TKTestResult extends TestResult
             /*log.debug("public long completeTest(boolean testPassed = " + testPassed + ", int param = " + param
                 + "): called");*/
 
-            // Calculate the test run time.
+            // Calculate the test run time, excluding any time spent suspended.
             long endTime = System.nanoTime();
-            long runTime = endTime - startTime;
+            long suspended = takeSuspendedTime(endTime);
+            long runTime = endTime - startTime - suspended;
             // log.debug("runTime = " + runTime);
 
             // Reset the test start time to now, to reset the timer for the next result.
             startTime = endTime;
 
-            completeTest(testPassed, param, runTime);
+            recordTest(testPassed, param, runTime, runTime, suspended, false);
         }
 
         /**
@@ -574,23 +1528,189 @@ public class TKTestResult extends TestResult
         public void completeTest(boolean testPassed, int param, long timeNanos) throws InterruptedException
         {
             /*log.debug("public void completeTest(boolean testPassed, int param, long timeNanos): called");*/
+
+            recordTest(testPassed, param, timeNanos, timeNanos, 0, false);
+        }
+
+        /**
+         * Register an additional pass/fail for the current test, that was scheduled to start at an intended time but
+         * may have actually started later. The test is timed from its intended start time up to now, and the timing
+         * from its actual start time is also registered, as the uncorrected timing.
+         *
+         * @param  testPassed         Whether or not this timing is for a test pass or fail.
+         * @param  param              The test parameter size for parameterized tests.
+         * @param  intendedStartNanos The time in nano seconds at which the test was scheduled to start.
+         * @param  actualStartNanos   The time in nano seconds at which the test actually started.
+         *
+         * @throws InterruptedException If the test runner decides that testing should stop it throws this exception to
+         *                              indicate to the test method that it should stop immediately.
+         */
+        public void completeScheduledTest(boolean testPassed, int param, long intendedStartNanos, long actualStartNanos)
+            throws InterruptedException
+        {
+            /*log.debug("public void completeScheduledTest(boolean testPassed, int param, long intendedStartNanos, " +
+                "long actualStartNanos): called");*/
+
+            // Calculate the corrected and uncorrected run times. A test that started ahead of schedule is timed from
+            // its actual start.
+            long endTime = System.nanoTime();
+            long uncorrectedTime = endTime - actualStartNanos;
+            long correctedTime = Math.max(endTime - intendedStartNanos, uncorrectedTime);
+
+            recordTest(testPassed, param, correctedTime, uncorrectedTime, 0, true);
+        }
+
+        /**
+         * Works out how much time has been spent suspended since the timer was last started, up to the specified time,
+         * and clears it down, ready to time the next result. If the timer is currently suspended, the current suspend
+         * is counted up to the specified time, and continues from there.
+         *
+         * @param  now The time to count suspended time up to.
+         *
+         * @return The time spent suspended in nanoseconds.
+         */
+        long takeSuspendedTime(long now)
+        {
+            long result = suspendedTime;
+
+            if (suspendDepth > 0)
+            {
+                result += now - suspendStartTime;
+                suspendStartTime = now;
+            }
+
+            suspendedTime = 0;
+            suspendsCount = 0;
+
+            return result;
+        }
+
+        /**
+         * Works out how much time has been spent suspended within a window of time, since the timer was last started,
+         * and clears it down, ready to time the next result. If the timer is currently suspended, the current suspend
+         * is counted up to the specified time, and continues from there.
+         *
+         * @param  now         The time to count suspended time up to.
+         * @param  windowStart The start of the window of time to count suspended time within.
+         * @param  windowEnd   The end of the window of time to count suspended time within.
+         *
+         * @return The time spent suspended within the window in nanoseconds.
+         */
+        long takeSuspendedTime(long now, long windowStart, long windowEnd)
+        {
+            long result = 0;
+
+            for (int i = 0; i < suspendsCount; i += 2)
+            {
+                result += overlap(suspends[i], suspends[i + 1], windowStart, windowEnd);
+            }
+
+            if (suspendDepth > 0)
+            {
+                result += overlap(suspendStartTime, now, windowStart, windowEnd);
+                suspendStartTime = now;
+            }
+
+            suspendedTime = 0;
+            suspendsCount = 0;
+
+            return result;
+        }
+
+        /**
+         * Works out how much of a suspend falls within a window of time.
+         *
+         * @param  start       The start of the suspend.
+         * @param  end         The end of the suspend.
+         * @param  windowStart The start of the window.
+         * @param  windowEnd   The end of the window.
+         *
+         * @return The time in nanoseconds that the suspend overlaps the window by.
+         */
+        private static long overlap(long start, long end, long windowStart, long windowEnd)
+        {
+            return Math.max(0L, Math.min(end, windowEnd) - Math.max(start, windowStart));
+        }
+
+        /**
+         * Registers an additional pass/fail for the current test, with its timing and the time that was excluded from
+         * the timing whilst the timer was suspended. For scheduled tests, the timing is corrected to run from the
+         * intended start time, and the uncorrected timing is registered too.
+         *
+         * @param  testPassed      Whether or not this timing is for a test pass or fail.
+         * @param  param           The test parameter size for parameterized tests.
+         * @param  timeNanos       The time in nano-seconds to log the test result with.
+         * @param  uncorrectedTime The time in nano-seconds from the actual start of the test.
+         * @param  suspendedTime   The time in nano-seconds excluded from the timing whilst suspended.
+         * @param  scheduled       <tt>true</tt> if the test was run on a schedule, and its timing has been corrected.
+         *
+         * @throws InterruptedException If the test runner decides that testing should stop it throws this exception to
+         *                              indicate to the test method that it should stop immediately.
+         */
+        private void recordTest(boolean testPassed, int param, long timeNanos, long uncorrectedTime, long suspendedTime,
+            boolean scheduled) throws InterruptedException
+        {
             /*log.debug("testResult = " + testResult);*/
 
             // Tell the test result that completeTest has been used, so to not register end test events for the whole
             // test method.
             testResult.completeTestUsed = true;
 
+            // Pass the timings of tests not started whilst warming up to any complexity fitter.
+            ComplexityFitter fitter = testResult.complexityFitter;
+
+            if ((fitter != null) && !warmingUp)
+            {
+                fitter.record(test, param, timeNanos);
+            }
+
+            // Discard the timings of tests started whilst warming up. In histogram mode, record the result into the
+            // stripe for the calling thread, which may not be the thread that started the test.
+            if (warmingUp)
+            {
+                SteadyStateDetector detector = testResult.steadyStateDetector;
+
+                if (detector != null)
+                {
+                    detector.record(timeNanos);
+                }
+            }
+            else if (testResult.histogramMode)
+            {
+                LatencyRecorder recorder = testResult.getLatencyRecorder();
+                recorder.recordLatency(timeNanos, uncorrectedTime, suspendedTime, scheduled, param);
+
+                if (!testPassed)
+                {
+                    recorder.recordFailure();
+                }
+            }
+
             // Inform any timing listeners of the test timings and parameters and send an end test notification using
             // the thread id of the thread that started the test.
-            if (testResult.tkListeners != null)
+            else if (testResult.tkListeners != null)
             {
+                int core = testResult.recordCores ? ThreadAffinity.getCurrentCore() : -1;
+
                 for (TKTestListener listener : testResult.tkListeners)
                 {
                     listener.reset(test, threadId);
                     listener.timing(test, timeNanos, threadId);
+                    listener.suspendedTime(test, suspendedTime, threadId);
+
+                    if (scheduled)
+                    {
+                        listener.uncorrectedTiming(test, uncorrectedTime, threadId);
+                    }
+
                     listener.parameterValue(test, param, threadId);
                     listener.concurrencyLevel(test, testResult.concurrencyLevel, threadId);
 
+                    if (testResult.recordCores)
+                    {
+                        listener.core(test, core, threadId);
+                    }
+
                     if (!testPassed)
                     {
                         listener.addFailure(test, null, threadId);
@@ -611,4 +1731,93 @@ public class TKTestResult extends TestResult
             }
         }
     }
+
+    /**
+     * Holds the test results recorded by one stripe of the test threads in histogram mode. Threads that share a stripe
+     * record into it under its lock, which is rarely contended as there are more stripes than processors. The results
+     * are read and reset once the test threads that ran a batch have completed.
+     */
+    private static class LatencyRecorder
+    {
+        /** Holds the test latencies. */
+        final LatencyHistogram latencies = new LatencyHistogram();
+
+        /** Holds the test latencies measured from the actual start times of scheduled tests. */
+        final LatencyHistogram uncorrectedLatencies = new LatencyHistogram();
+
+        /** Holds the number of tests run on a schedule. */
+        long scheduledTests;
+
+        /** Holds the number of test failures. */
+        long failures;
+
+        /** Holds the number of test errors. */
+        long errors;
+
+        /** Holds the sum of the size parameters of the tests. */
+        long totalSize;
+
+        /** Holds the sum of the time excluded from the test timings whilst suspended. */
+        long suspendedTime;
+
+        /** Holds the number of test runs started. */
+        int runs;
+
+        /**
+         * Counts test runs started.
+         *
+         * @param count The number of test runs started.
+         */
+        synchronized void recordRuns(int count)
+        {
+            runs += count;
+        }
+
+        /**
+         * Records the latency of a test.
+         *
+         * @param latency     The test latency.
+         * @param uncorrected The test latency measured from its actual start time.
+         * @param suspended   The time excluded from the test latency whilst suspended.
+         * @param scheduled   <tt>true</tt> if the test was run on a schedule.
+         * @param size        The size parameter of the test.
+         */
+        synchronized void recordLatency(long latency, long uncorrected, long suspended, boolean scheduled, long size)
+        {
+            latencies.recordValue(latency);
+            uncorrectedLatencies.recordValue(uncorrected);
+            suspendedTime += suspended;
+            totalSize += size;
+
+            if (scheduled)
+            {
+                scheduledTests++;
+            }
+        }
+
+        /** Counts a test failure. */
+        synchronized void recordFailure()
+        {
+            failures++;
+        }
+
+        /** Counts a test error. */
+        synchronized void recordError()
+        {
+            errors++;
+        }
+
+        /** Clears all of the recorded results. */
+        void reset()
+        {
+            latencies.reset();
+            uncorrectedLatencies.reset();
+            scheduledTests = 0;
+            failures = 0;
+            errors = 0;
+            totalSize = 0;
+            suspendedTime = 0;
+            runs = 0;
+        }
+    }
 }
@@ -15,32 +15,52 @@
  */
 package com.thesett.junit.extensions;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.Writer;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
+import java.net.Socket;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ThreadFactory;
 
 import com.thesett.junit.extensions.listeners.TKTestListener;
 import junit.framework.Test;
+import junit.framework.TestCase;
 import junit.framework.TestResult;
 import junit.framework.TestSuite;
 
 import com.thesett.common.properties.ParsedProperties;
 import com.thesett.common.util.CommandLineParser;
 import com.thesett.common.util.concurrent.ShutdownHookable;
+import com.thesett.junit.concurrency.AffinityThreadFactory;
+import com.thesett.junit.concurrency.DefaultThreadFactory;
+import com.thesett.junit.concurrency.ThreadPlacement;
+import com.thesett.junit.concurrency.VirtualThreadFactory;
+import com.thesett.junit.extensions.listeners.BinaryResultConverter;
+import com.thesett.junit.extensions.listeners.BinaryTestListener;
 import com.thesett.junit.extensions.listeners.CSVTestListener;
 import com.thesett.junit.extensions.listeners.ConsoleTestListener;
+import com.thesett.junit.extensions.listeners.TimeSeriesTestListener;
 import com.thesett.junit.extensions.listeners.XMLTestListener;
+import com.thesett.junit.extensions.util.AdaptiveSequence;
+import com.thesett.junit.extensions.util.CellStatistics;
+import com.thesett.junit.extensions.util.ComplexityFitter;
+import com.thesett.junit.extensions.util.GcPauseMonitor;
 import com.thesett.junit.extensions.util.MathUtils;
+import com.thesett.junit.extensions.util.SteadyStateDetector;
 import com.thesett.junit.extensions.util.TestContextProperties;
 
 /**
@@ -54,11 +74,28 @@ import com.thesett.junit.extensions.util.TestContextProperties;
  * -c pattern  The number of tests to run concurrently.
  * -r num      The number of times to repeat each test.
  * -d duration The length of time to run the tests for.
+ * -f n/m      The rate to call the tests at, n tests every m seconds, shared between all test threads.
  * -t name     The name of the test case to execute.
  * -s pattern  The size parameter to run tests with.
  * -o dir      The name of the directory to output test timings to.
  * --csv       Output test results in CSV format.
  * --xml       Output test results in XML format.
+ * --binary    Output test results in binary format, through a memory mapped file.
+ * --timeseries ms Output the throughput, errors and latency percentiles of each interval of ms milliseconds.
+ * --histogram Record test timings into histograms and output a latency summary per batch only.
+ * --async     Write CSV test results out on a background thread.
+ * --cells     Write CSV summary statistics per test, size and concurrency level at the end of each batch.
+ * -p policy   The placement of test threads on cores, compact, scatter or a list of cores.
+ * --warmup w  The length of time, or number of test runs, to warm up for before the test duration.
+ * --steady cv End the warm-up once the coefficient of variation of the test timings falls below cv.
+ * --gc        Record garbage collections per test and per batch.
+ * --complexity Fit test timings against complexity classes at the end of each batch.
+ * --adaptive budget Refine the size parameters where the cost per unit size changes sharply, within a time budget.
+ * --baseline  Take the harness overhead, measured by timing an empty test at startup, out of the test timings.
+ * --virtual   Run the tests on virtual threads, and count virtual thread pinning per batch.
+ * --parallel n Run the test methods of the suite in parallel, on n threads.
+ * --fork mode Run the tests in a child JVM per test class or per test method, mode is class or method.
+ * --jvm flags The flags to launch child JVMs with, without their leading '-', for example "Xmx512m XX:+UseG1GC".
  * </pre>
  *
  * <p/>This command line may also have trailing 'name=value' parameters added to it. All of these values are added to
@@ -109,6 +146,11 @@ import com.thesett.junit.extensions.util.TestContextProperties;
  *
  * <tr>
  * <td>
+ * <pre> -d 1M, -c 10, -f 500/1 </pre>
+ * <td>Runs the test on 10 threads for 1 minute, starting 500 tests every second between all 10 threads.
+ *
+ * <tr>
+ * <td>
  * <pre> -r 10, -c [1:5:10:50], -s [100:1000:10000] </pre>
  * <td>Runs 12 test cycles (4 concurrency samples * 3 size sample), with 10 repeats each. In total the test will be run
  * 199 times (3 + 15 + 30 + 150)
@@ -198,6 +240,72 @@ public class TKTestRunner extends TestRunnerImprovedErrorHandling
     /** Holds a list of factories for instantiating optional user specified test decorators. */
     protected final List<TestDecoratorFactory> decoratorFactories;
 
+    /** Flag that indicates that test timings should be recorded into histograms and summarized per batch. */
+    protected boolean histogramMode;
+
+    /** Flag that indicates that the CSV results listener should write out results on a background thread. */
+    protected boolean asyncCsvResults;
+
+    /** Flag that indicates that test results should be written out in binary format. */
+    protected boolean binaryResults;
+
+    /** The length of the intervals to output a time series of test results over in milliseconds, or null for none. */
+    protected Long timeSeriesInterval;
+
+    /** Flag that indicates that the CSV results listener should summarize timings per test, size and concurrency. */
+    protected boolean cellStatistics;
+
+    /** The aggregate rate to call the tests at in tests per second, or null to call them as fast as possible. */
+    protected Float rate;
+
+    /** The number of threads to run the test methods of the suite in parallel on, or null to run them in sequence. */
+    protected Integer parallelism;
+
+    /** Holds the parallel suite decorator of the current run, so that its pool can be shut down once the run ends. */
+    protected ParallelSuiteTestDecorator parallelSuite;
+
+    /** The mode to run the tests in child JVMs in, "class" or "method", or null to run them in this JVM. */
+    protected String forkMode;
+
+    /** The flags to launch child JVMs with. */
+    protected List<String> jvmFlags = new ArrayList<String>();
+
+    /** The test runner arguments to pass to child JVMs. */
+    protected List<String> forkArguments = new ArrayList<String>();
+
+    /** The stream to write binary test results to when running as a child JVM, or null when not. */
+    protected OutputStream forkedOutput;
+
+    /** The name of the single test method to run when running as a child JVM, or null to run all of them. */
+    protected String forkedMethod;
+
+    /** Flag that indicates that the tests should be run on virtual threads. */
+    protected boolean virtualThreads;
+
+    /** The placement policy for test threads on cores, or null to leave the placement of threads to the OS. */
+    protected ThreadPlacement placement;
+
+    /** The length of time in milliseconds to warm up for before the test duration, or null for no timed warm-up. */
+    protected Long warmupDuration;
+
+    /** The number of test runs to warm up for before the test duration, or null for no counted warm-up. */
+    protected Integer warmupIterations;
+
+    /** The coefficient of variation below which the warm-up ends at steady state, or null to not detect it. */
+    protected Float steadyStateThreshold;
+
+    /** Flag that indicates that garbage collections should be recorded per test and per batch. */
+    protected boolean gcMonitoring;
+
+    /** Flag that indicates that test timings should be fitted against complexity classes at the end of each batch. */
+    protected boolean complexityFitting;
+
+    /** The time budget in milliseconds for an adaptive sweep of the size parameters, or null to run them as given. */
+    protected Long adaptiveBudget;
+
+    /** Flag that indicates that the harness overhead should be calibrated and taken out of the test timings. */
+    protected boolean baselineCorrection;
+
     /**
      * Constructs a TKTestRunner using System.out for all the output.
      *
@@ -254,10 +362,14 @@ public class TKTestRunner extends TestRunnerImprovedErrorHandling
                         "d", "The length of time to run the tests for.", "duration", "false", MathUtils.DURATION_REGEXP
                     },
                     {
-                        "f", "The maximum rate to call the tests at.", "frequency", "false",
+                        "f", "The rate to call the tests at, n tests every m seconds.", "n/m", "false",
                         "^([1-9][0-9]*)/([1-9][0-9]*)$"
                     },
                     { "s", "The size parameter to run tests with.", "size", "false", MathUtils.SEQUENCE_REGEXP },
+                    {
+                        "p", "The placement of test threads on cores, compact, scatter or a list of cores.", "policy",
+                        "false", "^(compact|scatter|[0-9]+(,[0-9]+)*)$"
+                    },
                     { "t", "The name of the test case to execute.", "name", "false" },
                     { "o", "The name of the directory to output test timings to.", "dir", "false" },
                     { "n", "A name for this test run, used to name the output file.", "name", "true" },
@@ -267,7 +379,61 @@ public class TKTestRunner extends TestRunnerImprovedErrorHandling
                     },
                     { "1", "Test class.", "class", "true" },
                     { "-csv", "Output test results in CSV format.", null, "false" },
-                    { "-xml", "Output test results in XML format.", null, "false" }
+                    { "-xml", "Output test results in XML format.", null, "false" },
+                    {
+                        "-histogram",
+                        "Record test timings into histograms and output a latency summary per batch only.", null,
+                        "false"
+                    },
+                    { "-async", "Write CSV test results out on a background thread.", null, "false" },
+                    { "-binary", "Output test results in binary format, through a memory mapped file.", null, "false" },
+                    {
+                        "-timeseries", "Output the throughput, errors and latency percentiles of each interval.", "ms",
+                        "false", "^\\d+$"
+                    },
+                    {
+                        "-cells", "Write CSV summary statistics per test, size and concurrency level per batch.", null,
+                        "false"
+                    },
+                    {
+                        "-virtual", "Run the tests on virtual threads, and count virtual thread pinning per batch.",
+                        null, "false"
+                    },
+                    {
+                        "-warmup", "The length of time, or number of test runs, to warm up for before the duration.",
+                        "duration|num", "false", "^(\\d+|(\\d+D)?(\\d+H)?(\\d+M)?(\\d+S)?)$"
+                    },
+                    {
+                        "-steady", "End the warm-up once the variation of the test timings falls below this.", "cv",
+                        "false", "^\\d*\\.?\\d+$"
+                    },
+                    { "-gc", "Record garbage collections per test and per batch.", null, "false" },
+                    {
+                        "-complexity", "Fit test timings against complexity classes at the end of each batch.", null,
+                        "false"
+                    },
+                    {
+                        "-adaptive", "Refine the sizes where the cost per unit size changes sharply, within a budget.",
+                        "budget", "false", MathUtils.DURATION_REGEXP
+                    },
+                    {
+                        "-baseline", "Take the harness overhead, measured with an empty test, out of test timings.",
+                        null, "false"
+                    },
+                    {
+                        "-parallel", "Run the test methods of the suite in parallel, on this many threads.", "n",
+                        "false", "^[1-9]\\d*$"
+                    },
+                    {
+                        "-fork", "Run the tests in a child JVM per test class or per test method.", "class|method",
+                        "false", "^(class|method)$"
+                    },
+                    { "-jvm", "The flags to launch child JVMs with, without their leading '-'.", "flags", "false" },
+                    {
+                        "-child", "Run as a child JVM, writing binary results to the parent on this loopback port.",
+                        "port", "false", "^\\d+$"
+                    },
+                    { "-method", "The name of the single test method to run as a child JVM.", "name", "false" }
                 });
 
         // Capture the command line arguments or display errors and correct usage and then exit.
@@ -289,7 +455,18 @@ public class TKTestRunner extends TestRunnerImprovedErrorHandling
         String threadsString = options.getProperty("c");
         Integer repetitions = options.getPropertyAsInteger("r");
         String durationString = options.getProperty("d");
+        String rateString = options.getProperty("f");
         String paramsString = options.getProperty("s");
+        String placementString = options.getProperty("p");
+        String warmupString = options.getProperty("-warmup");
+        String steadyString = options.getProperty("-steady");
+        String adaptiveString = options.getProperty("-adaptive");
+        Long timeSeriesInterval = options.getPropertyAsLong("-timeseries");
+        Integer parallelism = options.getPropertyAsInteger("-parallel");
+        String forkMode = options.getProperty("-fork");
+        String jvmFlagsString = options.getProperty("-jvm");
+        String forkedMethod = options.getProperty("-method");
+        Integer forkedPort = options.getPropertyAsInteger("-child");
         String testCaseName = options.getProperty("t");
         String reportDir = options.getProperty("o");
         String testRunName = options.getProperty("n");
@@ -297,10 +474,20 @@ public class TKTestRunner extends TestRunnerImprovedErrorHandling
         String testClassName = options.getProperty("1");
         boolean csvResults = options.getPropertyAsBoolean("-csv");
         boolean xmlResults = options.getPropertyAsBoolean("-xml");
+        boolean histogramMode = options.getPropertyAsBoolean("-histogram");
+        boolean asyncCsvResults = options.getPropertyAsBoolean("-async");
+        boolean binaryResults = options.getPropertyAsBoolean("-binary");
+        boolean cellStatistics = options.getPropertyAsBoolean("-cells");
+        boolean virtualThreads = options.getPropertyAsBoolean("-virtual");
+        boolean gcMonitoring = options.getPropertyAsBoolean("-gc");
+        boolean complexityFitting = options.getPropertyAsBoolean("-complexity");
+        boolean baselineCorrection = options.getPropertyAsBoolean("-baseline");
 
         int[] threads = (threadsString == null) ? null : MathUtils.parseSequence(threadsString);
         int[] params = (paramsString == null) ? null : MathUtils.parseSequence(paramsString);
         Long duration = (durationString == null) ? null : MathUtils.parseDuration(durationString);
+        Float rate = (rateString == null) ? null : parseRate(rateString);
+        ThreadPlacement placement = (placementString == null) ? null : ThreadPlacement.parsePlacement(placementString);
 
         // The test run name defaults to the test class name unless a value was specified for it.
         testRunName = (testRunName == null) ? testClassName : testRunName;
@@ -320,6 +507,43 @@ public class TKTestRunner extends TestRunnerImprovedErrorHandling
             TKTestRunner testRunner =
                 new TKTestRunner(repetitions, duration, threads, (delay == null) ? 0 : delay, params, testCaseName,
                     reportDir, testRunName, csvResults, xmlResults, decoratorFactories);
+            testRunner.setHistogramMode(histogramMode);
+            testRunner.setAsyncCsvResults(asyncCsvResults);
+            testRunner.setBinaryResults(binaryResults);
+            testRunner.setTimeSeriesInterval(timeSeriesInterval);
+            testRunner.setCellStatistics(cellStatistics);
+            testRunner.setRate(rate);
+            testRunner.setParallelism(parallelism);
+            testRunner.setForkMode(forkMode);
+            testRunner.setJvmFlags(parseJvmFlags(jvmFlagsString));
+            testRunner.setForkArguments(forkArguments(args));
+            testRunner.setForkedMethod(forkedMethod);
+            testRunner.setVirtualThreads(virtualThreads);
+            testRunner.setPlacement(placement);
+
+            // When running as a child JVM, connect back to the parent to write the test results to. Standard output is
+            // left alone, as the JVM may write its own logging to it.
+            if (forkedPort != null)
+            {
+                Socket socket = new Socket(InetAddress.getLoopbackAddress(), forkedPort);
+                testRunner.setForkedOutput(socket.getOutputStream());
+            }
+
+            // The warm-up is a number of test runs if it is a plain number, otherwise it is a length of time.
+            if ((warmupString != null) && warmupString.matches("^\\d+$"))
+            {
+                testRunner.setWarmupIterations(Integer.parseInt(warmupString));
+            }
+            else if (warmupString != null)
+            {
+                testRunner.setWarmupDuration(MathUtils.parseDuration(warmupString));
+            }
+
+            testRunner.setSteadyStateThreshold((steadyString == null) ? null : Float.parseFloat(steadyString));
+            testRunner.setGcMonitoring(gcMonitoring);
+            testRunner.setComplexityFitting(complexityFitting);
+            testRunner.setAdaptiveBudget((adaptiveString == null) ? null : MathUtils.parseDuration(adaptiveString));
+            testRunner.setBaselineCorrection(baselineCorrection);
 
             TestResult testResult = testRunner.start(testClassName);
 
@@ -336,6 +560,141 @@ public class TKTestRunner extends TestRunnerImprovedErrorHandling
         }
     }
 
+    /**
+     * Sets whether or not test timings should be recorded into striped histograms, with listeners only being passed
+     * a summary of each batch, rather than every individual test result.
+     *
+     * @param histogramMode <tt>true</tt> to record test timings into histograms.
+     */
+    public void setHistogramMode(boolean histogramMode)
+    {
+        this.histogramMode = histogramMode;
+    }
+
+    /**
+     * Sets whether or not the CSV results listener should hand test results off to a background thread to be written
+     * out, rather than writing them out on the test threads.
+     *
+     * @param asyncCsvResults <tt>true</tt> to write out CSV results on a background thread.
+     */
+    public void setAsyncCsvResults(boolean asyncCsvResults)
+    {
+        this.asyncCsvResults = asyncCsvResults;
+    }
+
+    /**
+     * Sets whether or not test results should be written out in binary format, through a memory mapped file. Binary
+     * results files can be exported to CSV or XML afterwards by {@link BinaryResultConverter}.
+     *
+     * @param binaryResults <tt>true</tt> to write out test results in binary format.
+     */
+    public void setBinaryResults(boolean binaryResults)
+    {
+        this.binaryResults = binaryResults;
+    }
+
+    /**
+     * Sets the length of the intervals to output a time series of test results over. When set, the throughput, the
+     * numbers of failures and errors, and the latency percentiles of the tests completed in each interval of each batch
+     * are written out, so that changes in them over the course of a long run can be seen.
+     *
+     * @param timeSeriesInterval The length of the intervals in milliseconds, or <tt>null</tt> for no time series.
+     */
+    public void setTimeSeriesInterval(Long timeSeriesInterval)
+    {
+        this.timeSeriesInterval = timeSeriesInterval;
+    }
+
+    /**
+     * Sets whether or not the CSV results listener should keep summary statistics of the test timings per test, size
+     * and concurrency level, and write out a table of them at the end of each batch.
+     *
+     * @param cellStatistics <tt>true</tt> to write out summary statistics per test, size and concurrency level.
+     */
+    public void setCellStatistics(boolean cellStatistics)
+    {
+        this.cellStatistics = cellStatistics;
+    }
+
+    /**
+     * Sets the aggregate rate to call the tests at, shared between all of the test threads. When this is set the tests
+     * are started on a fixed schedule, instead of being run as fast as possible.
+     *
+     * @param rate The rate to call the tests at in tests per second, or <tt>null</tt> to run them as fast as possible.
+     */
+    public void setRate(Float rate)
+    {
+        this.rate = rate;
+    }
+
+    /**
+     * Sets the number of threads to run the test methods of the suite in parallel on. When this is set, the test
+     * methods of the suite are spread over a pool of threads, apart from any that are opted out with
+     * {@link NotParallel}, instead of being run one after the other. This cannot be combined with more than one test
+     * thread, a thread placement or virtual threads.
+     *
+     * @param parallelism The number of threads to run the test methods on, or <tt>null</tt> to run them in sequence.
+     */
+    public void setParallelism(Integer parallelism)
+    {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets the mode to run the tests in child JVMs in. In "class" mode a single child JVM is launched to run the whole
+     * test class, and in "method" mode a child JVM is launched for each test method. The results of the child JVMs are
+     * streamed back and merged into the results of this runner.
+     *
+     * @param forkMode The mode to run the tests in child JVMs in, or <tt>null</tt> to run them in this JVM.
+     */
+    public void setForkMode(String forkMode)
+    {
+        this.forkMode = forkMode;
+    }
+
+    /**
+     * Sets the flags to launch child JVMs with, when running the tests in child JVMs.
+     *
+     * @param jvmFlags The flags to launch child JVMs with.
+     */
+    public void setJvmFlags(List<String> jvmFlags)
+    {
+        this.jvmFlags = jvmFlags;
+    }
+
+    /**
+     * Sets the test runner arguments to pass to child JVMs, when running the tests in child JVMs. These should
+     * configure the child runners to run the tests in the same way as this one, but without writing out any results
+     * of their own.
+     *
+     * @param forkArguments The test runner arguments to pass to child JVMs.
+     */
+    public void setForkArguments(List<String> forkArguments)
+    {
+        this.forkArguments = forkArguments;
+    }
+
+    /**
+     * Sets the stream to write binary test results to, when running as a child JVM. When this is set, all test results
+     * are written to it, to be read back by the runner that launched this one.
+     *
+     * @param forkedOutput The stream to write binary test results to, or <tt>null</tt> when not a child JVM.
+     */
+    public void setForkedOutput(OutputStream forkedOutput)
+    {
+        this.forkedOutput = forkedOutput;
+    }
+
+    /**
+     * Sets the name of the single test method to run, when running as a child JVM for a single test method.
+     *
+     * @param forkedMethod The name of the test method to run, or <tt>null</tt> to run all of them.
+     */
+    public void setForkedMethod(String forkedMethod)
+    {
+        this.forkedMethod = forkedMethod;
+    }
+
     /**
      * Runs a test or suite of tests, using the super class implemenation. This method wraps the test to be run in any
      * test decorators needed to add in the configured toolkits enhanced junit functionality.
@@ -349,14 +708,35 @@ public class TKTestRunner extends TestRunnerImprovedErrorHandling
     {
         /*log.debug("public TestResult doRun(Test \"" + test + "\", boolean " + wait + "): called");*/
 
-        // Wrap the tests in decorators for duration, scaling, repetition, parameterization etc.
-        WrappedSuiteTestDecorator targetTest = decorateTests(test);
+        // When running as a child JVM for a single test method, run only that test method.
+        if ((forkedMethod != null) && (test instanceof TestSuite))
+        {
+            test = selectTestMethod((TestSuite) test, forkedMethod);
+        }
+
+        // Wrap the tests in decorators for duration, scaling, repetition, parameterization etc. or in a decorator to
+        // run them in child JVMs, which apply those decorators themselves.
+        WrappedSuiteTestDecorator targetTest = (forkMode != null) ? forkTests(test) : decorateTests(test);
 
         // Delegate to the super method to run the decorated tests.
         /*log.debug("About to call super.doRun");*/
 
-        TestResult result = super.doRun(targetTest, wait);
-        /*log.debug("super.doRun returned.");*/
+        TestResult result;
+
+        try
+        {
+            result = super.doRun(targetTest, wait);
+            /*log.debug("super.doRun returned.");*/
+        }
+        finally
+        {
+            // Shut down the pool that any test methods were run in parallel on.
+            if (parallelSuite != null)
+            {
+                parallelSuite.shutdown();
+                parallelSuite = null;
+            }
+        }
 
         /*if (result instanceof TKTestResult)
         {
@@ -368,6 +748,203 @@ public class TKTestRunner extends TestRunnerImprovedErrorHandling
         return result;
     }
 
+    /**
+     * Sets whether or not the tests should be run on virtual threads, instead of platform threads. This requires a JVM
+     * that supports virtual threads.
+     *
+     * @param virtualThreads <tt>true</tt> to run the tests on virtual threads.
+     */
+    public void setVirtualThreads(boolean virtualThreads)
+    {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Sets the placement policy for test threads on cores. When this is set, each test thread is pinned to a core by
+     * the policy, and the core that each test actually ran on is recorded in the test results.
+     *
+     * @param placement The placement policy for test threads, or <tt>null</tt> to leave thread placement to the OS.
+     */
+    public void setPlacement(ThreadPlacement placement)
+    {
+        this.placement = placement;
+    }
+
+    /**
+     * Sets a length of time to warm up for before the test duration. The results of tests run during the warm-up are
+     * discarded. A warm-up can only be used when a test duration is set.
+     *
+     * @param warmupDuration The length of time to warm up for in milliseconds, or <tt>null</tt> for no timed warm-up.
+     */
+    public void setWarmupDuration(Long warmupDuration)
+    {
+        this.warmupDuration = warmupDuration;
+    }
+
+    /**
+     * Sets a number of test runs to warm up for before the test duration. The results of tests run during the warm-up
+     * are discarded. A warm-up can only be used when a test duration is set.
+     *
+     * @param warmupIterations The number of test runs to warm up for, or <tt>null</tt> for no counted warm-up.
+     */
+    public void setWarmupIterations(Integer warmupIterations)
+    {
+        this.warmupIterations = warmupIterations;
+    }
+
+    /**
+     * Sets a coefficient of variation of the test timings, below which the tests are taken to have reached steady
+     * state, and the warm-up ends. The warm-up length of time or number of test runs is a limit on how long to wait
+     * for steady state, and defaults to the test duration when not set.
+     *
+     * @param steadyStateThreshold The coefficient of variation below which the warm-up ends, or <tt>null</tt> to not
+     *                             detect steady state.
+     */
+    public void setSteadyStateThreshold(Float steadyStateThreshold)
+    {
+        this.steadyStateThreshold = steadyStateThreshold;
+    }
+
+    /**
+     * Sets whether or not garbage collections should be recorded. When set, the number of garbage collections that ran
+     * during each test, and the collections that ran during each batch, are recorded in the test results.
+     *
+     * @param gcMonitoring <tt>true</tt> to record garbage collections.
+     */
+    public void setGcMonitoring(boolean gcMonitoring)
+    {
+        this.gcMonitoring = gcMonitoring;
+    }
+
+    /**
+     * Sets whether or not the timings of asymptotic tests should be fitted against complexity classes. When set, the
+     * complexity class that best fits the timings of each test over its sizes is recorded in the test results at the
+     * end of each batch, and tests that grow faster than their {@link ExpectedComplexity} are failed.
+     *
+     * @param complexityFitting <tt>true</tt> to fit test timings against complexity classes.
+     */
+    public void setComplexityFitting(boolean complexityFitting)
+    {
+        this.complexityFitting = complexityFitting;
+    }
+
+    /**
+     * Sets a time budget for an adaptive sweep of the size parameters. When set, the size parameters are used as a
+     * coarse initial grid, which is refined where the time taken per unit size changes sharply, until the budget is
+     * used up. An adaptive sweep can only be used when size parameters are set, and with a single test thread.
+     *
+     * @param adaptiveBudget The time budget in milliseconds, or <tt>null</tt> to run the size parameters as given.
+     */
+    public void setAdaptiveBudget(Long adaptiveBudget)
+    {
+        this.adaptiveBudget = adaptiveBudget;
+    }
+
+    /**
+     * Sets whether or not the harness overhead should be taken out of the test timings. When set, the overhead is
+     * measured before the tests are run, by timing empty tests at each of the concurrency levels that the tests are to
+     * be run at, see {@link BaselineCalibrator}. The median timing of the empty tests is taken out of the timing of
+     * each test, and the timings from before it was taken out are reported alongside the corrected ones.
+     *
+     * @param baselineCorrection <tt>true</tt> to take the harness overhead out of the test timings.
+     */
+    public void setBaselineCorrection(boolean baselineCorrection)
+    {
+        this.baselineCorrection = baselineCorrection;
+    }
+
+    /**
+     * Parses a rate, in the form "n/m", meaning n tests every m seconds, into a rate in tests per second.
+     *
+     * @param  rate The rate to parse.
+     *
+     * @return The rate in tests per second.
+     */
+    protected static float parseRate(String rate)
+    {
+        int slash = rate.indexOf('/');
+
+        float tests = Float.parseFloat(rate.substring(0, slash));
+        float seconds = Float.parseFloat(rate.substring(slash + 1));
+
+        return tests / seconds;
+    }
+
+    /**
+     * Parses the flags to launch child JVMs with, separated by white space or commas. The leading '-' of each flag may
+     * be left off, as values starting with '-' cannot be passed to options on the command line.
+     *
+     * @param  jvmFlags The flags to parse, may be <tt>null</tt>.
+     *
+     * @return The flags, each with its leading '-'.
+     */
+    protected static List<String> parseJvmFlags(String jvmFlags)
+    {
+        List<String> result = new ArrayList<String>();
+
+        if (jvmFlags == null)
+        {
+            return result;
+        }
+
+        for (String flag : jvmFlags.trim().split("[\\s,]+"))
+        {
+            if (!"".equals(flag))
+            {
+                result.add(flag.startsWith("-") ? flag : ("-" + flag));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Works out the test runner arguments to pass to child JVMs, from the command line arguments of this runner. The
+     * options that launch child JVMs, and the options that write out or summarize results, are left out, as the child
+     * JVMs write their results back to this runner, which records and summarizes them instead.
+     *
+     * @param  args The command line arguments of this runner.
+     *
+     * @return The test runner arguments to pass to child JVMs.
+     */
+    protected static List<String> forkArguments(String[] args)
+    {
+        List<String> valueOptions = Arrays.asList("-o", "--timeseries", "--fork", "--jvm");
+        List<String> flagOptions =
+            Arrays.asList("--csv", "--xml", "--binary", "--async", "--cells", "--histogram", "--complexity");
+
+        List<String> result = new ArrayList<String>();
+
+        for (int i = 0; i < args.length; i++)
+        {
+            String arg = args[i];
+
+            // Skip over options that take values, along with their values.
+            if (valueOptions.contains(arg))
+            {
+                i++;
+
+                continue;
+            }
+
+            // Skip over the flags that write out or summarize results.
+            if (flagOptions.contains(arg))
+            {
+                continue;
+            }
+
+            // Skip over the output directory, when given with its value appended to it.
+            if (arg.startsWith("-o"))
+            {
+                continue;
+            }
+
+            result.add(arg);
+        }
+
+        return result;
+    }
+
     /**
      * Parses a list of test decorators, in the form "class.name[:class.name]*", and creates factories for those
      * TestDecorator classes , and returns a list of the factories. This list of factories will be in the same order as
@@ -516,10 +1093,64 @@ public class TKTestRunner extends TestRunnerImprovedErrorHandling
             targetTest = (WrappedSuiteTestDecorator) test;
         }
 
+        // A suite cannot be both rate limited and run in parallel, as both run the underlying tests themselves.
+        if ((rate != null) && (parallelism != null))
+        {
+            throw new IllegalArgumentException("A rate cannot be used when the test methods are run in parallel.");
+        }
+
+        // If a rate has been set, then wrap the test in a rate limited test decorator. This must be applied directly to
+        // the suite as it runs the underlying tests itself.
+        if (rate != null)
+        {
+            targetTest = new RateLimitedTestDecorator(targetTest, rate);
+            /*log.debug("Wrapped with rate limited test decorator.");*/
+        }
+
+        // If a parallelism has been set, then wrap the test in a parallel suite test decorator. This must also be
+        // applied directly to the suite as it runs the underlying tests itself.
+        if (parallelism != null)
+        {
+            // The test methods run on the threads of the pool, not the test threads, so the pool is the only source of
+            // concurrency, and the test threads options cannot be applied to them.
+            if (((threads != null) && (MathUtils.maxInArray(threads) > 1)) || (placement != null) || virtualThreads)
+            {
+                throw new IllegalArgumentException(
+                    "The test methods cannot be run in parallel with more than one test thread, placed threads or " +
+                    "virtual threads.");
+            }
+
+            parallelSuite = new ParallelSuiteTestDecorator(targetTest, parallelism);
+            targetTest = parallelSuite;
+            /*log.debug("Wrapped with parallel suite test decorator.");*/
+        }
+
+        // An adaptive sweep can only refine size parameters that have been set.
+        if ((adaptiveBudget != null) && (params == null))
+        {
+            throw new IllegalArgumentException("An adaptive sweep can only be used when size parameters are set.");
+        }
+
+        // An adaptive sweep picks the next size from the timings of the last one, so it can only be run on a single
+        // test thread, as the size is set on the test result that all of the test threads share.
+        if ((adaptiveBudget != null) && (threads != null) && (MathUtils.maxInArray(threads) > 1))
+        {
+            throw new IllegalArgumentException("An adaptive sweep can only be used with a single test thread.");
+        }
+
         // If size parameter values have been set, then wrap the test in an asymptotic test decorator.
         if (params != null)
         {
-            targetTest = new AsymptoticTestDecorator(targetTest, params, (repetitions == null) ? 1 : repetitions);
+            AsymptoticTestDecorator asymptoticTest =
+                new AsymptoticTestDecorator(targetTest, params, (repetitions == null) ? 1 : repetitions);
+            targetTest = asymptoticTest;
+
+            // Refine the size parameters adaptively, if a budget has been set for it.
+            if (adaptiveBudget != null)
+            {
+                asymptoticTest.setAdaptiveSweep(adaptiveBudget, AdaptiveSequence.DEFAULT_THRESHOLD);
+            }
+
             /*log.debug("Wrapped with asymptotic test decorator.");*/
             /*log.debug("targetTest = " + targetTest);*/
         }
@@ -542,12 +1173,34 @@ public class TKTestRunner extends TestRunnerImprovedErrorHandling
             DurationTestDecorator durationTest = new DurationTestDecorator(targetTest, duration);
             targetTest = durationTest;
 
+            // Run a warm-up before the test duration, if one has been set. When detecting steady state with no
+            // warm-up set, wait for up to the test duration for it.
+            if (warmupDuration != null)
+            {
+                durationTest.setWarmupDuration(warmupDuration);
+            }
+            else if ((steadyStateThreshold != null) && (warmupIterations == null))
+            {
+                durationTest.setWarmupDuration(duration);
+            }
+
+            if (warmupIterations != null)
+            {
+                durationTest.setWarmupIterations(warmupIterations);
+            }
+
             /*log.debug("Wrapped with duration test decorator.");*/
             /*log.debug("targetTest = " + targetTest);*/
 
             registerShutdownHook(durationTest);
         }
 
+        // A warm-up can only be run ahead of a test duration.
+        else if ((warmupDuration != null) || (warmupIterations != null) || (steadyStateThreshold != null))
+        {
+            throw new IllegalArgumentException("A warm-up can only be used when a test duration is set.");
+        }
+
         // ParameterVariationTestDecorator...
 
         // If a test thread concurrency level is set then wrap the test in a scaled test decorator. This will wrap on
@@ -569,12 +1222,73 @@ public class TKTestRunner extends TestRunnerImprovedErrorHandling
             /*log.debug("targetTest = " + targetTest);*/
         }
 
+        // Run the tests on virtual threads, if requested.
+        scaledDecorator.setVirtualThreads(virtualThreads);
+
+        // Pin the test threads to cores, if a placement policy has been set. Virtual threads cannot be pinned.
+        if (placement != null)
+        {
+            if (virtualThreads)
+            {
+                throw new IllegalArgumentException(
+                    "Test threads cannot be placed on cores when running as virtual threads.");
+            }
+
+            scaledDecorator.setThreadFactory(new AffinityThreadFactory(placement));
+        }
+
         // Register the scaled test decorators shutdown hook.
         registerShutdownHook(scaledDecorator);
 
         return targetTest;
     }
 
+    /**
+     * Wraps the tests in a decorator that runs them in child JVMs, either one for the whole test class, or one for each
+     * test method. The child JVMs apply all of the other test decorators themselves.
+     *
+     * @param  test The test to run in child JVMs.
+     *
+     * @return The decorated test.
+     */
+    protected WrappedSuiteTestDecorator forkTests(Test test)
+    {
+        WrappedSuiteTestDecorator targetTest =
+            (test instanceof WrappedSuiteTestDecorator) ? (WrappedSuiteTestDecorator) test
+                                                        : new WrappedSuiteTestDecorator((TestSuite) test);
+
+        return new ForkedTestDecorator(targetTest, jvmFlags, forkArguments, "method".equals(forkMode));
+    }
+
+    /**
+     * Selects a single test method out of a suite, including from any suites nested within it.
+     *
+     * @param  suite      The suite to select the test method from.
+     * @param  methodName The name of the test method to select.
+     *
+     * @return A suite of the tests of the suite that run the named test method.
+     */
+    protected static TestSuite selectTestMethod(TestSuite suite, String methodName)
+    {
+        TestSuite result = new TestSuite(suite.getName());
+
+        for (int i = 0; i < suite.testCount(); i++)
+        {
+            Test nextTest = suite.testAt(i);
+
+            if (nextTest instanceof TestSuite)
+            {
+                result.addTest(selectTestMethod((TestSuite) nextTest, methodName));
+            }
+            else if ((nextTest instanceof TestCase) && methodName.equals(((TestCase) nextTest).getName()))
+            {
+                result.addTest(nextTest);
+            }
+        }
+
+        return result;
+    }
+
     /**
      * If there were any user specified test decorators on the command line, this method instantiates them and wraps the
      * test in them, from inner-most to outer-most in the order in which the decorators were supplied on the command
@@ -606,6 +1320,53 @@ public class TKTestRunner extends TestRunnerImprovedErrorHandling
         /*log.debug("protected TestResult createTestResult(): called");*/
 
         TKTestResult result = new TKTestResult(delay, testCaseName);
+        result.setHistogramMode(histogramMode);
+        result.setRecordCores(placement != null);
+
+        // When running the tests in child JVMs, the warm-up, garbage collections and harness baseline are all handled
+        // by the children. Complexity fits are worked out here, from the results that the children stream back.
+        if ((steadyStateThreshold != null) && (forkMode == null))
+        {
+            result.setSteadyStateDetector(new SteadyStateDetector(steadyStateThreshold));
+        }
+
+        GcPauseMonitor gcPauseMonitor = null;
+
+        if (gcMonitoring && (forkMode == null))
+        {
+            gcPauseMonitor = new GcPauseMonitor();
+            gcPauseMonitor.start();
+            result.setGcPauseMonitor(gcPauseMonitor);
+        }
+
+        if (complexityFitting)
+        {
+            result.setComplexityFitter(new ComplexityFitter());
+        }
+
+        // Measure the harness overhead at each concurrency level, on test threads of the same kind as the tests run on.
+        // The empty tests used to measure it are run through a test result of their own, with the same listeners as
+        // this one, but discarding what they are told, so that the overhead includes that of reporting the tests.
+        if (baselineCorrection && (forkMode == null))
+        {
+            int[] concurrencyLevels = (threads == null) ? new int[] { 1 } : threads;
+            BaselineCalibrator calibrator =
+                new BaselineCalibrator(createCalibrationResult(gcPauseMonitor), createThreadFactory(),
+                    BaselineCalibrator.DEFAULT_ITERATIONS);
+
+            result.setHarnessBaseline(calibrator.calibrate(concurrencyLevels));
+        }
+
+        // When running as a child JVM, write all test results back to the parent runner.
+        if (forkedOutput != null)
+        {
+            BinaryTestListener listener = new BinaryTestListener(new BufferedOutputStream(forkedOutput));
+            result.addListener(listener);
+            result.addTKTestListener(listener);
+
+            // Register the results listeners shutdown hook to flush the last of the results when this JVM exits.
+            registerShutdownHook(listener);
+        }
 
         // Check if a directory to output reports to has been specified and attach test listeners if so.
         if (reportDir != null)
@@ -665,7 +1426,13 @@ public class TKTestRunner extends TestRunnerImprovedErrorHandling
                     throw new IllegalStateException("Unable to create the log file to write test results to: " + e, e);
                 }
 
-                CSVTestListener listener = new CSVTestListener(timingsWriter);
+                CSVTestListener listener = new CSVTestListener(timingsWriter, asyncCsvResults);
+
+                if (cellStatistics)
+                {
+                    listener.setCellStatistics(new CellStatistics());
+                }
+
                 result.addListener(listener);
                 result.addTKTestListener(listener);
 
@@ -674,6 +1441,62 @@ public class TKTestRunner extends TestRunnerImprovedErrorHandling
                 registerShutdownHook(listener);
             }
 
+            // Set up a binary results listener to record the timings to a binary file, if requested on the command line.
+            if (binaryResults)
+            {
+                BinaryTestListener listener;
+
+                try
+                {
+                    // DateFormat is not synchronized so just to be sure synchronize on it.
+                    synchronized (TIME_STAMP_FORMAT)
+                    {
+                        File timingsFile =
+                            new File(reportDirFile,
+                                testRunName + "-" + TIME_STAMP_FORMAT.format(new Date()) + "-timings.bin");
+                        listener = new BinaryTestListener(timingsFile);
+                    }
+                }
+                catch (IOException e)
+                {
+                    throw new IllegalStateException("Unable to create the file to write test results to: " + e, e);
+                }
+
+                result.addListener(listener);
+                result.addTKTestListener(listener);
+
+                // Register the results listeners shutdown hook to close its file when the test framework is shutdown.
+                registerShutdownHook(listener);
+            }
+
+            // Set up a time series listener to output the test results per interval, if requested on the command line.
+            if (timeSeriesInterval != null)
+            {
+                try
+                {
+                    // DateFormat is not synchronized so just to be sure synchronize on it.
+                    synchronized (TIME_STAMP_FORMAT)
+                    {
+                        File timeSeriesFile =
+                            new File(reportDirFile,
+                                testRunName + "-" + TIME_STAMP_FORMAT.format(new Date()) + "-timeseries.csv");
+                        timingsWriter = new BufferedWriter(new FileWriter(timeSeriesFile), 20000);
+                    }
+                }
+                catch (IOException e)
+                {
+                    throw new IllegalStateException("Unable to create the log file to write test results to: " + e, e);
+                }
+
+                TimeSeriesTestListener listener = new TimeSeriesTestListener(timingsWriter, timeSeriesInterval);
+                result.addListener(listener);
+                result.addTKTestListener(listener);
+
+                // Register the results listeners shutdown hook to write out the last interval if the test framework is
+                // shutdown prematurely.
+                registerShutdownHook(listener);
+            }
+
             // Register the results listeners shutdown hook to flush its data if the test framework is shutdown
             // prematurely.
             // registerShutdownHook(listener);
@@ -689,6 +1512,93 @@ public class TKTestRunner extends TestRunnerImprovedErrorHandling
         return result;
     }
 
+    /**
+     * Creates the test result to measure the harness baseline through. This is set up in the same way as the test
+     * result for the tests, with the same kinds of listeners, except that the listeners write to a
+     * {@link BaselineCalibrator.DiscardingWriter} or {@link BaselineCalibrator.DiscardingOutputStream}. The console
+     * feedback listener is left out, so that the empty tests do not show up on the console.
+     *
+     * @param  gcPauseMonitor The garbage collection monitor of the test result for the tests, may be <tt>null</tt>.
+     *
+     * @return The test result to measure the harness baseline through.
+     */
+    protected TKTestResult createCalibrationResult(GcPauseMonitor gcPauseMonitor)
+    {
+        TKTestResult result = new TKTestResult(delay, testCaseName);
+        result.setHistogramMode(histogramMode);
+        result.setRecordCores(placement != null);
+        result.setGcPauseMonitor(gcPauseMonitor);
+
+        List<TKTestListener> listeners = new ArrayList<TKTestListener>();
+
+        if (forkedOutput != null)
+        {
+            listeners.add(new BinaryTestListener(new BaselineCalibrator.DiscardingOutputStream()));
+        }
+
+        if (reportDir != null)
+        {
+            if (xmlResults)
+            {
+                listeners.add(new XMLTestListener(new BaselineCalibrator.DiscardingWriter(), currentTestClassName));
+            }
+
+            if (csvResults)
+            {
+                CSVTestListener listener =
+                    new CSVTestListener(new BaselineCalibrator.DiscardingWriter(), asyncCsvResults);
+
+                if (cellStatistics)
+                {
+                    listener.setCellStatistics(new CellStatistics());
+                }
+
+                listeners.add(listener);
+            }
+
+            if (binaryResults)
+            {
+                listeners.add(new BinaryTestListener(new BaselineCalibrator.DiscardingOutputStream()));
+            }
+
+            if (timeSeriesInterval != null)
+            {
+                listeners.add(new TimeSeriesTestListener(new BaselineCalibrator.DiscardingWriter(),
+                        timeSeriesInterval));
+            }
+        }
+
+        for (TKTestListener listener : listeners)
+        {
+            result.addListener(listener);
+            result.addTKTestListener(listener);
+        }
+
+        return result;
+    }
+
+    /**
+     * Creates a thread factory for threads of the same kind as the test threads; virtual threads, threads placed on
+     * cores, or plain threads.
+     *
+     * @return A thread factory for threads of the same kind as the test threads.
+     */
+    protected ThreadFactory createThreadFactory()
+    {
+        if (virtualThreads)
+        {
+            return new VirtualThreadFactory();
+        }
+        else if (placement != null)
+        {
+            return new AffinityThreadFactory(placement);
+        }
+        else
+        {
+            return new DefaultThreadFactory();
+        }
+    }
+
     /**
      * Registers the shutdown hook of a {@link ShutdownHookable}.
      *
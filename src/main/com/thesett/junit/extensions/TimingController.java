@@ -115,7 +115,8 @@ public interface TimingController
     TimingController getControllerForCurrentThread();
 
     /**
-     * Suspends the test timer.
+     * Suspends the test timer. Suspends may be nested, in which case the timer only continues once every suspend has
+     * been matched by a resume. Time spent suspended is excluded from the test timing and reported separately.
      *
      * @return The current time in nanoseconds.
      */
@@ -125,6 +126,8 @@ public interface TimingController
      * Allows the test timer to continue running after a suspend.
      *
      * @return The current time in nanoseconds.
+     *
+     * @throws IllegalStateException If the timer is not suspended.
      */
     long resume();
 
@@ -170,4 +173,24 @@ public interface TimingController
      *                              indicate to the test method that it should stop immediately.
      */
     void completeTest(boolean testPassed, int param, long timeNanos) throws InterruptedException;
+
+    /**
+     * Register an additional pass/fail for the current test, that was scheduled to start at an intended time but may
+     * have actually started later. This is for tests that are run at a fixed rate, where a stall in the system under
+     * test delays the start of the following tests. Timing such tests from their actual start times omits that delay,
+     * which callers arriving at the fixed rate would have seen, so the timing is registered from the intended start
+     * time up to now. The timing from the actual start time is also registered, as the uncorrected timing. The
+     * scheduled start times of throttled tests can be obtained from
+     * {@link com.thesett.common.throttle.Throttle#getScheduledTimeNanos()}.
+     *
+     * @param  testPassed         Whether or not this timing is for a test pass or fail.
+     * @param  param              The test parameter size for parameterized tests.
+     * @param  intendedStartNanos The time in nano seconds at which the test was scheduled to start.
+     * @param  actualStartNanos   The time in nano seconds at which the test actually started.
+     *
+     * @throws InterruptedException If the test runner decides that testing should stop it throws this exception to
+     *                              indicate to the test method that it should stop immediately.
+     */
+    void completeScheduledTest(boolean testPassed, int param, long intendedStartNanos, long actualStartNanos)
+        throws InterruptedException;
 }
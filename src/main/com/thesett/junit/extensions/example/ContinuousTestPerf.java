@@ -62,6 +62,11 @@ import com.thesett.junit.extensions.TimingControllerAware;
  * event arrival rate, and processing time, and provides statistics on the throughput and latency of events passing
  * through this queueing system.
  *
+ * <p/>Events are timed from the time at which the writer throttle scheduled them to arrive, rather than the time at
+ * which they were actually put on the buffer, using {@link TimingController#completeScheduledTest}. When the buffer
+ * fills up, the writer is held up, and the following events arrive late. Timing from the actual arrival times would
+ * omit this delay, which a steady stream of real arrivals would have experienced.
+ *
  * <p/>One thing to note, is that the {@link TimingController} for the test thread, is set in the per-thread test
  * fixture, during the {@link #threadSetUp()} method. This is because the timing call-backs are made by the reader
  * thread, which is a different thread to the one which the test framework calls the test method from. So long as the
@@ -121,7 +126,12 @@ public class ContinuousTestPerf extends TestCase implements TimingControllerAwar
             try
             {
                 threadFixture.writerThrottle.throttle();
-                threadFixture.buffer.put(System.nanoTime());
+
+                Event event = new Event();
+                event.scheduledTime = threadFixture.writerThrottle.getScheduledTimeNanos();
+                event.arrivalTime = System.nanoTime();
+
+                threadFixture.buffer.put(event);
             }
             catch (InterruptedException e)
             {
@@ -169,7 +179,7 @@ public class ContinuousTestPerf extends TestCase implements TimingControllerAwar
     {
         // Initialize the per thread fixture for the test.
         PerThreadFixture threadFixture = new PerThreadFixture();
-        threadFixture.buffer = new LinkedBlockingQueue<Long>(BUFFER_SIZE);
+        threadFixture.buffer = new LinkedBlockingQueue<Event>(BUFFER_SIZE);
         threadFixture.writerThrottle = new SleepThrottle();
         threadFixture.writerThrottle.setRate(ARRIVAL_RATE);
         threadFixture.readerThrottle = new SleepThrottle();
@@ -193,7 +203,7 @@ public class ContinuousTestPerf extends TestCase implements TimingControllerAwar
     private static class PerThreadFixture
     {
         /** Holds the producer/consumer buffer. */
-        BlockingQueue<Long> buffer;
+        BlockingQueue<Event> buffer;
 
         /** Holds the throttle for the producer to control the arrival rate. */
         Throttle writerThrottle;
@@ -208,6 +218,16 @@ public class ContinuousTestPerf extends TestCase implements TimingControllerAwar
         TimingController timingController;
     }
 
+    /** Event is an event passed over the producer/consumer buffer, with its scheduled and actual arrival times. */
+    private static class Event
+    {
+        /** Holds the time at which the event was scheduled to arrive. */
+        long scheduledTime;
+
+        /** Holds the time at which the event actually arrived. */
+        long arrivalTime;
+    }
+
     /**
      * Reader implements a continous read cycle, that consumes events from the test buffer, and logs them as latency
      * timings.
@@ -246,15 +266,14 @@ public class ContinuousTestPerf extends TestCase implements TimingControllerAwar
             {
                 try
                 {
-                    long start = threadFixture.buffer.take();
+                    Event event = threadFixture.buffer.take();
 
                     // Simulate processing time on the taken event.
                     threadFixture.readerThrottle.throttle();
 
-                    // Log the full events wait plus processing time latency.
-                    long now = System.nanoTime();
-
-                    threadFixture.timingController.completeTest(true, 1, now - start);
+                    // Log the full events wait plus processing time latency, from its scheduled arrival time.
+                    threadFixture.timingController.completeScheduledTest(true, 1, event.scheduledTime,
+                        event.arrivalTime);
                 }
                 catch (InterruptedException e)
                 {
@@ -0,0 +1,414 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions.jmh;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import com.thesett.common.properties.ParsedProperties;
+import com.thesett.common.util.CommandLineParser;
+import com.thesett.junit.extensions.AsymptoticTestCase;
+import com.thesett.junit.extensions.TestThreadAware;
+import com.thesett.junit.extensions.TimingControllerAware;
+import com.thesett.junit.extensions.util.MathUtils;
+
+/**
+ * JmhBenchmarkGenerator generates the source of JMH benchmarks from toolkit test classes, so that the same performance
+ * tests can be run under JMH as under the {@link com.thesett.junit.extensions.TKTestRunner}, and the results compared.
+ * A benchmark class is generated for a test class, in the same package, with a benchmark method for each test method
+ * and each concurrency level. The toolkit test settings are mapped onto JMH as follows:
+ *
+ * <pre><p/><table>
+ * <tr><td> -s sizes <td> The size parameter n, passed to {@link AsymptoticTestCase}s, becomes a JMH <tt>@Param</tt>.
+ * <tr><td> -c levels <td> Each concurrency level becomes a benchmark method with that many JMH <tt>@Threads</tt>.
+ * <tr><td> {@link TestThreadAware} <td> The per thread setup and tear down are called from a thread scoped JMH state,
+ *                                      at <tt>Level.Trial</tt>.
+ * <tr><td> {@link TimingControllerAware} <td> Tests are given a {@link JmhTimingController}, which ignores all timing
+ *                                          control, as JMH times each invocation as a whole.
+ * </table></pre>
+ *
+ * <p/>Each benchmark invocation runs the test method through {@link TestCase#runBare}, including its setUp and
+ * tearDown and the reflective invocation of the test method, which is the same work that the toolkit times for each
+ * test. The generated benchmarks report the average time per invocation in nanoseconds, which
+ * {@link JmhResultConverter} turns back into toolkit results.
+ *
+ * <p/>The generated source depends on the JMH annotations, and is meant to be compiled in a JMH build, with the
+ * toolkit and the test classes on its class path. The generator can be run from the command line:
+ *
+ * <pre>
+ * java com.thesett.junit.extensions.jmh.JmhBenchmarkGenerator -s [1:1000]:samples=4 -c [1:4] my.TestPerf src/jmh
+ * </pre>
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities <th> Collaborations
+ * <tr><td> Find the test methods of a test class.
+ * <tr><td> Generate JMH benchmark source for the test methods, sizes and concurrency levels.
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class JmhBenchmarkGenerator
+{
+    /** The suffix appended to the test class name to name the generated benchmark class. */
+    public static final String CLASS_SUFFIX = "JmhBenchmark";
+
+    /** The suffix, followed by the number of threads, appended to benchmark method names for each concurrency level. */
+    public static final String THREADS_SUFFIX = "_threads";
+
+    /**
+     * Generates a benchmark class for a test class.
+     *
+     * @param args The command line, the optional -s and -c options, the test class and the source directory.
+     */
+    public static void main(String[] args)
+    {
+        // Use the command line parser to evaluate the command line.
+        CommandLineParser commandLine =
+            new CommandLineParser(
+                new String[][]
+                {
+                    { "c", "The concurrency levels to benchmark at.", "num", "false", MathUtils.SEQUENCE_REGEXP },
+                    { "s", "The size parameters to benchmark with.", "size", "false", MathUtils.SEQUENCE_REGEXP },
+                    { "1", "Test class.", "class", "true" },
+                    { "2", "The source directory to write the benchmark to.", "dir", "true" }
+                });
+
+        // Capture the command line arguments or display errors and correct usage and then exit.
+        ParsedProperties options = null;
+
+        try
+        {
+            options = new ParsedProperties(commandLine.parseCommandLine(args));
+        }
+        catch (IllegalArgumentException e)
+        {
+            System.out.println(commandLine.getErrors());
+            System.out.println(commandLine.getUsage());
+            System.exit(1);
+        }
+
+        String threadsString = options.getProperty("c");
+        String paramsString = options.getProperty("s");
+
+        int[] threads = (threadsString == null) ? new int[] { 1 } : MathUtils.parseSequence(threadsString);
+        int[] params = (paramsString == null) ? new int[] { 1 } : MathUtils.parseSequence(paramsString);
+
+        try
+        {
+            Class<?> testClass = Class.forName(options.getProperty("1"));
+            File sourceDir = new File(options.getProperty("2"));
+            File sourceFile = new JmhBenchmarkGenerator().generate(testClass, params, threads, sourceDir);
+
+            System.out.println("Generated " + sourceFile);
+        }
+        catch (ClassNotFoundException e)
+        {
+            System.err.println("The test class could not be found: " + e.getMessage());
+            System.exit(1);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Unable to write the benchmark source: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Generates the source of a benchmark class for a test class, under a source directory.
+     *
+     * @param  testClass The test class to generate the benchmark class for.
+     * @param  params    The size parameters to benchmark with.
+     * @param  threads   The concurrency levels to benchmark at.
+     * @param  sourceDir The source directory to write the benchmark class under, by package.
+     *
+     * @return The file that the benchmark source was written to.
+     *
+     * @throws IOException If the benchmark source cannot be written.
+     */
+    public File generate(Class<?> testClass, int[] params, int[] threads, File sourceDir) throws IOException
+    {
+        String packageName = (testClass.getPackage() == null) ? "" : testClass.getPackage().getName();
+        File packageDir = "".equals(packageName) ? sourceDir : new File(sourceDir, packageName.replace('.', '/'));
+
+        if (!packageDir.exists() && !packageDir.mkdirs())
+        {
+            throw new IOException("Unable to create the directory " + packageDir + ".");
+        }
+
+        File sourceFile = new File(packageDir, testClass.getSimpleName() + CLASS_SUFFIX + ".java");
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(sourceFile)));
+
+        try
+        {
+            generate(testClass, params, threads, writer);
+        }
+        finally
+        {
+            writer.close();
+        }
+
+        return sourceFile;
+    }
+
+    /**
+     * Generates the source of a benchmark class for a test class.
+     *
+     * @param testClass The test class to generate the benchmark class for.
+     * @param params    The size parameters to benchmark with.
+     * @param threads   The concurrency levels to benchmark at.
+     * @param out       The writer to write the benchmark source to.
+     */
+    public void generate(Class<?> testClass, int[] params, int[] threads, PrintWriter out)
+    {
+        if (!TestCase.class.isAssignableFrom(testClass))
+        {
+            throw new IllegalArgumentException("The class " + testClass.getName() + " is not a TestCase.");
+        }
+
+        String testClassName = testClass.getSimpleName();
+        String benchmarkClassName = testClassName + CLASS_SUFFIX;
+        boolean asymptotic = AsymptoticTestCase.class.isAssignableFrom(testClass);
+        boolean threadAware = TestThreadAware.class.isAssignableFrom(testClass);
+        boolean controllerAware = TimingControllerAware.class.isAssignableFrom(testClass);
+        boolean namedConstructor = hasNamedConstructor(testClass);
+        Map<String, Method> testMethods = findTestMethods(testClass, asymptotic);
+
+        if (testMethods.isEmpty())
+        {
+            throw new IllegalArgumentException("The class " + testClass.getName() + " has no test methods.");
+        }
+
+        // Write out the package and imports.
+        if (testClass.getPackage() != null)
+        {
+            out.println("package " + testClass.getPackage().getName() + ";");
+            out.println();
+        }
+
+        out.println("import java.util.concurrent.TimeUnit;");
+        out.println();
+        out.println("import org.openjdk.jmh.annotations.Benchmark;");
+        out.println("import org.openjdk.jmh.annotations.BenchmarkMode;");
+        out.println("import org.openjdk.jmh.annotations.Level;");
+        out.println("import org.openjdk.jmh.annotations.Mode;");
+        out.println("import org.openjdk.jmh.annotations.OutputTimeUnit;");
+
+        if (asymptotic)
+        {
+            out.println("import org.openjdk.jmh.annotations.Param;");
+        }
+
+        out.println("import org.openjdk.jmh.annotations.Scope;");
+        out.println("import org.openjdk.jmh.annotations.Setup;");
+        out.println("import org.openjdk.jmh.annotations.State;");
+        out.println("import org.openjdk.jmh.annotations.TearDown;");
+        out.println("import org.openjdk.jmh.annotations.Threads;");
+        out.println();
+
+        // Write out the benchmark class and its state, which is per thread so that each thread has its own test.
+        out.println("/**");
+        out.println(" * JMH benchmarks for {@link " + testClassName + "}, generated by " +
+            JmhBenchmarkGenerator.class.getName() + ".");
+        out.println(" */");
+        out.println("@State(Scope.Thread)");
+        out.println("@BenchmarkMode(Mode.AverageTime)");
+        out.println("@OutputTimeUnit(TimeUnit.NANOSECONDS)");
+        out.println("public class " + benchmarkClassName);
+        out.println("{");
+
+        if (asymptotic)
+        {
+            out.println("    /** The size parameter to pass to the test. */");
+            out.print("    @Param({ ");
+
+            for (int i = 0; i < params.length; i++)
+            {
+                out.print(((i > 0) ? ", " : "") + "\"" + params[i] + "\"");
+            }
+
+            out.println(" })");
+            out.println("    public int n;");
+            out.println();
+        }
+
+        // Write out a test for each test method, as tests run the test method that they were created for, which cannot
+        // be changed afterwards.
+        for (String methodName : testMethods.keySet())
+        {
+            out.println("    /** The test of {@link " + testClassName + "#" + methodName +
+                "}, one per benchmark thread. */");
+            out.println("    private " + testClassName + " " + testFieldName(methodName) + ";");
+            out.println();
+        }
+
+        // Write out the per thread setup and tear down.
+        out.println("    /** Creates the tests for this benchmark thread, and calls their per thread setup. */");
+        out.println("    @Setup(Level.Trial)");
+        out.println("    public void setUpTrial()");
+        out.println("    {");
+
+        for (String methodName : testMethods.keySet())
+        {
+            String test = testFieldName(methodName);
+
+            // Create the test through its constructor that takes a test name, if it has one.
+            if (namedConstructor)
+            {
+                out.println("        " + test + " = new " + testClassName + "(\"" + methodName + "\");");
+            }
+            else
+            {
+                out.println("        " + test + " = new " + testClassName + "();");
+                out.println("        " + test + ".setName(\"" + methodName + "\");");
+            }
+
+            if (controllerAware)
+            {
+                out.println("        " + test + ".setTimingController(new " + JmhTimingController.class.getName() +
+                    "());");
+            }
+
+            if (threadAware)
+            {
+                out.println("        " + test + ".threadSetUp();");
+            }
+        }
+
+        out.println("    }");
+        out.println();
+        out.println("    /** Calls the per thread tear down of the tests for this benchmark thread. */");
+        out.println("    @TearDown(Level.Trial)");
+        out.println("    public void tearDownTrial()");
+        out.println("    {");
+
+        if (threadAware)
+        {
+            for (String methodName : testMethods.keySet())
+            {
+                out.println("        " + testFieldName(methodName) + ".threadTearDown();");
+            }
+        }
+
+        out.println("    }");
+
+        // Write out a benchmark method for each test method and concurrency level.
+        for (String methodName : testMethods.keySet())
+        {
+            for (int level : threads)
+            {
+                String benchmarkName = (threads.length > 1) ? (methodName + THREADS_SUFFIX + level) : methodName;
+
+                out.println();
+                out.println("    /**");
+                out.println("     * Runs {@link " + testClassName + "#" + methodName + "} on " + level + " thread" +
+                    ((level == 1) ? "" : "s") + ".");
+                out.println("     *");
+                out.println("     * @throws Throwable Any failure of the test is allowed to fall through.");
+                out.println("     */");
+                out.println("    @Benchmark");
+                out.println("    @Threads(" + level + ")");
+                out.println("    public void " + benchmarkName + "() throws Throwable");
+                out.println("    {");
+                if (asymptotic)
+                {
+                    out.println("        " + testFieldName(methodName) + ".setN(n);");
+                }
+
+                out.println("        " + testFieldName(methodName) + ".runBare();");
+                out.println("    }");
+            }
+        }
+
+        out.println("}");
+        out.flush();
+    }
+
+    /**
+     * Works out the name of the field in a generated benchmark that holds the test of a test method.
+     *
+     * @param  methodName The name of the test method.
+     *
+     * @return The name of the field that holds the test of the test method.
+     */
+    private static String testFieldName(String methodName)
+    {
+        return methodName + "Test";
+    }
+
+    /**
+     * Checks if a test class has a public constructor that takes the test name.
+     *
+     * @param  testClass The test class to check.
+     *
+     * @return <tt>true</tt> if the test class has a public constructor that takes the test name.
+     */
+    private static boolean hasNamedConstructor(Class<?> testClass)
+    {
+        try
+        {
+            testClass.getConstructor(String.class);
+
+            return true;
+        }
+        catch (NoSuchMethodException e)
+        {
+            // The test must be created through its default constructor instead. Exception noted and ignored.
+            e = null;
+
+            return false;
+        }
+    }
+
+    /**
+     * Finds the test methods of a test class, by name. These are the public methods with names starting with "test",
+     * that take no arguments, or for asymptotic tests, that take a single int size parameter.
+     *
+     * @param  testClass  The test class to find the test methods of.
+     * @param  asymptotic <tt>true</tt> if the test class is an asymptotic test case.
+     *
+     * @return The test methods, in order of their names.
+     */
+    private static Map<String, Method> findTestMethods(Class<?> testClass, boolean asymptotic)
+    {
+        Map<String, Method> result = new TreeMap<String, Method>();
+
+        for (Method method : testClass.getMethods())
+        {
+            Class<?>[] parameterTypes = method.getParameterTypes();
+
+            boolean testSignature =
+                (parameterTypes.length == 0) ||
+                (asymptotic && (parameterTypes.length == 1) && (parameterTypes[0] == int.class));
+
+            if (method.getName().startsWith("test") && testSignature && !Modifier.isStatic(method.getModifiers()) &&
+                    (method.getReturnType() == void.class))
+            {
+                result.put(method.getName(), method);
+            }
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions.jmh;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+
+import com.thesett.junit.extensions.listeners.BinaryResultConverter;
+import com.thesett.junit.extensions.listeners.BinaryResultReader;
+
+/**
+ * JmhResultConverter exports the JSON results written by JMH to the same CSV or XML formats that
+ * {@link BinaryResultConverter} exports toolkit results to, so that JMH benchmarks and toolkit performance tests can
+ * be compared side by side. See {@link JmhResultReader} for how the JMH results are mapped onto toolkit results.
+ *
+ * <p/>The converter can be run from the command line:
+ *
+ * <pre>
+ * java com.thesett.junit.extensions.jmh.JmhResultConverter jmh-result.json results.csv
+ * java com.thesett.junit.extensions.jmh.JmhResultConverter --xml jmh-result.json results.xml
+ * </pre>
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities <th> Collaborations
+ * <tr><td> Read JMH JSON results files. <td> {@link JmhResultReader}
+ * <tr><td> Export JMH results to CSV or JUnit XML. <td> {@link BinaryResultConverter}
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class JmhResultConverter extends BinaryResultConverter
+{
+    /**
+     * Converts a JMH JSON results file to CSV or XML.
+     *
+     * @param args The command line, --xml optionally, followed by the JMH results file and the file to write to.
+     */
+    public static void main(String[] args)
+    {
+        boolean xml = (args.length > 0) && "--xml".equals(args[0]);
+        int first = xml ? 1 : 0;
+
+        if (args.length != (first + 2))
+        {
+            System.out.println("Usage: JmhResultConverter [--xml] <JMH JSON results file> <output file>");
+            System.exit(1);
+        }
+
+        try
+        {
+            Writer writer = new BufferedWriter(new FileWriter(args[first + 1]), 20000);
+            JmhResultConverter converter = new JmhResultConverter();
+
+            if (xml)
+            {
+                converter.toXml(new File(args[first]), writer);
+            }
+            else
+            {
+                converter.toCsv(new File(args[first]), writer);
+            }
+
+            writer.close();
+        }
+        catch (IOException e)
+        {
+            System.err.println("Unable to convert the JMH results file: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads all of the results in a JMH JSON results file, passing them to a handler.
+     *
+     * @param  jmhFile The JMH JSON results file.
+     * @param  handler The handler to pass the results to.
+     *
+     * @throws IOException If the JMH results file cannot be read, or is not a JMH JSON results file.
+     */
+    protected void read(File jmhFile, BinaryResultReader.EntryHandler handler) throws IOException
+    {
+        InputStream in = new FileInputStream(jmhFile);
+
+        try
+        {
+            new JmhResultReader().read(in, handler);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
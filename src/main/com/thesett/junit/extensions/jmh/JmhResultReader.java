@@ -0,0 +1,605 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions.jmh;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.thesett.junit.extensions.listeners.BinaryResultReader;
+import com.thesett.junit.extensions.listeners.BinaryTestListener;
+
+/**
+ * JmhResultReader reads the JSON results written by JMH, with <tt>-rf json</tt>, and passes them to a handler in the
+ * same way as {@link BinaryResultReader} passes on binary toolkit results, so that they can be exported to the
+ * toolkit CSV or XML formats, and compared with the results of the toolkit.
+ *
+ * <p/>Each iteration score of each JMH fork is passed on as a test result, with its time per operation in nanoseconds.
+ * Average time, single shot and throughput scores are all converted to a time per operation. The JMH thread count is
+ * passed on as the concurrency level, the JMH parameter 'n' as the size parameter, and the fork number is given in
+ * place of the thread id. Where JMH was run with its GC profiler, the normalized allocation rate is passed on as the
+ * memory used by the test. A new batch is started each time that the thread count changes, as the toolkit starts a
+ * new batch for each concurrency level.
+ *
+ * <p/>The benchmark names of benchmarks generated by {@link JmhBenchmarkGenerator} are mapped back onto the names of
+ * the test classes and methods that they were generated from.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities <th> Collaborations
+ * <tr><td> Parse JMH JSON results.
+ * <tr><td> Convert JMH scores to test timings.
+ * <tr><td> Pass each test result and batch to a handler. <td> {@link BinaryResultReader.EntryHandler}
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class JmhResultReader
+{
+    /** The name of the JMH parameter that is passed on as the size parameter. */
+    public static final String SIZE_PARAM = "n";
+
+    /** The name of the JMH secondary metric that holds the normalized allocation rate. */
+    private static final String ALLOCATION_METRIC = "\u00b7gc.alloc.rate.norm";
+
+    /** Holds the JSON being parsed. */
+    private String json;
+
+    /** Holds the parse position within the JSON. */
+    private int pos;
+
+    /**
+     * Reads all of the results from JMH JSON results, passing them to a handler. The input is not closed.
+     *
+     * @param  input   The JMH JSON results to read.
+     * @param  handler The handler to pass the results to.
+     *
+     * @throws IOException If the results cannot be read, are not JMH JSON results, or the handler fails.
+     */
+    public void read(InputStream input, BinaryResultReader.EntryHandler handler) throws IOException
+    {
+        // Read the whole of the JSON in, and parse it.
+        Reader reader = new InputStreamReader(input, BinaryTestListener.UTF8);
+        StringBuilder buffer = new StringBuilder();
+        char[] chars = new char[8192];
+
+        for (int read = reader.read(chars); read != -1; read = reader.read(chars))
+        {
+            buffer.append(chars, 0, read);
+        }
+
+        json = buffer.toString();
+        pos = 0;
+
+        Object results = parseValue();
+
+        if (!(results instanceof List))
+        {
+            throw new IOException("Not JMH JSON results, expected an array of benchmarks.");
+        }
+
+        handler.header(0L);
+
+        // Pass on the iteration scores of each benchmark, starting a new batch when the thread count changes.
+        int batchThreads = -1;
+
+        for (Object next : (List<?>) results)
+        {
+            Map<?, ?> benchmark = (Map<?, ?>) next;
+
+            String name = (String) benchmark.get("benchmark");
+            String mode = (String) benchmark.get("mode");
+            int threads = toInt(benchmark.get("threads"), 1);
+
+            Map<?, ?> params = (Map<?, ?>) benchmark.get("params");
+            int n = (params == null) ? 1 : toInt(params.get(SIZE_PARAM), 1);
+
+            Map<?, ?> primaryMetric = (Map<?, ?>) benchmark.get("primaryMetric");
+            String unit = (String) primaryMetric.get("scoreUnit");
+
+            // Take the allocation per operation from the GC profiler, if it was used.
+            long bytes = 0L;
+            Map<?, ?> secondaryMetrics = (Map<?, ?>) benchmark.get("secondaryMetrics");
+
+            if ((secondaryMetrics != null) && (secondaryMetrics.get(ALLOCATION_METRIC) != null))
+            {
+                Object allocation = ((Map<?, ?>) secondaryMetrics.get(ALLOCATION_METRIC)).get("score");
+                bytes = (allocation instanceof Double) ? Math.round((Double) allocation) : 0L;
+            }
+
+            // Map the benchmark name back onto the test class and method.
+            int lastDot = name.lastIndexOf('.');
+            String className = stripClassSuffix(name.substring(0, lastDot));
+            String methodName = stripThreadsSuffix(name.substring(lastDot + 1));
+
+            if (threads != batchThreads)
+            {
+                if (batchThreads != -1)
+                {
+                    handler.batchEnd(0L);
+                }
+
+                handler.batchStart(0L);
+                batchThreads = threads;
+            }
+
+            // Pass on each iteration score of each fork, or the overall score if there are no iteration scores.
+            List<?> rawData = (List<?>) primaryMetric.get("rawData");
+
+            if (rawData == null)
+            {
+                double nanos = toNanosPerOp(toDouble(primaryMetric.get("score")), unit, mode, threads);
+
+                handler.result(className, methodName, BinaryTestListener.PASS, 0L, 1L, Math.round(nanos), bytes, n,
+                    threads);
+
+                continue;
+            }
+
+            for (int fork = 0; fork < rawData.size(); fork++)
+            {
+                for (Object score : (List<?>) rawData.get(fork))
+                {
+                    double nanos = toNanosPerOp(toDouble(score), unit, mode, threads);
+
+                    handler.result(className, methodName, BinaryTestListener.PASS, 0L, fork + 1, Math.round(nanos),
+                        bytes, n, threads);
+                }
+            }
+        }
+
+        if (batchThreads != -1)
+        {
+            handler.batchEnd(0L);
+        }
+    }
+
+    /**
+     * Converts a JMH score to a time per operation in nanoseconds. Scores in time per operation, from average time,
+     * sample or single shot modes, are scaled. Scores in operations per time, from throughput mode, are inverted. JMH
+     * totals the throughput over all of the benchmark threads, so it is divided between them, to give the time per
+     * operation on each thread, as the toolkit measures it.
+     *
+     * @param  score   The JMH score.
+     * @param  unit    The JMH score unit, for example "us/op" or "ops/s".
+     * @param  mode    The JMH mode.
+     * @param  threads The number of benchmark threads.
+     *
+     * @return The time per operation in nanoseconds.
+     *
+     * @throws IOException If the score unit is not a time per operation or operations per time.
+     */
+    private static double toNanosPerOp(double score, String unit, String mode, int threads) throws IOException
+    {
+        int slash = unit.indexOf('/');
+
+        if (slash == -1)
+        {
+            throw new IOException("Unknown JMH score unit " + unit + " in mode " + mode + ".");
+        }
+
+        String numerator = unit.substring(0, slash);
+        String denominator = unit.substring(slash + 1);
+
+        if ("op".equals(denominator))
+        {
+            return score * unitNanos(numerator);
+        }
+        else if ("ops".equals(numerator))
+        {
+            return (score == 0d) ? 0d : ((unitNanos(denominator) * threads) / score);
+        }
+        else
+        {
+            throw new IOException("Unknown JMH score unit " + unit + " in mode " + mode + ".");
+        }
+    }
+
+    /**
+     * Gives the length of a JMH time unit in nanoseconds.
+     *
+     * @param  unit The JMH time unit.
+     *
+     * @return The length of the time unit in nanoseconds.
+     *
+     * @throws IOException If the time unit is not known.
+     */
+    private static double unitNanos(String unit) throws IOException
+    {
+        if ("ns".equals(unit))
+        {
+            return 1d;
+        }
+        else if ("us".equals(unit))
+        {
+            return 1000d;
+        }
+        else if ("ms".equals(unit))
+        {
+            return 1000000d;
+        }
+        else if ("s".equals(unit))
+        {
+            return 1000000000d;
+        }
+        else if ("min".equals(unit))
+        {
+            return 60000000000d;
+        }
+        else
+        {
+            throw new IOException("Unknown JMH time unit " + unit + ".");
+        }
+    }
+
+    /**
+     * Maps a generated benchmark class name back onto the test class name it was generated from.
+     *
+     * @param  className The benchmark class name.
+     *
+     * @return The test class name.
+     */
+    private static String stripClassSuffix(String className)
+    {
+        return className.endsWith(JmhBenchmarkGenerator.CLASS_SUFFIX)
+            ? className.substring(0, className.length() - JmhBenchmarkGenerator.CLASS_SUFFIX.length()) : className;
+    }
+
+    /**
+     * Maps a generated benchmark method name back onto the test method name it was generated from.
+     *
+     * @param  methodName The benchmark method name.
+     *
+     * @return The test method name.
+     */
+    private static String stripThreadsSuffix(String methodName)
+    {
+        int suffix = methodName.lastIndexOf(JmhBenchmarkGenerator.THREADS_SUFFIX);
+
+        if ((suffix != -1) &&
+                methodName.substring(suffix + JmhBenchmarkGenerator.THREADS_SUFFIX.length()).matches("^\\d+$"))
+        {
+            return methodName.substring(0, suffix);
+        }
+
+        return methodName;
+    }
+
+    /**
+     * Converts a parsed JSON value to an int. JMH writes parameters as strings, and counts as numbers.
+     *
+     * @param  value        The value to convert.
+     * @param  defaultValue The value to use if there is no value, or it is not a number.
+     *
+     * @return The value as an int.
+     */
+    private static int toInt(Object value, int defaultValue)
+    {
+        if (value instanceof Double)
+        {
+            return ((Double) value).intValue();
+        }
+        else if ((value instanceof String) && ((String) value).matches("^-?\\d+$"))
+        {
+            return Integer.parseInt((String) value);
+        }
+        else
+        {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Converts a parsed JSON value to a double. JMH writes values that are not numbers, such as "NaN", as strings.
+     *
+     * @param  value The value to convert.
+     *
+     * @return The value as a double.
+     */
+    private static double toDouble(Object value)
+    {
+        if (value instanceof Double)
+        {
+            return (Double) value;
+        }
+        else if (value instanceof String)
+        {
+            return Double.parseDouble((String) value);
+        }
+        else
+        {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Parses a JSON value at the current position. Objects are parsed into maps, arrays into lists, numbers into
+     * doubles, and the literals true, false and null into booleans and null.
+     *
+     * @return The parsed value.
+     *
+     * @throws IOException If the JSON is malformed.
+     */
+    private Object parseValue() throws IOException
+    {
+        skipWhitespace();
+
+        char c = peek();
+
+        if (c == '{')
+        {
+            return parseObject();
+        }
+        else if (c == '[')
+        {
+            return parseArray();
+        }
+        else if (c == '"')
+        {
+            return parseString();
+        }
+        else if (json.startsWith("true", pos))
+        {
+            pos += 4;
+
+            return Boolean.TRUE;
+        }
+        else if (json.startsWith("false", pos))
+        {
+            pos += 5;
+
+            return Boolean.FALSE;
+        }
+        else if (json.startsWith("null", pos))
+        {
+            pos += 4;
+
+            return null;
+        }
+        else
+        {
+            return parseNumber();
+        }
+    }
+
+    /**
+     * Parses a JSON object at the current position.
+     *
+     * @return The object as a map, in the order of its members.
+     *
+     * @throws IOException If the JSON is malformed.
+     */
+    private Map<String, Object> parseObject() throws IOException
+    {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+
+        expect('{');
+        skipWhitespace();
+
+        if (peek() == '}')
+        {
+            pos++;
+
+            return result;
+        }
+
+        while (true)
+        {
+            skipWhitespace();
+
+            String key = parseString();
+
+            skipWhitespace();
+            expect(':');
+            result.put(key, parseValue());
+            skipWhitespace();
+
+            if (peek() == ',')
+            {
+                pos++;
+            }
+            else
+            {
+                expect('}');
+
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Parses a JSON array at the current position.
+     *
+     * @return The array as a list.
+     *
+     * @throws IOException If the JSON is malformed.
+     */
+    private List<Object> parseArray() throws IOException
+    {
+        List<Object> result = new ArrayList<Object>();
+
+        expect('[');
+        skipWhitespace();
+
+        if (peek() == ']')
+        {
+            pos++;
+
+            return result;
+        }
+
+        while (true)
+        {
+            result.add(parseValue());
+            skipWhitespace();
+
+            if (peek() == ',')
+            {
+                pos++;
+            }
+            else
+            {
+                expect(']');
+
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Parses a JSON string at the current position.
+     *
+     * @return The string, with any escapes replaced.
+     *
+     * @throws IOException If the JSON is malformed.
+     */
+    private String parseString() throws IOException
+    {
+        StringBuilder result = new StringBuilder();
+
+        expect('"');
+
+        while (true)
+        {
+            char c = peek();
+            pos++;
+
+            if (c == '"')
+            {
+                return result.toString();
+            }
+            else if (c != '\\')
+            {
+                result.append(c);
+
+                continue;
+            }
+
+            // Replace the escape sequence.
+            char escaped = peek();
+            pos++;
+
+            switch (escaped)
+            {
+            case 'n':
+                result.append('\n');
+                break;
+
+            case 't':
+                result.append('\t');
+                break;
+
+            case 'r':
+                result.append('\r');
+                break;
+
+            case 'b':
+                result.append('\b');
+                break;
+
+            case 'f':
+                result.append('\f');
+                break;
+
+            case 'u':
+                if ((pos + 4) > json.length())
+                {
+                    throw new IOException("Malformed JSON, truncated unicode escape at " + pos + ".");
+                }
+
+                result.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                pos += 4;
+                break;
+
+            default:
+                result.append(escaped);
+            }
+        }
+    }
+
+    /**
+     * Parses a JSON number at the current position.
+     *
+     * @return The number as a double.
+     *
+     * @throws IOException If the JSON is malformed.
+     */
+    private Double parseNumber() throws IOException
+    {
+        int start = pos;
+
+        while ((pos < json.length()) && ("+-0123456789.eE".indexOf(json.charAt(pos)) != -1))
+        {
+            pos++;
+        }
+
+        try
+        {
+            return Double.valueOf(json.substring(start, pos));
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IOException("Malformed JSON, expected a value at " + start + ".", e);
+        }
+    }
+
+    /**
+     * Checks that the next character is the expected one, and moves past it.
+     *
+     * @param  expected The expected character.
+     *
+     * @throws IOException If the next character is not the expected one.
+     */
+    private void expect(char expected) throws IOException
+    {
+        if (peek() != expected)
+        {
+            throw new IOException("Malformed JSON, expected '" + expected + "' at " + pos + ".");
+        }
+
+        pos++;
+    }
+
+    /**
+     * Gets the character at the current position, without moving past it.
+     *
+     * @return The character at the current position.
+     *
+     * @throws IOException If the end of the JSON has been reached.
+     */
+    private char peek() throws IOException
+    {
+        if (pos >= json.length())
+        {
+            throw new IOException("Malformed JSON, unexpected end of input.");
+        }
+
+        return json.charAt(pos);
+    }
+
+    /** Moves past any white space at the current position. */
+    private void skipWhitespace()
+    {
+        while ((pos < json.length()) && Character.isWhitespace(json.charAt(pos)))
+        {
+            pos++;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions.jmh;
+
+import com.thesett.junit.extensions.TimingController;
+
+/**
+ * JmhTimingController is the timing controller given to {@link com.thesett.junit.extensions.TimingControllerAware}
+ * tests when they are run as JMH benchmarks, by the benchmarks generated by {@link JmhBenchmarkGenerator}. JMH times
+ * each benchmark invocation as a whole, so there is no timer that can be suspended, and no way to register extra test
+ * results within an invocation. Suspending and resuming the timer, and completing tests, are all ignored, so that
+ * tests written against the toolkit can be run under JMH unchanged.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities
+ * <tr><td> Accept and ignore timing control from tests run as JMH benchmarks.
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class JmhTimingController implements TimingController
+{
+    /**
+     * Gets the timing controller associated with the current test thread, which is always this one.
+     *
+     * @return This timing controller.
+     */
+    public TimingController getControllerForCurrentThread()
+    {
+        return this;
+    }
+
+    /**
+     * Ignored, as the JMH timer cannot be suspended.
+     *
+     * @return The current time in nanoseconds.
+     */
+    public long suspend()
+    {
+        return System.nanoTime();
+    }
+
+    /**
+     * Ignored, as the JMH timer cannot be suspended.
+     *
+     * @return The current time in nanoseconds.
+     */
+    public long resume()
+    {
+        return System.nanoTime();
+    }
+
+    /**
+     * Ignored, as the JMH timer cannot be restarted.
+     *
+     * @return The current time in nanoseconds.
+     */
+    public long restart()
+    {
+        return System.nanoTime();
+    }
+
+    /**
+     * Ignored, as JMH records a single result per invocation.
+     *
+     * @param testPassed Whether or not this timing is for a test pass or fail.
+     */
+    public void completeTest(boolean testPassed)
+    {
+    }
+
+    /**
+     * Ignored, as JMH records a single result per invocation.
+     *
+     * @param testPassed Whether or not this timing is for a test pass or fail.
+     * @param param      The test parameter size for parameterized tests.
+     */
+    public void completeTest(boolean testPassed, int param)
+    {
+    }
+
+    /**
+     * Ignored, as JMH records a single result per invocation.
+     *
+     * @param testPassed Whether or not this timing is for a test pass or fail.
+     * @param param      The test parameter size for parameterized tests.
+     * @param timeNanos  The time in nano seconds to log the test result with.
+     */
+    public void completeTest(boolean testPassed, int param, long timeNanos)
+    {
+    }
+
+    /**
+     * Ignored, as JMH records a single result per invocation.
+     *
+     * @param testPassed         Whether or not this timing is for a test pass or fail.
+     * @param param              The test parameter size for parameterized tests.
+     * @param intendedStartNanos The time in nano seconds at which the test was scheduled to start.
+     * @param actualStartNanos   The time in nano seconds at which the test actually started.
+     */
+    public void completeScheduledTest(boolean testPassed, int param, long intendedStartNanos, long actualStartNanos)
+    {
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions.listeners;
+
+import com.thesett.junit.extensions.util.LatencyHistogram;
+
+/**
+ * BatchSummary holds the aggregated results of a complete batch of tests, as an alternative to notifying listeners of
+ * every individual test result. It is produced by {@link com.thesett.junit.extensions.TKTestResult} when it is
+ * recording test timings into striped histograms, and is passed to listeners through
+ * {@link TKTestListener#batchSummary(BatchSummary)} at the end of each batch.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities <th> Collaborations
+ * <tr><td> Hold the merged latency distribution for a batch. <td> {@link LatencyHistogram}
+ * <tr><td> Hold the uncorrected latency distribution for scheduled tests in a batch. <td> {@link LatencyHistogram}
+ * <tr><td> Hold the pass, failure and error counts for a batch.
+ * <tr><td> Hold the summed test size, suspended time and concurrency level for a batch.
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class BatchSummary
+{
+    /** The percentiles that are reported in batch summaries. */
+    public static final double[] PERCENTILES = new double[] { 50.0, 90.0, 99.0, 99.9, 99.99 };
+
+    /** Holds the merged latency distribution of all tests in the batch. */
+    private final LatencyHistogram latencies;
+
+    /**
+     * Holds the merged latency distribution of all tests in the batch, with scheduled tests timed from their actual
+     * start times instead of their intended start times.
+     */
+    private final LatencyHistogram uncorrectedLatencies;
+
+    /** Holds the number of tests in the batch that were run on a schedule. */
+    private final long scheduledTests;
+
+    /** Holds the number of tests that failed. */
+    private final long failures;
+
+    /** Holds the number of tests that were in error. */
+    private final long errors;
+
+    /** Holds the sum of the size parameters of all tests in the batch. */
+    private final long totalSize;
+
+    /** Holds the sum of the time excluded from the test timings whilst their timers were suspended. */
+    private final long suspendedTime;
+
+    /** Holds the concurrency level that the batch was run at. */
+    private final int concurrencyLevel;
+
+    /**
+     * Creates a summary of a batch of tests.
+     *
+     * @param latencies            The merged latency distribution of all tests in the batch.
+     * @param uncorrectedLatencies The merged latency distribution, with scheduled tests timed from their actual starts.
+     * @param scheduledTests       The number of tests in the batch that were run on a schedule.
+     * @param failures             The number of tests that failed.
+     * @param errors               The number of tests that were in error.
+     * @param totalSize            The sum of the size parameters of all tests in the batch.
+     * @param suspendedTime        The sum of the time excluded from the test timings whilst suspended, in nanoseconds.
+     * @param concurrencyLevel     The concurrency level that the batch was run at.
+     */
+    public BatchSummary(LatencyHistogram latencies, LatencyHistogram uncorrectedLatencies, long scheduledTests,
+        long failures, long errors, long totalSize, long suspendedTime, int concurrencyLevel)
+    {
+        this.latencies = latencies;
+        this.uncorrectedLatencies = uncorrectedLatencies;
+        this.scheduledTests = scheduledTests;
+        this.failures = failures;
+        this.errors = errors;
+        this.totalSize = totalSize;
+        this.suspendedTime = suspendedTime;
+        this.concurrencyLevel = concurrencyLevel;
+    }
+
+    /**
+     * Gets the merged latency distribution of all tests in the batch.
+     *
+     * @return The merged latency distribution of all tests in the batch.
+     */
+    public LatencyHistogram getLatencies()
+    {
+        return latencies;
+    }
+
+    /**
+     * Gets the merged latency distribution of all tests in the batch, with scheduled tests timed from their actual
+     * start times. This only differs from {@link #getLatencies()} when {@link #getScheduledTests()} is above zero.
+     *
+     * @return The merged latency distribution, with scheduled tests timed from their actual start times.
+     */
+    public LatencyHistogram getUncorrectedLatencies()
+    {
+        return uncorrectedLatencies;
+    }
+
+    /**
+     * Reports the number of tests in the batch that were run on a schedule, and had their timings corrected to run
+     * from their intended start times.
+     *
+     * @return The number of tests in the batch that were run on a schedule.
+     */
+    public long getScheduledTests()
+    {
+        return scheduledTests;
+    }
+
+    /**
+     * Reports the total number of tests run in the batch.
+     *
+     * @return The total number of tests run in the batch.
+     */
+    public long getTotalTests()
+    {
+        return latencies.getTotalCount();
+    }
+
+    /**
+     * Reports the number of tests that passed.
+     *
+     * @return The number of tests that passed.
+     */
+    public long getPasses()
+    {
+        return latencies.getTotalCount() - failures - errors;
+    }
+
+    /**
+     * Reports the number of tests that failed.
+     *
+     * @return The number of tests that failed.
+     */
+    public long getFailures()
+    {
+        return failures;
+    }
+
+    /**
+     * Reports the number of tests that were in error.
+     *
+     * @return The number of tests that were in error.
+     */
+    public long getErrors()
+    {
+        return errors;
+    }
+
+    /**
+     * Reports the sum of the size parameters of all tests in the batch.
+     *
+     * @return The sum of the size parameters of all tests in the batch.
+     */
+    public long getTotalSize()
+    {
+        return totalSize;
+    }
+
+    /**
+     * Reports the sum of the time excluded from the test timings whilst their timers were suspended.
+     *
+     * @return The sum of the time excluded from the test timings whilst suspended, in nanoseconds.
+     */
+    public long getSuspendedTime()
+    {
+        return suspendedTime;
+    }
+
+    /**
+     * Reports the concurrency level that the batch was run at.
+     *
+     * @return The concurrency level that the batch was run at.
+     */
+    public int getConcurrencyLevel()
+    {
+        return concurrencyLevel;
+    }
+
+    /**
+     * Prints a summary of the batch, mainly for debugging purposes.
+     *
+     * @return A summary of the batch, mainly for debugging purposes.
+     */
+    public String toString()
+    {
+        return "BatchSummary: [ latencies = " + latencies + ", uncorrectedLatencies = " + uncorrectedLatencies +
+            ", scheduledTests = " + scheduledTests + ", failures = " + failures + ", errors = " + errors +
+            ", totalSize = " + totalSize + ", suspendedTime = " + suspendedTime + ", concurrencyLevel = " +
+            concurrencyLevel + " ]";
+    }
+}
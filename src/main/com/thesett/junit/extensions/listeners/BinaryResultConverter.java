@@ -0,0 +1,340 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions.listeners;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+
+/**
+ * BinaryResultConverter exports the binary results files written by {@link BinaryTestListener} to CSV or XML. The CSV
+ * export has a line for every test result, in batches, with the batch totals at the end of each batch. The XML export
+ * is in the standard JUnit XML format, as written by {@link XMLTestListener}, with the timing, thread, size and
+ * concurrency level of each test result added as attributes.
+ *
+ * <p/>The converter can be run from the command line:
+ *
+ * <pre>
+ * java com.thesett.junit.extensions.listeners.BinaryResultConverter results.bin results.csv
+ * java com.thesett.junit.extensions.listeners.BinaryResultConverter --xml results.bin results.xml
+ * </pre>
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities <th> Collaborations
+ * <tr><td> Read binary results files. <td> {@link BinaryResultReader}
+ * <tr><td> Export test results to CSV.
+ * <tr><td> Export test results to JUnit XML.
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class BinaryResultConverter
+{
+    /** Used to read the binary results files. */
+    private final BinaryResultReader reader = new BinaryResultReader();
+
+    /** Holds the start time of the results in milliseconds since the epoch. */
+    private long startMillis;
+
+    /** Used to count the tests passed whilst converting. */
+    private int numPassed;
+
+    /** Used to count the tests failed whilst converting. */
+    private int numFailed;
+
+    /** Used to count the tests in error whilst converting. */
+    private int numError;
+
+    /**
+     * Converts a binary results file to CSV or XML.
+     *
+     * @param args The command line, --xml optionally, followed by the binary results file and the file to write to.
+     */
+    public static void main(String[] args)
+    {
+        boolean xml = (args.length > 0) && "--xml".equals(args[0]);
+        int first = xml ? 1 : 0;
+
+        if (args.length != (first + 2))
+        {
+            System.out.println("Usage: BinaryResultConverter [--xml] <binary results file> <output file>");
+            System.exit(1);
+        }
+
+        try
+        {
+            Writer writer = new BufferedWriter(new FileWriter(args[first + 1]), 20000);
+            BinaryResultConverter converter = new BinaryResultConverter();
+
+            if (xml)
+            {
+                converter.toXml(new File(args[first]), writer);
+            }
+            else
+            {
+                converter.toCsv(new File(args[first]), writer);
+            }
+
+            writer.close();
+        }
+        catch (IOException e)
+        {
+            System.err.println("Unable to convert the binary results file: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Exports a binary results file to CSV.
+     *
+     * @param  binaryFile The binary results file.
+     * @param  writer     The writer to write the CSV to.
+     *
+     * @throws IOException If the binary results file cannot be read, or the CSV cannot be written.
+     */
+    public void toCsv(File binaryFile, final Writer writer) throws IOException
+    {
+        read(binaryFile, new CountingHandler()
+            {
+                public void result(String className, String methodName, short outcome, long timestamp, long threadId,
+                    long nanos, long bytes, int n, int concurrency) throws IOException
+                {
+                    super.result(className, methodName, outcome, timestamp, threadId, nanos, bytes, n, concurrency);
+
+                    writer.write(className + ", ");
+                    writer.write(methodName + ", ");
+                    writer.write(threadId + ", ");
+                    writer.write(outcomeName(outcome) + ", ");
+                    writer.write((((float) nanos) / 1000000f) + ", ");
+                    writer.write(bytes + ", ");
+                    writer.write(concurrency + ", ");
+                    writer.write(n + ", ");
+                    writer.write((startMillis + (timestamp / 1000000L)) + "\n");
+                }
+
+                public void batchStart(long timestamp) throws IOException
+                {
+                    numPassed = 0;
+                    numFailed = 0;
+                    numError = 0;
+
+                    writer.write("Class, ");
+                    writer.write("Method, ");
+                    writer.write("Thread, ");
+                    writer.write("Test Outcome, ");
+                    writer.write("Time (milliseconds), ");
+                    writer.write("Memory Used (bytes), ");
+                    writer.write("Concurrency level, ");
+                    writer.write("Test Size, ");
+                    writer.write("Time Stamp (milliseconds)\n");
+                }
+
+                public void batchEnd(long timestamp) throws IOException
+                {
+                    writer.write("Total Tests:, " + (numPassed + numFailed + numError) + ", ");
+                    writer.write("Total Passed:, " + numPassed + ", ");
+                    writer.write("Total Failed:, " + numFailed + ", ");
+                    writer.write("Total Error:, " + numError + "\n\n");
+                }
+            });
+
+        writer.flush();
+    }
+
+    /**
+     * Exports a binary results file to JUnit XML.
+     *
+     * @param  binaryFile The binary results file.
+     * @param  writer     The writer to write the XML to.
+     *
+     * @throws IOException If the binary results file cannot be read, or the XML cannot be written.
+     */
+    public void toXml(File binaryFile, final Writer writer) throws IOException
+    {
+        // Count the test outcomes first, as the totals are written out at the start.
+        numPassed = 0;
+        numFailed = 0;
+        numError = 0;
+
+        read(binaryFile, new CountingHandler());
+
+        int failures = numFailed;
+        int errors = numError;
+        int runs = numPassed + numFailed + numError;
+        String suiteName = binaryFile.getName();
+
+        writer.write("<?xml version=\"1.0\" ?>\n");
+        writer.write("<testsuite errors=\"" + errors + "\" failures=\"" + failures + "\" tests=\"" + runs +
+            "\" name=\"" + suiteName + "\">\n");
+
+        read(binaryFile, new BinaryResultReader.EntryHandler()
+            {
+                /** Holds the class name of the failure of the next test result, or null if it has none. */
+                private String failureClass;
+
+                /** Holds the message of the failure of the next test result. */
+                private String failureMessage;
+
+                public void failure(String className, String methodName, short outcome, String failureClass,
+                    String message)
+                {
+                    this.failureClass = failureClass;
+                    this.failureMessage = message;
+                }
+
+                public void result(String className, String methodName, short outcome, long timestamp, long threadId,
+                    long nanos, long bytes, int n, int concurrency) throws IOException
+                {
+                    writer.write("  <testcase classname=\"" + className + "\" name=\"" + methodName + "\" time=\"" +
+                        (((double) nanos) / 1000000000d) + "\" thread=\"" + threadId + "\" size=\"" + n +
+                        "\" concurrency=\"" + concurrency + "\" memory=\"" + bytes + "\">\n");
+
+                    if ((outcome == BinaryTestListener.ERROR) || (outcome == BinaryTestListener.FAILURE))
+                    {
+                        String element = (outcome == BinaryTestListener.ERROR) ? "error" : "failure";
+
+                        if (failureClass == null)
+                        {
+                            writer.write("    <" + element + "/>\n");
+                        }
+                        else
+                        {
+                            writer.write("    <" + element + " type=\"" + failureClass + "\">" +
+                                escapeXml(failureMessage) + "</" + element + ">\n");
+                        }
+                    }
+
+                    writer.write("  </testcase>\n");
+
+                    failureClass = null;
+                    failureMessage = null;
+                }
+            });
+
+        writer.write("</testsuite>\n");
+        writer.flush();
+    }
+
+    /**
+     * Reads all of the entries in a binary results file, passing them to a handler. Converters for other results
+     * formats may override this to read their own format.
+     *
+     * @param  binaryFile The binary results file.
+     * @param  handler    The handler to pass the entries to.
+     *
+     * @throws IOException If the binary results file cannot be read, or is not a binary results file.
+     */
+    protected void read(File binaryFile, BinaryResultReader.EntryHandler handler) throws IOException
+    {
+        InputStream in = new FileInputStream(binaryFile);
+
+        try
+        {
+            reader.read(in, handler);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Converts a test outcome code into the name used in the CSV output.
+     *
+     * @param  outcome The test outcome code.
+     *
+     * @return The name of the test outcome.
+     */
+    private static String outcomeName(short outcome)
+    {
+        switch (outcome)
+        {
+        case BinaryTestListener.ERROR:
+            return "Error";
+
+        case BinaryTestListener.FAILURE:
+            return "Failure";
+
+        default:
+            return "Pass";
+        }
+    }
+
+    /**
+     * Escapes the characters of a string that cannot appear as they are in XML text.
+     *
+     * @param  text The text to escape.
+     *
+     * @return The escaped text.
+     */
+    private static String escapeXml(String text)
+    {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    /**
+     * Counts the outcomes of the test results read, and records the start time of the results. All other entries are
+     * ignored.
+     */
+    private class CountingHandler extends BinaryResultReader.EntryHandler
+    {
+        /**
+         * Records the start time of the results.
+         *
+         * @param startMillis The start time of the results in milliseconds since the epoch.
+         */
+        public void header(long startMillis)
+        {
+            BinaryResultConverter.this.startMillis = startMillis;
+        }
+
+        /**
+         * Counts the outcome of a test result.
+         *
+         * @param  className   The class name of the test.
+         * @param  methodName  The method name of the test.
+         * @param  outcome     The test outcome.
+         * @param  timestamp   The time stamp in nanoseconds since the start of the results.
+         * @param  threadId    The id of the thread that ran the test.
+         * @param  nanos       The test time in nanoseconds.
+         * @param  bytes       The memory used by the test in bytes.
+         * @param  n           The size parameter of the test.
+         * @param  concurrency The concurrency level the test was run at.
+         *
+         * @throws IOException If the result cannot be written out.
+         */
+        public void result(String className, String methodName, short outcome, long timestamp, long threadId,
+            long nanos, long bytes, int n, int concurrency) throws IOException
+        {
+            if (outcome == BinaryTestListener.ERROR)
+            {
+                numError++;
+            }
+            else if (outcome == BinaryTestListener.FAILURE)
+            {
+                numFailed++;
+            }
+            else
+            {
+                numPassed++;
+            }
+        }
+    }
+}
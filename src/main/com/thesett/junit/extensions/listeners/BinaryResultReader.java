@@ -0,0 +1,299 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions.listeners;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BinaryResultReader reads binary results, in the layout written by {@link BinaryTestListener}, and passes each entry
+ * to a handler as it is read. The test ids in the results are resolved to test names, so that the handler is passed
+ * the class and method name of each test result. Results may be read from a binary results file, or streamed as they
+ * are written, from a socket. Results written with earlier versions of the layout, which do not hold failures or
+ * optional measurements, can also be read.
+ *
+ * <p/>The failure and optional measurements of a test result, when present, are passed to the handler just before the
+ * result itself.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities <th> Collaborations
+ * <tr><td> Read binary results, from a file or a stream. <td> {@link BinaryTestListener}
+ * <tr><td> Resolve test ids to test names.
+ * <tr><td> Pass each entry read to a handler. <td> {@link EntryHandler}
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class BinaryResultReader
+{
+    /** Holds the class name of each test, by test id. */
+    private final List<String> classNames = new ArrayList<String>();
+
+    /** Holds the method name of each test, by test id. */
+    private final List<String> methodNames = new ArrayList<String>();
+
+    /**
+     * Reads all of the entries from binary results, passing them to a handler, until the end marker or the end of the
+     * input is reached. The input may only end between entries. The input is not closed.
+     *
+     * @param  input   The binary results to read.
+     * @param  handler The handler to pass the entries to.
+     *
+     * @throws IOException If the results cannot be read, are not binary results, end part way through an entry, hold
+     *                     an entry of an unknown kind, or the handler fails.
+     */
+    public void read(InputStream input, EntryHandler handler) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(input, 65536));
+
+        classNames.clear();
+        methodNames.clear();
+
+        try
+        {
+            // Check the header.
+            if (in.readInt() != BinaryTestListener.MAGIC)
+            {
+                throw new IOException("Not binary results, or an unsupported version.");
+            }
+
+            int version = in.readInt();
+
+            if ((version < 1) || (version > BinaryTestListener.VERSION))
+            {
+                throw new IOException("Not binary results, or an unsupported version.");
+            }
+
+            handler.header(in.readLong());
+
+            // Read entries until the end marker or the end of the input is reached.
+            while (true)
+            {
+                // The input may only end at the start of an entry.
+                int high = in.read();
+
+                if (high < 0)
+                {
+                    break;
+                }
+
+                short kind = (short) ((high << 8) | in.readUnsignedByte());
+
+                if (kind == BinaryTestListener.END)
+                {
+                    break;
+                }
+
+                readEntry(in, kind, handler);
+            }
+        }
+        catch (EOFException e)
+        {
+            throw new IOException("The binary results end part way through the header or an entry.", e);
+        }
+    }
+
+    /**
+     * Reads the remainder of an entry, after its kind, and passes it to a handler.
+     *
+     * @param  in      The input to read from.
+     * @param  kind    The kind of the entry.
+     * @param  handler The handler to pass the entry to.
+     *
+     * @throws IOException If the entry cannot be read, is of an unknown kind, or the handler fails.
+     */
+    private void readEntry(DataInputStream in, short kind, EntryHandler handler) throws IOException
+    {
+        if (kind == BinaryTestListener.RESULT)
+        {
+            short outcome = in.readShort();
+            int testId = in.readInt();
+            long timestamp = in.readLong();
+            long threadId = in.readLong();
+            long nanos = in.readLong();
+            long bytes = in.readLong();
+            int n = in.readInt();
+            int concurrency = in.readInt();
+
+            handler.result(classNames.get(testId), methodNames.get(testId), outcome, timestamp, threadId, nanos, bytes,
+                n, concurrency);
+        }
+        else if (kind == BinaryTestListener.TEST_NAME)
+        {
+            in.readShort();
+            in.readInt();
+
+            classNames.add(readName(in));
+            methodNames.add(readName(in));
+        }
+        else if (kind == BinaryTestListener.FAILURE_DETAIL)
+        {
+            short outcome = in.readShort();
+            int testId = in.readInt();
+            String failureClass = readName(in);
+            String message = readName(in);
+
+            handler.failure(classNames.get(testId), methodNames.get(testId), outcome, failureClass, message);
+        }
+        else if (kind == BinaryTestListener.MEASUREMENTS)
+        {
+            in.readShort();
+
+            int testId = in.readInt();
+            long suspendedNanos = in.readLong();
+            long uncorrectedNanos = in.readLong();
+            long rawNanos = in.readLong();
+            long collections = in.readLong();
+            int core = in.readInt();
+            in.readInt();
+
+            handler.measurements(classNames.get(testId), methodNames.get(testId), suspendedNanos, uncorrectedNanos,
+                rawNanos, collections, core);
+        }
+        else if (kind == BinaryTestListener.BATCH_START)
+        {
+            in.readShort();
+            in.readInt();
+            handler.batchStart(in.readLong());
+        }
+        else if (kind == BinaryTestListener.BATCH_END)
+        {
+            in.readShort();
+            in.readInt();
+            handler.batchEnd(in.readLong());
+        }
+        else
+        {
+            throw new IOException("Unknown binary results entry kind, " + kind + ".");
+        }
+    }
+
+    /**
+     * Reads a length prefixed UTF-8 name.
+     *
+     * @param  in The input to read from.
+     *
+     * @return The name.
+     *
+     * @throws IOException If the name cannot be read.
+     */
+    private static String readName(DataInputStream in) throws IOException
+    {
+        byte[] bytes = new byte[in.readUnsignedShort()];
+        in.readFully(bytes);
+
+        return new String(bytes, BinaryTestListener.UTF8);
+    }
+
+    /**
+     * Handles the entries read from binary results. By default all entries are ignored.
+     */
+    public static class EntryHandler
+    {
+        /**
+         * Handles the header.
+         *
+         * @param  startMillis The start time of the results in milliseconds since the epoch.
+         *
+         * @throws IOException If the header cannot be handled.
+         */
+        public void header(long startMillis) throws IOException
+        {
+        }
+
+        /**
+         * Handles a test result.
+         *
+         * @param  className   The class name of the test.
+         * @param  methodName  The method name of the test.
+         * @param  outcome     The test outcome.
+         * @param  timestamp   The time stamp in nanoseconds since the start of the results.
+         * @param  threadId    The id of the thread that ran the test.
+         * @param  nanos       The test time in nanoseconds.
+         * @param  bytes       The memory used by the test in bytes.
+         * @param  n           The size parameter of the test.
+         * @param  concurrency The concurrency level the test was run at.
+         *
+         * @throws IOException If the result cannot be handled.
+         */
+        public void result(String className, String methodName, short outcome, long timestamp, long threadId,
+            long nanos, long bytes, int n, int concurrency) throws IOException
+        {
+        }
+
+        /**
+         * Handles the failure or error of a test result. This is passed just before the result itself.
+         *
+         * @param  className    The class name of the test.
+         * @param  methodName   The method name of the test.
+         * @param  outcome      The test outcome.
+         * @param  failureClass The class name of the failure or error that the test raised.
+         * @param  message      The message of the failure or error, which may be shortened, or empty if it had none.
+         *
+         * @throws IOException If the failure cannot be handled.
+         */
+        public void failure(String className, String methodName, short outcome, String failureClass, String message)
+            throws IOException
+        {
+        }
+
+        /**
+         * Handles the optional measurements of a test result. This is passed just before the result itself. Any
+         * measurement that was not made is -1.
+         *
+         * @param  className        The class name of the test.
+         * @param  methodName       The method name of the test.
+         * @param  suspendedNanos   The time that the test suspended its timing for in nanoseconds.
+         * @param  uncorrectedNanos The test time from its actual start, when run on a schedule, in nanoseconds.
+         * @param  rawNanos         The test time including the harness overhead in nanoseconds.
+         * @param  collections      The number of garbage collections that ran during the test.
+         * @param  core             The core that the test ran on.
+         *
+         * @throws IOException If the measurements cannot be handled.
+         */
+        public void measurements(String className, String methodName, long suspendedNanos, long uncorrectedNanos,
+            long rawNanos, long collections, int core) throws IOException
+        {
+        }
+
+        /**
+         * Handles the start of a batch.
+         *
+         * @param  timestamp The time stamp in nanoseconds since the start of the results.
+         *
+         * @throws IOException If the batch start cannot be handled.
+         */
+        public void batchStart(long timestamp) throws IOException
+        {
+        }
+
+        /**
+         * Handles the end of a batch.
+         *
+         * @param  timestamp The time stamp in nanoseconds since the start of the results.
+         *
+         * @throws IOException If the batch end cannot be handled.
+         */
+        public void batchEnd(long timestamp) throws IOException
+        {
+        }
+    }
+}
@@ -0,0 +1,749 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions.listeners;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.AssertionFailedError;
+import junit.framework.Test;
+import junit.framework.TestCase;
+
+import com.thesett.common.util.concurrent.ShutdownHookable;
+
+/**
+ * BinaryTestListener is a test listener that writes out a fixed width binary record for every test result, through a
+ * memory mapped, append only file. No text is formatted on the test threads, and the records are several times smaller
+ * than the equivalent CSV lines, so this is suited to recording every sample of long soak runs. The binary file can be
+ * exported to CSV or XML afterwards, by {@link BinaryResultConverter}.
+ *
+ * <p/>The file is laid out as a header, followed by a sequence of entries, in big endian byte order. Every entry starts
+ * with a short that gives its kind. The entries are:
+ *
+ * <pre><p/><table id="crc"><caption>Binary File Layout</caption>
+ * <tr><th> Entry <th> Layout
+ * <tr><td> Header <td> int magic, int version, long start time in milliseconds since the epoch.
+ * <tr><td> Test name <td> short kind, short unused, int test id, the class name and the method name, each as a short
+ *          length followed by that many bytes of UTF-8.
+ * <tr><td> Result <td> short kind, short outcome, int test id, long time stamp in nanoseconds since the start, long
+ *          thread id, long test time in nanoseconds, long memory used in bytes, int size parameter, int concurrency
+ *          level.
+ * <tr><td> Batch start or end <td> short kind, short unused, int unused, long time stamp in nanoseconds since the
+ *          start.
+ * <tr><td> Failure <td> short kind, short outcome, int test id, the class name and the message of the failure or
+ *          error, each as a short length followed by that many bytes of UTF-8.
+ * <tr><td> Measurements <td> short kind, short unused, int test id, long suspended time in nanoseconds, long
+ *          uncorrected test time in nanoseconds, long raw test time in nanoseconds, long garbage collections, int core,
+ *          int unused. Any measurement that was not made is -1.
+ * </table></pre>
+ *
+ * <p/>A test name entry is written before the first result for each test, to define its test id. A failure entry is
+ * written before the result of each test that failed or was in error, and a measurements entry is written before the
+ * result of each test for which any of the optional measurements were made. The file is mapped
+ * into memory in fixed size regions, and the unused part of the last region reads as zero, which marks the end of the
+ * entries. The file is truncated to the entries written when this listener is closed.
+ *
+ * <p/>The same entries can instead be written to a stream, such as a socket to another process, which can read them as
+ * they are written with a {@link BinaryResultReader}. The entries are buffered, and written out to the stream whenever
+ * the buffer fills up, at the end of each batch, and when this listener is closed. The end of the stream marks the end
+ * of the entries.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities <th> Collaborations
+ * <tr><td> Listen to test events; start, end, fail, error.
+ * <tr><td> Listen to test timings, memory usage, size parameters, concurrency levels and optional measurements.
+ * <tr><td> Write out fixed width binary records of test results through a memory mapped file.
+ * <tr><td> Write out fixed width binary records of test results to a stream.
+ * <tr><td> Flush and truncate the file on shutdown.
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class BinaryTestListener extends TKTestListenerAdapter implements ShutdownHookable
+{
+    /** Used for logging. */
+    /*private static final Logger log = Logger.getLogger(BinaryTestListener.class);*/
+
+    /** The magic number that the file starts with, "TKB1". */
+    public static final int MAGIC = 0x544B4231;
+
+    /** The version of the file layout. */
+    public static final int VERSION = 2;
+
+    /** The size of the file header in bytes. */
+    public static final int HEADER_SIZE = 16;
+
+    /** The kind of entry that marks the end of the entries. */
+    public static final short END = 0;
+
+    /** The kind of entry that holds a test result. */
+    public static final short RESULT = 1;
+
+    /** The kind of entry that defines a test id. */
+    public static final short TEST_NAME = 2;
+
+    /** The kind of entry that marks the start of a batch. */
+    public static final short BATCH_START = 3;
+
+    /** The kind of entry that marks the end of a batch. */
+    public static final short BATCH_END = 4;
+
+    /** The kind of entry that holds the failure or error of a test result. */
+    public static final short FAILURE_DETAIL = 5;
+
+    /** The kind of entry that holds the optional measurements of a test result. */
+    public static final short MEASUREMENTS = 6;
+
+    /** The size of a test result entry in bytes. */
+    public static final int RESULT_SIZE = 48;
+
+    /** The size of a batch start or end entry in bytes. */
+    public static final int BATCH_SIZE = 16;
+
+    /** The size of a measurements entry in bytes. */
+    public static final int MEASUREMENTS_SIZE = 48;
+
+    /** The maximum number of characters of a failure message that are written out. */
+    public static final int MAX_MESSAGE_LENGTH = 4096;
+
+    /** The outcome of a test that passed. */
+    public static final short PASS = 0;
+
+    /** The outcome of a test that failed. */
+    public static final short FAILURE = 1;
+
+    /** The outcome of a test that was in error. */
+    public static final short ERROR = 2;
+
+    /** The character set that test names are written in. */
+    public static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** The size of the regions of the file that are mapped into memory at a time. */
+    private static final int REGION_SIZE = 16 * 1024 * 1024;
+
+    /** The size of the buffer that entries are written to before being written out to a stream. */
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Map for holding results on a per thread basis as they come in. A ThreadLocal is not used as sometimes an explicit
+     * thread id must be used, where notifications come from different threads than the ones that called the test
+     * method.
+     */
+    private final Map<Long, TestResult> threadLocalResults =
+        Collections.synchronizedMap(new HashMap<Long, TestResult>());
+
+    /** Holds the test ids assigned to each test, by class and method name. */
+    private final Map<String, Integer> testIds = new HashMap<String, Integer>();
+
+    /** Holds the file that the results are written to, or null if they are written to a stream. */
+    private final RandomAccessFile file;
+
+    /** Holds the channel that the file is mapped through, or null if results are written to a stream. */
+    private final FileChannel channel;
+
+    /** Holds the stream that the results are written to, or null if they are written to a file. */
+    private final OutputStream out;
+
+    /** Holds the nano time at which the file was started, that time stamps are relative to. */
+    private final long startNanos;
+
+    /** Holds the currently mapped region of the file, or the buffer of entries not yet written out to the stream. */
+    private ByteBuffer region;
+
+    /** Holds the position in the file of the start of the currently mapped region. */
+    private long regionStart;
+
+    /** Flag that indicates that the file has been closed. */
+    private boolean closed;
+
+    /**
+     * Creates a binary test listener that writes results to the specified file, replacing any existing contents.
+     *
+     * @param  resultsFile The file to write results to.
+     *
+     * @throws IOException If the file cannot be created or mapped into memory.
+     */
+    public BinaryTestListener(File resultsFile) throws IOException
+    {
+        file = new RandomAccessFile(resultsFile, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+        out = null;
+        startNanos = System.nanoTime();
+
+        region = channel.map(FileChannel.MapMode.READ_WRITE, 0, REGION_SIZE);
+
+        writeHeader();
+    }
+
+    /**
+     * Creates a binary test listener that writes results to the specified stream.
+     *
+     * @param out The stream to write results to.
+     */
+    public BinaryTestListener(OutputStream out)
+    {
+        this.file = null;
+        this.channel = null;
+        this.out = out;
+        startNanos = System.nanoTime();
+
+        region = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+
+        writeHeader();
+    }
+
+    /**
+     * Resets the test results to the default state of time zero, memory usage zero, test passed.
+     *
+     * @param test     The test to resest any results for.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void reset(Test test, Long threadId)
+    {
+        TestResult r = getTestResult(threadId);
+
+        r.testTime = 0L;
+        r.testMemory = 0L;
+        r.testOutcome = PASS;
+        r.testParam = 0;
+        r.failure = null;
+        r.testSuspendedTime = -1L;
+        r.testUncorrectedTime = -1L;
+        r.testRawTime = -1L;
+        r.testCollections = -1L;
+        r.testCore = -1;
+    }
+
+    /**
+     * Called when a test starts.
+     *
+     * @param test The test wich has started.
+     */
+    public void startTest(Test test)
+    {
+        // Initialize the thread local test results.
+        threadLocalResults.put(Thread.currentThread().getId(), new TestResult());
+    }
+
+    /**
+     * Called when a test results in an error.
+     *
+     * @param test The test which is in error.
+     * @param t    Any Throwable raised by the test in error.
+     */
+    public void addError(Test test, Throwable t)
+    {
+        TestResult r = getTestResult(null);
+
+        // There is no test in progress on this thread in histogram mode, where tests are not started on the listeners.
+        if (r != null)
+        {
+            r.testOutcome = ERROR;
+            r.failure = t;
+        }
+    }
+
+    /**
+     * Called when a test results in a failure.
+     *
+     * @param test The test which failed.
+     * @param t    The AssertionFailedError that encapsulates the test failure.
+     */
+    public void addFailure(Test test, AssertionFailedError t)
+    {
+        TestResult r = getTestResult(null);
+
+        // There is no test in progress on this thread in histogram mode, where tests are not started on the listeners.
+        if (r != null)
+        {
+            r.testOutcome = FAILURE;
+            r.failure = t;
+        }
+    }
+
+    /**
+     * Called when a test completes to mark it as a test fail. This method should be used when registering a failure
+     * from a different thread than the one that started the test.
+     *
+     * @param test     The test which failed.
+     * @param e        The assertion that failed the test.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void addFailure(Test test, AssertionFailedError e, Long threadId)
+    {
+        TestResult r = getTestResult(threadId);
+
+        r.testOutcome = FAILURE;
+        r.failure = e;
+    }
+
+    /**
+     * Called when a test completes. Success, failure and errors.
+     *
+     * @param test The test which completed.
+     */
+    public void endTest(Test test)
+    {
+        long threadId = Thread.currentThread().getId();
+
+        writeResult(test, threadLocalResults.get(threadId), threadId);
+
+        // Clear all the test results for the thread.
+        threadLocalResults.remove(threadId);
+    }
+
+    /**
+     * Called when a test completes. Success, failure and errors. This method should be used when registering an end
+     * test from a different thread than the one that started the test.
+     *
+     * @param test     The test which completed.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void endTest(Test test, Long threadId)
+    {
+        long id = (threadId == null) ? Thread.currentThread().getId() : threadId;
+
+        writeResult(test, threadLocalResults.get(id), id);
+    }
+
+    /**
+     * Should be called every time a test completes with the run time of that test.
+     *
+     * @param test     The name of the test.
+     * @param nanos    The run time of the test in nanoseconds.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void timing(Test test, long nanos, Long threadId)
+    {
+        getTestResult(threadId).testTime = nanos;
+    }
+
+    /**
+     * Should be called every time a test completed with the amount of memory used before and after the test was run.
+     *
+     * @param test     The test which memory was measured for.
+     * @param memStart The total JVM memory used before the test was run.
+     * @param memEnd   The total JVM memory used after the test was run.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void memoryUsed(Test test, long memStart, long memEnd, Long threadId)
+    {
+        getTestResult(threadId).testMemory = memEnd - memStart;
+    }
+
+    /**
+     * Should be called every time a parameterized test completed with the int value of its test parameter.
+     *
+     * @param test      The test which memory was measured for.
+     * @param parameter The int parameter value.
+     * @param threadId  Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void parameterValue(Test test, int parameter, Long threadId)
+    {
+        getTestResult(threadId).testParam = parameter;
+    }
+
+    /**
+     * Should be called every time a test completes with the current number of test threads running.
+     *
+     * @param test     The test for which the measurement is being generated.
+     * @param threads  The number of tests being run concurrently.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void concurrencyLevel(Test test, int threads, Long threadId)
+    {
+        getTestResult(threadId).testConcurrency = threads;
+    }
+
+    /**
+     * Should be called every time a test completes with the time that it suspended its timing for.
+     *
+     * @param test     The test which suspended its timing.
+     * @param nanos    The time suspended in nanoseconds.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void suspendedTime(Test test, long nanos, Long threadId)
+    {
+        getTestResult(threadId).testSuspendedTime = nanos;
+    }
+
+    /**
+     * Should be called every time a test run on a schedule completes, with its timing measured from its actual start.
+     *
+     * @param test     The test which was run on a schedule.
+     * @param nanos    The test timing from its actual start in nanoseconds.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void uncorrectedTiming(Test test, long nanos, Long threadId)
+    {
+        getTestResult(threadId).testUncorrectedTime = nanos;
+    }
+
+    /**
+     * Should be called every time a test completes with its timing before the harness overhead was taken out.
+     *
+     * @param test     The test which was timed.
+     * @param nanos    The test timing including the harness overhead in nanoseconds.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void rawTiming(Test test, long nanos, Long threadId)
+    {
+        getTestResult(threadId).testRawTime = nanos;
+    }
+
+    /**
+     * Should be called every time a test completes with the number of garbage collections that ran during it.
+     *
+     * @param test        The test during which garbage collections were counted.
+     * @param collections The number of garbage collections.
+     * @param threadId    Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void garbageCollections(Test test, long collections, Long threadId)
+    {
+        getTestResult(threadId).testCollections = collections;
+    }
+
+    /**
+     * Should be called every time a test completes with the core that the test thread was running on.
+     *
+     * @param test     The test which was run.
+     * @param core     The core that the test thread was running on, or -1 if it is not known.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void core(Test test, int core, Long threadId)
+    {
+        getTestResult(threadId).testCore = core;
+    }
+
+    /** Writes out a batch start entry. */
+    public void startBatch()
+    {
+        writeBatchMarker(BATCH_START);
+    }
+
+    /**
+     * Writes out a batch end entry. When writing to a stream, all entries so far are written out to it.
+     *
+     * @param parameters The optional test parameters. Ignored.
+     */
+    public void endBatch(Properties parameters)
+    {
+        writeBatchMarker(BATCH_END);
+
+        synchronized (this)
+        {
+            if ((out != null) && !closed)
+            {
+                flushStream();
+            }
+        }
+    }
+
+    /**
+     * Notifies listeners of the tests read/set properties.
+     *
+     * @param properties The tests read/set properties. Ignored.
+     */
+    public void properties(Properties properties)
+    {
+    }
+
+    /**
+     * Flushes the entries written out to disk, truncates the file to the entries written, and closes it. When writing
+     * to a stream, all entries are written out to it, and it is closed. Any results that complete after this are
+     * discarded.
+     */
+    public synchronized void close()
+    {
+        if (closed)
+        {
+            return;
+        }
+
+        closed = true;
+
+        if (out != null)
+        {
+            flushStream();
+
+            try
+            {
+                out.close();
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException("Unable to close the binary results stream: " + e, e);
+            }
+
+            return;
+        }
+
+        try
+        {
+            ((MappedByteBuffer) region).force();
+            channel.truncate(regionStart + region.position());
+            channel.close();
+            file.close();
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Unable to close the binary results file: " + e, e);
+        }
+    }
+
+    /**
+     * Supplies the shutdown hook. This closes the file, so that all results are flushed if the test framework is shut
+     * down prematurely.
+     *
+     * @return The shut down hook.
+     */
+    public Thread getShutdownHook()
+    {
+        return new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    /*log.debug("BinaryTestListener::ShutdownHook: called");*/
+
+                    close();
+                }
+            });
+    }
+
+    /**
+     * Gets the test results being built up for a test thread.
+     *
+     * @param  threadId Optional thread id if not calling from thread that started the test method. May be null.
+     *
+     * @return The test results being built up for the test thread.
+     */
+    private TestResult getTestResult(Long threadId)
+    {
+        return (threadId == null) ? threadLocalResults.get(Thread.currentThread().getId())
+                                  : threadLocalResults.get(threadId);
+    }
+
+    /**
+     * Writes out a result entry for a test, preceded by a test name entry if this is the first result for the test.
+     *
+     * @param test     The test.
+     * @param r        The test results.
+     * @param threadId The id of the thread that ran the test.
+     */
+    private synchronized void writeResult(Test test, TestResult r, long threadId)
+    {
+        if (closed)
+        {
+            return;
+        }
+
+        long timestamp = System.nanoTime() - startNanos;
+
+        // Assign a test id to the test, and write out its name, if this is the first time it has been seen.
+        String className = test.getClass().getName();
+        String methodName = (test instanceof TestCase) ? ((TestCase) test).getName() : "";
+        String key = className + "." + methodName;
+        Integer testId = testIds.get(key);
+
+        if (testId == null)
+        {
+            testId = testIds.size();
+            testIds.put(key, testId);
+
+            byte[] classBytes = className.getBytes(UTF8);
+            byte[] methodBytes = methodName.getBytes(UTF8);
+
+            ensureCapacity(8 + 2 + classBytes.length + 2 + methodBytes.length);
+            region.putShort(TEST_NAME);
+            region.putShort((short) 0);
+            region.putInt(testId);
+            region.putShort((short) classBytes.length);
+            region.put(classBytes);
+            region.putShort((short) methodBytes.length);
+            region.put(methodBytes);
+        }
+
+        // Write out the failure or error of the test, if it did not pass.
+        if (r.failure != null)
+        {
+            String message = r.failure.getMessage();
+            message = (message == null) ? "" : message;
+            message = (message.length() > MAX_MESSAGE_LENGTH) ? message.substring(0, MAX_MESSAGE_LENGTH) : message;
+
+            byte[] classBytes = r.failure.getClass().getName().getBytes(UTF8);
+            byte[] messageBytes = message.getBytes(UTF8);
+
+            ensureCapacity(8 + 2 + classBytes.length + 2 + messageBytes.length);
+            region.putShort(FAILURE_DETAIL);
+            region.putShort(r.testOutcome);
+            region.putInt(testId);
+            region.putShort((short) classBytes.length);
+            region.put(classBytes);
+            region.putShort((short) messageBytes.length);
+            region.put(messageBytes);
+        }
+
+        // Write out the optional measurements of the test, if any were made.
+        if ((r.testSuspendedTime >= 0) || (r.testUncorrectedTime >= 0) || (r.testRawTime >= 0) ||
+                (r.testCollections >= 0) || (r.testCore >= 0))
+        {
+            ensureCapacity(MEASUREMENTS_SIZE);
+            region.putShort(MEASUREMENTS);
+            region.putShort((short) 0);
+            region.putInt(testId);
+            region.putLong(r.testSuspendedTime);
+            region.putLong(r.testUncorrectedTime);
+            region.putLong(r.testRawTime);
+            region.putLong(r.testCollections);
+            region.putInt(r.testCore);
+            region.putInt(0);
+        }
+
+        ensureCapacity(RESULT_SIZE);
+        region.putShort(RESULT);
+        region.putShort(r.testOutcome);
+        region.putInt(testId);
+        region.putLong(timestamp);
+        region.putLong(threadId);
+        region.putLong(r.testTime);
+        region.putLong(r.testMemory);
+        region.putInt(r.testParam);
+        region.putInt(r.testConcurrency);
+    }
+
+    /**
+     * Writes out a batch start or end entry.
+     *
+     * @param kind The kind of entry, {@link #BATCH_START} or {@link #BATCH_END}.
+     */
+    private synchronized void writeBatchMarker(short kind)
+    {
+        if (closed)
+        {
+            return;
+        }
+
+        ensureCapacity(BATCH_SIZE);
+        region.putShort(kind);
+        region.putShort((short) 0);
+        region.putInt(0);
+        region.putLong(System.nanoTime() - startNanos);
+    }
+
+    /** Writes out the header. */
+    private void writeHeader()
+    {
+        region.putInt(MAGIC);
+        region.putInt(VERSION);
+        region.putLong(System.currentTimeMillis());
+    }
+
+    /**
+     * Ensures that there is space in the currently mapped region to write an entry, mapping in the next region of the
+     * file if there is not. When writing to a stream, the buffered entries are written out to it to make space.
+     *
+     * @param size The size of the entry in bytes.
+     */
+    private void ensureCapacity(int size)
+    {
+        if (region.remaining() >= size)
+        {
+            return;
+        }
+
+        if (out != null)
+        {
+            flushStream();
+
+            return;
+        }
+
+        try
+        {
+            regionStart += region.position();
+            region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, REGION_SIZE);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Unable to map the binary results file: " + e, e);
+        }
+    }
+
+    /** Writes out the buffered entries to the stream, and flushes it. */
+    private void flushStream()
+    {
+        try
+        {
+            out.write(region.array(), 0, region.position());
+            out.flush();
+            region.clear();
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Unable to write to the binary results stream: " + e, e);
+        }
+    }
+
+    /**
+     * Captures test results packaged into a single object, so that it can be set up as a thread local.
+     */
+    private static class TestResult
+    {
+        /** Used to hold the test timing. */
+        public long testTime;
+
+        /** Used to hold the memory used by the test. */
+        public long testMemory;
+
+        /** Used to hold the test outcome. */
+        public short testOutcome = PASS;
+
+        /** Used to hold the test parameter value. */
+        public int testParam;
+
+        /** Used to hold the concurrency level under which the test was run. */
+        public int testConcurrency;
+
+        /** Used to hold the failure or error that the test raised, if it did not pass. */
+        public Throwable failure;
+
+        /** Used to hold the time that the test suspended its timing for, or -1 if it was not measured. */
+        public long testSuspendedTime = -1L;
+
+        /** Used to hold the test timing from its actual start, when run on a schedule, or -1 if it was not. */
+        public long testUncorrectedTime = -1L;
+
+        /** Used to hold the test timing including the harness overhead, or -1 if it was not measured. */
+        public long testRawTime = -1L;
+
+        /** Used to hold the number of garbage collections during the test, or -1 if they were not counted. */
+        public long testCollections = -1L;
+
+        /** Used to hold the core that the test ran on, or -1 if it was not recorded. */
+        public int testCore = -1;
+    }
+}
@@ -17,19 +17,23 @@ package com.thesett.junit.extensions.listeners;
 
 import java.io.IOException;
 import java.io.Writer;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import junit.framework.AssertionFailedError;
 import junit.framework.Test;
 import junit.framework.TestCase;
-import junit.framework.TestListener;
 
 import com.thesett.common.util.concurrent.ShutdownHookable;
+import com.thesett.junit.extensions.util.CellStatistics;
+import com.thesett.junit.extensions.util.LatencyHistogram;
 import com.thesett.junit.extensions.util.TestContextProperties;
 
 /**
@@ -37,6 +41,16 @@ import com.thesett.junit.extensions.util.TestContextProperties;
  * for test completion events and then writes out all the data that it has listened to into a '.csv' (comma seperated
  * values) file.
  *
+ * <p/>Each test thread builds up its results in a slot of its own, which it finds through a thread local and re-uses
+ * for every test that it runs. The running stats for the batch are counted in the slots too, and only totalled up at
+ * the end of the batch, so that test threads do not contend on shared counters however many of them there are.
+ *
+ * <p/>In asynchronous mode the test threads do not write to the CSV file themselves. Instead each test thread copies
+ * its results into a pre-allocated record in a ring buffer of its own, that only it publishes to. A single background
+ * writer thread drains all of the ring buffers, formats the results and writes them out in batches. This means that
+ * recording results does not contend on a lock, or format the results, on the measured test threads. A test thread
+ * will only ever wait when its ring buffer is full, which only happens if the writer thread falls a whole ring behind.
+ *
  * <pre><p/><table id="crc"><caption>CRC Card</caption>
  * <tr><th> Responsibilities <th> Collaborations
  * <tr><td> Listen to test events; start, end, fail, error.
@@ -44,61 +58,116 @@ import com.thesett.junit.extensions.util.TestContextProperties;
  * <tr><td> Listen to test memory usage.
  * <tr><td> Listen to parameterized test parameters.
  * <tr><td> Output all test data to a CSV file.
+ * <tr><td> Optionally hand off test data to a background thread to write out.
+ * <tr><td> Optionally summarize test timings per test, size and concurrency level. <td> {@link CellStatistics}
  * </table></pre>
  *
  * @author Rupert Smith
  * @todo   Write an XML output class. Write a transform to convert it into an HTML page with timings as graphs.
  */
-public class CSVTestListener implements TestListener, TKTestListener, ShutdownHookable
+public class CSVTestListener extends TKTestListenerAdapter implements ShutdownHookable
 {
     /** Used for logging. */
     /*private static final Logger log = Logger.getLogger(CSVTestListener.class);*/
 
+    /** The number of result records in each per-thread ring buffer in asynchronous mode. Must be a power of two. */
+    private static final int RING_CAPACITY = 1024;
+
+    /** The length of time the background writer pauses for when it finds no results to write, in nanoseconds. */
+    private static final long WRITER_PAUSE_NANOS = 1000000;
+
+    /** The length of time a test thread first backs off for when its ring buffer is full, in nanoseconds. */
+    private static final long MIN_CLAIM_PAUSE_NANOS = 1000;
+
     /** The timings file writer. */
     private final Writer timingsWriter;
 
-    /**
-     * Map for holding results on a per thread basis as they come in. A ThreadLocal is not used as sometimes an explicit
-     * thread id must be used, where notifications come from different threads than the ones that called the test
-     * method.
-     */
-    final Map<Long, TestResult> threadLocalResults = Collections.synchronizedMap(new HashMap<Long, TestResult>());
+    /** Flag that indicates that test results are handed off to a background thread to be written out. */
+    private final boolean asynchronous;
 
-    /** Used to record the start time of a complete test run, for outputing statistics at the end of the test run. */
-    private long batchStartTime;
+    /** Holds the ring buffer that each test thread publishes its results to in asynchronous mode. */
+    private final ThreadLocal<ResultRing> resultRings = new ThreadLocal<ResultRing>();
 
-    /** Used to record the number of errors accross a complete test run. */
-    private int numError;
+    /** Holds all of the ring buffers that the background writer drains. */
+    private final List<ResultRing> allResultRings = new CopyOnWriteArrayList<ResultRing>();
 
-    /** Used to record the number of failures accross a complete test run. */
-    private int numFailed;
+    /** Used to ensure that only one thread at a time drains the ring buffers. */
+    private final Object drainLock = new Object();
 
-    /** Used to record the number of passes accross a complete test run. */
-    private int numPassed;
+    /** Used to build up the text of drained results, re-used on every drain. */
+    private final StringBuilder drainBuffer = new StringBuilder();
 
-    /** Used to record the total tests run accross a complete test run. Always equal to passes + errors + fails. */
-    private int totalTests;
+    /** Holds the background writer thread in asynchronous mode, whilst it is running. */
+    private volatile Thread writerThread;
 
-    /** Used to recrod the current concurrency level for the test batch. */
-    private int concurrencyLevel;
+    /** Holds the error that stopped the background writer, or null if it has not failed. */
+    private volatile RuntimeException writerFailure;
 
     /**
-     * Used to record the total 'size' of the tests run, this is the number run times the average value of the test size
-     * parameters.
+     * Holds the results slot of each test thread, so that a test thread can find its own slot without locking. Each
+     * test thread has a single slot, which is re-used for every test that it runs.
      */
-    private int totalSize;
+    private final ThreadLocal<TestResult> results = new ThreadLocal<TestResult>();
 
     /**
-     * Used to record the summation of all of the individual test timgings. Note that total time and summed time are
-     * unlikely to be in agreement, exception for a single threaded test (with no setup time). Total time is the time
-     * taken to run all the tests, summed time is the added up time that each individual test took. So if two tests run
-     * in parallel and take one second each, total time will be one seconds, summed time will be two seconds.
+     * Holds the results slot of each test thread by thread id. This is only looked up where an explicit thread id is
+     * given, as notifications sometimes come from different threads than the ones that called the test method.
      */
-    private long summedTime;
+    private final Map<Long, TestResult> resultsByThread = new ConcurrentHashMap<Long, TestResult>();
+
+    /** Holds all of the results slots, so that the running stats kept in them can be totalled over the batch. */
+    private final List<TestResult> allResults = new CopyOnWriteArrayList<TestResult>();
+
+    /** Used to record the start time of a complete test run, for outputing statistics at the end of the test run. */
+    private long batchStartTime;
+
+    /**
+     * Used to record the running stats accross a complete test run, for results that are not kept in the per thread
+     * slots; those drained by the background writer, or summarized by batch.
+     */
+    private final BatchStats batchStats = new BatchStats();
+
+    /** Used to recrod the current concurrency level for the test batch. */
+    private int concurrencyLevel;
 
     /** Flag to indicate when batch has been started but not ended to ensure end batch stats are output only once. */
     private boolean batchStarted;
 
+    /** Used to record the target rate of the batch in tests per second, or zero if it was not run at a fixed rate. */
+    private float targetRate;
+
+    /** Used to record the rate achieved over the batch in tests per second, if it was run at a fixed rate. */
+    private float achievedRate;
+
+    /** Used to record the number of virtual thread pinning events in the batch, or -1 if they were not counted. */
+    private long pinnedThreads;
+
+    /** Used to record the garbage collection activity during the batch, or null if it was not monitored. */
+    private GarbageCollectionSummary garbageCollection;
+
+    /** Used to record the steady state threshold of the batch, or zero if steady state was not being detected. */
+    private float steadyStateThreshold;
+
+    /** Used to record the time taken to reach steady state in nanoseconds, or -1 if it was not reached. */
+    private long steadyTime;
+
+    /** Used to record the harness overhead taken out of instrumented test timings, or -1 if none was taken out. */
+    private long instrumentedBaseline;
+
+    /** Used to record the harness overhead taken out of uninstrumented test timings, if any was taken out. */
+    private long uninstrumentedBaseline;
+
+    /** Used to summarize the test timings per test, size and concurrency level, or null if they are not summarized. */
+    private CellStatistics cellStatistics;
+
+    /**
+     * Holds the stripes of statistics that test threads summarize their test timings in, selected by thread id, or null
+     * if they are not summarized. These are merged into the batch cell statistics at the end of each batch. Striping
+     * them keeps contention between test threads low, whilst bounding their memory by the number of stripes, rather
+     * than by the number of test threads.
+     */
+    private CellStatistics[] cellStripes;
+
     /**
      * Creates a new CSVTestListener object.
      *
@@ -106,10 +175,50 @@ public class CSVTestListener implements TestListener, TKTestListener, ShutdownHo
      */
     public CSVTestListener(Writer writer)
     {
-        // log.debug("public CSVTestListener(Writer writer): called");
+        this(writer, false);
+    }
+
+    /**
+     * Creates a new CSVTestListener object, that optionally writes out test results on a background thread.
+     *
+     * @param writer       A writer where this CSV listener should write out its output to.
+     * @param asynchronous <tt>true</tt> to write out test results on a background thread.
+     */
+    public CSVTestListener(Writer writer, boolean asynchronous)
+    {
+        // log.debug("public CSVTestListener(Writer writer, boolean asynchronous): called");
 
         // Keep the writer.
         this.timingsWriter = writer;
+        this.asynchronous = asynchronous;
+    }
+
+    /**
+     * Sets up statistics to summarize the test timings in, per test, size and concurrency level. When set, a summary
+     * table of the statistics for each cell is written out at the end of each batch. This should be set before any
+     * tests are run.
+     *
+     * @param cellStatistics The statistics to summarize test timings in, or <tt>null</tt> to not summarize them.
+     */
+    public void setCellStatistics(CellStatistics cellStatistics)
+    {
+        this.cellStatistics = cellStatistics;
+        this.cellStripes = null;
+
+        // Create the stripes, sized to a power of two at least twice the number of processors, so that threads running
+        // at the same time rarely summarize into the same stripe.
+        if (cellStatistics != null)
+        {
+            int processors = Runtime.getRuntime().availableProcessors();
+            int stripes = Integer.highestOneBit(Math.max(1, (2 * processors) - 1)) << 1;
+
+            cellStripes = new CellStatistics[stripes];
+
+            for (int i = 0; i < stripes; i++)
+            {
+                cellStripes[i] = new CellStatistics();
+            }
+        }
     }
 
     /**
@@ -122,15 +231,18 @@ public class CSVTestListener implements TestListener, TKTestListener, ShutdownHo
     {
         // log.debug("public void reset(Test test = \"" + test + "\", Long threadId = " + threadId + "): called");
 
-        TestResult r =
-            (threadId == null) ? threadLocalResults.get(Thread.currentThread().getId())
-                               : threadLocalResults.get(threadId);
+        TestResult r = getTestResult(threadId);
 
         r.testTime = 0L;
+        r.testUncorrectedTime = 0L;
+        r.testRawTime = 0L;
+        r.testSuspendedTime = 0L;
         r.testStartMem = 0L;
         r.testEndMem = 0L;
-        r.testState = "Pass";
+        r.testOutcome = TestOutcome.PASS;
         r.testParam = 0;
+        r.testCore = -1;
+        r.testCollections = 0L;
     }
 
     /**
@@ -143,8 +255,8 @@ public class CSVTestListener implements TestListener, TKTestListener, ShutdownHo
     {
         // log.debug("public void addError(Test test, Throwable t): called");
 
-        TestResult r = threadLocalResults.get(Thread.currentThread().getId());
-        r.testState = "Error";
+        TestResult r = getTestResult(null);
+        r.testOutcome = TestOutcome.ERROR;
     }
 
     /**
@@ -157,8 +269,8 @@ public class CSVTestListener implements TestListener, TKTestListener, ShutdownHo
     {
         // log.debug("public void addFailure(Test \"" + test + "\", AssertionFailedError t): called");
 
-        TestResult r = threadLocalResults.get(Thread.currentThread().getId());
-        r.testState = "Failure";
+        TestResult r = getTestResult(null);
+        r.testOutcome = TestOutcome.FAILURE;
     }
 
     /**
@@ -174,11 +286,9 @@ public class CSVTestListener implements TestListener, TKTestListener, ShutdownHo
         // log.debug("public void addFailure(Test test = \"" + test + "\", AssertionFailedError e, Long threadId = " + threadId
         // + "): called");
 
-        TestResult r =
-            (threadId == null) ? threadLocalResults.get(Thread.currentThread().getId())
-                               : threadLocalResults.get(threadId);
+        TestResult r = getTestResult(threadId);
 
-        r.testState = "Failure";
+        r.testOutcome = TestOutcome.FAILURE;
     }
 
     /**
@@ -190,12 +300,9 @@ public class CSVTestListener implements TestListener, TKTestListener, ShutdownHo
     {
         // log.debug("public void endTest(Test \"" + test + "\"): called");
 
-        TestResult r = threadLocalResults.get(Thread.currentThread().getId());
+        TestResult r = getTestResult(null);
 
         writeTestResults(r, test);
-
-        // Clear all the test results for the thread.
-        threadLocalResults.remove(Thread.currentThread().getId());
     }
 
     /**
@@ -207,8 +314,8 @@ public class CSVTestListener implements TestListener, TKTestListener, ShutdownHo
     {
         // log.debug("public void startTest(Test \"" + test + "\"): called");
 
-        // Initialize the thread local test results.
-        threadLocalResults.put(Thread.currentThread().getId(), new TestResult());
+        // Clear down the thread local test results, ready for the new test.
+        getTestResult(null).clear();
     }
 
     /**
@@ -222,12 +329,100 @@ public class CSVTestListener implements TestListener, TKTestListener, ShutdownHo
     {
         // log.debug("public void timing(String \"" + test + "\", long " + nanos + "): called");
 
-        TestResult r =
-            (threadId == null) ? threadLocalResults.get(Thread.currentThread().getId())
-                               : threadLocalResults.get(threadId);
+        TestResult r = getTestResult(threadId);
 
         r.testTime = nanos;
-        summedTime += nanos;
+        r.testUncorrectedTime = nanos;
+        r.testRawTime = nanos;
+    }
+
+    /**
+     * Should be called every time a test that was run on a schedule completes, with the run time of that test from its
+     * actual start time. This must be called after {@link #timing(junit.framework.Test, long, Long)}, which records the
+     * uncorrected time as the same as the timing, for tests that were not run on a schedule.
+     *
+     * @param test     The test which was run on a schedule.
+     * @param nanos    The run time of the test from its actual start in nanoseconds.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void uncorrectedTiming(Test test, long nanos, Long threadId)
+    {
+        // log.debug("public void uncorrectedTiming(Test \"" + test + "\", long " + nanos + "): called");
+
+        TestResult r = getTestResult(threadId);
+
+        r.testUncorrectedTime = nanos;
+    }
+
+    /**
+     * Should be called every time a test completes, when the harness overhead is being taken out of test timings, with
+     * the run time of that test from before the overhead was taken out. This must be called after
+     * {@link #timing(junit.framework.Test, long, Long)}, which records the raw time as the same as the timing, for when
+     * the harness overhead is not being taken out.
+     *
+     * @param test     The test which completed.
+     * @param nanos    The run time of the test before the harness overhead was taken out in nanoseconds.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void rawTiming(Test test, long nanos, Long threadId)
+    {
+        // log.debug("public void rawTiming(Test \"" + test + "\", long " + nanos + "): called");
+
+        TestResult r = getTestResult(threadId);
+
+        r.testRawTime = nanos;
+    }
+
+    /**
+     * Should be called every time a test completes with the number of garbage collections that ran whilst it was
+     * running, when garbage collection is being monitored.
+     *
+     * @param test        The test for which the measurement is being generated.
+     * @param collections The number of garbage collections that ran whilst the test was running.
+     * @param threadId    Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void garbageCollections(Test test, long collections, Long threadId)
+    {
+        // log.debug("public void garbageCollections(Test test = \"" + test + "\", long collections = " + collections +
+        //     "): called");
+
+        TestResult r = getTestResult(threadId);
+
+        r.testCollections = collections;
+    }
+
+    /**
+     * Should be called every time a test completes with the core that the test thread was running on when it completed,
+     * when test threads are being placed on cores.
+     *
+     * @param test     The test for which the measurement is being generated.
+     * @param core     The core that the test thread was running on, or -1 if it could not be found out.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void core(Test test, int core, Long threadId)
+    {
+        // log.debug("public void core(Test test = \"" + test + "\", int core = " + core + "): called");
+
+        TestResult r = getTestResult(threadId);
+
+        r.testCore = core;
+    }
+
+    /**
+     * Should be called every time a test that may have suspended its timer completes, with the amount of time that was
+     * excluded from its timing whilst suspended.
+     *
+     * @param test     The test which suspended its timer.
+     * @param nanos    The time excluded from the test timing in nanoseconds.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void suspendedTime(Test test, long nanos, Long threadId)
+    {
+        // log.debug("public void suspendedTime(Test \"" + test + "\", long " + nanos + "): called");
+
+        TestResult r = getTestResult(threadId);
+
+        r.testSuspendedTime = nanos;
     }
 
     /**
@@ -243,9 +438,7 @@ public class CSVTestListener implements TestListener, TKTestListener, ShutdownHo
         // log.debug("public void memoryUsed(Test \"" + test + "\", long " + memStart + ", long " + memEnd + ", Long "
         // + threadId + "): called");
 
-        TestResult r =
-            (threadId == null) ? threadLocalResults.get(Thread.currentThread().getId())
-                               : threadLocalResults.get(threadId);
+        TestResult r = getTestResult(threadId);
 
         r.testStartMem = memStart;
         r.testEndMem = memEnd;
@@ -262,12 +455,9 @@ public class CSVTestListener implements TestListener, TKTestListener, ShutdownHo
     {
         // log.debug("public void parameterValue(Test test = \"" + test + "\", int parameter = " + parameter + "): called");
 
-        TestResult r =
-            (threadId == null) ? threadLocalResults.get(Thread.currentThread().getId())
-                               : threadLocalResults.get(threadId);
+        TestResult r = getTestResult(threadId);
 
         r.testParam = parameter;
-        totalSize += parameter;
     }
 
     /**
@@ -282,13 +472,15 @@ public class CSVTestListener implements TestListener, TKTestListener, ShutdownHo
     {
         // log.debug("public void concurrencyLevel(Test test = \"" + test + "\", int threads = " + threads + "): called");
 
-        TestResult r =
-            (threadId == null) ? threadLocalResults.get(Thread.currentThread().getId())
-                               : threadLocalResults.get(threadId);
+        TestResult r = getTestResult(threadId);
 
         r.testConcurrency = threads;
-        concurrencyLevel = threads;
 
+        // Only write to the shared concurrency level when it changes, to avoid contending on it on every test.
+        if (concurrencyLevel != threads)
+        {
+            concurrencyLevel = threads;
+        }
     }
 
     /**
@@ -302,32 +494,84 @@ public class CSVTestListener implements TestListener, TKTestListener, ShutdownHo
     {
         // log.debug("public void endTest(Test test = \"" + test + "\", Long threadId " + threadId + "): called");
 
-        TestResult r =
-            (threadId == null) ? threadLocalResults.get(Thread.currentThread().getId())
-                               : threadLocalResults.get(threadId);
+        TestResult r = getTestResult(threadId);
 
         writeTestResults(r, test);
     }
 
-    /** Takes a time stamp for the beginning of the batch and resets stats counted for the batch. */
+    /**
+     * Takes a time stamp for the beginning of the batch and resets stats counted for the batch. In asynchronous mode,
+     * this also starts the background writer, if it is not already running. Every test thread in a batch may start
+     * the batch, only the first one to do so resets the stats, so that results already recorded by the other test
+     * threads are not lost.
+     */
     public synchronized void startBatch()
     {
-        numError = 0;
-        numFailed = 0;
-        numPassed = 0;
-        totalTests = 0;
-        totalSize = 0;
-        batchStartTime = System.nanoTime();
-        summedTime = 0;
-        batchStarted = true;
+        // Ignore the batch being started again by the other test threads.
+        if (batchStarted)
+        {
+            return;
+        }
+
+        synchronized (drainLock)
+        {
+            batchStats.reset();
+            batchStartTime = System.nanoTime();
+            targetRate = 0.0f;
+            achievedRate = 0.0f;
+            pinnedThreads = -1L;
+            steadyStateThreshold = 0.0f;
+            steadyTime = -1L;
+            instrumentedBaseline = -1L;
+            uninstrumentedBaseline = -1L;
+            garbageCollection = null;
+            batchStarted = true;
+
+            if (cellStatistics != null)
+            {
+                cellStatistics.reset();
+
+                for (CellStatistics stripe : cellStripes)
+                {
+                    stripe.reset();
+                }
+            }
+
+            // Clear down the running stats kept in the per thread slots.
+            for (TestResult r : allResults)
+            {
+                r.batchStats.reset();
+            }
+
+            // Write out the column headers for the batch.
+            writeColumnHeaders();
+        }
+
+        if (asynchronous && (writerThread == null))
+        {
+            Thread writer = new Thread(new BackgroundWriter(), "CSVTestListener-writer");
+            writer.setDaemon(true);
+            writer.start();
+            writerThread = writer;
+        }
+    }
 
-        // Write out the column headers for the batch.
-        writeColumnHeaders();
+    /**
+     * Takes a fresh time stamp for the beginning of the batch once the warm-up has ended, so that the total run time
+     * and throughput of the batch do not include the warm-up.
+     */
+    public synchronized void endWarmup()
+    {
+        synchronized (drainLock)
+        {
+            batchStartTime = System.nanoTime();
+        }
     }
 
     /**
      * Takes a time stamp for the end of the batch to calculate the total run time. Write this and other stats out to
-     * the tail of the csv file.
+     * the tail of the csv file. In asynchronous mode, this also stops the background writer, and writes out any results
+     * that it had not yet written out.
      *
      * @param parameters The optional test parameters, may be null.
      */
@@ -335,25 +579,97 @@ public class CSVTestListener implements TestListener, TKTestListener, ShutdownHo
     {
         boolean noParams = (parameters == null) || (parameters.size() == 0);
 
+        // Ensure that all results for the batch have been written out, before writing out the batch stats.
+        if (asynchronous)
+        {
+            stopWriter();
+
+            // Pass on any error that stopped the background writer, as the results that it was writing have been lost.
+            RuntimeException failure = writerFailure;
+            writerFailure = null;
+
+            if (failure != null)
+            {
+                throw new IllegalStateException(failure.getMessage(), failure);
+            }
+
+            drainResults();
+        }
+
         // Check that a batch has been started but not ended.
         if (batchStarted)
         {
             long batchEndTime = System.nanoTime();
             float totalTimeMillis = ((float) (batchEndTime - batchStartTime)) / 1000000f;
-            float summedTimeMillis = ((float) summedTime) / 1000000f;
+
+            // Total up the running stats for the batch from all of the per thread slots.
+            BatchStats totals = totalBatchStats();
+            int totalTests = totals.totalTests;
+            int totalSize = totals.totalSize;
+            float summedTimeMillis = ((float) totals.summedTime) / 1000000f;
 
             // Write the stats for the batch out.
             try
             {
                 synchronized (this.getClass())
                 {
+                    // Write out the summary table of timings per cell, if they are being summarized.
+                    if (cellStatistics != null)
+                    {
+                        writeCellStatistics();
+                    }
+
                     timingsWriter.write("Total Tests:, " + totalTests + ", ");
-                    timingsWriter.write("Total Passed:, " + numPassed + ", ");
-                    timingsWriter.write("Total Failed:, " + numFailed + ", ");
-                    timingsWriter.write("Total Error:, " + numError + ", ");
+                    timingsWriter.write("Total Passed:, " + totals.numPassed + ", ");
+                    timingsWriter.write("Total Failed:, " + totals.numFailed + ", ");
+                    timingsWriter.write("Total Error:, " + totals.numError + ", ");
                     timingsWriter.write("Total Size:, " + totalSize + ", ");
                     timingsWriter.write("Summed Time:, " + summedTimeMillis + ", ");
+                    timingsWriter.write("Summed Suspended Time:, " + toMillis(totals.summedSuspendedTime) + ", ");
                     timingsWriter.write("Concurrency Level:, " + concurrencyLevel + ", ");
+
+                    // Write out the target and achieved rates, if the batch was run at a fixed rate.
+                    if (targetRate > 0.0f)
+                    {
+                        timingsWriter.write("Target Rate:, " + targetRate + ", ");
+                        timingsWriter.write("Achieved Rate:, " + achievedRate + ", ");
+                        timingsWriter.write("Rate Error (%):, " + (((achievedRate - targetRate) * 100f) / targetRate) +
+                            ", ");
+                    }
+
+                    // Write out the time taken to reach steady state, if it was being detected.
+                    if (steadyStateThreshold > 0.0f)
+                    {
+                        timingsWriter.write("Steady State Threshold:, " + steadyStateThreshold + ", ");
+                        timingsWriter.write("Steady State Time (milliseconds):, " +
+                            ((steadyTime >= 0) ? Float.toString(toMillis(steadyTime)) : "Not Reached") + ", ");
+                    }
+
+                    // Write out the harness overhead taken out of the test timings, if any was.
+                    if (instrumentedBaseline >= 0)
+                    {
+                        timingsWriter.write("Instrumented Harness Baseline (milliseconds):, " +
+                            toMillis(instrumentedBaseline) + ", ");
+                        timingsWriter.write("Uninstrumented Harness Baseline (milliseconds):, " +
+                            toMillis(uninstrumentedBaseline) + ", ");
+                    }
+
+                    // Write out the garbage collection activity, if it was monitored.
+                    if (garbageCollection != null)
+                    {
+                        timingsWriter.write("GC Collections:, " + garbageCollection.getCollections() + ", ");
+                        timingsWriter.write("GC Time (milliseconds):, " + garbageCollection.getCollectionTime() +
+                            ", ");
+                        timingsWriter.write("GC Pause Time (milliseconds):, " + garbageCollection.getPauseTime() +
+                            ", ");
+                    }
+
+                    // Write out the number of virtual thread pinning events, if they were counted.
+                    if (pinnedThreads >= 0)
+                    {
+                        timingsWriter.write("Pinned Virtual Threads:, " + pinnedThreads + ", ");
+                    }
+
                     timingsWriter.write("Total Time:, " + totalTimeMillis + ", ");
                     timingsWriter.write("Test Throughput:, " + (((float) totalTests) / totalTimeMillis) + ", ");
                     timingsWriter.write("Test * Size Throughput:, " + (((float) totalSize) / totalTimeMillis) +
@@ -378,6 +694,177 @@ public class CSVTestListener implements TestListener, TKTestListener, ShutdownHo
         batchStarted = false;
     }
 
+    /**
+     * Adds the aggregated results of a batch into the running stats for the batch, and writes out a line summarizing
+     * the latency distribution of the batch. The running stats are written out by {@link #endBatch(Properties)} as
+     * usual.
+     *
+     * @param summary The aggregated results of the batch.
+     */
+    public synchronized void batchSummary(BatchSummary summary)
+    {
+        LatencyHistogram latencies = summary.getLatencies();
+
+        // Update the running stats for this batch.
+        synchronized (drainLock)
+        {
+            batchStats.numError += (int) summary.getErrors();
+            batchStats.numFailed += (int) summary.getFailures();
+            batchStats.numPassed += (int) summary.getPasses();
+            batchStats.totalTests += (int) summary.getTotalTests();
+            batchStats.totalSize += (int) summary.getTotalSize();
+            batchStats.summedTime += latencies.getTotalValue();
+            batchStats.summedSuspendedTime += summary.getSuspendedTime();
+        }
+
+        concurrencyLevel = summary.getConcurrencyLevel();
+
+        // Write out the latency distribution for the batch, and the uncorrected distribution too, if any tests were run
+        // on a schedule.
+        try
+        {
+            synchronized (this.getClass())
+            {
+                writeLatencyDistribution("Latency Count:, ", latencies);
+
+                if (summary.getScheduledTests() > 0)
+                {
+                    writeLatencyDistribution("Uncorrected Latency Count:, ", summary.getUncorrectedLatencies());
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Unable to write out batch latency summary: " + e, e);
+        }
+    }
+
+    /**
+     * Records the target and achieved rates of the batch, to be written out with the batch stats by
+     * {@link #endBatch(Properties)}.
+     *
+     * @param targetRate   The target rate in tests per second.
+     * @param achievedRate The rate achieved over the batch in tests per second.
+     */
+    public synchronized void batchRate(float targetRate, float achievedRate)
+    {
+        this.targetRate = targetRate;
+        this.achievedRate = achievedRate;
+    }
+
+    /**
+     * Writes out a line for each garbage collection that overlapped the batch, and records the garbage collection
+     * counts and times to be written out with the batch stats by {@link #endBatch(Properties)}.
+     *
+     * @param summary The garbage collection activity during the batch.
+     */
+    public synchronized void batchGarbageCollection(GarbageCollectionSummary summary)
+    {
+        this.garbageCollection = summary;
+
+        // Ensure that all results for the batch have been written out, before writing out the collections.
+        if (asynchronous)
+        {
+            drainResults();
+        }
+
+        // Write out each collection, with its start time relative to the start of the batch.
+        try
+        {
+            synchronized (this.getClass())
+            {
+                for (GarbageCollectionSummary.Pause pause : summary.getPauses())
+                {
+                    timingsWriter.write("GC Pause:, " + pause.getCollector() + ", ");
+                    timingsWriter.write("Action:, " + pause.getAction() + ", ");
+                    timingsWriter.write("Cause:, " + pause.getCause() + ", ");
+                    timingsWriter.write("Start (milliseconds):, " + toMillis(pause.getStartTime() - batchStartTime) +
+                        ", ");
+                    timingsWriter.write("Duration (milliseconds):, " + pause.getDuration() + "\n");
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Unable to write out garbage collections: " + e, e);
+        }
+    }
+
+    /**
+     * Writes out a line for each test whose timings were fitted against complexity classes, giving the complexity
+     * class that best fits its timings, and how well it fits.
+     *
+     * @param fits The best fits for each test that was run over enough sizes to be fitted.
+     */
+    public synchronized void batchComplexity(List<ComplexityFit> fits)
+    {
+        // Ensure that all results for the batch have been written out, before writing out the fits.
+        if (asynchronous)
+        {
+            drainResults();
+        }
+
+        try
+        {
+            synchronized (this.getClass())
+            {
+                for (ComplexityFit fit : fits)
+                {
+                    timingsWriter.write("Complexity Fit:, " + fit.getTest().getClass().getName() + ", " +
+                        fit.getTestName() + ", ");
+                    timingsWriter.write("Best Fit:, " + fit.getBestFit() + ", ");
+                    timingsWriter.write("R Squared:, " + fit.getRSquared() + ", ");
+                    timingsWriter.write("Intercept (nanoseconds):, " + fit.getIntercept() + ", ");
+                    timingsWriter.write("Constant (nanoseconds):, " + fit.getConstant() + ", ");
+                    timingsWriter.write("Expected:, " + ((fit.getExpected() == null) ? "" : fit.getExpected()) +
+                        ", ");
+                    timingsWriter.write("Sizes:, " + fit.getSizes() + "\n");
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Unable to write out complexity fits: " + e, e);
+        }
+    }
+
+    /**
+     * Records the time taken to reach steady state during the warm-up of the batch, to be written out with the batch
+     * stats by {@link #endBatch(Properties)}.
+     *
+     * @param threshold       The coefficient of variation below which steady state is reached.
+     * @param steadyTimeNanos The time taken to reach steady state in nanoseconds, or -1 if it was not reached.
+     */
+    public synchronized void batchSteadyState(float threshold, long steadyTimeNanos)
+    {
+        this.steadyStateThreshold = threshold;
+        this.steadyTime = steadyTimeNanos;
+    }
+
+    /**
+     * Records the harness overhead that was taken out of the test timings of the batch, to be written out with the
+     * batch stats by {@link #endBatch(Properties)}.
+     *
+     * @param instrumentedNanos   The overhead taken out of the timings of instrumented tests in nanoseconds.
+     * @param uninstrumentedNanos The overhead taken out of the timings of uninstrumented tests in nanoseconds.
+     */
+    public synchronized void batchBaseline(long instrumentedNanos, long uninstrumentedNanos)
+    {
+        this.instrumentedBaseline = instrumentedNanos;
+        this.uninstrumentedBaseline = uninstrumentedNanos;
+    }
+
+    /**
+     * Records the number of virtual thread pinning events in the batch, to be written out with the batch stats by
+     * {@link #endBatch(Properties)}.
+     *
+     * @param pinnedCount The number of pinning events in the batch, or -1 if they could not be counted.
+     */
+    public synchronized void batchPinnedThreads(long pinnedCount)
+    {
+        this.pinnedThreads = pinnedCount;
+    }
+
     /**
      * Notifies listeners of the tests read/set properties.
      *
@@ -434,6 +921,59 @@ public class CSVTestListener implements TestListener, TKTestListener, ShutdownHo
             });
     }
 
+    /**
+     * Writes out a line summarizing a latency distribution.
+     *
+     * @param  countLabel The label to write out in front of the count of latencies.
+     * @param  latencies  The latency distribution to summarize.
+     *
+     * @throws IOException If the summary cannot be written out.
+     */
+    private void writeLatencyDistribution(String countLabel, LatencyHistogram latencies) throws IOException
+    {
+        timingsWriter.write(countLabel + latencies.getTotalCount() + ", ");
+        timingsWriter.write("Min (milliseconds):, " + toMillis(latencies.getMinValue()) + ", ");
+        timingsWriter.write("Max (milliseconds):, " + toMillis(latencies.getMaxValue()) + ", ");
+        timingsWriter.write("Mean (milliseconds):, " + (((float) latencies.getMean()) / 1000000f) + ", ");
+
+        for (double percentile : BatchSummary.PERCENTILES)
+        {
+            timingsWriter.write("P" + percentile + " (milliseconds):, " +
+                toMillis(latencies.getValueAtPercentile(percentile)) + ", ");
+        }
+
+        timingsWriter.write("\n");
+    }
+
+    /**
+     * Writes out a summary table of the test timings per test, size and concurrency level, with a line for each cell.
+     *
+     * @throws IOException If the summary cannot be written out.
+     */
+    private void writeCellStatistics() throws IOException
+    {
+        for (CellStatistics.Cell cell : cellStatistics.getCells())
+        {
+            timingsWriter.write("Cell:, " + cell.getTestName() + ", ");
+            timingsWriter.write("Test Size:, " + cell.getN() + ", ");
+            timingsWriter.write("Concurrency Level:, " + cell.getConcurrency() + ", ");
+            timingsWriter.write("Count:, " + cell.getCount() + ", ");
+            timingsWriter.write("Mean (milliseconds):, " + (((float) cell.getMean()) / 1000000f) + ", ");
+            timingsWriter.write("Std Dev (milliseconds):, " + (((float) cell.getStandardDeviation()) / 1000000f) +
+                ", ");
+            timingsWriter.write("Min (milliseconds):, " + toMillis(cell.getMin()) + ", ");
+            timingsWriter.write("Max (milliseconds):, " + toMillis(cell.getMax()));
+
+            for (double percentile : BatchSummary.PERCENTILES)
+            {
+                timingsWriter.write(", P" + percentile + " (milliseconds):, " +
+                    toMillis(cell.getValueAtPercentile(percentile)));
+            }
+
+            timingsWriter.write("\n");
+        }
+    }
+
     /** Writes out and flushes the column headers for raw test data. */
     private void writeColumnHeaders()
     {
@@ -447,7 +987,12 @@ public class CSVTestListener implements TestListener, TKTestListener, ShutdownHo
             timingsWriter.write("Time (milliseconds), ");
             timingsWriter.write("Memory Used (bytes), ");
             timingsWriter.write("Concurrency level, ");
-            timingsWriter.write("Test Size\n");
+            timingsWriter.write("Test Size, ");
+            timingsWriter.write("Suspended Time (milliseconds), ");
+            timingsWriter.write("Uncorrected Time (milliseconds), ");
+            timingsWriter.write("Raw Time (milliseconds), ");
+            timingsWriter.write("Core, ");
+            timingsWriter.write("GC Count\n");
 
             timingsWriter.flush();
         }
@@ -465,21 +1010,22 @@ public class CSVTestListener implements TestListener, TKTestListener, ShutdownHo
      */
     private void writeTestResults(TestResult r, Test test)
     {
-        // Update the running stats for this batch.
-        if ("Error".equals(r.testState))
-        {
-            numError++;
-        }
-        else if ("Failure".equals(r.testState))
+        // Hand the results over to the background writer in asynchronous mode.
+        if (asynchronous)
         {
-            numFailed++;
-        }
-        else if ("Pass".equals(r.testState))
-        {
-            numPassed++;
+            publishTestResults(r, test);
+
+            return;
         }
 
-        totalTests++;
+        // Update the running stats for this batch, kept in the test threads own slot, and in the stripe of cell
+        // statistics for the thread.
+        CellStatistics[] stripes = cellStripes;
+        CellStatistics cells =
+            (stripes != null) ? stripes[(int) (Thread.currentThread().getId() & (stripes.length - 1))] : null;
+
+        updateBatchStats(r.batchStats, cells, test, r.testOutcome, r.testTime, r.testSuspendedTime,
+            r.testParam, r.testConcurrency);
 
         // Write the test name and thread information plus all instrumenation a line of the CSV ouput. Any IO
         // exceptions are ignored.
@@ -490,11 +1036,16 @@ public class CSVTestListener implements TestListener, TKTestListener, ShutdownHo
                 timingsWriter.write(test.getClass().getName() + ", ");
                 timingsWriter.write(((test instanceof TestCase) ? ((TestCase) test).getName() : "") + ", ");
                 timingsWriter.write(Thread.currentThread().getName() + ", ");
-                timingsWriter.write(r.testState + ", ");
+                timingsWriter.write(r.testOutcome + ", ");
                 timingsWriter.write((((float) r.testTime) / 1000000f) + ", ");
                 timingsWriter.write((r.testEndMem - r.testStartMem) + ", ");
                 timingsWriter.write(r.testConcurrency + ", ");
-                timingsWriter.write(r.testParam + "\n");
+                timingsWriter.write(r.testParam + ", ");
+                timingsWriter.write(toMillis(r.testSuspendedTime) + ", ");
+                timingsWriter.write(toMillis(r.testUncorrectedTime) + ", ");
+                timingsWriter.write(toMillis(r.testRawTime) + ", ");
+                timingsWriter.write(r.testCore + ", ");
+                timingsWriter.write(r.testCollections + "\n");
             }
         }
         catch (IOException e)
@@ -504,26 +1055,578 @@ public class CSVTestListener implements TestListener, TKTestListener, ShutdownHo
     }
 
     /**
-     * Captures test results packaged into a single object, so that it can be set up as a thread local.
+     * Updates running stats for the batch with the results of a test.
+     *
+     * @param stats             The running stats to update.
+     * @param cells             The statistics to summarize the test timing in, or <tt>null</tt> to not summarize it.
+     * @param test              The test.
+     * @param testOutcome       The test outcome.
+     * @param testTime          The test time in nanoseconds.
+     * @param testSuspendedTime The time excluded from the test time whilst suspended, in nanoseconds.
+     * @param testParam         The test size parameter.
+     * @param testConcurrency   The concurrency level the test was run at.
+     */
+    private void updateBatchStats(BatchStats stats, CellStatistics cells, Test test, TestOutcome testOutcome,
+        long testTime, long testSuspendedTime, int testParam, int testConcurrency)
+    {
+        switch (testOutcome)
+        {
+        case ERROR:
+            stats.numError++;
+            break;
+
+        case FAILURE:
+            stats.numFailed++;
+            break;
+
+        default:
+            stats.numPassed++;
+        }
+
+        stats.totalTests++;
+        stats.summedTime += testTime;
+        stats.summedSuspendedTime += testSuspendedTime;
+        stats.totalSize += testParam;
+
+        // Summarize the test timing in its cell, if timings are being summarized.
+        if (cells != null)
+        {
+            cells.record(test.getClass().getName(), (test instanceof TestCase) ? ((TestCase) test).getName() : "",
+                testParam, testConcurrency, testTime);
+        }
+    }
+
+    /**
+     * Copies the test results for the specified test into the next free record of the current threads ring buffer, and
+     * publishes it to the background writer. This does not allocate or take any locks. If the ring buffer is full,
+     * this backs off until the background writer has freed up a record, or frees one up itself if the background
+     * writer is not running.
+     *
+     * @param r    The test results to publish.
+     * @param test The test to publish them for.
+     */
+    private void publishTestResults(TestResult r, Test test)
+    {
+        ResultRing ring = resultRings.get();
+
+        if (ring == null)
+        {
+            ring = new ResultRing(Thread.currentThread());
+            resultRings.set(ring);
+            allResultRings.add(ring);
+        }
+
+        ResultRecord record = claim(ring);
+
+        record.test = test;
+        record.threadName = Thread.currentThread().getName();
+        record.testOutcome = r.testOutcome;
+        record.testTime = r.testTime;
+        record.testSuspendedTime = r.testSuspendedTime;
+        record.testUncorrectedTime = r.testUncorrectedTime;
+        record.testRawTime = r.testRawTime;
+        record.memoryUsed = r.testEndMem - r.testStartMem;
+        record.testConcurrency = r.testConcurrency;
+        record.testParam = r.testParam;
+        record.testCore = r.testCore;
+        record.testCollections = r.testCollections;
+
+        ring.publish();
+    }
+
+    /**
+     * Gets the next free record of a ring buffer. If the ring buffer is full, this backs off for increasing lengths of
+     * time until the background writer has freed up a record. If the background writer is not running, the ring buffer
+     * is drained on the calling thread instead.
+     *
+     * @param  ring The ring buffer to claim a record from.
+     *
+     * @return The next free record.
+     *
+     * @throws IllegalStateException If the background writer has failed, as it will never free up a record.
+     */
+    private ResultRecord claim(ResultRing ring)
+    {
+        long pause = MIN_CLAIM_PAUSE_NANOS;
+        ResultRecord record;
+
+        while ((record = ring.tryClaim()) == null)
+        {
+            // Fail fast if the background writer has failed.
+            RuntimeException failure = writerFailure;
+
+            if (failure != null)
+            {
+                throw new IllegalStateException(failure.getMessage(), failure);
+            }
+
+            // Free up the ring buffer on this thread if there is no background writer to do it, or back off whilst the
+            // background writer catches up.
+            Thread writer = writerThread;
+
+            if ((writer == null) || !writer.isAlive())
+            {
+                drainResults();
+            }
+            else
+            {
+                LockSupport.parkNanos(pause);
+                pause = Math.min(pause * 2, WRITER_PAUSE_NANOS);
+            }
+        }
+
+        return record;
+    }
+
+    /**
+     * Stops the background writer, if it is running, and waits for it to finish writing out whatever it was writing.
+     */
+    private void stopWriter()
+    {
+        Thread writer = writerThread;
+
+        if (writer == null)
+        {
+            return;
+        }
+
+        writer.interrupt();
+
+        try
+        {
+            writer.join();
+        }
+        catch (InterruptedException e)
+        {
+            // Restore the interrupted flag, the remaining results are still written out by the caller.
+            Thread.currentThread().interrupt();
+        }
+
+        writerThread = null;
+    }
+
+    /**
+     * Drains all published test results from all of the ring buffers, updates the running stats for the batch with
+     * them, and writes them out. Ring buffers belonging to test threads that have died are discarded once they have
+     * been emptied.
+     *
+     * @return The number of test results written out.
+     */
+    private int drainResults()
+    {
+        synchronized (drainLock)
+        {
+            drainBuffer.setLength(0);
+
+            int drained = 0;
+
+            for (ResultRing ring : allResultRings)
+            {
+                // Check if the owning thread has died before reading the tail, so that nothing can be published after
+                // the final drain.
+                boolean ownerAlive = ring.owner.isAlive();
+
+                long head = ring.head.get();
+                long tail = ring.tail.get();
+
+                for (; head < tail; head++)
+                {
+                    ResultRecord record = ring.records[(int) (head & ring.mask)];
+
+                    Test test = record.test;
+
+                    updateBatchStats(batchStats, cellStatistics, test, record.testOutcome, record.testTime,
+                        record.testSuspendedTime, record.testParam, record.testConcurrency);
+
+                    drainBuffer.append(test.getClass().getName()).append(", ");
+                    drainBuffer.append((test instanceof TestCase) ? ((TestCase) test).getName() : "").append(", ");
+                    drainBuffer.append(record.threadName).append(", ");
+                    drainBuffer.append(record.testOutcome).append(", ");
+                    drainBuffer.append(toMillis(record.testTime)).append(", ");
+                    drainBuffer.append(record.memoryUsed).append(", ");
+                    drainBuffer.append(record.testConcurrency).append(", ");
+                    drainBuffer.append(record.testParam).append(", ");
+                    drainBuffer.append(toMillis(record.testSuspendedTime)).append(", ");
+                    drainBuffer.append(toMillis(record.testUncorrectedTime)).append(", ");
+                    drainBuffer.append(toMillis(record.testRawTime)).append(", ");
+                    drainBuffer.append(record.testCore).append(", ");
+                    drainBuffer.append(record.testCollections).append('\n');
+
+                    record.test = null;
+                    drained++;
+                }
+
+                // Free up the drained records for re-use.
+                ring.head.lazySet(head);
+
+                if (!ownerAlive)
+                {
+                    allResultRings.remove(ring);
+                }
+            }
+
+            if (drained > 0)
+            {
+                try
+                {
+                    synchronized (this.getClass())
+                    {
+                        timingsWriter.write(drainBuffer.toString());
+                    }
+                }
+                catch (IOException e)
+                {
+                    throw new IllegalStateException("Unable to write out test results: " + e, e);
+                }
+            }
+
+            return drained;
+        }
+    }
+
+    /**
+     * Gets the results slot of a test thread. The current threads own slot is found without locking, and is created
+     * the first time that the thread runs a test. The slot of another thread is only looked up by its thread id where
+     * notifications come from a different thread than the one that called the test method.
+     *
+     * @param  threadId Optional thread id if not calling from thread that started the test method. May be null.
+     *
+     * @return The results slot of the test thread.
+     */
+    private TestResult getTestResult(Long threadId)
+    {
+        Thread current = Thread.currentThread();
+
+        if ((threadId != null) && (threadId != current.getId()))
+        {
+            return resultsByThread.get(threadId);
+        }
+
+        TestResult r = results.get();
+
+        // Set up a slot for the current thread, the first time that it runs a test.
+        if (r == null)
+        {
+            r = new TestResult(current);
+            results.set(r);
+            resultsByThread.put(current.getId(), r);
+            allResults.add(r);
+        }
+
+        return r;
+    }
+
+    /**
+     * Totals up the running stats for the batch, from the per thread slots and from the results that are not kept in
+     * them, and merges the striped cell statistics into the batch cell statistics. The slots of test threads that
+     * have died are discarded, once their stats have been totalled.
+     *
+     * @return The running stats for the batch.
+     */
+    private BatchStats totalBatchStats()
+    {
+        BatchStats totals = new BatchStats();
+
+        synchronized (drainLock)
+        {
+            totals.add(batchStats);
+        }
+
+        if (cellStatistics != null)
+        {
+            for (CellStatistics stripe : cellStripes)
+            {
+                cellStatistics.add(stripe);
+            }
+        }
+
+        for (TestResult r : allResults)
+        {
+            totals.add(r.batchStats);
+
+            if (!r.owner.isAlive())
+            {
+                allResults.remove(r);
+                resultsByThread.remove(r.owner.getId());
+            }
+        }
+
+        return totals;
+    }
+
+    /**
+     * Converts a time in nanoseconds into milliseconds.
+     *
+     * @param  nanos The time in nanoseconds.
+     *
+     * @return The time in milliseconds.
+     */
+    private static float toMillis(long nanos)
+    {
+        return ((float) nanos) / 1000000f;
+    }
+
+    /**
+     * Captures test results packaged into a single object, so that it can be set up as a thread local. This is the
+     * results slot of a single test thread, and is re-used for every test that the thread runs. It also holds the
+     * running stats for the batch of the tests that the thread has run, so that test threads do not contend on shared
+     * counters. A slot is only ever written to by one thread at a time, either the thread that owns it, or the thread
+     * that completes its current test on its behalf.
      */
     private static class TestResult
     {
+        /** Holds the thread that this slot belongs to. */
+        final Thread owner;
+
+        /** Holds the running stats for the batch of the tests run by the thread. */
+        final BatchStats batchStats = new BatchStats();
+
         /** Used to hold the test timing. */
         public long testTime;
 
+        /** Used to hold the time excluded from the test timing whilst suspended. */
+        public long testSuspendedTime;
+
+        /** Used to hold the test timing from its actual start, for tests run on a schedule. */
+        public long testUncorrectedTime;
+
+        /** Used to hold the test timing from before the harness overhead was taken out of it. */
+        public long testRawTime;
+
         /** Used to hold the test start memory usage. */
         public long testStartMem;
 
         /** Used to hold the test end memory usage. */
         public long testEndMem;
 
-        /** Used to hold the test pass/fail/error state. */
-        public String testState = "Pass";
+        /** Used to hold the test outcome. */
+        public TestOutcome testOutcome = TestOutcome.PASS;
 
         /** Used to hold the test parameter value. */
         public int testParam;
 
         /** Used to hold the concurrency level under which the test was run. */
         public int testConcurrency;
+
+        /** Used to hold the core that the test thread was running on, or -1 if not known. */
+        public int testCore = -1;
+
+        /** Used to hold the number of garbage collections that ran whilst the test was running. */
+        public long testCollections;
+
+        /**
+         * Creates the results slot for a test thread.
+         *
+         * @param owner The thread that the slot belongs to.
+         */
+        TestResult(Thread owner)
+        {
+            this.owner = owner;
+        }
+
+        /** Clears down the test results, ready for the next test. */
+        void clear()
+        {
+            testTime = 0L;
+            testSuspendedTime = 0L;
+            testUncorrectedTime = 0L;
+            testRawTime = 0L;
+            testStartMem = 0L;
+            testEndMem = 0L;
+            testOutcome = TestOutcome.PASS;
+            testParam = 0;
+            testConcurrency = 0;
+            testCore = -1;
+            testCollections = 0L;
+        }
+    }
+
+    /**
+     * Holds the running stats for a batch of tests, as counted by a single thread.
+     */
+    private static class BatchStats
+    {
+        /** Used to record the number of errors. */
+        int numError;
+
+        /** Used to record the number of failures. */
+        int numFailed;
+
+        /** Used to record the number of passes. */
+        int numPassed;
+
+        /** Used to record the total tests run. Always equal to passes + errors + fails. */
+        int totalTests;
+
+        /**
+         * Used to record the total 'size' of the tests run, this is the number run times the average value of the test
+         * size parameters.
+         */
+        int totalSize;
+
+        /**
+         * Used to record the summation of all of the individual test timgings. Note that total time and summed time
+         * are unlikely to be in agreement, exception for a single threaded test (with no setup time). Total time is the
+         * time taken to run all the tests, summed time is the added up time that each individual test took. So if two
+         * tests run in parallel and take one second each, total time will be one seconds, summed time will be two
+         * seconds.
+         */
+        long summedTime;
+
+        /** Used to record the summation of the time excluded from the individual test timings whilst suspended. */
+        long summedSuspendedTime;
+
+        /**
+         * Adds another set of running stats to these ones.
+         *
+         * @param other The running stats to add.
+         */
+        void add(BatchStats other)
+        {
+            numError += other.numError;
+            numFailed += other.numFailed;
+            numPassed += other.numPassed;
+            totalTests += other.totalTests;
+            totalSize += other.totalSize;
+            summedTime += other.summedTime;
+            summedSuspendedTime += other.summedSuspendedTime;
+        }
+
+        /** Clears down the running stats. */
+        void reset()
+        {
+            numError = 0;
+            numFailed = 0;
+            numPassed = 0;
+            totalTests = 0;
+            totalSize = 0;
+            summedTime = 0L;
+            summedSuspendedTime = 0L;
+        }
+    }
+
+    /**
+     * Holds a copy of the results of a single test, as a pre-allocated record in a ring buffer.
+     */
+    private static class ResultRecord
+    {
+        /** Holds the test that the results are for. */
+        Test test;
+
+        /** Holds the name of the thread that published the results. */
+        String threadName;
+
+        /** Holds the test outcome. */
+        TestOutcome testOutcome;
+
+        /** Holds the test timing. */
+        long testTime;
+
+        /** Holds the time excluded from the test timing whilst suspended. */
+        long testSuspendedTime;
+
+        /** Holds the test timing from its actual start, for tests run on a schedule. */
+        long testUncorrectedTime;
+
+        /** Holds the test timing from before the harness overhead was taken out of it. */
+        long testRawTime;
+
+        /** Holds the memory used by the test. */
+        long memoryUsed;
+
+        /** Holds the concurrency level under which the test was run. */
+        int testConcurrency;
+
+        /** Holds the test parameter value. */
+        int testParam;
+
+        /** Holds the core that the test thread was running on, or -1 if not known. */
+        int testCore;
+
+        /** Holds the number of garbage collections that ran whilst the test was running. */
+        long testCollections;
+    }
+
+    /**
+     * ResultRing is a fixed size ring buffer of result records, with a single producer, the test thread that owns it,
+     * and a single consumer, whichever thread holds the drain lock. The producer fills in the record at the tail and
+     * then moves the tail on, the consumer reads records up to the tail and then moves the head on to free them up.
+     */
+    private static class ResultRing
+    {
+        /** Holds the thread that publishes to this ring. */
+        final Thread owner;
+
+        /** Holds the pre-allocated records. */
+        final ResultRecord[] records = new ResultRecord[RING_CAPACITY];
+
+        /** Used to map sequence numbers onto record indexes. */
+        final long mask = RING_CAPACITY - 1;
+
+        /** Holds the sequence number of the next record to be consumed. */
+        final AtomicLong head = new AtomicLong();
+
+        /** Holds the sequence number of the next record to be published. */
+        final AtomicLong tail = new AtomicLong();
+
+        /**
+         * Creates a ring buffer for a test thread to publish its results to.
+         *
+         * @param owner The thread that publishes to this ring.
+         */
+        ResultRing(Thread owner)
+        {
+            this.owner = owner;
+
+            for (int i = 0; i < RING_CAPACITY; i++)
+            {
+                records[i] = new ResultRecord();
+            }
+        }
+
+        /**
+         * Gets the next free record to be filled in by the producer.
+         *
+         * @return The next free record, or <tt>null</tt> if the ring is full.
+         */
+        ResultRecord tryClaim()
+        {
+            long next = tail.get();
+
+            return ((next - head.get()) >= RING_CAPACITY) ? null : records[(int) (next & mask)];
+        }
+
+        /** Publishes the record most recently claimed by the producer to the consumer. */
+        void publish()
+        {
+            tail.lazySet(tail.get() + 1);
+        }
+    }
+
+    /**
+     * BackgroundWriter continuously drains the ring buffers and writes out the results, pausing briefly whenever there
+     * is nothing to write. If the results cannot be written out, the error is recorded, to be passed on to the test
+     * threads, and the background writer stops.
+     */
+    private class BackgroundWriter implements Runnable
+    {
+        /** Drains the ring buffers until interrupted, or until the results cannot be written out. */
+        public void run()
+        {
+            try
+            {
+                while (!Thread.currentThread().isInterrupted())
+                {
+                    if (drainResults() == 0)
+                    {
+                        LockSupport.parkNanos(WRITER_PAUSE_NANOS);
+                    }
+                }
+            }
+            catch (RuntimeException e)
+            {
+                writerFailure = e;
+            }
+        }
     }
 }
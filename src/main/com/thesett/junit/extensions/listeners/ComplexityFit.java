@@ -0,0 +1,191 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions.listeners;
+
+import junit.framework.Test;
+
+import com.thesett.junit.extensions.util.Complexity;
+
+/**
+ * ComplexityFit holds the complexity class that best fits the timings of a test over a sweep of its size parameter.
+ * It is produced by {@link com.thesett.junit.extensions.util.ComplexityFitter} when test timings are being fitted
+ * against complexity classes, and is passed to listeners through {@link TKTestListener#batchComplexity} at the end of
+ * each batch.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities <th> Collaborations
+ * <tr><td> Hold the best fitting complexity class for a test, and the goodness of the fit. <td> {@link Complexity}
+ * <tr><td> Hold the expected complexity class for a test.
+ * <tr><td> Check whether the best fit is worse than expected.
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class ComplexityFit
+{
+    /** Holds the test that was fitted. */
+    private final Test test;
+
+    /** Holds the name of the test method that was fitted. */
+    private final String testName;
+
+    /** Holds the complexity class that best fits the test timings. */
+    private final Complexity bestFit;
+
+    /** Holds the coefficient of determination of the best fit. */
+    private final double rSquared;
+
+    /** Holds the fitted intercept of the best fit, in nanoseconds. */
+    private final double intercept;
+
+    /** Holds the fitted constant of the best fit, in nanoseconds per unit of growth. */
+    private final double constant;
+
+    /** Holds the expected complexity class of the test, or <tt>null</tt> if none was declared. */
+    private final Complexity expected;
+
+    /** Holds the number of distinct sizes that the test was fitted over. */
+    private final int sizes;
+
+    /**
+     * Creates a complexity fit for a test.
+     *
+     * @param test     The test that was fitted.
+     * @param testName The name of the test method that was fitted.
+     * @param bestFit  The complexity class that best fits the test timings.
+     * @param rSquared  The coefficient of determination of the best fit.
+     * @param intercept The fitted intercept of the best fit, in nanoseconds.
+     * @param constant  The fitted constant of the best fit, in nanoseconds per unit of growth.
+     * @param expected  The expected complexity class of the test, or <tt>null</tt> if none was declared.
+     * @param sizes     The number of distinct sizes that the test was fitted over.
+     */
+    public ComplexityFit(Test test, String testName, Complexity bestFit, double rSquared, double intercept,
+        double constant, Complexity expected, int sizes)
+    {
+        this.test = test;
+        this.testName = testName;
+        this.bestFit = bestFit;
+        this.rSquared = rSquared;
+        this.intercept = intercept;
+        this.constant = constant;
+        this.expected = expected;
+        this.sizes = sizes;
+    }
+
+    /**
+     * Gets the test that was fitted.
+     *
+     * @return The test that was fitted.
+     */
+    public Test getTest()
+    {
+        return test;
+    }
+
+    /**
+     * Gets the name of the test method that was fitted.
+     *
+     * @return The name of the test method that was fitted.
+     */
+    public String getTestName()
+    {
+        return testName;
+    }
+
+    /**
+     * Gets the complexity class that best fits the test timings.
+     *
+     * @return The complexity class that best fits the test timings.
+     */
+    public Complexity getBestFit()
+    {
+        return bestFit;
+    }
+
+    /**
+     * Gets the coefficient of determination of the best fit. This is 1 for a perfect fit, and falls as the fit gets
+     * worse.
+     *
+     * @return The coefficient of determination of the best fit.
+     */
+    public double getRSquared()
+    {
+        return rSquared;
+    }
+
+    /**
+     * Gets the fitted intercept of the best fit, which is the fixed part of the test time that does not grow with the
+     * size. This is zero for the constant complexity class, for which all of the test time is in the constant.
+     *
+     * @return The fitted intercept of the best fit, in nanoseconds.
+     */
+    public double getIntercept()
+    {
+        return intercept;
+    }
+
+    /**
+     * Gets the fitted constant of the best fit, such that the test time is modelled as the intercept plus the constant
+     * times the growth function of the best fitting complexity class.
+     *
+     * @return The fitted constant of the best fit, in nanoseconds per unit of growth.
+     */
+    public double getConstant()
+    {
+        return constant;
+    }
+
+    /**
+     * Gets the expected complexity class of the test.
+     *
+     * @return The expected complexity class of the test, or <tt>null</tt> if none was declared.
+     */
+    public Complexity getExpected()
+    {
+        return expected;
+    }
+
+    /**
+     * Gets the number of distinct sizes that the test was fitted over.
+     *
+     * @return The number of distinct sizes that the test was fitted over.
+     */
+    public int getSizes()
+    {
+        return sizes;
+    }
+
+    /**
+     * Checks if the best fitting complexity class grows faster than the expected one.
+     *
+     * @return <tt>true</tt> if an expected complexity class was declared and the best fit is worse than it.
+     */
+    public boolean isWorseThanExpected()
+    {
+        return (expected != null) && bestFit.isWorseThan(expected);
+    }
+
+    /**
+     * Pretty prints the fit, for debugging purposes.
+     *
+     * @return The fit as a string.
+     */
+    public String toString()
+    {
+        return "ComplexityFit: [ testName = " + testName + ", bestFit = " + bestFit + ", rSquared = " + rSquared +
+            ", intercept = " + intercept + ", constant = " + constant + ", expected = " + expected + ", sizes = " + sizes + " ]";
+    }
+}
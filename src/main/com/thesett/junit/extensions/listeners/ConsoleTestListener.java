@@ -19,7 +19,6 @@ import java.util.Properties;
 
 import junit.framework.AssertionFailedError;
 import junit.framework.Test;
-import junit.framework.TestListener;
 
 import com.thesett.common.throttle.SleepThrottle;
 import com.thesett.common.throttle.Throttle;
@@ -43,7 +42,7 @@ import com.thesett.common.throttle.Throttle;
  *
  * @author Rupert Smith
  */
-public class ConsoleTestListener implements TestListener, TKTestListener
+public class ConsoleTestListener extends TKTestListenerAdapter
 {
     /** Used to indicate a test pass. */
     private static final int PASS = 1;
@@ -0,0 +1,218 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions.listeners;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * GarbageCollectionSummary holds the garbage collection activity that took place during a complete batch of tests. It
+ * is produced by {@link com.thesett.junit.extensions.util.GcPauseMonitor} when garbage collection is being monitored,
+ * and is passed to listeners through {@link TKTestListener#batchGarbageCollection(GarbageCollectionSummary)} at the end
+ * of each batch.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities
+ * <tr><td> Hold the number of collections and the collection time for a batch.
+ * <tr><td> Hold the individual collections that overlapped a batch.
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class GarbageCollectionSummary
+{
+    /** Holds the number of collections run by all collectors during the batch. */
+    private final long collections;
+
+    /** Holds the accumulated collection time of all collectors during the batch in milliseconds. */
+    private final long collectionTime;
+
+    /** Holds the individual collections that overlapped the batch. */
+    private final List<Pause> pauses;
+
+    /**
+     * Creates a summary of the garbage collection activity during a batch.
+     *
+     * @param collections    The number of collections run by all collectors during the batch.
+     * @param collectionTime The accumulated collection time of all collectors during the batch in milliseconds.
+     * @param pauses         The individual collections that overlapped the batch.
+     */
+    public GarbageCollectionSummary(long collections, long collectionTime, List<Pause> pauses)
+    {
+        this.collections = collections;
+        this.collectionTime = collectionTime;
+        this.pauses = Collections.unmodifiableList(pauses);
+    }
+
+    /**
+     * Provides the number of collections run by all collectors during the batch.
+     *
+     * @return The number of collections run by all collectors during the batch.
+     */
+    public long getCollections()
+    {
+        return collections;
+    }
+
+    /**
+     * Provides the accumulated collection time of all collectors during the batch, as reported by the collectors.
+     *
+     * @return The accumulated collection time of all collectors during the batch in milliseconds.
+     */
+    public long getCollectionTime()
+    {
+        return collectionTime;
+    }
+
+    /**
+     * Provides the summed durations of the individual collections that overlapped the batch.
+     *
+     * @return The summed durations of the individual collections that overlapped the batch in milliseconds.
+     */
+    public long getPauseTime()
+    {
+        long pauseTime = 0;
+
+        for (Pause pause : pauses)
+        {
+            pauseTime += pause.getDuration();
+        }
+
+        return pauseTime;
+    }
+
+    /**
+     * Provides the individual collections that overlapped the batch.
+     *
+     * @return The individual collections that overlapped the batch, in the order they were reported.
+     */
+    public List<Pause> getPauses()
+    {
+        return pauses;
+    }
+
+    /**
+     * Pretty prints the summary, for debugging purposes.
+     *
+     * @return The summary as a string.
+     */
+    public String toString()
+    {
+        return "GarbageCollectionSummary: [ collections = " + collections + ", collectionTime = " + collectionTime +
+            ", pauses = " + pauses + " ]";
+    }
+
+    /**
+     * Pause describes a single collection run by a garbage collector.
+     */
+    public static class Pause
+    {
+        /** Holds the name of the collector. */
+        private final String collector;
+
+        /** Holds the action that the collector took. */
+        private final String action;
+
+        /** Holds the cause of the collection. */
+        private final String cause;
+
+        /** Holds the time at which the collection started, on the same clock as {@link System#nanoTime()}. */
+        private final long startTime;
+
+        /** Holds the duration of the collection in milliseconds. */
+        private final long duration;
+
+        /**
+         * Creates a description of a single collection.
+         *
+         * @param collector The name of the collector.
+         * @param action    The action that the collector took.
+         * @param cause     The cause of the collection.
+         * @param startTime The time at which the collection started in nanoseconds, on the nano time clock.
+         * @param duration  The duration of the collection in milliseconds.
+         */
+        public Pause(String collector, String action, String cause, long startTime, long duration)
+        {
+            this.collector = collector;
+            this.action = action;
+            this.cause = cause;
+            this.startTime = startTime;
+            this.duration = duration;
+        }
+
+        /**
+         * Provides the name of the collector.
+         *
+         * @return The name of the collector.
+         */
+        public String getCollector()
+        {
+            return collector;
+        }
+
+        /**
+         * Provides the action that the collector took, for example "end of minor GC".
+         *
+         * @return The action that the collector took.
+         */
+        public String getAction()
+        {
+            return action;
+        }
+
+        /**
+         * Provides the cause of the collection, for example "Allocation Failure".
+         *
+         * @return The cause of the collection.
+         */
+        public String getCause()
+        {
+            return cause;
+        }
+
+        /**
+         * Provides the time at which the collection started. This is only accurate to the millisecond.
+         *
+         * @return The time at which the collection started in nanoseconds, on the same clock as
+         *         {@link System#nanoTime()}.
+         */
+        public long getStartTime()
+        {
+            return startTime;
+        }
+
+        /**
+         * Provides the duration of the collection.
+         *
+         * @return The duration of the collection in milliseconds.
+         */
+        public long getDuration()
+        {
+            return duration;
+        }
+
+        /**
+         * Pretty prints the pause, for debugging purposes.
+         *
+         * @return The pause as a string.
+         */
+        public String toString()
+        {
+            return "Pause: [ collector = " + collector + ", action = " + action + ", cause = " + cause +
+                ", startTime = " + startTime + ", duration = " + duration + " ]";
+        }
+    }
+}
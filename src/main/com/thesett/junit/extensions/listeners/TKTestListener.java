@@ -15,6 +15,7 @@
  */
 package com.thesett.junit.extensions.listeners;
 
+import java.util.List;
 import java.util.Properties;
 
 import junit.framework.AssertionFailedError;
@@ -29,9 +30,14 @@ import junit.framework.TestListener;
  * {@link #memoryUsed(junit.framework.Test, long, long, Long)}, {@link #parameterValue(junit.framework.Test, int, Long)}
  * and {@link #endTest(junit.framework.Test, Long)} methods all accept on optional thread id parameter.
  *
+ * <p/>Listeners that are only interested in some of these notifications may extend {@link TKTestListenerAdapter}, and
+ * only implement those ones, so that they do not need to change when new notifications are added.
+ *
  * <pre><p/><table id="crc"><caption>CRC Card</caption>
  * <tr><th> Responsibilities
  * <tr><td> Listen to test timings.
+ * <tr><td> Listen to time excluded from test timings.
+ * <tr><td> Listen to uncorrected timings of scheduled tests.
  * <tr><td> Listen to test memory usages.
  * <tr><td> Listen to parameterized test parameters.
  * </table></pre>
@@ -57,6 +63,38 @@ public interface TKTestListener extends TestListener
      */
     void timing(Test test, long nanos, Long threadId);
 
+    /**
+     * Should be called every time a test that may have suspended its timer completes, with the amount of time that was
+     * excluded from its timing whilst suspended.
+     *
+     * @param test     The test which suspended its timer.
+     * @param nanos    The time excluded from the test timing in nanoseconds.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    void suspendedTime(Test test, long nanos, Long threadId);
+
+    /**
+     * Should be called every time a test that was run on a schedule completes, with the run time of that test from its
+     * actual start time. The timing passed to {@link #timing(junit.framework.Test, long, Long)} for such tests runs
+     * from the time the test was scheduled to start, to correct for any delay in starting it.
+     *
+     * @param test     The test which was run on a schedule.
+     * @param nanos    The run time of the test from its actual start in nanoseconds.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    void uncorrectedTiming(Test test, long nanos, Long threadId);
+
+    /**
+     * Should be called every time a test completes, when the harness overhead is being taken out of test timings, with
+     * the run time of that test from before the overhead was taken out. The timing passed to
+     * {@link #timing(junit.framework.Test, long, Long)} has the overhead taken out of it.
+     *
+     * @param test     The test which completed.
+     * @param nanos    The run time of the test before the harness overhead was taken out in nanoseconds.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    void rawTiming(Test test, long nanos, Long threadId);
+
     /**
      * Should be called every time a test completed with the amount of memory used before and after the test was run.
      *
@@ -85,6 +123,26 @@ public interface TKTestListener extends TestListener
      */
     void concurrencyLevel(Test test, int threads, Long threadId);
 
+    /**
+     * Should be called every time a test completes with the number of garbage collections that ran whilst it was
+     * running, when garbage collection is being monitored.
+     *
+     * @param test        The test for which the measurement is being generated.
+     * @param collections The number of garbage collections that ran whilst the test was running.
+     * @param threadId    Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    void garbageCollections(Test test, long collections, Long threadId);
+
+    /**
+     * Should be called every time a test completes with the core that the test thread was running on when it completed,
+     * when test threads are being placed on cores.
+     *
+     * @param test     The test for which the measurement is being generated.
+     * @param core     The core that the test thread was running on, or -1 if it could not be found out.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    void core(Test test, int core, Long threadId);
+
     /**
      * Called when a test completes. Success, failure and errors. This method should be used when registering an end
      * test from a different thread than the one that started the test.
@@ -107,6 +165,13 @@ public interface TKTestListener extends TestListener
     /** Notifies listeners of the start of a complete run of tests. */
     void startBatch();
 
+    /**
+     * Notifies listeners that the warm-up at the start of a complete run of tests has ended on all of the test
+     * threads, and that the measured part of the run is starting. This is only called when a warm-up is run, after
+     * {@link #startBatch()}, and from just one of the test threads.
+     */
+    void endWarmup();
+
     /**
      * Notifies listeners of the end of a complete run of tests.
      *
@@ -114,6 +179,68 @@ public interface TKTestListener extends TestListener
      */
     void endBatch(Properties parameters);
 
+    /**
+     * Notifies listeners of the aggregated results of a complete run of tests. This is called just before
+     * {@link #endBatch(java.util.Properties)}, when test results are being recorded into histograms instead of being
+     * passed to listeners test by test, in which case the per test notifications are not made.
+     *
+     * @param summary The aggregated results of the batch.
+     */
+    void batchSummary(BatchSummary summary);
+
+    /**
+     * Notifies listeners of the target and achieved rates of a complete run of tests, when the tests are being run at
+     * a fixed rate. This is called just before {@link #endBatch(java.util.Properties)}.
+     *
+     * @param targetRate   The target rate in tests per second.
+     * @param achievedRate The rate achieved over the batch in tests per second.
+     */
+    void batchRate(float targetRate, float achievedRate);
+
+    /**
+     * Notifies listeners of the garbage collection activity during a complete run of tests, when garbage collection is
+     * being monitored. This is called just before {@link #endBatch(java.util.Properties)}.
+     *
+     * @param summary The garbage collection activity during the batch.
+     */
+    void batchGarbageCollection(GarbageCollectionSummary summary);
+
+    /**
+     * Notifies listeners of the complexity classes that best fit the timings of the asymptotic tests in a complete run
+     * of tests, when test timings are being fitted against complexity classes. This is called just before
+     * {@link #endBatch(java.util.Properties)}.
+     *
+     * @param fits The best fits for each test that was run over enough sizes to be fitted.
+     */
+    void batchComplexity(List<ComplexityFit> fits);
+
+    /**
+     * Notifies listeners of the time taken to reach steady state during the warm-up of a complete run of tests, when
+     * steady state is being detected. This is called just before {@link #endBatch(java.util.Properties)}.
+     *
+     * @param threshold       The coefficient of variation below which steady state is reached.
+     * @param steadyTimeNanos The time taken to reach steady state in nanoseconds, or -1 if it was not reached.
+     */
+    void batchSteadyState(float threshold, long steadyTimeNanos);
+
+    /**
+     * Notifies listeners of the harness overhead that was taken out of the test timings of a complete run of tests,
+     * when it is being taken out. This is called just before {@link #endBatch(java.util.Properties)}.
+     *
+     * @param instrumentedNanos   The overhead taken out of the timings of instrumented tests in nanoseconds.
+     * @param uninstrumentedNanos The overhead taken out of the timings of uninstrumented tests in nanoseconds.
+     */
+    void batchBaseline(long instrumentedNanos, long uninstrumentedNanos);
+
+    /**
+     * Notifies listeners of the number of times that virtual test threads were pinned to their carrier threads during
+     * a complete run of tests, when the tests are being run on virtual threads. This is called just before
+     * {@link #endBatch(java.util.Properties)}.
+     *
+     * @param pinnedCount The number of pinning events in the batch, or -1 if they could not be counted.
+     */
+    void batchPinnedThreads(long pinnedCount);
+
     /**
      * Notifies listeners of the tests read/set properties.
      *
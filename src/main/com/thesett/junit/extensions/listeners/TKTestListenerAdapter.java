@@ -0,0 +1,323 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions.listeners;
+
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.AssertionFailedError;
+import junit.framework.Test;
+
+/**
+ * TKTestListenerAdapter provides empty implementations of all of the methods of {@link TKTestListener}, so that
+ * listeners may extend it and only implement the notifications that they are interested in. As new measurements are
+ * added to {@link TKTestListener}, listeners that extend this will continue to work, ignoring the new notifications.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities
+ * <tr><td> Ignore all test listener notifications.
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public abstract class TKTestListenerAdapter implements TKTestListener
+{
+    /**
+     * Resets the test results to the default state of time zero, memory usage zero, parameter zero, test passed.
+     *
+     * @param test     The test to resest any results for. Ignored.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void reset(Test test, Long threadId)
+    {
+    }
+
+    /**
+     * Should be called every time a test completes with the run time of that test.
+     *
+     * @param test     The name of the test. Ignored.
+     * @param nanos    The run time of the test in nanoseconds. Ignored.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void timing(Test test, long nanos, Long threadId)
+    {
+    }
+
+    /**
+     * Should be called every time a test that may have suspended its timer completes, with the amount of time that was
+     * excluded from its timing whilst suspended.
+     *
+     * @param test     The test which suspended its timer. Ignored.
+     * @param nanos    The time excluded from the test timing in nanoseconds. Ignored.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void suspendedTime(Test test, long nanos, Long threadId)
+    {
+    }
+
+    /**
+     * Should be called every time a test that was run on a schedule completes, with the run time of that test from its
+     * actual start time. The timing passed to {@link #timing(junit.framework.Test, long, Long)} for such tests runs
+     * from the time the test was scheduled to start, to correct for any delay in starting it.
+     *
+     * @param test     The test which was run on a schedule. Ignored.
+     * @param nanos    The run time of the test from its actual start in nanoseconds. Ignored.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void uncorrectedTiming(Test test, long nanos, Long threadId)
+    {
+    }
+
+    /**
+     * Should be called every time a test completes, when the harness overhead is being taken out of test timings, with
+     * the run time of that test from before the overhead was taken out. The timing passed to
+     * {@link #timing(junit.framework.Test, long, Long)} has the overhead taken out of it.
+     *
+     * @param test     The test which completed. Ignored.
+     * @param nanos    The run time of the test before the harness overhead was taken out in nanoseconds. Ignored.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void rawTiming(Test test, long nanos, Long threadId)
+    {
+    }
+
+    /**
+     * Should be called every time a test completed with the amount of memory used before and after the test was run.
+     *
+     * @param test     The test which memory was measured for. Ignored.
+     * @param memStart The total JVM memory used before the test was run. Ignored.
+     * @param memEnd   The total JVM memory used after the test was run. Ignored.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void memoryUsed(Test test, long memStart, long memEnd, Long threadId)
+    {
+    }
+
+    /**
+     * Should be called every time a parameterized test completed with the int value of its test parameter.
+     *
+     * @param test      The test which memory was measured for.
+     * @param parameter The int parameter value.
+     * @param threadId  Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void parameterValue(Test test, int parameter, Long threadId)
+    {
+    }
+
+    /**
+     * Should be called every time a test completes with the current number of test threads running.
+     *
+     * @param test     The test for which the measurement is being generated. Ignored.
+     * @param threads  The number of tests being run concurrently. Ignored.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void concurrencyLevel(Test test, int threads, Long threadId)
+    {
+    }
+
+    /**
+     * Should be called every time a test completes with the number of garbage collections that ran whilst it was
+     * running, when garbage collection is being monitored.
+     *
+     * @param test        The test for which the measurement is being generated.
+     * @param collections The number of garbage collections that ran whilst the test was running.
+     * @param threadId    Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void garbageCollections(Test test, long collections, Long threadId)
+    {
+    }
+
+    /**
+     * Should be called every time a test completes with the core that the test thread was running on when it completed,
+     * when test threads are being placed on cores.
+     *
+     * @param test     The test for which the measurement is being generated. Ignored.
+     * @param core     The core that the test thread was running on, or -1 if it could not be found out. Ignored.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void core(Test test, int core, Long threadId)
+    {
+    }
+
+    /**
+     * Called when a test completes. Success, failure and errors. This method should be used when registering an end
+     * test from a different thread than the one that started the test.
+     *
+     * @param test     The test which completed. Ignored.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void endTest(Test test, Long threadId)
+    {
+    }
+
+    /**
+     * Called when a test completes to mark it as a test fail. This method should be used when registering a failure
+     * from a different thread than the one that started the test.
+     *
+     * @param test     The test which failed. Ignored.
+     * @param e        The assertion that failed the test. Ignored.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void addFailure(Test test, AssertionFailedError e, Long threadId)
+    {
+    }
+
+    /** Notifies listeners of the start of a complete run of tests. */
+    public void startBatch()
+    {
+    }
+
+    /**
+     * Notifies listeners that the warm-up at the start of a complete run of tests has ended on all of the test
+     * threads, and that the measured part of the run is starting. This is only called when a warm-up is run, after
+     * {@link #startBatch()}, and from just one of the test threads.
+     */
+    public void endWarmup()
+    {
+    }
+
+    /**
+     * Notifies listeners of the end of a complete run of tests.
+     *
+     * @param parameters The optional test parameters to log out with the batch results. Ignored.
+     */
+    public void endBatch(Properties parameters)
+    {
+    }
+
+    /**
+     * Notifies listeners of the aggregated results of a complete run of tests. This is called just before
+     * {@link #endBatch(java.util.Properties)}, when test results are being recorded into histograms instead of being
+     * passed to listeners test by test, in which case the per test notifications are not made.
+     *
+     * @param summary The aggregated results of the batch. Ignored.
+     */
+    public void batchSummary(BatchSummary summary)
+    {
+    }
+
+    /**
+     * Notifies listeners of the target and achieved rates of a complete run of tests, when the tests are being run at
+     * a fixed rate. This is called just before {@link #endBatch(java.util.Properties)}.
+     *
+     * @param targetRate   The target rate in tests per second. Ignored.
+     * @param achievedRate The rate achieved over the batch in tests per second. Ignored.
+     */
+    public void batchRate(float targetRate, float achievedRate)
+    {
+    }
+
+    /**
+     * Notifies listeners of the garbage collection activity during a complete run of tests, when garbage collection is
+     * being monitored. This is called just before {@link #endBatch(java.util.Properties)}.
+     *
+     * @param summary The garbage collection activity during the batch. Ignored.
+     */
+    public void batchGarbageCollection(GarbageCollectionSummary summary)
+    {
+    }
+
+    /**
+     * Notifies listeners of the complexity classes that best fit the timings of the asymptotic tests in a complete run
+     * of tests, when test timings are being fitted against complexity classes. This is called just before
+     * {@link #endBatch(java.util.Properties)}.
+     *
+     * @param fits The best fits for each test that was run over enough sizes to be fitted. Ignored.
+     */
+    public void batchComplexity(List<ComplexityFit> fits)
+    {
+    }
+
+    /**
+     * Notifies listeners of the time taken to reach steady state during the warm-up of a complete run of tests, when
+     * steady state is being detected. This is called just before {@link #endBatch(java.util.Properties)}.
+     *
+     * @param threshold       The coefficient of variation below which steady state is reached. Ignored.
+     * @param steadyTimeNanos The time taken to reach steady state in nanoseconds, or -1 if it was not reached. Ignored.
+     */
+    public void batchSteadyState(float threshold, long steadyTimeNanos)
+    {
+    }
+
+    /**
+     * Notifies listeners of the harness overhead that was taken out of the test timings of a complete run of tests,
+     * when it is being taken out. This is called just before {@link #endBatch(java.util.Properties)}.
+     *
+     * @param instrumentedNanos   The overhead taken out of the timings of instrumented tests in nanoseconds. Ignored.
+     * @param uninstrumentedNanos The overhead taken out of the timings of uninstrumented tests in nanoseconds. Ignored.
+     */
+    public void batchBaseline(long instrumentedNanos, long uninstrumentedNanos)
+    {
+    }
+
+    /**
+     * Notifies listeners of the number of times that virtual test threads were pinned to their carrier threads during
+     * a complete run of tests, when the tests are being run on virtual threads. This is called just before
+     * {@link #endBatch(java.util.Properties)}.
+     *
+     * @param pinnedCount The number of pinning events in the batch, or -1 if they could not be counted. Ignored.
+     */
+    public void batchPinnedThreads(long pinnedCount)
+    {
+    }
+
+    /**
+     * Notifies listeners of the tests read/set properties.
+     *
+     * @param properties The tests read/set properties. Ignored.
+     */
+    public void properties(Properties properties)
+    {
+    }
+
+    /**
+     * Called when a test is started.
+     *
+     * @param test The test that is started. Ignored.
+     */
+    public void startTest(Test test)
+    {
+    }
+
+    /**
+     * Called when a test completes.
+     *
+     * @param test The test that completed. Ignored.
+     */
+    public void endTest(Test test)
+    {
+    }
+
+    /**
+     * Called when a test is in error.
+     *
+     * @param test The test in error. Ignored.
+     * @param t    The error that the test raised. Ignored.
+     */
+    public void addError(Test test, Throwable t)
+    {
+    }
+
+    /**
+     * Called when a test fails.
+     *
+     * @param test The test that failed. Ignored.
+     * @param t    The assertion failure that the test raised. Ignored.
+     */
+    public void addFailure(Test test, AssertionFailedError t)
+    {
+    }
+}
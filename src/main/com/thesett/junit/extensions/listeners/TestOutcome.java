@@ -0,0 +1,63 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions.listeners;
+
+/**
+ * TestOutcome enumerates the possible outcomes of a test, as recorded by the listeners. Each outcome has the name that
+ * it is written out under in the listeners output files.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities
+ * <tr><td> Enumerate the outcomes of a test.
+ * <tr><td> Provide the name of each outcome as written out.
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public enum TestOutcome
+{
+    /** The test passed. */
+    PASS("Pass"),
+
+    /** The test failed an assertion. */
+    FAILURE("Failure"),
+
+    /** The test raised an unexpected exception. */
+    ERROR("Error");
+
+    /** Holds the name of the outcome as written out. */
+    private final String name;
+
+    /**
+     * Creates a test outcome.
+     *
+     * @param name The name of the outcome as written out.
+     */
+    private TestOutcome(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * Provides the name of the outcome as written out.
+     *
+     * @return The name of the outcome as written out.
+     */
+    public String toString()
+    {
+        return name;
+    }
+}
@@ -0,0 +1,477 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions.listeners;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.AssertionFailedError;
+import junit.framework.Test;
+
+import com.thesett.common.util.concurrent.ShutdownHookable;
+import com.thesett.junit.extensions.util.LatencyHistogram;
+
+/**
+ * TimeSeriesTestListener buckets completed tests into fixed length intervals of wall clock time, and writes out a line
+ * for each interval giving the throughput, the numbers of failures and errors, and the latency percentiles of the tests
+ * completed in the interval. This gives a time series over the course of each batch, from which a degradation in
+ * throughput or latency, a leak, or periodic stalls can be seen during long soak tests. An interval in which no tests
+ * completed is written out with zero throughput, so that stalls show up as gaps.
+ *
+ * <p/>Intervals are timed from the start of each batch, and the final interval of a batch is written out at the end of
+ * the batch, even though it may be shorter than the others. The output is in CSV format, with a header line at the
+ * start of each batch.
+ *
+ * <p/>Individual test results are not passed to the listeners in histogram mode, so no time series is written out in
+ * that mode.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities <th> Collaborations
+ * <tr><td> Listen to test events; start, end, fail, error.
+ * <tr><td> Bucket test timings and outcomes into fixed intervals. <td> {@link LatencyHistogram}
+ * <tr><td> Write out the throughput, errors and latency percentiles of each interval.
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class TimeSeriesTestListener extends TKTestListenerAdapter implements ShutdownHookable
+{
+    /** Used for logging. */
+    /*private static final Logger log = Logger.getLogger(TimeSeriesTestListener.class);*/
+
+    /**
+     * Map for holding results on a per thread basis as they come in. A ThreadLocal is not used as sometimes an explicit
+     * thread id must be used, where notifications come from different threads than the ones that called the test
+     * method.
+     */
+    private final Map<Long, TestResult> threadLocalResults =
+        Collections.synchronizedMap(new HashMap<Long, TestResult>());
+
+    /** Holds the writer to write the time series out to. */
+    private final Writer writer;
+
+    /** Holds the length of the intervals in nanoseconds. */
+    private final long intervalNanos;
+
+    /** Holds the latencies of the tests completed in the current interval. */
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    /** Holds the time at which the current batch started. */
+    private long batchStartTime;
+
+    /** Holds the index of the current interval within the batch. */
+    private long interval;
+
+    /** Holds the number of tests that failed in the current interval. */
+    private long failures;
+
+    /** Holds the number of tests that were in error in the current interval. */
+    private long errors;
+
+    /** Flag to indicate when batch has been started but not ended, to ensure the last interval is output only once. */
+    private boolean batchStarted;
+
+    /**
+     * Creates a time series listener.
+     *
+     * @param writer         The writer to write the time series out to.
+     * @param intervalMillis The length of the intervals in milliseconds.
+     */
+    public TimeSeriesTestListener(Writer writer, long intervalMillis)
+    {
+        if (intervalMillis < 1)
+        {
+            throw new IllegalArgumentException("The interval must be >= 1 millisecond.");
+        }
+
+        this.writer = writer;
+        this.intervalNanos = intervalMillis * 1000000L;
+    }
+
+    /**
+     * Resets the test results to the default state of time zero, test passed.
+     *
+     * @param test     The test to resest any results for.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void reset(Test test, Long threadId)
+    {
+        TestResult r = getTestResult(threadId);
+
+        r.testTime = 0L;
+        r.testOutcome = TestOutcome.PASS;
+    }
+
+    /**
+     * Called when a test starts.
+     *
+     * @param test The test wich has started.
+     */
+    public void startTest(Test test)
+    {
+        // Initialize the thread local test results.
+        threadLocalResults.put(Thread.currentThread().getId(), new TestResult());
+    }
+
+    /**
+     * Called when a test results in an error.
+     *
+     * @param test The test which is in error.
+     * @param t    Any Throwable raised by the test in error.
+     */
+    public void addError(Test test, Throwable t)
+    {
+        TestResult r = getTestResult(null);
+
+        // There is no test in progress on this thread in histogram mode, where tests are not started on the listeners.
+        if (r != null)
+        {
+            r.testOutcome = TestOutcome.ERROR;
+        }
+    }
+
+    /**
+     * Called when a test results in a failure.
+     *
+     * @param test The test which failed.
+     * @param t    The AssertionFailedError that encapsulates the test failure.
+     */
+    public void addFailure(Test test, AssertionFailedError t)
+    {
+        TestResult r = getTestResult(null);
+
+        // There is no test in progress on this thread in histogram mode, where tests are not started on the listeners.
+        if (r != null)
+        {
+            r.testOutcome = TestOutcome.FAILURE;
+        }
+    }
+
+    /**
+     * Called when a test completes to mark it as a test fail. This method should be used when registering a failure
+     * from a different thread than the one that started the test.
+     *
+     * @param test     The test which failed.
+     * @param e        The assertion that failed the test.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void addFailure(Test test, AssertionFailedError e, Long threadId)
+    {
+        getTestResult(threadId).testOutcome = TestOutcome.FAILURE;
+    }
+
+    /**
+     * Called when a test completes. Success, failure and errors.
+     *
+     * @param test The test which completed.
+     */
+    public void endTest(Test test)
+    {
+        long threadId = Thread.currentThread().getId();
+
+        recordResult(threadLocalResults.get(threadId));
+
+        // Clear all the test results for the thread.
+        threadLocalResults.remove(threadId);
+    }
+
+    /**
+     * Called when a test completes. Success, failure and errors. This method should be used when registering an end
+     * test from a different thread than the one that started the test.
+     *
+     * @param test     The test which completed.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void endTest(Test test, Long threadId)
+    {
+        recordResult(getTestResult(threadId));
+    }
+
+    /**
+     * Should be called every time a test completes with the run time of that test.
+     *
+     * @param test     The name of the test.
+     * @param nanos    The run time of the test in nanoseconds.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void timing(Test test, long nanos, Long threadId)
+    {
+        getTestResult(threadId).testTime = nanos;
+    }
+
+    /**
+     * Should be called every time a test completed with the amount of memory used before and after the test was run.
+     *
+     * @param test     The test which memory was measured for.
+     * @param memStart The total JVM memory used before the test was run. Ignored.
+     * @param memEnd   The total JVM memory used after the test was run. Ignored.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void memoryUsed(Test test, long memStart, long memEnd, Long threadId)
+    {
+    }
+
+    /**
+     * Should be called every time a parameterized test completed with the int value of its test parameter.
+     *
+     * @param test      The test which memory was measured for.
+     * @param parameter The int parameter value. Ignored.
+     * @param threadId  Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void parameterValue(Test test, int parameter, Long threadId)
+    {
+    }
+
+    /**
+     * Should be called every time a test completes with the current number of test threads running.
+     *
+     * @param test     The test for which the measurement is being generated.
+     * @param threads  The number of tests being run concurrently. Ignored.
+     * @param threadId Optional thread id if not calling from thread that started the test method. May be null.
+     */
+    public void concurrencyLevel(Test test, int threads, Long threadId)
+    {
+    }
+
+    /**
+     * Starts timing the intervals from the beginning of the batch, and writes out the column headers. Repeated start
+     * notifications for a batch that has already been started, from other test threads, are ignored.
+     */
+    public synchronized void startBatch()
+    {
+        if (batchStarted)
+        {
+            return;
+        }
+
+        batchStartTime = System.nanoTime();
+        interval = 0;
+        resetInterval();
+        batchStarted = true;
+
+        try
+        {
+            writer.write("Interval Start (milliseconds), ");
+            writer.write("Interval Length (milliseconds), ");
+            writer.write("Tests, ");
+            writer.write("Throughput (tests/second), ");
+            writer.write("Failures, ");
+            writer.write("Errors, ");
+            writer.write("Mean (milliseconds), ");
+
+            for (double percentile : BatchSummary.PERCENTILES)
+            {
+                writer.write("P" + percentile + " (milliseconds), ");
+            }
+
+            writer.write("Max (milliseconds)\n");
+            writer.flush();
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Unable to write out time series headers: " + e, e);
+        }
+    }
+
+    /**
+     * Starts timing the intervals afresh once the warm-up has ended, so that the time series only covers the measured
+     * part of the batch. No results are recorded during the warm-up, so there are no intervals to write out for it.
+     */
+    public synchronized void endWarmup()
+    {
+        if (!batchStarted)
+        {
+            return;
+        }
+
+        batchStartTime = System.nanoTime();
+        interval = 0;
+        resetInterval();
+    }
+
+    /**
+     * Writes out the final interval of the batch, up to the end of the batch.
+     *
+     * @param parameters The optional test parameters. Ignored.
+     */
+    public synchronized void endBatch(Properties parameters)
+    {
+        // Check that a batch has been started but not ended.
+        if (!batchStarted)
+        {
+            return;
+        }
+
+        long now = System.nanoTime();
+        advanceTo(now);
+
+        try
+        {
+            writeInterval(now - batchStartTime - (interval * intervalNanos));
+            writer.write("\n");
+            writer.flush();
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Unable to write out time series: " + e, e);
+        }
+
+        batchStarted = false;
+    }
+
+    /**
+     * Notifies listeners of the tests read/set properties.
+     *
+     * @param properties The tests read/set properties. Ignored.
+     */
+    public void properties(Properties properties)
+    {
+    }
+
+    /**
+     * Supplies the shutdown hook. This writes out the final interval, if the test framework is shut down prematurely.
+     *
+     * @return The shut down hook.
+     */
+    public Thread getShutdownHook()
+    {
+        return new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    /*log.debug("TimeSeriesTestListener::ShutdownHook: called");*/
+
+                    endBatch(null);
+                }
+            });
+    }
+
+    /**
+     * Gets the test results being built up for a test thread.
+     *
+     * @param  threadId Optional thread id if not calling from thread that started the test method. May be null.
+     *
+     * @return The test results being built up for the test thread.
+     */
+    private TestResult getTestResult(Long threadId)
+    {
+        return (threadId == null) ? threadLocalResults.get(Thread.currentThread().getId())
+                                  : threadLocalResults.get(threadId);
+    }
+
+    /**
+     * Records the result of a completed test into the interval in which it completed, writing out any intervals that
+     * have ended first.
+     *
+     * @param r The test results.
+     */
+    private synchronized void recordResult(TestResult r)
+    {
+        if (!batchStarted)
+        {
+            return;
+        }
+
+        advanceTo(System.nanoTime());
+
+        latencies.recordValue(r.testTime);
+
+        if (r.testOutcome == TestOutcome.FAILURE)
+        {
+            failures++;
+        }
+        else if (r.testOutcome == TestOutcome.ERROR)
+        {
+            errors++;
+        }
+    }
+
+    /**
+     * Writes out all intervals that have ended before the specified time, including empty ones, and moves on to the
+     * interval containing that time.
+     *
+     * @param now The time to move on to.
+     */
+    private void advanceTo(long now)
+    {
+        long nowInterval = (now - batchStartTime) / intervalNanos;
+
+        try
+        {
+            for (; interval < nowInterval; interval++)
+            {
+                writeInterval(intervalNanos);
+                resetInterval();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Unable to write out time series: " + e, e);
+        }
+    }
+
+    /**
+     * Writes out a line for the current interval.
+     *
+     * @param  lengthNanos The length of the interval in nanoseconds.
+     *
+     * @throws IOException If the line cannot be written out.
+     */
+    private void writeInterval(long lengthNanos) throws IOException
+    {
+        long count = latencies.getTotalCount();
+        float lengthMillis = ((float) lengthNanos) / 1000000f;
+
+        writer.write((((float) (interval * intervalNanos)) / 1000000f) + ", ");
+        writer.write(lengthMillis + ", ");
+        writer.write(count + ", ");
+        writer.write(((lengthNanos > 0) ? ((count * 1000f) / lengthMillis) : 0f) + ", ");
+        writer.write(failures + ", ");
+        writer.write(errors + ", ");
+        writer.write((((float) latencies.getMean()) / 1000000f) + ", ");
+
+        for (double percentile : BatchSummary.PERCENTILES)
+        {
+            writer.write((((float) latencies.getValueAtPercentile(percentile)) / 1000000f) + ", ");
+        }
+
+        writer.write((((float) latencies.getMaxValue()) / 1000000f) + "\n");
+    }
+
+    /** Clears down the stats for the current interval. */
+    private void resetInterval()
+    {
+        latencies.reset();
+        failures = 0;
+        errors = 0;
+    }
+
+    /**
+     * Captures test results packaged into a single object, so that it can be set up as a thread local.
+     */
+    private static class TestResult
+    {
+        /** Used to hold the test timing. */
+        public long testTime;
+
+        /** Used to hold the test outcome. */
+        public TestOutcome testOutcome = TestOutcome.PASS;
+    }
+}
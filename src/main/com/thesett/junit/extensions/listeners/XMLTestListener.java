@@ -32,6 +32,7 @@ import junit.framework.Test;
 import junit.framework.TestCase;
 
 import com.thesett.common.util.concurrent.ShutdownHookable;
+import com.thesett.junit.extensions.util.StripedCounter;
 
 /**
  * Listens for test results for a named test and outputs these in the standard JUnit XML format to the specified writer.
@@ -62,7 +63,7 @@ import com.thesett.common.util.concurrent.ShutdownHookable;
  *         as the ant XML formatter, and a more structured one for outputing results with timings and summaries from
  *         performance tests.
  */
-public class XMLTestListener implements TKTestListener, ShutdownHookable
+public class XMLTestListener extends TKTestListenerAdapter implements ShutdownHookable
 {
     /** Used for debugging. */
     /*private static final Logger log = Logger.getLogger(XMLTestListener.class);*/
@@ -85,20 +86,23 @@ public class XMLTestListener implements TKTestListener, ShutdownHookable
      * Holds results for tests that have ended. Transferring these results here from the per-thread results map, means
      * that the thread id is freed for the thread to generate more results.
      */
-    final Collection<Result> results = new ArrayList<Result>();
+    final Collection<Result> results = Collections.synchronizedList(new ArrayList<Result>());
 
-    /** Holds the overall error count. */
-    protected int errors;
+    /** Holds the overall error count, striped so that test threads do not contend on it. */
+    protected final StripedCounter errors = new StripedCounter();
 
-    /** Holds the overall failure count. */
-    protected int failures;
+    /** Holds the overall failure count, striped so that test threads do not contend on it. */
+    protected final StripedCounter failures = new StripedCounter();
 
-    /** Holds the overall tests run count. */
-    protected int runs;
+    /** Holds the overall tests run count, striped so that test threads do not contend on it. */
+    protected final StripedCounter runs = new StripedCounter();
 
     /** Holds the name of the class that tests are being run for. */
     final String testClassName;
 
+    /** Flag to indicate when a batch has been started but not ended, to ensure it is only started once. */
+    private boolean batchStarted;
+
     /**
      * Creates a new XML results output listener that writes to the specified location.
      *
@@ -145,7 +149,7 @@ public class XMLTestListener implements TKTestListener, ShutdownHookable
 
         // Initialize the thread local test results.
         threadLocalResults.put(Thread.currentThread().getId(), newResult);
-        runs++;
+        runs.increment();
     }
 
     /**
@@ -251,8 +255,14 @@ public class XMLTestListener implements TKTestListener, ShutdownHookable
         /*log.debug("public void addError(Test test = " + test + ", Throwable t = " + t + "): called");*/
 
         Result r = threadLocalResults.get(Thread.currentThread().getId());
-        r.error = t;
-        errors++;
+
+        // There is no test in progress on this thread in histogram mode, where tests are not started on the listeners.
+        // Errors in histogram mode are counted from the batch summary instead.
+        if (r != null)
+        {
+            r.error = t;
+            errors.increment();
+        }
     }
 
     /**
@@ -266,8 +276,14 @@ public class XMLTestListener implements TKTestListener, ShutdownHookable
         /*log.debug("public void addFailure(Test test = " + test + ", AssertionFailedError t = " + t + "): called");*/
 
         Result r = threadLocalResults.get(Thread.currentThread().getId());
-        r.failure = t;
-        failures++;
+
+        // There is no test in progress on this thread in histogram mode, where tests are not started on the listeners.
+        // Failures in histogram mode are counted from the batch summary instead.
+        if (r != null)
+        {
+            r.failure = t;
+            failures.increment();
+        }
     }
 
     /**
@@ -286,19 +302,31 @@ public class XMLTestListener implements TKTestListener, ShutdownHookable
             (threadId == null) ? threadLocalResults.get(Thread.currentThread().getId())
                                : threadLocalResults.get(threadId);
         r.failure = e;
-        failures++;
+        failures.increment();
     }
 
-    /** Notifies listeners of the start of a complete run of tests. */
-    public void startBatch()
+    /**
+     * Notifies listeners of the start of a complete run of tests. Every test thread in a batch may start the batch,
+     * only the first one to do so resets the results counts, so that tests already counted by the other test threads
+     * are not lost.
+     */
+    public synchronized void startBatch()
     {
         /*log.debug("public void startBatch(): called");*/
 
+        // Ignore the batch being started again by the other test threads.
+        if (batchStarted)
+        {
+            return;
+        }
+
+        batchStarted = true;
+
         // Reset all results counts.
         threadLocalResults = Collections.synchronizedMap(new HashMap<Long, Result>());
-        errors = 0;
-        failures = 0;
-        runs = 0;
+        errors.reset();
+        failures.reset();
+        runs.reset();
 
         // Write out the file header.
         try
@@ -316,16 +344,18 @@ public class XMLTestListener implements TKTestListener, ShutdownHookable
      *
      * @param parameters The optional test parameters to log out with the batch results.
      */
-    public void endBatch(Properties parameters)
+    public synchronized void endBatch(Properties parameters)
     {
         /*log.debug("public void endBatch(Properties parameters = " + parameters + "): called");*/
 
+        batchStarted = false;
+
         // Write out the results.
         try
         {
             // writer.write("<?xml version=\"1.0\" ?>\n");
-            writer.write("<testsuite errors=\"" + errors + "\" failures=\"" + failures + "\" tests=\"" + runs +
-                "\" name=\"" + testClassName + "\">\n");
+            writer.write("<testsuite errors=\"" + errors.sum() + "\" failures=\"" + failures.sum() + "\" tests=\"" +
+                runs.sum() + "\" name=\"" + testClassName + "\">\n");
 
             for (Result result : results)
             {
@@ -356,6 +386,19 @@ public class XMLTestListener implements TKTestListener, ShutdownHookable
         }
     }
 
+    /**
+     * Notifies listeners of the aggregated results of a complete run of tests. No individual test results are made
+     * available when results are aggregated, so only the overall counts are added in to the batch.
+     *
+     * @param summary The aggregated results of the batch.
+     */
+    public void batchSummary(BatchSummary summary)
+    {
+        runs.add(summary.getTotalTests());
+        errors.add(summary.getErrors());
+        failures.add(summary.getFailures());
+    }
+
     /**
      * Supplies the shutdown hook.
      *
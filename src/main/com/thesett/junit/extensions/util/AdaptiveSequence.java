@@ -0,0 +1,184 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions.util;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * AdaptiveSequence generates a sequence of integer size parameters that adapts to the measurements taken at each size.
+ * It starts with a coarse grid of sizes, such as an exponential sequence from {@link MathUtils#generateExpSequence}.
+ * Once every size on the grid has been measured, it repeatedly picks the pair of neighbouring sizes between which the
+ * cost per element changes most sharply, and places a new size at their geometric mean. This homes in on the points
+ * where the cost per element jumps, such as when a data structure outgrows a cache or is resized, without spending
+ * time measuring densely over ranges where the cost per element is flat.
+ *
+ * <p/>Refinement stops once no pair of neighbouring sizes differs in cost per element by more than the threshold
+ * ratio, or the sizes around every sharp change are consecutive integers. The caller is expected to stop asking for
+ * sizes on its own time budget, as well.
+ *
+ * <p/>An adaptive sequence is not thread safe, and is intended to be used by a single thread running a sweep of
+ * sizes.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities
+ * <tr><td> Provide the sizes on an initial coarse grid.
+ * <tr><td> Record the cost per element measured at each size.
+ * <tr><td> Refine between the neighbouring sizes where the cost per element changes most sharply.
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class AdaptiveSequence
+{
+    /** The default ratio of cost per element between neighbouring sizes, above which they are refined between. */
+    public static final float DEFAULT_THRESHOLD = 1.25f;
+
+    /** Holds the ratio of cost per element between neighbouring sizes, above which they are refined between. */
+    private final float threshold;
+
+    /** Holds the sizes on the initial grid that have not been handed out yet. */
+    private final LinkedList<Integer> pending = new LinkedList<Integer>();
+
+    /** Holds the cost per element measured at each size, ordered by size. */
+    private final TreeMap<Integer, Double> costs = new TreeMap<Integer, Double>();
+
+    /**
+     * Creates an adaptive sequence starting from an initial grid of sizes, with the default threshold.
+     *
+     * @param grid The initial grid of sizes.
+     */
+    public AdaptiveSequence(int[] grid)
+    {
+        this(grid, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Creates an adaptive sequence starting from an initial grid of sizes.
+     *
+     * @param grid      The initial grid of sizes.
+     * @param threshold The ratio of cost per element between neighbouring sizes, above which they are refined between.
+     *                  Must be greater than 1.
+     */
+    public AdaptiveSequence(int[] grid, float threshold)
+    {
+        if (threshold <= 1.0f)
+        {
+            throw new IllegalArgumentException("The threshold must be > 1.");
+        }
+
+        this.threshold = threshold;
+
+        // Queue up the initial grid, dropping any repeated sizes.
+        Set<Integer> distinct = new HashSet<Integer>();
+
+        for (int n : grid)
+        {
+            if (distinct.add(n))
+            {
+                pending.add(n);
+            }
+        }
+    }
+
+    /**
+     * Provides the next size to measure. The sizes on the initial grid are provided first, then sizes between the
+     * neighbouring measured sizes where the cost per element changes most sharply. Each size must be measured and
+     * recorded with {@link #record} before the next size is asked for, as the refined sizes depend on the measurements.
+     *
+     * @return The next size to measure, or -1 if the sequence is complete.
+     */
+    public int next()
+    {
+        // Hand out the initial grid first.
+        if (!pending.isEmpty())
+        {
+            return pending.removeFirst();
+        }
+
+        // Find the neighbouring sizes, with room between them, where the cost per element changes most sharply.
+        double sharpestChange = threshold;
+        int refinement = -1;
+        Map.Entry<Integer, Double> previous = null;
+
+        for (Map.Entry<Integer, Double> entry : costs.entrySet())
+        {
+            if ((previous != null) && ((entry.getKey() - previous.getKey()) > 1))
+            {
+                double low = Math.min(previous.getValue(), entry.getValue());
+                double high = Math.max(previous.getValue(), entry.getValue());
+                double change = (low > 0.0d) ? (high / low) : Double.MAX_VALUE;
+
+                if (change > sharpestChange)
+                {
+                    sharpestChange = change;
+                    refinement = geometricMean(previous.getKey(), entry.getKey());
+                }
+            }
+
+            previous = entry;
+        }
+
+        return refinement;
+    }
+
+    /**
+     * Records the measured cost per element at a size.
+     *
+     * @param n              The size.
+     * @param costPerElement The measured cost per element at the size.
+     */
+    public void record(int n, double costPerElement)
+    {
+        costs.put(n, costPerElement);
+    }
+
+    /**
+     * Provides all of the sizes measured so far, in order.
+     *
+     * @return All of the sizes measured so far, in order.
+     */
+    public int[] getSizes()
+    {
+        int[] result = new int[costs.size()];
+        int i = 0;
+
+        for (int n : costs.keySet())
+        {
+            result[i++] = n;
+        }
+
+        return result;
+    }
+
+    /**
+     * Works out a size between two sizes, at their geometric mean, rounded to an integer strictly between the two.
+     *
+     * @param  low  The lower size.
+     * @param  high The higher size, at least 2 greater than the lower.
+     *
+     * @return A size strictly between the two.
+     */
+    private int geometricMean(int low, int high)
+    {
+        int mean = (int) Math.round(Math.sqrt(Math.max(low, 1) * (double) high));
+
+        return Math.min(Math.max(mean, low + 1), high - 1);
+    }
+}
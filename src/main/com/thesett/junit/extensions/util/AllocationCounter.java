@@ -0,0 +1,165 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions.util;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * AllocationCounter reads the number of bytes of heap memory that have been allocated by the calling thread, from the
+ * per-thread allocation counters that the JVM maintains. Taking the difference between two readings gives the number
+ * of bytes allocated by the thread in between them, regardless of any garbage collection in the meantime.
+ *
+ * <p/>The per-thread allocation counters are an extension of the standard thread management interface, so are not
+ * available on every JVM. Where they are not available, or cannot be enabled, the readings are always zero. Reading
+ * the counter may itself allocate a few bytes, which is measured once, and taken out of each reading.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities
+ * <tr><td> Read the number of bytes allocated by the calling thread.
+ * <tr><td> Take out the bytes allocated by reading the counter.
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class AllocationCounter
+{
+    /** Holds the thread management interface with allocation counters, or <tt>null</tt> if it is not available. */
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN = getThreadBean();
+
+    /** Holds the number of bytes allocated by a single reading of the counter. */
+    private static final long READING_OVERHEAD = measureReadingOverhead();
+
+    /** Holds a running total of the reading overhead taken out of the readings on each thread. */
+    private static final ThreadLocal<long[]> readingCorrection =
+        new ThreadLocal<long[]>()
+        {
+            /**
+             * Sets up a zeroed correction for a thread.
+             *
+             * @return A zeroed correction.
+             */
+            protected long[] initialValue()
+            {
+                return new long[1];
+            }
+        };
+
+    /** Private constructor to prevent instantiation of this utility class. */
+    private AllocationCounter()
+    {
+    }
+
+    /**
+     * Checks if the per-thread allocation counters are available.
+     *
+     * @return <tt>true</tt> if the per-thread allocation counters are available.
+     */
+    public static boolean isSupported()
+    {
+        return THREAD_BEAN != null;
+    }
+
+    /**
+     * Reads the number of bytes allocated by the calling thread so far, less the bytes allocated by reading the counter
+     * itself.
+     *
+     * @return The number of bytes allocated by the calling thread so far, or zero if this cannot be measured.
+     */
+    public static long getAllocatedBytes()
+    {
+        if (THREAD_BEAN == null)
+        {
+            return 0L;
+        }
+
+        long[] correction = readingCorrection.get();
+        long allocated = THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+
+        correction[0] += READING_OVERHEAD;
+
+        return allocated - correction[0];
+    }
+
+    /**
+     * Gets the thread management interface, and enables its allocation counters.
+     *
+     * @return The thread management interface, or <tt>null</tt> if its allocation counters are not available.
+     */
+    private static com.sun.management.ThreadMXBean getThreadBean()
+    {
+        try
+        {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+            if (!(bean instanceof com.sun.management.ThreadMXBean))
+            {
+                return null;
+            }
+
+            com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) bean;
+
+            if (!allocationBean.isThreadAllocatedMemorySupported())
+            {
+                return null;
+            }
+
+            allocationBean.setThreadAllocatedMemoryEnabled(true);
+
+            return allocationBean;
+        }
+        catch (UnsupportedOperationException e)
+        {
+            // The allocation counters cannot be enabled. Exception noted and ignored.
+            e = null;
+
+            return null;
+        }
+        catch (NoClassDefFoundError e)
+        {
+            // The extended thread management interface is not present on this JVM. Error noted and ignored.
+            e = null;
+
+            return null;
+        }
+    }
+
+    /**
+     * Measures the number of bytes allocated by a single reading of the counter, as the least seen over a number of
+     * consecutive readings.
+     *
+     * @return The number of bytes allocated by a single reading of the counter.
+     */
+    private static long measureReadingOverhead()
+    {
+        if (THREAD_BEAN == null)
+        {
+            return 0L;
+        }
+
+        long id = Thread.currentThread().getId();
+        long overhead = Long.MAX_VALUE;
+        long last = THREAD_BEAN.getThreadAllocatedBytes(id);
+
+        for (int i = 0; i < 100; i++)
+        {
+            long next = THREAD_BEAN.getThreadAllocatedBytes(id);
+            overhead = Math.min(overhead, next - last);
+            last = next;
+        }
+
+        return overhead;
+    }
+}
@@ -0,0 +1,426 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CellStatistics aggregates test timings in memory, into cells keyed by test name, size parameter and concurrency
+ * level. Each cell keeps streaming statistics of the timings recorded into it, in constant memory however many
+ * timings are recorded; the count, the mean and variance updated by Welford's method, the minimum and maximum, and a
+ * {@link LatencyHistogram} from which quantiles can be read. Cells can be merged, so that statistics recorded
+ * separately, by different threads or in different batches, can be combined.
+ *
+ * <p/>Recording into the statistics is synchronized, so that many test threads may record into the same statistics.
+ * Cells are looked up by a composite key, re-using a probe key so that recording a timing into an existing cell does
+ * not allocate.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities <th> Collaborations
+ * <tr><td> Aggregate test timings by test, size and concurrency level.
+ * <tr><td> Keep streaming mean, variance, minimum and maximum per cell.
+ * <tr><td> Keep a mergeable quantile sketch per cell. <td> {@link LatencyHistogram}
+ * <tr><td> Merge statistics together.
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class CellStatistics
+{
+    /** Holds the cells by test, size and concurrency level. */
+    private final Map<CellKey, Cell> cells = new HashMap<CellKey, Cell>();
+
+    /** Holds the key used to look up cells, which is only used whilst holding the lock on this. */
+    private final CellKey probe = new CellKey();
+
+    /**
+     * Records a test timing into the cell for its test, size and concurrency level.
+     *
+     * @param testClass   The class name of the test.
+     * @param testMethod  The method name of the test.
+     * @param n           The size parameter of the test.
+     * @param concurrency The concurrency level the test was run at.
+     * @param nanos       The test timing in nanoseconds.
+     */
+    public synchronized void record(String testClass, String testMethod, int n, int concurrency, long nanos)
+    {
+        getCell(testClass, testMethod, n, concurrency).record(nanos);
+    }
+
+    /**
+     * Merges all of the cells of another set of statistics into this one.
+     *
+     * @param other The statistics to merge into this one.
+     */
+    public void add(CellStatistics other)
+    {
+        List<Cell> otherCells = other.getCells();
+
+        synchronized (this)
+        {
+            for (Cell cell : otherCells)
+            {
+                getCell(cell.key.testClass, cell.key.testMethod, cell.key.n, cell.key.concurrency).add(cell);
+            }
+        }
+    }
+
+    /**
+     * Provides copies of all of the cells, ordered by test name, size and concurrency level.
+     *
+     * @return Copies of all of the cells.
+     */
+    public synchronized List<Cell> getCells()
+    {
+        List<CellKey> keys = new ArrayList<CellKey>(cells.keySet());
+        Collections.sort(keys);
+
+        List<Cell> result = new ArrayList<Cell>(keys.size());
+
+        for (CellKey key : keys)
+        {
+            Cell copy = new Cell(key);
+            copy.add(cells.get(key));
+            result.add(copy);
+        }
+
+        return result;
+    }
+
+    /** Clears out all of the cells. */
+    public synchronized void reset()
+    {
+        cells.clear();
+    }
+
+    /**
+     * Gets the cell for a test, size and concurrency level, creating it if it does not exist yet. This must only be
+     * called whilst holding the lock on this, as it uses the shared probe key.
+     *
+     * @param  testClass   The class name of the test.
+     * @param  testMethod  The method name of the test.
+     * @param  n           The size parameter of the test.
+     * @param  concurrency The concurrency level the test was run at.
+     *
+     * @return The cell.
+     */
+    private Cell getCell(String testClass, String testMethod, int n, int concurrency)
+    {
+        probe.set(testClass, testMethod, n, concurrency);
+
+        Cell cell = cells.get(probe);
+
+        // Create the cell with a copy of the probe key, as the probe key is re-used for every look up.
+        if (cell == null)
+        {
+            CellKey key = new CellKey();
+            key.set(testClass, testMethod, n, concurrency);
+
+            cell = new Cell(key);
+            cells.put(key, cell);
+        }
+
+        return cell;
+    }
+
+    /**
+     * Identifies a cell by test, size and concurrency level. Keys are ordered by test class and method name, then
+     * numerically by size and by concurrency level. Keys held in the map of cells are never changed once created.
+     */
+    private static class CellKey implements Comparable<CellKey>
+    {
+        /** Holds the class name of the test. */
+        String testClass;
+
+        /** Holds the method name of the test. */
+        String testMethod;
+
+        /** Holds the size parameter of the test. */
+        int n;
+
+        /** Holds the concurrency level the test was run at. */
+        int concurrency;
+
+        /**
+         * Sets the fields of this key.
+         *
+         * @param testClass   The class name of the test.
+         * @param testMethod  The method name of the test.
+         * @param n           The size parameter of the test.
+         * @param concurrency The concurrency level the test was run at.
+         */
+        void set(String testClass, String testMethod, int n, int concurrency)
+        {
+            this.testClass = testClass;
+            this.testMethod = testMethod;
+            this.n = n;
+            this.concurrency = concurrency;
+        }
+
+        /**
+         * Compares this key with another, by test class and method name, then by size and concurrency level.
+         *
+         * @param  other The key to compare with.
+         *
+         * @return A negative number, zero or a positive number as this key is less than, equal to or greater than the
+         *         other.
+         */
+        public int compareTo(CellKey other)
+        {
+            int comparison = testClass.compareTo(other.testClass);
+
+            if (comparison == 0)
+            {
+                comparison = testMethod.compareTo(other.testMethod);
+            }
+
+            if (comparison == 0)
+            {
+                comparison = (n < other.n) ? -1 : ((n == other.n) ? 0 : 1);
+            }
+
+            if (comparison == 0)
+            {
+                comparison = (concurrency < other.concurrency) ? -1 : ((concurrency == other.concurrency) ? 0 : 1);
+            }
+
+            return comparison;
+        }
+
+        /**
+         * Checks if this key identifies the same cell as another object.
+         *
+         * @param  o The object to compare with.
+         *
+         * @return <tt>true</tt> if the object is a key for the same test, size and concurrency level.
+         */
+        public boolean equals(Object o)
+        {
+            if (this == o)
+            {
+                return true;
+            }
+
+            if (!(o instanceof CellKey))
+            {
+                return false;
+            }
+
+            CellKey other = (CellKey) o;
+
+            return (n == other.n) && (concurrency == other.concurrency) && testClass.equals(other.testClass) &&
+                testMethod.equals(other.testMethod);
+        }
+
+        /**
+         * Computes a hash code for this key, from the test, size and concurrency level.
+         *
+         * @return A hash code for this key.
+         */
+        public int hashCode()
+        {
+            int result = testClass.hashCode();
+            result = (31 * result) + testMethod.hashCode();
+            result = (31 * result) + n;
+            result = (31 * result) + concurrency;
+
+            return result;
+        }
+    }
+
+    /**
+     * Holds the streaming statistics of the test timings for a single test, size and concurrency level.
+     */
+    public static class Cell
+    {
+        /** Holds the key that identifies the cell. */
+        private final CellKey key;
+
+        /** Holds the name of the test. */
+        private final String testName;
+
+        /** Holds the timings as a quantile sketch. */
+        private final LatencyHistogram sketch = new LatencyHistogram();
+
+        /** Holds the number of timings recorded. */
+        private long count;
+
+        /** Holds the running mean of the timings. */
+        private double mean;
+
+        /** Holds the running sum of squared differences from the mean of the timings. */
+        private double sumSquares;
+
+        /** Holds the smallest timing recorded. */
+        private long min = Long.MAX_VALUE;
+
+        /** Holds the largest timing recorded. */
+        private long max;
+
+        /**
+         * Creates an empty cell.
+         *
+         * @param key The key that identifies the cell.
+         */
+        Cell(CellKey key)
+        {
+            this.key = key;
+            this.testName = key.testClass + ", " + key.testMethod;
+        }
+
+        /**
+         * Gets the name of the test, made up of its class and method names.
+         *
+         * @return The name of the test.
+         */
+        public String getTestName()
+        {
+            return testName;
+        }
+
+        /**
+         * Gets the size parameter of the test.
+         *
+         * @return The size parameter of the test.
+         */
+        public int getN()
+        {
+            return key.n;
+        }
+
+        /**
+         * Gets the concurrency level the test was run at.
+         *
+         * @return The concurrency level the test was run at.
+         */
+        public int getConcurrency()
+        {
+            return key.concurrency;
+        }
+
+        /**
+         * Gets the number of timings recorded.
+         *
+         * @return The number of timings recorded.
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+        /**
+         * Gets the mean of the timings.
+         *
+         * @return The mean of the timings in nanoseconds.
+         */
+        public double getMean()
+        {
+            return mean;
+        }
+
+        /**
+         * Gets the sample standard deviation of the timings.
+         *
+         * @return The sample standard deviation of the timings in nanoseconds, or 0 if fewer than 2 were recorded.
+         */
+        public double getStandardDeviation()
+        {
+            return (count > 1) ? Math.sqrt(sumSquares / (count - 1)) : 0.0d;
+        }
+
+        /**
+         * Gets the smallest timing recorded.
+         *
+         * @return The smallest timing recorded in nanoseconds, or 0 if none were recorded.
+         */
+        public long getMin()
+        {
+            return (count > 0) ? min : 0L;
+        }
+
+        /**
+         * Gets the largest timing recorded.
+         *
+         * @return The largest timing recorded in nanoseconds.
+         */
+        public long getMax()
+        {
+            return max;
+        }
+
+        /**
+         * Gets the timing at a percentile, from the quantile sketch.
+         *
+         * @param  percentile The percentile, in the range 0 to 100.
+         *
+         * @return The timing at the percentile in nanoseconds, to the precision of the sketch.
+         */
+        public long getValueAtPercentile(double percentile)
+        {
+            return sketch.getValueAtPercentile(percentile);
+        }
+
+        /**
+         * Records a timing into the cell.
+         *
+         * @param nanos The timing in nanoseconds.
+         */
+        void record(long nanos)
+        {
+            // Update the mean and sum of squares by Welford's method.
+            count++;
+
+            double delta = nanos - mean;
+            mean += delta / count;
+            sumSquares += delta * (nanos - mean);
+
+            min = Math.min(min, nanos);
+            max = Math.max(max, nanos);
+
+            sketch.recordValue(nanos);
+        }
+
+        /**
+         * Merges the timings of another cell into this one.
+         *
+         * @param other The cell to merge into this one.
+         */
+        void add(Cell other)
+        {
+            if (other.count == 0)
+            {
+                return;
+            }
+
+            // Combine the means and sums of squares by the parallel form of Welford's method.
+            long combinedCount = count + other.count;
+            double delta = other.mean - mean;
+
+            sumSquares += other.sumSquares + (delta * delta * count * other.count / combinedCount);
+            mean += delta * other.count / combinedCount;
+            count = combinedCount;
+
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+
+            sketch.add(other.sketch);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions.util;
+
+/**
+ * Complexity enumerates the complexity classes that test timings can be fitted against, in order of increasing growth.
+ * Each complexity class provides its growth function, so that a timing model of the form t = a + c * f(n) can be
+ * fitted against measured timings.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities
+ * <tr><td> Enumerate complexity classes in order of increasing growth.
+ * <tr><td> Provide the growth function for each complexity class.
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public enum Complexity
+{
+    /** Constant, O(1). */
+    CONSTANT("O(1)"),
+
+    /** Logarithmic, O(log n). */
+    LOG_N("O(log n)"),
+
+    /** Linear, O(n). */
+    N("O(n)"),
+
+    /** Linearithmic, O(n log n). */
+    N_LOG_N("O(n log n)"),
+
+    /** Quadratic, O(n^2). */
+    N_SQUARED("O(n^2)"),
+
+    /** Cubic, O(n^3). */
+    N_CUBED("O(n^3)");
+
+    /** Holds the name of the complexity class in big-O notation. */
+    private final String notation;
+
+    /**
+     * Creates a complexity class.
+     *
+     * @param notation The name of the complexity class in big-O notation.
+     */
+    private Complexity(String notation)
+    {
+        this.notation = notation;
+    }
+
+    /**
+     * Applies the growth function of this complexity class to a size.
+     *
+     * @param  n The size.
+     *
+     * @return The growth function of this complexity class at the size.
+     */
+    public double growth(double n)
+    {
+        switch (this)
+        {
+        case CONSTANT:
+            return 1.0d;
+
+        case LOG_N:
+            return Math.log(n);
+
+        case N:
+            return n;
+
+        case N_LOG_N:
+            return n * Math.log(n);
+
+        case N_SQUARED:
+            return n * n;
+
+        case N_CUBED:
+        default:
+            return n * n * n;
+        }
+    }
+
+    /**
+     * Checks if this complexity class grows faster than another.
+     *
+     * @param  other The complexity class to compare with.
+     *
+     * @return <tt>true</tt> if this complexity class grows faster than the other.
+     */
+    public boolean isWorseThan(Complexity other)
+    {
+        return ordinal() > other.ordinal();
+    }
+
+    /**
+     * Provides the name of the complexity class in big-O notation.
+     *
+     * @return The name of the complexity class in big-O notation.
+     */
+    public String toString()
+    {
+        return notation;
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions.util;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+
+import com.thesett.junit.extensions.ExpectedComplexity;
+import com.thesett.junit.extensions.listeners.ComplexityFit;
+
+/**
+ * ComplexityFitter collects the timings of parameterized tests over a sweep of their size parameter, and fits the
+ * median timing at each size against each {@link Complexity} class, to find the complexity class that best describes
+ * how the test time grows with its size.
+ *
+ * <p/>Each complexity class is fitted as a model of the form t = a + c * f(n), by least squares, where the intercept a
+ * takes up any fixed cost per test that does not grow with its size, so that it does not skew the choice of complexity
+ * class. The constant complexity class is fitted as t = c. The residuals are taken relative to the timings, so that
+ * the timings at the largest sizes do not swamp those at the smallest, and the slope c is not allowed to be negative.
+ * The best fit is the one that leaves the smallest sum of squared relative residuals per degree of freedom, which
+ * takes account of the constant model having one parameter fewer than the others. As timings are noisy, a simpler
+ * complexity class is preferred over a more complex one, unless the more complex one reduces the residuals by more
+ * than {@link #FIT_TOLERANCE}. At least {@link #MIN_SIZES} distinct sizes are needed to fit a test.
+ *
+ * <p/>The expected complexity class of a test is taken from any {@link ExpectedComplexity} annotation on its test
+ * method.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities <th> Collaborations
+ * <tr><td> Collect test timings by test and size.
+ * <tr><td> Fit median timings against complexity classes. <td> {@link Complexity}
+ * <tr><td> Look up the expected complexity class of a test. <td> {@link ExpectedComplexity}
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class ComplexityFitter
+{
+    /** The fraction by which a more complex model must reduce the residuals, to be preferred over a simpler one. */
+    public static final double FIT_TOLERANCE = 0.1d;
+
+    /** The least number of distinct sizes that a test can be fitted over. */
+    public static final int MIN_SIZES = 3;
+
+    /** Holds the timings collected for each test, by the test class and method name. */
+    private final Map<String, TestTimings> timings = new LinkedHashMap<String, TestTimings>();
+
+    /**
+     * Records the timing of a test at a size.
+     *
+     * @param test      The test.
+     * @param n         The size parameter that the test was run with.
+     * @param timeNanos The timing of the test in nanoseconds.
+     */
+    public synchronized void record(Test test, int n, long timeNanos)
+    {
+        String testName = (test instanceof TestCase) ? ((TestCase) test).getName() : test.toString();
+        String key = test.getClass().getName() + "." + testName;
+
+        TestTimings testTimings = timings.get(key);
+
+        if (testTimings == null)
+        {
+            testTimings = new TestTimings(test, testName, getExpectedComplexity(test, testName));
+            timings.put(key, testTimings);
+        }
+
+        List<Long> times = testTimings.times.get(n);
+
+        if (times == null)
+        {
+            times = new ArrayList<Long>();
+            testTimings.times.put(n, times);
+        }
+
+        times.add(timeNanos);
+    }
+
+    /**
+     * Fits the timings collected for every test that was run over enough distinct sizes, and clears down the timings
+     * ready to collect the next batch.
+     *
+     * @return The best fits for each test that could be fitted.
+     */
+    public synchronized List<ComplexityFit> fit()
+    {
+        List<ComplexityFit> fits = new ArrayList<ComplexityFit>();
+
+        for (TestTimings testTimings : timings.values())
+        {
+            if (testTimings.times.size() < MIN_SIZES)
+            {
+                continue;
+            }
+
+            // Take the median timing at each size.
+            double[] sizes = new double[testTimings.times.size()];
+            double[] medians = new double[sizes.length];
+            int i = 0;
+
+            for (Map.Entry<Integer, List<Long>> entry : testTimings.times.entrySet())
+            {
+                List<Long> times = entry.getValue();
+                Collections.sort(times);
+
+                sizes[i] = entry.getKey();
+                medians[i] = times.get(times.size() / 2);
+                i++;
+            }
+
+            fits.add(fitTest(testTimings, sizes, medians));
+        }
+
+        timings.clear();
+
+        return fits;
+    }
+
+    /**
+     * Fits the median timings of a test against each complexity class, and picks the best fit.
+     *
+     * @param  testTimings The test timings.
+     * @param  sizes       The distinct sizes that the test was run at.
+     * @param  medians     The median timing at each size.
+     *
+     * @return The best fit.
+     */
+    private ComplexityFit fitTest(TestTimings testTimings, double[] sizes, double[] medians)
+    {
+        // Weight each timing by the inverse of its square, so that the residuals are relative to the timings.
+        double[] weights = new double[medians.length];
+        double totalWeight = 0.0d;
+        double weightedTime = 0.0d;
+
+        for (int i = 0; i < medians.length; i++)
+        {
+            double time = Math.max(medians[i], 1.0d);
+            weights[i] = 1.0d / (time * time);
+            totalWeight += weights[i];
+            weightedTime += weights[i] * medians[i];
+        }
+
+        // The constant model, and the total sum of squares about it for the coefficient of determination.
+        double mean = weightedTime / totalWeight;
+        double totalSquares = 0.0d;
+
+        for (int i = 0; i < medians.length; i++)
+        {
+            totalSquares += weights[i] * (medians[i] - mean) * (medians[i] - mean);
+        }
+
+        // Fit each complexity class by weighted least squares.
+        Complexity[] models = Complexity.values();
+        double[] intercepts = new double[models.length];
+        double[] constants = new double[models.length];
+        double[] residuals = new double[models.length];
+        double leastResiduals = Double.MAX_VALUE;
+
+        for (int m = 0; m < models.length; m++)
+        {
+            double weightedGrowth = 0.0d;
+            double weightedGrowthSquared = 0.0d;
+            double weightedGrowthTimesTime = 0.0d;
+
+            for (int i = 0; i < sizes.length; i++)
+            {
+                double growth = models[m].growth(sizes[i]);
+                weightedGrowth += weights[i] * growth;
+                weightedGrowthSquared += weights[i] * growth * growth;
+                weightedGrowthTimesTime += weights[i] * growth * medians[i];
+            }
+
+            double determinant = (totalWeight * weightedGrowthSquared) - (weightedGrowth * weightedGrowth);
+
+            // A model that does not grow over the sizes, such as log n at n = 1 only, cannot be fitted, other than the
+            // constant model itself.
+            if (Double.isNaN(determinant) || Double.isInfinite(determinant) ||
+                    (determinant <= (1.0e-12d * totalWeight * weightedGrowthSquared)))
+            {
+                if (models[m] != Complexity.CONSTANT)
+                {
+                    residuals[m] = Double.MAX_VALUE;
+
+                    continue;
+                }
+
+                constants[m] = mean;
+            }
+            else
+            {
+                constants[m] =
+                    ((totalWeight * weightedGrowthTimesTime) - (weightedGrowth * weightedTime)) / determinant;
+                intercepts[m] = (weightedTime - (constants[m] * weightedGrowth)) / totalWeight;
+
+                // A test that gets faster as it grows is no better described by this model than by the constant one.
+                if (constants[m] < 0.0d)
+                {
+                    residuals[m] = Double.MAX_VALUE;
+
+                    continue;
+                }
+            }
+
+            for (int i = 0; i < sizes.length; i++)
+            {
+                double residual = medians[i] - intercepts[m] - (constants[m] * models[m].growth(sizes[i]));
+                residuals[m] += weights[i] * residual * residual;
+            }
+
+            // Take the residuals per degree of freedom, as the constant model has one parameter and the others two.
+            residuals[m] /= Math.max(1, sizes.length - ((models[m] == Complexity.CONSTANT) ? 1 : 2));
+
+            leastResiduals = Math.min(leastResiduals, residuals[m]);
+        }
+
+        // Pick the simplest complexity class whose residuals are within tolerance of the least.
+        int best = models.length - 1;
+
+        for (int m = 0; m < models.length; m++)
+        {
+            if (residuals[m] <= (leastResiduals * (1.0d + FIT_TOLERANCE)))
+            {
+                best = m;
+
+                break;
+            }
+        }
+
+        // Work out the coefficient of determination from the sum of the relative residuals of the best fit.
+        double bestResiduals = 0.0d;
+
+        for (int i = 0; i < sizes.length; i++)
+        {
+            double residual = medians[i] - intercepts[best] - (constants[best] * models[best].growth(sizes[i]));
+            bestResiduals += weights[i] * residual * residual;
+        }
+
+        double rSquared = (totalSquares > 0.0d) ? (1.0d - (bestResiduals / totalSquares)) : 1.0d;
+
+        return new ComplexityFit(testTimings.test, testTimings.testName, models[best], rSquared, intercepts[best],
+            constants[best], testTimings.expected, sizes.length);
+    }
+
+    /**
+     * Looks up the expected complexity class declared on the test method of a test.
+     *
+     * @param  test     The test.
+     * @param  testName The name of the test method.
+     *
+     * @return The expected complexity class, or <tt>null</tt> if none was declared.
+     */
+    private static Complexity getExpectedComplexity(Test test, String testName)
+    {
+        Method method = null;
+
+        try
+        {
+            method = test.getClass().getMethod(testName, int.class);
+        }
+        catch (NoSuchMethodException e)
+        {
+            // Try the unparameterized method instead. Exception noted and ignored.
+            e = null;
+
+            try
+            {
+                method = test.getClass().getMethod(testName);
+            }
+            catch (NoSuchMethodException e2)
+            {
+                // There is no test method to declare an expected complexity. Exception noted and ignored.
+                e2 = null;
+
+                return null;
+            }
+        }
+
+        ExpectedComplexity expected = method.getAnnotation(ExpectedComplexity.class);
+
+        return (expected == null) ? null : expected.value();
+    }
+
+    /**
+     * Holds the timings collected for a single test.
+     */
+    private static class TestTimings
+    {
+        /** Holds the test. */
+        final Test test;
+
+        /** Holds the name of the test method. */
+        final String testName;
+
+        /** Holds the expected complexity class of the test, or <tt>null</tt> if none was declared. */
+        final Complexity expected;
+
+        /** Holds the test timings, by size. */
+        final Map<Integer, List<Long>> times = new TreeMap<Integer, List<Long>>();
+
+        /**
+         * Creates a holder for the timings of a test.
+         *
+         * @param test     The test.
+         * @param testName The name of the test method.
+         * @param expected The expected complexity class of the test, or <tt>null</tt> if none was declared.
+         */
+        TestTimings(Test test, String testName, Complexity expected)
+        {
+            this.test = test;
+            this.testName = testName;
+            this.expected = expected;
+        }
+    }
+}
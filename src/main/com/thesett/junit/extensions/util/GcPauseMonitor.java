@@ -0,0 +1,236 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions.util;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+
+import com.thesett.junit.extensions.listeners.GarbageCollectionSummary;
+
+/**
+ * GcPauseMonitor watches the garbage collectors of the JVM, to attribute garbage collection activity to batches of
+ * tests and to individual tests. Over a batch, it counts the collections run and the collection time accumulated by
+ * all collectors, and records each individual collection that overlapped the batch, from the notifications that the
+ * collectors send at the end of every collection. For individual tests, the total number of collections run so far
+ * can be read at the start and end of a test, to tell whether the test overlapped a collection.
+ *
+ * <p/>Collection notifications are delivered asynchronously, shortly after each collection ends, so a collection right
+ * at the end of a batch may not be recorded against it. The collection counts are updated by the collectors as each
+ * collection completes, so do not suffer from this delay. Where the collectors do not send notifications, only the
+ * counts and times are available.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities <th> Collaborations
+ * <tr><td> Count collections and collection time over a batch. <td> {@link GarbageCollectorMXBean}
+ * <tr><td> Record the individual collections that overlapped a batch. <td> {@link GarbageCollectionSummary}
+ * <tr><td> Provide the total number of collections so far.
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class GcPauseMonitor implements NotificationListener
+{
+    /** Holds the garbage collectors of the JVM. */
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+
+    /** Holds the collections reported by notification, that have not been attributed to a batch yet. */
+    private final List<GarbageCollectionSummary.Pause> pauses = new ArrayList<GarbageCollectionSummary.Pause>();
+
+    /** Holds the nano time of the start of the JVM, used to convert collection start times onto the nano time clock. */
+    private final long jvmStartNanos =
+        System.nanoTime() - (ManagementFactory.getRuntimeMXBean().getUptime() * 1000000L);
+
+    /** Holds the time at which the current batch started. */
+    private long batchStartTime;
+
+    /** Holds the number of collections run at the start of the current batch. */
+    private long batchStartCollections;
+
+    /** Holds the accumulated collection time at the start of the current batch. */
+    private long batchStartCollectionTime;
+
+    /** Flag that indicates that this is listening for collection notifications. */
+    private boolean started;
+
+    /** Starts listening for collection notifications, from all collectors that send them. */
+    public synchronized void start()
+    {
+        if (started)
+        {
+            return;
+        }
+
+        for (GarbageCollectorMXBean collector : collectors)
+        {
+            if (collector instanceof NotificationEmitter)
+            {
+                ((NotificationEmitter) collector).addNotificationListener(this, null, null);
+            }
+        }
+
+        started = true;
+        startBatch();
+    }
+
+    /** Stops listening for collection notifications. */
+    public synchronized void stop()
+    {
+        if (!started)
+        {
+            return;
+        }
+
+        for (GarbageCollectorMXBean collector : collectors)
+        {
+            if (collector instanceof NotificationEmitter)
+            {
+                try
+                {
+                    ((NotificationEmitter) collector).removeNotificationListener(this);
+                }
+                catch (ListenerNotFoundException e)
+                {
+                    // The listener was never added to this collector. Exception noted and ignored.
+                    e = null;
+                }
+            }
+        }
+
+        started = false;
+    }
+
+    /** Marks the start of a batch, taking the collection counts and times at the start of it. */
+    public synchronized void startBatch()
+    {
+        batchStartTime = System.nanoTime();
+        batchStartCollections = getCollectionCount();
+        batchStartCollectionTime = getCollectionTime();
+
+        // Drop any collections that ended before the batch started.
+        for (Iterator<GarbageCollectionSummary.Pause> i = pauses.iterator(); i.hasNext();)
+        {
+            GarbageCollectionSummary.Pause pause = i.next();
+
+            if ((pause.getStartTime() + (pause.getDuration() * 1000000L)) < batchStartTime)
+            {
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Marks the end of a batch, and summarizes the collection activity during it.
+     *
+     * @return A summary of the collection activity during the batch.
+     */
+    public synchronized GarbageCollectionSummary endBatch()
+    {
+        long batchEndTime = System.nanoTime();
+        List<GarbageCollectionSummary.Pause> batchPauses = new ArrayList<GarbageCollectionSummary.Pause>();
+
+        // Pick out the collections that overlapped the batch.
+        for (Iterator<GarbageCollectionSummary.Pause> i = pauses.iterator(); i.hasNext();)
+        {
+            GarbageCollectionSummary.Pause pause = i.next();
+
+            if (pause.getStartTime() <= batchEndTime)
+            {
+                if ((pause.getStartTime() + (pause.getDuration() * 1000000L)) >= batchStartTime)
+                {
+                    batchPauses.add(pause);
+                }
+
+                i.remove();
+            }
+        }
+
+        return new GarbageCollectionSummary(getCollectionCount() - batchStartCollections,
+            getCollectionTime() - batchStartCollectionTime, batchPauses);
+    }
+
+    /**
+     * Provides the total number of collections run by all collectors so far.
+     *
+     * @return The total number of collections run by all collectors so far.
+     */
+    public long getCollectionCount()
+    {
+        long count = 0;
+
+        for (GarbageCollectorMXBean collector : collectors)
+        {
+            count += Math.max(0L, collector.getCollectionCount());
+        }
+
+        return count;
+    }
+
+    /**
+     * Records each collection that is notified.
+     *
+     * @param notification The notification.
+     * @param handback     Not used.
+     */
+    public void handleNotification(Notification notification, Object handback)
+    {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType()))
+        {
+            return;
+        }
+
+        GarbageCollectionNotificationInfo info =
+            GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        GcInfo gcInfo = info.getGcInfo();
+
+        GarbageCollectionSummary.Pause pause =
+            new GarbageCollectionSummary.Pause(info.getGcName(), info.getGcAction(), info.getGcCause(),
+                jvmStartNanos + (gcInfo.getStartTime() * 1000000L), gcInfo.getDuration());
+
+        synchronized (this)
+        {
+            pauses.add(pause);
+        }
+    }
+
+    /**
+     * Provides the accumulated collection time of all collectors so far.
+     *
+     * @return The accumulated collection time of all collectors so far in milliseconds.
+     */
+    private long getCollectionTime()
+    {
+        long time = 0;
+
+        for (GarbageCollectorMXBean collector : collectors)
+        {
+            time += Math.max(0L, collector.getCollectionTime());
+        }
+
+        return time;
+    }
+}
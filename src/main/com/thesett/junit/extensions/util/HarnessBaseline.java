@@ -0,0 +1,96 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions.util;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * HarnessBaseline holds the overhead that the test harness adds to the timing of each test, by concurrency level, as
+ * measured by timing an empty test. The overhead differs between tests that time themselves, through
+ * {@link com.thesett.junit.extensions.InstrumentedTest}, and tests that are timed from the start to the end of the
+ * whole test run, including the set up, tear down and reflective invocation of the test, so a separate baseline is
+ * held for each.
+ *
+ * <p/>Baselines are looked up by the nearest concurrency level at or below the one asked for, or the lowest one that
+ * was measured, if there is none below it. A baseline of zero is returned if none were measured. Baselines are looked
+ * up for every test, so this is not synchronized; all of the baselines must be set before it is shared with the test
+ * threads.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities
+ * <tr><td> Hold the harness overhead by concurrency level, for instrumented and uninstrumented tests.
+ * <tr><td> Look up the harness overhead for the nearest concurrency level.
+ * <tr><td> Take the median of a set of timings.
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class HarnessBaseline
+{
+    /** Holds the baselines for instrumented tests in nanoseconds, by concurrency level. */
+    private final NavigableMap<Integer, Long> instrumentedBaselines = new TreeMap<Integer, Long>();
+
+    /** Holds the baselines for uninstrumented tests in nanoseconds, by concurrency level. */
+    private final NavigableMap<Integer, Long> uninstrumentedBaselines = new TreeMap<Integer, Long>();
+
+    /**
+     * Takes the median of a set of timings. The timings are sorted in place.
+     *
+     * @param  timings The timings, which must not be empty.
+     * @param  count   The number of timings to take from the start of the array.
+     *
+     * @return The median timing.
+     */
+    public static long median(long[] timings, int count)
+    {
+        Arrays.sort(timings, 0, count);
+
+        return timings[count / 2];
+    }
+
+    /**
+     * Sets the baseline for a concurrency level.
+     *
+     * @param concurrencyLevel The concurrency level that the baseline was measured at.
+     * @param instrumented     <tt>true</tt> if the baseline is for instrumented tests.
+     * @param nanos            The baseline in nanoseconds.
+     */
+    public void setBaseline(int concurrencyLevel, boolean instrumented, long nanos)
+    {
+        (instrumented ? instrumentedBaselines : uninstrumentedBaselines).put(concurrencyLevel, nanos);
+    }
+
+    /**
+     * Gets the baseline for the nearest concurrency level to the one specified that a baseline was measured at.
+     *
+     * @param  concurrencyLevel The concurrency level to get the baseline for.
+     * @param  instrumented     <tt>true</tt> to get the baseline for instrumented tests.
+     *
+     * @return The baseline in nanoseconds, or zero if none was measured.
+     */
+    public long getBaseline(int concurrencyLevel, boolean instrumented)
+    {
+        NavigableMap<Integer, Long> baselines = instrumented ? instrumentedBaselines : uninstrumentedBaselines;
+
+        Map.Entry<Integer, Long> entry = baselines.floorEntry(concurrencyLevel);
+        entry = (entry == null) ? baselines.firstEntry() : entry;
+
+        return (entry == null) ? 0L : entry.getValue();
+    }
+}
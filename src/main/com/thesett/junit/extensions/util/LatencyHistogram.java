@@ -0,0 +1,348 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions.util;
+
+/**
+ * LatencyHistogram is a high dynamic range histogram for recording test latencies in nanoseconds. It covers the range
+ * from 1 nanosecond up to a configurable highest trackable value, to a fixed number of significant decimal digits of
+ * precision across the whole range. Buckets are arranged in powers of two, each sub-divided linearly, so that the
+ * relative error of any recorded value is bounded by the chosen precision, whilst the memory footprint stays small and
+ * fixed.
+ *
+ * <p/>Recording a value is a constant time operation that does not allocate, making it suitable for use directly on
+ * the measured test thread. Histograms are not thread safe; the intended usage is one histogram per recording thread,
+ * merged together with {@link #add} once the recording threads have completed.
+ *
+ * <p/>Values above the highest trackable value are recorded against the highest trackable value, but the true maximum
+ * and the exact sum of all values are still tracked, so that the maximum and mean reported are exact.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities
+ * <tr><td> Record latencies to a fixed precision without allocating.
+ * <tr><td> Merge histograms recorded by different threads.
+ * <tr><td> Report count, min, max, mean and percentiles of the recorded latencies.
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class LatencyHistogram
+{
+    /** The default highest trackable value, one hour in nanoseconds. */
+    public static final long DEFAULT_HIGHEST_TRACKABLE = 3600L * 1000000000L;
+
+    /** The default number of significant decimal digits to hold values to. */
+    public static final int DEFAULT_SIGNIFICANT_DIGITS = 2;
+
+    /** Holds the highest value that can be recorded without clamping. */
+    private final long highestTrackableValue;
+
+    /** Holds the number of significant decimal digits that values are held to. */
+    private final int significantDigits;
+
+    /** Holds the log base 2 of the number of linear sub-buckets in the lower half of each bucket. */
+    private final int subBucketHalfCountMagnitude;
+
+    /** Holds the number of linear sub-buckets in the lower half of each bucket. */
+    private final int subBucketHalfCount;
+
+    /** Holds the mask that selects the values that fit within the first bucket. */
+    private final long subBucketMask;
+
+    /** Used to calculate bucket indexes from the number of leading zeros in a value. */
+    private final int leadingZeroCountBase;
+
+    /** Holds the counts for all of the sub-buckets. */
+    private final long[] counts;
+
+    /** Holds the total number of values recorded. */
+    private long totalCount;
+
+    /** Holds the exact sum of all values recorded. */
+    private long totalValue;
+
+    /** Holds the smallest value recorded. */
+    private long minValue = Long.MAX_VALUE;
+
+    /** Holds the largest value recorded. */
+    private long maxValue;
+
+    /** Creates a latency histogram covering up to one hour to two significant digits. */
+    public LatencyHistogram()
+    {
+        this(DEFAULT_HIGHEST_TRACKABLE, DEFAULT_SIGNIFICANT_DIGITS);
+    }
+
+    /**
+     * Creates a latency histogram covering the range from 1 up to the specified highest trackable value.
+     *
+     * @param highestTrackableValue The largest value that can be recorded without clamping. Must be at least 2.
+     * @param significantDigits     The number of significant decimal digits to hold values to, in the range 1 to 5.
+     */
+    public LatencyHistogram(long highestTrackableValue, int significantDigits)
+    {
+        if (highestTrackableValue < 2)
+        {
+            throw new IllegalArgumentException("The highest trackable value must be >= 2.");
+        }
+
+        if ((significantDigits < 1) || (significantDigits > 5))
+        {
+            throw new IllegalArgumentException("The number of significant digits must be in the range 1 to 5.");
+        }
+
+        this.highestTrackableValue = highestTrackableValue;
+        this.significantDigits = significantDigits;
+
+        // Work out how many linear sub-buckets are needed to hold values to the requested precision. The largest value
+        // held with single unit resolution is 2 * 10^digits, rounded up to a power of two.
+        long largestValueWithSingleUnitResolution = 2 * (long) Math.pow(10, significantDigits);
+        int subBucketCountMagnitude = (int) Math.ceil(Math.log(largestValueWithSingleUnitResolution) / Math.log(2));
+        int subBucketCount = 1 << subBucketCountMagnitude;
+
+        subBucketHalfCountMagnitude = subBucketCountMagnitude - 1;
+        subBucketHalfCount = subBucketCount / 2;
+        subBucketMask = subBucketCount - 1;
+        leadingZeroCountBase = 63 - subBucketHalfCountMagnitude;
+
+        // Work out how many power of two buckets are needed to reach the highest trackable value.
+        long smallestUntrackableValue = subBucketCount;
+        int bucketCount = 1;
+
+        while (smallestUntrackableValue <= highestTrackableValue)
+        {
+            if (smallestUntrackableValue > (Long.MAX_VALUE / 2))
+            {
+                bucketCount++;
+
+                break;
+            }
+
+            smallestUntrackableValue <<= 1;
+            bucketCount++;
+        }
+
+        counts = new long[(bucketCount + 1) * subBucketHalfCount];
+    }
+
+    /**
+     * Records a single value into the histogram. Negative values are recorded as zero, values above the highest
+     * trackable value are counted against the highest trackable value.
+     *
+     * @param value The value to record.
+     */
+    public void recordValue(long value)
+    {
+        long clamped = (value < 0) ? 0 : value;
+
+        totalCount++;
+        totalValue += clamped;
+        minValue = (clamped < minValue) ? clamped : minValue;
+        maxValue = (clamped > maxValue) ? clamped : maxValue;
+
+        counts[countsIndex((clamped > highestTrackableValue) ? highestTrackableValue : clamped)]++;
+    }
+
+    /**
+     * Adds all of the values recorded in another histogram into this one. The other histogram must have been created
+     * with the same range and precision as this one.
+     *
+     * @param other The histogram to add into this one.
+     */
+    public void add(LatencyHistogram other)
+    {
+        if ((other.highestTrackableValue != highestTrackableValue) ||
+                (other.significantDigits != significantDigits))
+        {
+            throw new IllegalArgumentException("Cannot add histograms with different ranges or precisions.");
+        }
+
+        if (other.totalCount == 0)
+        {
+            return;
+        }
+
+        for (int i = 0; i < counts.length; i++)
+        {
+            counts[i] += other.counts[i];
+        }
+
+        totalCount += other.totalCount;
+        totalValue += other.totalValue;
+        minValue = (other.minValue < minValue) ? other.minValue : minValue;
+        maxValue = (other.maxValue > maxValue) ? other.maxValue : maxValue;
+    }
+
+    /** Clears all recorded values from the histogram, so that it can be re-used without re-allocating it. */
+    public void reset()
+    {
+        for (int i = 0; i < counts.length; i++)
+        {
+            counts[i] = 0;
+        }
+
+        totalCount = 0;
+        totalValue = 0;
+        minValue = Long.MAX_VALUE;
+        maxValue = 0;
+    }
+
+    /**
+     * Creates a new empty histogram with the same range and precision as this one.
+     *
+     * @return A new empty histogram with the same range and precision as this one.
+     */
+    public LatencyHistogram copyEmpty()
+    {
+        return new LatencyHistogram(highestTrackableValue, significantDigits);
+    }
+
+    /**
+     * Reports the total number of values recorded.
+     *
+     * @return The total number of values recorded.
+     */
+    public long getTotalCount()
+    {
+        return totalCount;
+    }
+
+    /**
+     * Reports the exact sum of all values recorded.
+     *
+     * @return The exact sum of all values recorded.
+     */
+    public long getTotalValue()
+    {
+        return totalValue;
+    }
+
+    /**
+     * Reports the smallest value recorded.
+     *
+     * @return The smallest value recorded, or zero if no values have been recorded.
+     */
+    public long getMinValue()
+    {
+        return (totalCount == 0) ? 0 : minValue;
+    }
+
+    /**
+     * Reports the largest value recorded.
+     *
+     * @return The largest value recorded, or zero if no values have been recorded.
+     */
+    public long getMaxValue()
+    {
+        return maxValue;
+    }
+
+    /**
+     * Reports the mean of all values recorded.
+     *
+     * @return The mean of all values recorded, or zero if no values have been recorded.
+     */
+    public double getMean()
+    {
+        return (totalCount == 0) ? 0.0 : (((double) totalValue) / totalCount);
+    }
+
+    /**
+     * Reports the value at a given percentile of the recorded values. The value returned is the highest value that is
+     * equivalent, at the precision of this histogram, to the recorded value at that percentile, but is never more than
+     * the largest value actually recorded.
+     *
+     * @param  percentile The percentile to get the value for, in the range 0 to 100.
+     *
+     * @return The value at the percentile, or zero if no values have been recorded.
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        if (totalCount == 0)
+        {
+            return 0;
+        }
+
+        double clampedPercentile = (percentile > 100.0) ? 100.0 : ((percentile < 0.0) ? 0.0 : percentile);
+        long countAtPercentile = (long) (((clampedPercentile / 100.0) * totalCount) + 0.5);
+        countAtPercentile = (countAtPercentile < 1) ? 1 : countAtPercentile;
+
+        long runningCount = 0;
+
+        for (int i = 0; i < counts.length; i++)
+        {
+            runningCount += counts[i];
+
+            if (runningCount >= countAtPercentile)
+            {
+                long highestEquivalent = highestEquivalentValue(i);
+
+                return (highestEquivalent > maxValue) ? maxValue : highestEquivalent;
+            }
+        }
+
+        return maxValue;
+    }
+
+    /**
+     * Prints a summary of the histogram, mainly for debugging purposes.
+     *
+     * @return A summary of the histogram, mainly for debugging purposes.
+     */
+    public String toString()
+    {
+        return "LatencyHistogram: [ count = " + totalCount + ", min = " + getMinValue() + ", max = " + maxValue +
+            ", mean = " + getMean() + ", p50 = " + getValueAtPercentile(50.0) + ", p99 = " +
+            getValueAtPercentile(99.0) + " ]";
+    }
+
+    /**
+     * Works out which sub-bucket counter a value is counted in.
+     *
+     * @param  value The value, which must be in the range 0 to the highest trackable value.
+     *
+     * @return The index of the counter for the value.
+     */
+    private int countsIndex(long value)
+    {
+        int bucketIndex = leadingZeroCountBase - Long.numberOfLeadingZeros(value | subBucketMask);
+        int subBucketIndex = (int) (value >>> bucketIndex);
+
+        return ((bucketIndex + 1) << subBucketHalfCountMagnitude) + (subBucketIndex - subBucketHalfCount);
+    }
+
+    /**
+     * Works out the highest value that is counted in the same sub-bucket counter as the specified index.
+     *
+     * @param  index The index of the counter.
+     *
+     * @return The highest value counted against that counter.
+     */
+    private long highestEquivalentValue(int index)
+    {
+        int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+        int subBucketIndex = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+
+        if (bucketIndex < 0)
+        {
+            subBucketIndex -= subBucketHalfCount;
+            bucketIndex = 0;
+        }
+
+        long lowestEquivalent = ((long) subBucketIndex) << bucketIndex;
+
+        return lowestEquivalent + (1L << bucketIndex) - 1;
+    }
+}
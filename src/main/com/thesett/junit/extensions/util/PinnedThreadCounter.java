@@ -0,0 +1,266 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PinnedThreadCounter counts the number of times that virtual threads are pinned to their carrier threads, whilst
+ * blocking inside a synchronized block or native frame. It listens for the 'jdk.VirtualThreadPinned' flight recorder
+ * event on an event stream. The flight recorder streaming API is only available on more recent JVMs, so it is used
+ * reflectively, which allows this class to be compiled and loaded on older JVMs. Where it is not available, the count
+ * is not taken, and is reported as -1.
+ *
+ * <p/>The flight recorder delivers events to the stream in chunks, roughly once a second, so pinning events that occur
+ * just before the count is taken may not have been delivered yet. To count them against the right batch, taking the
+ * count waits for the stream to be flushed after the count was asked for, for up to {@link #FLUSH_TIMEOUT_MILLIS}.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities
+ * <tr><td> Count virtual thread pinning events.
+ * <tr><td> Degrade gracefully when the flight recorder is not available.
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class PinnedThreadCounter
+{
+    /** The name of the flight recorder event raised when a virtual thread is pinned. */
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    /** The longest time to wait for the event stream to be flushed when taking the count, in milliseconds. */
+    public static final long FLUSH_TIMEOUT_MILLIS = 5000L;
+
+    /** Holds the count of pinning events since the count was last taken. */
+    private final AtomicLong pinnedCount = new AtomicLong();
+
+    /** Used to wait for the event stream to be flushed. */
+    private final FlushMonitor flushMonitor = new FlushMonitor();
+
+    /** Holds the flight recorder event stream, or <tt>null</tt> if it could not be started. */
+    private Object recordingStream;
+
+    /**
+     * Starts listening for pinning events. If the flight recorder streaming API is not available, this does nothing,
+     * and the count will be reported as -1.
+     */
+    public synchronized void start()
+    {
+        if (recordingStream != null)
+        {
+            return;
+        }
+
+        Object stream = null;
+
+        try
+        {
+            // Create a new RecordingStream and enable the pinning event on it, with no threshold, so that every
+            // pinning event is recorded.
+            Class<?> streamClass = Class.forName("jdk.jfr.consumer.RecordingStream");
+            stream = streamClass.getConstructor().newInstance();
+
+            Object settings = streamClass.getMethod("enable", String.class).invoke(stream, PINNED_EVENT);
+            Class<?> settingsClass = Class.forName("jdk.jfr.EventSettings");
+            Class<?> durationClass = Class.forName("java.time.Duration");
+            settingsClass.getMethod("withThreshold", durationClass).invoke(settings,
+                durationClass.getField("ZERO").get(null));
+
+            // Count the pinning events through a proxied Consumer, to avoid a compile time dependency on it.
+            Class<?> consumerClass = Class.forName("java.util.function.Consumer");
+            Object counter =
+                Proxy.newProxyInstance(consumerClass.getClassLoader(), new Class<?>[] { consumerClass },
+                    new CountingHandler(pinnedCount));
+
+            streamClass.getMethod("onEvent", String.class, consumerClass).invoke(stream, PINNED_EVENT, counter);
+
+            // Listen for the stream being flushed, so that taking the count can wait for late events to arrive.
+            streamClass.getMethod("onFlush", Runnable.class).invoke(stream, flushMonitor);
+            streamClass.getMethod("startAsync").invoke(stream);
+
+            recordingStream = stream;
+        }
+        catch (Exception e)
+        {
+            // The flight recorder streaming API is not available, so pinning events cannot be counted. Close the stream
+            // if it was created before the failure, so that it does not hold on to a recording. Exception noted and
+            // ignored.
+            if (stream != null)
+            {
+                closeQuietly(stream);
+            }
+
+            e = null;
+        }
+    }
+
+    /**
+     * Takes the count of pinning events since the count was last taken, and resets it to zero. This first waits for the
+     * event stream to be flushed after this is called, so that the events raised before it was called have been
+     * delivered and counted. If the stream is not flushed within {@link #FLUSH_TIMEOUT_MILLIS}, or the calling thread is
+     * interrupted, the count is taken without waiting any longer.
+     *
+     * @return The count of pinning events since the count was last taken, or -1 if pinning events are not being
+     *         counted.
+     */
+    public synchronized long takeCount()
+    {
+        if (recordingStream == null)
+        {
+            return -1L;
+        }
+
+        try
+        {
+            flushMonitor.awaitNextFlush(FLUSH_TIMEOUT_MILLIS);
+        }
+        catch (InterruptedException e)
+        {
+            // Restore the interrupted status and take the count without waiting for the flush.
+            Thread.currentThread().interrupt();
+        }
+
+        return pinnedCount.getAndSet(0);
+    }
+
+    /** Stops listening for pinning events. */
+    public synchronized void stop()
+    {
+        if (recordingStream == null)
+        {
+            return;
+        }
+
+        closeQuietly(recordingStream);
+        recordingStream = null;
+    }
+
+    /**
+     * Closes a flight recorder event stream, ignoring any failure to close it.
+     *
+     * @param stream The event stream to close.
+     */
+    private static void closeQuietly(Object stream)
+    {
+        try
+        {
+            stream.getClass().getMethod("close").invoke(stream);
+        }
+        catch (Exception e)
+        {
+            // The stream could not be closed, there is nothing to be done about it. Exception noted and ignored.
+            e = null;
+        }
+    }
+
+    /**
+     * FlushMonitor is called back each time the flight recorder event stream has been flushed, once all of the events
+     * in the flush have been delivered, and allows threads to wait for the next flush.
+     */
+    private static class FlushMonitor implements Runnable
+    {
+        /** Holds the number of times that the stream has been flushed. */
+        private long flushes;
+
+        /** Counts a flush of the event stream, and wakes up any threads waiting for it. */
+        public synchronized void run()
+        {
+            flushes++;
+            notifyAll();
+        }
+
+        /**
+         * Waits for the event stream to be flushed after this is called.
+         *
+         * @param  timeoutMillis The longest time to wait for, in milliseconds.
+         *
+         * @throws InterruptedException If the calling thread is interrupted whilst waiting.
+         */
+        synchronized void awaitNextFlush(long timeoutMillis) throws InterruptedException
+        {
+            long target = flushes + 1;
+            long deadline = System.nanoTime() + (timeoutMillis * 1000000L);
+
+            while (flushes < target)
+            {
+                long remainingMillis = (deadline - System.nanoTime()) / 1000000L;
+
+                if (remainingMillis <= 0)
+                {
+                    return;
+                }
+
+                wait(remainingMillis);
+            }
+        }
+    }
+
+    /**
+     * CountingHandler implements the Consumer interface for flight recorder events, and counts each event that it is
+     * passed.
+     */
+    private static class CountingHandler implements InvocationHandler
+    {
+        /** Holds the count to increment on each event. */
+        private final AtomicLong count;
+
+        /**
+         * Creates a handler that counts events.
+         *
+         * @param count The count to increment on each event.
+         */
+        CountingHandler(AtomicLong count)
+        {
+            this.count = count;
+        }
+
+        /**
+         * Counts calls to the accept method, and provides the basic Object methods for the proxy.
+         *
+         * @param  proxy  The proxy instance.
+         * @param  method The method being called.
+         * @param  args   The method arguments.
+         *
+         * @return The result of the method call.
+         */
+        public Object invoke(Object proxy, Method method, Object[] args)
+        {
+            String name = method.getName();
+
+            if ("accept".equals(name))
+            {
+                count.incrementAndGet();
+
+                return null;
+            }
+            else if ("equals".equals(name))
+            {
+                return proxy == args[0];
+            }
+            else if ("hashCode".equals(name))
+            {
+                return System.identityHashCode(proxy);
+            }
+            else
+            {
+                return "PinnedThreadCounter.CountingHandler";
+            }
+        }
+    }
+}
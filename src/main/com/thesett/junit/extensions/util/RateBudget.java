@@ -0,0 +1,174 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions.util;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * RateBudget hands out start times for calls at a fixed aggregate rate, to any number of threads sharing the budget.
+ * The start times are laid out on a fixed schedule, one cycle at the target rate apart, from the time of the first
+ * call in a batch. Each call to {@link #acquire()} takes the next start time on the schedule, and waits until that time
+ * has been reached.
+ *
+ * <p/>The schedule does not depend on when calls complete, so this drives tests open-loop. If the threads sharing the
+ * budget fall behind the schedule, because the tests take longer than the schedule allows, the start times that they
+ * take will already have passed and they will not wait, until they have caught up. The start time returned by
+ * {@link #acquire()} is the time at which the call was intended to start, which may be earlier than the time at which
+ * it actually started.
+ *
+ * <p/>Calls are counted as they complete, through {@link #complete()}, and the rate achieved over a batch is the number
+ * of calls completed, over the wall clock time from the start of the schedule to the end of the batch. When the calls
+ * fall behind the schedule, this shows up as an achieved rate below the target rate.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities
+ * <tr><td> Hand out start times on a fixed schedule at a target rate, shared between threads.
+ * <tr><td> Wait until the next start time on the schedule.
+ * <tr><td> Measure the rate of completed calls actually achieved over a batch.
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class RateBudget
+{
+    /** Holds the target rate in calls per second. */
+    private final float rate;
+
+    /** Holds the length of a single cycle at the target rate in nanoseconds. */
+    private final long cycleTimeNanos;
+
+    /** Flag used to detect the first call to acquire in a batch, which starts the schedule. */
+    private boolean started;
+
+    /** Holds the time at which the schedule for the current batch started. */
+    private long startTimeNanos;
+
+    /** Holds the next start time on the schedule. */
+    private long nextStartTimeNanos;
+
+    /** Holds the number of calls completed in the current batch. */
+    private long completed;
+
+    /**
+     * Creates a rate budget for the specified target rate.
+     *
+     * @param rate The target rate in calls per second. Must be larger than zero.
+     */
+    public RateBudget(float rate)
+    {
+        // Check that the argument is above zero.
+        if (rate <= 0.0f)
+        {
+            throw new IllegalArgumentException("The target rate must be above zero.");
+        }
+
+        this.rate = rate;
+        this.cycleTimeNanos = (long) (1000000000f / rate);
+    }
+
+    /**
+     * Takes the next start time on the schedule, and waits until it has been reached. The first call in a batch starts
+     * the schedule at the current time.
+     *
+     * @return The time at which the call was scheduled to start, in nanoseconds.
+     *
+     * @throws InterruptedException If interrupted whilst waiting for the start time to be reached.
+     */
+    public long acquire() throws InterruptedException
+    {
+        long startTime;
+
+        // Take the next start time on the schedule.
+        synchronized (this)
+        {
+            if (!started)
+            {
+                startTimeNanos = System.nanoTime();
+                nextStartTimeNanos = startTimeNanos;
+                started = true;
+            }
+
+            startTime = nextStartTimeNanos;
+            nextStartTimeNanos += cycleTimeNanos;
+        }
+
+        // Wait until the start time is reached.
+        for (long remainingNanos = startTime - System.nanoTime(); remainingNanos > 0;
+                remainingNanos = startTime - System.nanoTime())
+        {
+            LockSupport.parkNanos(this, remainingNanos);
+
+            if (Thread.interrupted())
+            {
+                throw new InterruptedException("Interrupted whilst waiting on the rate budget.");
+            }
+        }
+
+        return startTime;
+    }
+
+    /**
+     * Counts a call as completed, towards the rate achieved over the current batch.
+     */
+    public synchronized void complete()
+    {
+        completed++;
+    }
+
+    /**
+     * Provides the target rate.
+     *
+     * @return The target rate in calls per second.
+     */
+    public float getRate()
+    {
+        return rate;
+    }
+
+    /**
+     * Restarts the schedule and the count of completed calls, so that the next call to {@link #acquire()} starts the
+     * current batch afresh. This is used to leave a warm-up out of the achieved rate. It should only be called when no
+     * calls are waiting on the schedule.
+     */
+    public synchronized void restart()
+    {
+        started = false;
+        completed = 0;
+    }
+
+    /**
+     * Works out the rate actually achieved over the current batch, and resets the schedule so that the next call to
+     * {@link #acquire()} starts a new batch. The rate is the number of calls completed in the batch, over the time from
+     * the start of the schedule up to now. This should be called once all of the calls in the batch have completed.
+     *
+     * @return The achieved rate in calls per second, or zero if no calls were made in the batch.
+     */
+    public synchronized float endBatch()
+    {
+        float achievedRate = 0.0f;
+
+        if (started)
+        {
+            long elapsedNanos = System.nanoTime() - startTimeNanos;
+            achievedRate = (elapsedNanos > 0) ? ((completed * 1000000000f) / elapsedNanos) : 0.0f;
+        }
+
+        started = false;
+        completed = 0;
+
+        return achievedRate;
+    }
+}
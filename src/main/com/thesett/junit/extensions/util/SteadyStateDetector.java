@@ -0,0 +1,295 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions.util;
+
+/**
+ * SteadyStateDetector watches the test timings recorded during a warm-up, to detect when the tests have reached a
+ * steady state. Time is divided up into fixed length intervals, and the throughput and mean latency of the tests
+ * completed in each interval is worked out. Steady state is reached once the coefficient of variation (the standard
+ * deviation divided by the mean) of both the throughput and the mean latency, over a sliding window of the most recent
+ * intervals, falls below a threshold.
+ *
+ * <p/>The detector may be shared between many test threads, each of which records its test timings into it. Test
+ * timings are added up on striped counters, so recording a test does not take a lock; a lock is only taken by the
+ * first thread to notice that an interval has ended, to add it into the sliding window. Once steady state has been
+ * detected, it stays detected until the detector is reset.
+ *
+ * <p/>The intervals should be long enough that each one contains a representative mix of the tests being run, for
+ * example, every size of a test being run with a range of sizes, otherwise the variation between intervals will be
+ * dominated by the mix of tests, and steady state will not be detected.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities
+ * <tr><td> Record test timings into fixed length intervals.
+ * <tr><td> Detect when the variation in throughput and latency over a sliding window falls below a threshold.
+ * <tr><td> Report how long it took to reach steady state.
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class SteadyStateDetector
+{
+    /** The default length of the intervals in milliseconds. */
+    public static final long DEFAULT_INTERVAL_MILLIS = 100L;
+
+    /** The default number of intervals in the sliding window. */
+    public static final int DEFAULT_WINDOW_SIZE = 10;
+
+    /** Holds the coefficient of variation below which steady state is reached. */
+    private final float threshold;
+
+    /** Holds the length of the intervals in nanoseconds. */
+    private final long intervalNanos;
+
+    /** Holds the number of tests completed in each interval of the sliding window. */
+    private final long[] counts;
+
+    /** Holds the summed timings of the tests completed in each interval of the sliding window. */
+    private final long[] totals;
+
+    /** Holds the number of tests completed since the detector was last reset. */
+    private final StripedCounter count = new StripedCounter();
+
+    /** Holds the summed timings of the tests completed since the detector was last reset. */
+    private final StripedCounter total = new StripedCounter();
+
+    /** Holds the time at which the detector was last reset. */
+    private long startTime;
+
+    /** Holds the time at which the current interval ends. */
+    private volatile long intervalEnd;
+
+    /** Holds the number of intervals completed since the detector was last reset. */
+    private long intervals;
+
+    /** Holds the number of tests completed up to the end of the last completed interval. */
+    private long countAtIntervalEnd;
+
+    /** Holds the summed timings of the tests completed up to the end of the last completed interval. */
+    private long totalAtIntervalEnd;
+
+    /** Holds the time taken to reach steady state in nanoseconds, or -1 if it has not been reached yet. */
+    private volatile long steadyTime = -1L;
+
+    /**
+     * Creates a steady state detector with the default interval length and window size.
+     *
+     * @param threshold The coefficient of variation below which steady state is reached.
+     */
+    public SteadyStateDetector(float threshold)
+    {
+        this(threshold, DEFAULT_INTERVAL_MILLIS, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Creates a steady state detector.
+     *
+     * @param threshold      The coefficient of variation below which steady state is reached.
+     * @param intervalMillis The length of the intervals in milliseconds.
+     * @param windowSize     The number of intervals in the sliding window. Must be at least 2.
+     */
+    public SteadyStateDetector(float threshold, long intervalMillis, int windowSize)
+    {
+        // Check that the arguments are sensible.
+        if (threshold <= 0.0f)
+        {
+            throw new IllegalArgumentException("The threshold must be above zero.");
+        }
+
+        if (intervalMillis <= 0)
+        {
+            throw new IllegalArgumentException("The interval length must be above zero.");
+        }
+
+        if (windowSize < 2)
+        {
+            throw new IllegalArgumentException("The window must contain at least 2 intervals.");
+        }
+
+        this.threshold = threshold;
+        this.intervalNanos = intervalMillis * 1000000L;
+        this.counts = new long[windowSize];
+        this.totals = new long[windowSize];
+
+        reset();
+    }
+
+    /**
+     * Records the timing of a completed test.
+     *
+     * @param timeNanos The timing of the test in nanoseconds.
+     */
+    public void record(long timeNanos)
+    {
+        checkIntervals();
+
+        count.increment();
+        total.add(timeNanos);
+    }
+
+    /**
+     * Checks if steady state has been reached. Steady state is re-checked at the end of each interval, even if no
+     * tests were recorded during it.
+     *
+     * @return <tt>true</tt> if steady state has been reached since the detector was last reset.
+     */
+    public boolean isSteady()
+    {
+        if (steadyTime < 0)
+        {
+            checkIntervals();
+        }
+
+        return steadyTime >= 0;
+    }
+
+    /**
+     * Provides the time taken to reach steady state, from when the detector was last reset.
+     *
+     * @return The time taken to reach steady state in nanoseconds, or -1 if it has not been reached.
+     */
+    public long getSteadyTime()
+    {
+        return steadyTime;
+    }
+
+    /**
+     * Provides the coefficient of variation below which steady state is reached.
+     *
+     * @return The coefficient of variation below which steady state is reached.
+     */
+    public float getThreshold()
+    {
+        return threshold;
+    }
+
+    /**
+     * Resets the detector, so that it starts looking for steady state afresh from now. This should only be called when
+     * no tests are being recorded into the detector.
+     */
+    public synchronized void reset()
+    {
+        count.reset();
+        total.reset();
+        countAtIntervalEnd = 0;
+        totalAtIntervalEnd = 0;
+        startTime = System.nanoTime();
+        intervals = 0;
+        steadyTime = -1L;
+        intervalEnd = startTime + intervalNanos;
+    }
+
+    /**
+     * Checks if the current interval has ended, and if so, takes the lock to complete it. Only the first thread to
+     * take the lock after an interval has ended will find any intervals to complete.
+     */
+    private void checkIntervals()
+    {
+        long now = System.nanoTime();
+
+        if (now >= intervalEnd)
+        {
+            synchronized (this)
+            {
+                completeIntervals(now);
+            }
+        }
+    }
+
+    /**
+     * Completes any intervals that have ended by the specified time, adding them into the sliding window, and checks
+     * for steady state at the end of each one.
+     *
+     * @param now The current time in nanoseconds.
+     */
+    private void completeIntervals(long now)
+    {
+        while (now >= intervalEnd)
+        {
+            // Take the tests completed in the interval as those completed since the end of the last one.
+            long countNow = count.sum();
+            long totalNow = total.sum();
+
+            int slot = (int) (intervals % counts.length);
+            counts[slot] = countNow - countAtIntervalEnd;
+            totals[slot] = totalNow - totalAtIntervalEnd;
+            intervals++;
+
+            countAtIntervalEnd = countNow;
+            totalAtIntervalEnd = totalNow;
+
+            // Check for steady state once the window has filled up.
+            if ((steadyTime < 0) && (intervals >= counts.length) && isWindowSteady())
+            {
+                steadyTime = intervalEnd - startTime;
+            }
+
+            intervalEnd += intervalNanos;
+        }
+    }
+
+    /**
+     * Checks if the coefficients of variation of the throughput and the mean latency over the sliding window are both
+     * below the threshold. Any interval in which no tests completed is taken to be unsteady.
+     *
+     * @return <tt>true</tt> if the sliding window is steady.
+     */
+    private boolean isWindowSteady()
+    {
+        double[] throughputs = new double[counts.length];
+        double[] latencies = new double[counts.length];
+
+        for (int i = 0; i < counts.length; i++)
+        {
+            if (counts[i] == 0)
+            {
+                return false;
+            }
+
+            throughputs[i] = counts[i];
+            latencies[i] = ((double) totals[i]) / counts[i];
+        }
+
+        return (coefficientOfVariation(throughputs) < threshold) && (coefficientOfVariation(latencies) < threshold);
+    }
+
+    /**
+     * Works out the coefficient of variation of a set of values.
+     *
+     * @param  values The values.
+     *
+     * @return The standard deviation of the values divided by their mean.
+     */
+    private static double coefficientOfVariation(double[] values)
+    {
+        double sum = 0.0d;
+
+        for (double value : values)
+        {
+            sum += value;
+        }
+
+        double mean = sum / values.length;
+        double squares = 0.0d;
+
+        for (double value : values)
+        {
+            squares += (value - mean) * (value - mean);
+        }
+
+        return Math.sqrt(squares / values.length) / mean;
+    }
+}
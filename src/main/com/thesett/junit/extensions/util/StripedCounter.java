@@ -0,0 +1,136 @@
+/*
+ * Copyright The Sett Ltd, 2005 to 2014.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thesett.junit.extensions.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * StripedCounter is a counter that many threads can add to at once, without losing updates and without all contending
+ * on the same memory location. The count is split over a number of stripes, and each thread adds to the stripe picked
+ * out by a hash of its thread id. The stripes are spaced out in an array, so that each one is on its own cache line,
+ * and threads adding to different stripes do not invalidate each others cache lines. The total count is only worked
+ * out when it is asked for, by adding up the stripes.
+ *
+ * <p/>This is similar to the LongAdder of more recent JVMs, but does not depend on it, or grow its stripes on demand.
+ *
+ * <p/>The total is only exact when no threads are adding to the counter at the same time as it is taken, or the
+ * counter is reset. In between, it is the sum of the updates that have been seen so far.
+ *
+ * <pre><p/><table id="crc"><caption>CRC Card</caption>
+ * <tr><th> Responsibilities
+ * <tr><td> Count concurrently without lost updates.
+ * <tr><td> Keep the stripes of the count on separate cache lines.
+ * <tr><td> Total up the count.
+ * </table></pre>
+ *
+ * @author Rupert Smith
+ */
+public class StripedCounter
+{
+    /**
+     * The spacing of the stripes in the array, in longs. This is two 64 byte cache lines, to keep the stripes apart
+     * when adjacent cache lines are fetched together.
+     */
+    private static final int SPACING = 16;
+
+    /** Holds the stripes, spaced apart, with a spacing before the first one too to keep it clear of the array header. */
+    private final AtomicLongArray stripes;
+
+    /** Used to map thread hashes onto stripes. */
+    private final int mask;
+
+    /** Creates a striped counter, with enough stripes for twice the number of available processors. */
+    public StripedCounter()
+    {
+        this(2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a striped counter.
+     *
+     * @param numStripes The number of stripes to use, rounded up to a power of two.
+     */
+    public StripedCounter(int numStripes)
+    {
+        int size = 1;
+
+        while (size < numStripes)
+        {
+            size <<= 1;
+        }
+
+        mask = size - 1;
+        stripes = new AtomicLongArray((size + 2) * SPACING);
+    }
+
+    /** Adds one to the count. */
+    public void increment()
+    {
+        add(1L);
+    }
+
+    /**
+     * Adds to the count.
+     *
+     * @param delta The amount to add to the count.
+     */
+    public void add(long delta)
+    {
+        stripes.getAndAdd(index(), delta);
+    }
+
+    /**
+     * Totals up the count over all of the stripes.
+     *
+     * @return The total count.
+     */
+    public long sum()
+    {
+        long total = 0L;
+
+        for (int i = 0; i <= mask; i++)
+        {
+            total += stripes.get((i + 1) * SPACING);
+        }
+
+        return total;
+    }
+
+    /** Resets the count to zero. */
+    public void reset()
+    {
+        for (int i = 0; i <= mask; i++)
+        {
+            stripes.set((i + 1) * SPACING, 0L);
+        }
+    }
+
+    /**
+     * Picks out the stripe for the current thread, by hashing its thread id.
+     *
+     * @return The index of the stripe for the current thread in the array.
+     */
+    private int index()
+    {
+        long id = Thread.currentThread().getId();
+
+        // Mix up the bits of the thread id, so that consecutive ids spread out over the stripes.
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        hash ^= hash >>> 16;
+
+        return ((hash & mask) + 1) * SPACING;
+    }
+}